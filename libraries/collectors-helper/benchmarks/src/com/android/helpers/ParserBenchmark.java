@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.helpers;
+
+import static org.junit.Assume.assumeTrue;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+
+import com.android.helpers.BugReportDurationHelper.BugReportDurationLines;
+import com.android.helpers.BugReportDurationHelper.DumpstateBoardLines;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Benchmarks of the parsers of the collector helpers, on outputs of a single, a typical number
+ * and a worst case number of processes. Each benchmark reports its time and allocations per run.
+ *
+ * <p>To run: atest CollectorsHelperBenchmark:com.android.helpers.ParserBenchmark
+ */
+@RunWith(Parameterized.class)
+public class ParserBenchmark {
+    private static final String TIME_IN_STATE_SOURCE =
+            "/sys/devices/system/cpu/cpu0/cpufreq/stats/time_in_state";
+    private static final String BUGREPORT_DIR =
+            "/data/user_de/0/com.android.shell/files/bugreports";
+
+    @Rule public BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    @Parameterized.Parameter public ParserFixtures.Size mSize;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> getSizes() {
+        List<Object[]> sizes = new ArrayList<>();
+        for (ParserFixtures.Size size : ParserFixtures.Size.values()) {
+            sizes.add(new Object[] {size});
+        }
+        return sizes;
+    }
+
+    /** Parse the showmap outputs of all the processes of a snapshot. */
+    @Test
+    public void parseShowmap() {
+        String[] names = ParserFixtures.processNames(mSize);
+        String[] outputs = ParserFixtures.showmapOutputs(mSize);
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            // A new helper for each run, so the metrics are not summed with the previous run.
+            state.pauseTiming();
+            ShowmapSnapshotHelper helper = new ShowmapSnapshotHelper();
+            helper.setMetricNameIndex(ParserFixtures.SHOWMAP_METRIC_INDEX);
+            state.resumeTiming();
+            for (int i = 0; i < names.length; i++) {
+                helper.parseAndUpdateMemoryInfo(names[i], outputs[i]);
+            }
+        }
+    }
+
+    /** Parse the gfxinfo output of all the packages. */
+    @Test
+    public void parseGfxInfo() {
+        String output = ParserFixtures.gfxinfoOutput(mSize);
+        JankCollectionHelper helper = new JankCollectionHelper();
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            helper.parseGfxInfoOutput(output, "");
+        }
+    }
+
+    /** Parse the meminfo proto of the last process of the output. */
+    @Test
+    public void parseDumpsysMeminfo() {
+        byte[] output = ParserFixtures.meminfoProto(mSize);
+        String[] names = ParserFixtures.processNames(mSize);
+        String processName = names[names.length - 1];
+        DumpsysMeminfoHelper helper = new DumpsysMeminfoHelper();
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            helper.parseMetrics(processName, output);
+        }
+    }
+
+    /** Parse a time_in_state output. */
+    @Test
+    public void parseTimeInState() {
+        String output = ParserFixtures.timeInStateOutput(mSize);
+        TimeInStateHelper helper = new TimeInStateHelper();
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            helper.readFreqStats(TIME_IN_STATE_SOURCE, output);
+        }
+    }
+
+    /** Filter the lines of a bug report and parse the section durations, as in getMetrics(). */
+    @Test
+    public void filterBugReport() {
+        List<String> lines = ParserFixtures.bugReportLines(mSize);
+        BugReportDurationHelper helper = new BugReportDurationHelper(BUGREPORT_DIR);
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            BugReportDurationLines filtered = helper.new BugReportDurationLines();
+            for (String line : lines) {
+                helper.filterBugReportLine(line, filtered);
+            }
+            for (String line : filtered.dumpstateLines) {
+                helper.convertDumpstateSectionToKey(helper.parseDumpstateSection(line));
+                helper.parseDecimalDuration(line);
+            }
+            for (String line : filtered.dumpsysLines) {
+                helper.convertDumpsysSectionToKey(helper.parseDumpsysSection(line));
+                helper.parseDecimalDuration(line);
+            }
+        }
+    }
+
+    /** Filter the lines of a dumpstate_board.txt and parse the section durations. */
+    @Test
+    public void filterDumpstateBoard() {
+        List<String> lines = ParserFixtures.dumpstateBoardLines(mSize);
+        BugReportDurationHelper helper = new BugReportDurationHelper(BUGREPORT_DIR);
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            DumpstateBoardLines filtered = helper.new DumpstateBoardLines();
+            for (String line : lines) {
+                helper.filterDumpstateBoardLine(line, filtered);
+            }
+            for (int i = 0; i < filtered.size(); i++) {
+                helper.convertDumpstateBoardSectionToKey(
+                        helper.parseDumpstateBoardSection(filtered.sectionNameLines.get(i)));
+                helper.parseIntegerDuration(filtered.durationLines.get(i));
+            }
+        }
+    }
+
+    /** Parse a /proc/loadavg output, which does not depend on the number of processes. */
+    @Test
+    public void parseProcLoad() {
+        assumeTrue(mSize == ParserFixtures.Size.SMALL);
+        String output = ParserFixtures.loadavgOutput();
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            ProcLoadHelper.parseProcLoadInLastMinute(output);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.helpers;
+
+import com.android.server.am.nano.MemInfoDumpProto;
+
+import com.google.protobuf.nano.MessageNano;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outputs of the commands parsed by the collector helpers, following the format of the device
+ * outputs used in the helper unit tests, scaled to a given number of processes.
+ *
+ * <p>The outputs are generated, not recorded on a device. They have the structure of the real
+ * outputs but not their variety of line lengths and values, so the results are best compared
+ * between changes of the parsers rather than read as the cost on a given device.
+ */
+final class ParserFixtures {
+    /** Number of processes, packages or entries in an output. */
+    enum Size {
+        SMALL(1),
+        TYPICAL(40),
+        WORST_CASE(1000);
+
+        final int mCount;
+
+        Size(int count) {
+            mCount = count;
+        }
+    }
+
+    /** Metric indexes of the showmap summary, as configured in the showmap tests. */
+    static final String SHOWMAP_METRIC_INDEX = "rss:1,pss:2,privatedirty:6:7";
+    // Mappings per process in a showmap output.
+    private static final int SHOWMAP_MAPPINGS = 200;
+    // Distinct showmap outputs, shared by the processes to bound the fixture memory.
+    private static final int SHOWMAP_DISTINCT_OUTPUTS = 8;
+    // Noise lines around each duration line of a bug report.
+    private static final int BUGREPORT_NOISE_LINES = 50;
+
+    private ParserFixtures() {}
+
+    /** Returns the process names of an output of {@code size}. */
+    static String[] processNames(Size size) {
+        String[] names = new String[size.mCount];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "com.android.process" + i;
+        }
+        return names;
+    }
+
+    /** Returns one {@code showmap -v} output per process. */
+    static String[] showmapOutputs(Size size) {
+        String[] distinct = new String[SHOWMAP_DISTINCT_OUTPUTS];
+        for (int i = 0; i < distinct.length; i++) {
+            distinct[i] = showmapOutput(i);
+        }
+        String[] outputs = new String[size.mCount];
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = distinct[i % distinct.length];
+        }
+        return outputs;
+    }
+
+    private static String showmapOutput(int seed) {
+        StringBuilder output = new StringBuilder();
+        output.append(" virtual                     shared   shared  private  private\n")
+                .append("    size      RSS      PSS    clean    dirty    clean    dirty")
+                .append("     swap  swapPSS flags object\n")
+                .append("-------- -------- -------- -------- -------- -------- --------")
+                .append(" -------- -------- ----- ------\n");
+        for (int i = 0; i < SHOWMAP_MAPPINGS; i++) {
+            output.append(
+                    String.format(
+                            "%8d %8d %8d %8d %8d %8d %8d %8d %8d  r-x  /system/lib64/lib%d.so\n",
+                            4 * (i + seed + 1), i + 4, i + 2, i, 0, 2, 2, 0, 0, i));
+        }
+        output.append("-------- -------- -------- -------- -------- -------- --------")
+                .append(" -------- -------- ----- ------\n")
+                .append(
+                        String.format(
+                                "%d     %d     %d     3800      168      264     1168"
+                                        + "        0        0 TOTAL\n",
+                                10810272 + seed, 5400 + seed, 1585 + seed));
+        return output.toString();
+    }
+
+    /** Returns a {@code dumpsys gfxinfo} output of all the packages. */
+    static String gfxinfoOutput(Size size) {
+        StringBuilder output = new StringBuilder("Applications Graphics Acceleration Info:");
+        output.append("\nUptime: 5218296063 Realtime: 5218296063");
+        String[] packages = processNames(size);
+        for (int i = 0; i < packages.length; i++) {
+            output.append(String.format("\n\n** Graphics info for pid %d [%s] **", i, packages[i]))
+                    .append("\n")
+                    .append("\nStats since: 5218296063193ns")
+                    .append("\nTotal frames rendered: 900")
+                    .append("\nJanky frames: 300 (33.33%)")
+                    .append("\nJanky frames (legacy): 200 (22.22%)")
+                    .append("\n50th percentile: 150ms")
+                    .append("\n90th percentile: 190ms")
+                    .append("\n95th percentile: 195ms")
+                    .append("\n99th percentile: 199ms")
+                    .append("\nNumber Missed Vsync: 1")
+                    .append("\nNumber High input latency: 2")
+                    .append("\nNumber Slow UI thread: 3")
+                    .append("\nNumber Slow bitmap uploads: 4")
+                    .append("\nNumber Slow issue draw commands: 5")
+                    .append("\nNumber Frame deadline missed (legacy): 3")
+                    .append("\nNumber Frame deadline missed: 6")
+                    .append("\nHISTOGRAM: 5ms=0 6ms=10 7ms=20 8ms=30 9ms=40 10ms=50 11ms=60")
+                    .append("\nProfile data in ms:")
+                    .append("\n\n\t").append(packages[i]).append("/.MainActivity/android.view.")
+                    .append("ViewRootImpl@1234 (visibility=0)")
+                    .append("\nView hierarchy:")
+                    .append("\n\n  ").append(packages[i]).append("/.MainActivity/android.view.")
+                    .append("ViewRootImpl@1234\n  42 views, 65.00 kB of render nodes");
+        }
+        return output.toString();
+    }
+
+    /** Returns a {@code dumpsys meminfo -a --proto} output of all the processes. */
+    static byte[] meminfoProto(Size size) {
+        MemInfoDumpProto memInfo = new MemInfoDumpProto();
+        String[] names = processNames(size);
+        memInfo.appProcesses = new MemInfoDumpProto.AppData[names.length];
+        for (int i = 0; i < names.length; i++) {
+            MemInfoDumpProto.ProcessMemory processMemory = new MemInfoDumpProto.ProcessMemory();
+            processMemory.pid = i;
+            processMemory.processName = names[i];
+            processMemory.nativeHeap = heapInfo(i);
+            processMemory.dalvikHeap = heapInfo(2 * i);
+            processMemory.totalHeap = heapInfo(3 * i);
+            MemInfoDumpProto.AppData appData = new MemInfoDumpProto.AppData();
+            appData.processMemory = processMemory;
+            memInfo.appProcesses[i] = appData;
+        }
+        return MessageNano.toByteArray(memInfo);
+    }
+
+    private static MemInfoDumpProto.ProcessMemory.HeapInfo heapInfo(int seed) {
+        MemInfoDumpProto.ProcessMemory.MemoryInfo memoryInfo =
+                new MemInfoDumpProto.ProcessMemory.MemoryInfo();
+        memoryInfo.totalPssKb = 1000 + seed;
+        memoryInfo.sharedDirtyKb = 200 + seed;
+        memoryInfo.privateDirtyKb = 300 + seed;
+        MemInfoDumpProto.ProcessMemory.HeapInfo heapInfo =
+                new MemInfoDumpProto.ProcessMemory.HeapInfo();
+        heapInfo.memInfo = memoryInfo;
+        heapInfo.heapSizeKb = 4000 + seed;
+        heapInfo.heapAllocKb = 3000 + seed;
+        return heapInfo;
+    }
+
+    /** Returns a {@code time_in_state} output with one line per frequency. */
+    static String timeInStateOutput(Size size) {
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < size.mCount; i++) {
+            output.append(300000 + 100000 * i).append(' ').append(1000 + 7 * i).append('\n');
+        }
+        return output.toString();
+    }
+
+    /** Returns the lines of a raw bug report, with a dumpstate and a dumpsys section each. */
+    static List<String> bugReportLines(Size size) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < size.mCount; i++) {
+            addBugReportNoise(lines, i);
+            lines.add(
+                    String.format(
+                            "------ 0.%03ds was the duration of 'SECTION %d' ------", i % 1000, i));
+            addBugReportNoise(lines, i);
+            lines.add(
+                    String.format(
+                            "--------- 0.%03ds was the duration of dumpsys service%d, ending at:"
+                                    + " 2023-04-24 19:53:46",
+                            i % 1000, i));
+        }
+        return lines;
+    }
+
+    private static void addBugReportNoise(List<String> lines, int seed) {
+        for (int i = 0; i < BUGREPORT_NOISE_LINES; i++) {
+            lines.add(
+                    String.format(
+                            "04-24 19:53:%02d.%03d  1000  %4d  %4d I ActivityManager: line %d",
+                            i % 60, seed % 1000, seed, i, i));
+        }
+    }
+
+    /** Returns the lines of a {@code dumpstate_board.txt}, with one section each. */
+    static List<String> dumpstateBoardLines(Size size) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < size.mCount; i++) {
+            addBugReportNoise(lines, i);
+            lines.add(String.format("------ Section end: dump_section%d.sh ------", i));
+            lines.add(String.format("Elapsed msec: %d", 100 + i));
+        }
+        return lines;
+    }
+
+    /** Returns a {@code /proc/loadavg} output. */
+    static String loadavgOutput() {
+        return "1.39 1.10 1.21 2/2679 6380\n";
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.helpers;
+
+import static com.android.helpers.MetricUtility.constructKey;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Single pass parser of the {@code ---PROFILEDATA---} blocks printed by {@code dumpsys gfxinfo
+ * <package> framestats}, accumulating frame statistics for one package.
+ *
+ * <p>Frame durations (from the intended vsync to the frame completion) are kept in a fixed
+ * resolution histogram backed by primitive arrays, which gives frame-time percentiles at a finer
+ * resolution than the buckets printed by dumpsys. Per-stage durations and deadline misses are
+ * accumulated as well. Frames are de-duplicated on their intended vsync, so the same dump can be
+ * parsed several times, and {@link #reset()} only clears the arrays.
+ */
+public class FrameStatsParser {
+    @VisibleForTesting static final String PROFILE_DATA_DELIMITER = "---PROFILEDATA---";
+
+    @VisibleForTesting static final String FRAME_COUNT_METRIC = "framestats_frame_count";
+    @VisibleForTesting static final String DEADLINE_MISSED_METRIC = "framestats_deadline_missed";
+    @VisibleForTesting static final String FRAME_TIME_METRIC_FORMAT = "framestats_frame_time_p%d";
+    @VisibleForTesting static final String FRAME_TIME_MAX_METRIC = "framestats_frame_time_max";
+    @VisibleForTesting static final String STAGE_METRIC_FORMAT = "framestats_%s_mean_ms";
+    private static final int[] PERCENTILES = {50, 90, 95, 99};
+
+    // Histogram: 0.1ms buckets up to 100ms, then 1ms buckets up to 2s, then a single overflow.
+    private static final long NANOS_PER_MS = 1_000_000L;
+    private static final long FINE_BUCKET_NS = NANOS_PER_MS / 10;
+    private static final long FINE_LIMIT_NS = 100 * NANOS_PER_MS;
+    private static final long COARSE_BUCKET_NS = NANOS_PER_MS;
+    private static final long COARSE_LIMIT_NS = 2000 * NANOS_PER_MS;
+    private static final int FINE_BUCKETS = (int) (FINE_LIMIT_NS / FINE_BUCKET_NS);
+    private static final int COARSE_BUCKETS =
+            (int) ((COARSE_LIMIT_NS - FINE_LIMIT_NS) / COARSE_BUCKET_NS);
+    private static final int BUCKETS = FINE_BUCKETS + COARSE_BUCKETS + 1;
+
+    private static final String COLUMN_FLAGS = "Flags";
+    private static final String COLUMN_INTENDED_VSYNC = "IntendedVsync";
+    private static final String COLUMN_FRAME_DEADLINE = "FrameDeadline";
+    private static final String COLUMN_FRAME_COMPLETED = "FrameCompleted";
+
+    /** Frame stages, measured between two framestats columns. */
+    @VisibleForTesting
+    enum Stage {
+        INPUT("input", "HandleInputStart", "AnimationStart"),
+        ANIMATION("animation", "AnimationStart", "PerformTraversalsStart"),
+        LAYOUT("layout", "PerformTraversalsStart", "DrawStart"),
+        DRAW("draw", "DrawStart", "SyncQueued"),
+        SYNC("sync", "SyncStart", "IssueDrawCommandsStart"),
+        ISSUE_DRAW_COMMANDS("issue_draw_commands", "IssueDrawCommandsStart", "SwapBuffers"),
+        SWAP_BUFFERS("swap_buffers", "SwapBuffers", "FrameCompleted");
+
+        private final String mMetricId;
+        private final String mStartColumn;
+        private final String mEndColumn;
+
+        Stage(String metricId, String startColumn, String endColumn) {
+            mMetricId = metricId;
+            mStartColumn = startColumn;
+            mEndColumn = endColumn;
+        }
+
+        String getMetricId() {
+            return mMetricId;
+        }
+    }
+
+    private final int[] mHistogram = new int[BUCKETS];
+    private final long[] mStageTotalNs = new long[Stage.values().length];
+    private final int[] mStageCount = new int[Stage.values().length];
+    private long mFrameCount;
+    private long mDeadlineMissed;
+    private long mMaxDurationNs;
+    // Intended vsync of the last frame accumulated, to skip frames already seen.
+    private long mLastIntendedVsync = Long.MIN_VALUE;
+
+    // Column indexes of the current block, -1 when absent.
+    private int mFlagsIndex;
+    private int mIntendedVsyncIndex;
+    private int mFrameDeadlineIndex;
+    private int mFrameCompletedIndex;
+    private final int[] mStageStartIndex = new int[Stage.values().length];
+    private final int[] mStageEndIndex = new int[Stage.values().length];
+    // Reused row buffer.
+    private long[] mRow = new long[32];
+
+    /** Clear the accumulated statistics. Frames already seen are still skipped. */
+    public void reset() {
+        Arrays.fill(mHistogram, 0);
+        Arrays.fill(mStageTotalNs, 0L);
+        Arrays.fill(mStageCount, 0);
+        mFrameCount = 0;
+        mDeadlineMissed = 0;
+        mMaxDurationNs = 0;
+    }
+
+    /**
+     * Accumulate the frames of all the {@code ---PROFILEDATA---} blocks found in {@code output}.
+     * Any other line is ignored.
+     */
+    public void parse(String output) {
+        boolean inBlock = false;
+        boolean expectHeader = false;
+        int length = output.length();
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = output.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = length;
+            }
+            int start = skipWhitespace(output, lineStart, lineEnd);
+            int end = trimEnd(output, start, lineEnd);
+            if (end > start) {
+                if (output.startsWith(PROFILE_DATA_DELIMITER, start)) {
+                    inBlock = !inBlock;
+                    expectHeader = inBlock;
+                } else if (expectHeader) {
+                    readHeader(output, start, end);
+                    expectHeader = false;
+                } else if (inBlock) {
+                    readRow(output, start, end);
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    /** Returns the accumulated metrics, keyed by {@code metricsPrefix} and {@code packageName}. */
+    public Map<String, Double> getMetrics(String metricsPrefix, String packageName) {
+        Map<String, Double> metrics = new HashMap<>();
+        metrics.put(
+                constructKey(metricsPrefix, packageName, FRAME_COUNT_METRIC),
+                (double) mFrameCount);
+        if (mFrameCount == 0) {
+            return metrics;
+        }
+        metrics.put(
+                constructKey(metricsPrefix, packageName, DEADLINE_MISSED_METRIC),
+                (double) mDeadlineMissed);
+        for (int percentile : PERCENTILES) {
+            metrics.put(
+                    constructKey(
+                            metricsPrefix,
+                            packageName,
+                            String.format(FRAME_TIME_METRIC_FORMAT, percentile)),
+                    getPercentileMs(percentile));
+        }
+        metrics.put(
+                constructKey(metricsPrefix, packageName, FRAME_TIME_MAX_METRIC),
+                (double) mMaxDurationNs / NANOS_PER_MS);
+        for (Stage stage : Stage.values()) {
+            int count = mStageCount[stage.ordinal()];
+            if (count > 0) {
+                metrics.put(
+                        constructKey(
+                                metricsPrefix,
+                                packageName,
+                                String.format(STAGE_METRIC_FORMAT, stage.getMetricId())),
+                        (double) mStageTotalNs[stage.ordinal()] / count / NANOS_PER_MS);
+            }
+        }
+        return metrics;
+    }
+
+    /** Returns the nearest-rank {@code percentile} of the frame durations, in milliseconds. */
+    @VisibleForTesting
+    double getPercentileMs(int percentile) {
+        if (mFrameCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * mFrameCount));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += mHistogram[bucket];
+            if (seen >= rank) {
+                return bucketUpperBoundMs(bucket);
+            }
+        }
+        return (double) mMaxDurationNs / NANOS_PER_MS;
+    }
+
+    private double bucketUpperBoundMs(int bucket) {
+        if (bucket < FINE_BUCKETS) {
+            return (double) ((bucket + 1) * FINE_BUCKET_NS) / NANOS_PER_MS;
+        } else if (bucket < FINE_BUCKETS + COARSE_BUCKETS) {
+            return (double) (FINE_LIMIT_NS + (bucket - FINE_BUCKETS + 1) * COARSE_BUCKET_NS)
+                    / NANOS_PER_MS;
+        }
+        return (double) mMaxDurationNs / NANOS_PER_MS;
+    }
+
+    private static int bucketOf(long durationNs) {
+        if (durationNs < FINE_LIMIT_NS) {
+            return (int) (durationNs / FINE_BUCKET_NS);
+        } else if (durationNs < COARSE_LIMIT_NS) {
+            return FINE_BUCKETS + (int) ((durationNs - FINE_LIMIT_NS) / COARSE_BUCKET_NS);
+        }
+        return BUCKETS - 1;
+    }
+
+    private void readHeader(String line, int start, int end) {
+        mFlagsIndex = -1;
+        mIntendedVsyncIndex = -1;
+        mFrameDeadlineIndex = -1;
+        mFrameCompletedIndex = -1;
+        Arrays.fill(mStageStartIndex, -1);
+        Arrays.fill(mStageEndIndex, -1);
+        int column = 0;
+        int fieldStart = start;
+        while (fieldStart <= end) {
+            int fieldEnd = line.indexOf(',', fieldStart);
+            if (fieldEnd < 0 || fieldEnd > end) {
+                fieldEnd = end;
+            }
+            String name = line.substring(fieldStart, fieldEnd).trim();
+            if (!name.isEmpty()) {
+                if (name.equals(COLUMN_FLAGS)) {
+                    mFlagsIndex = column;
+                } else if (name.equals(COLUMN_INTENDED_VSYNC)) {
+                    mIntendedVsyncIndex = column;
+                } else if (name.equals(COLUMN_FRAME_DEADLINE)) {
+                    mFrameDeadlineIndex = column;
+                } else if (name.equals(COLUMN_FRAME_COMPLETED)) {
+                    mFrameCompletedIndex = column;
+                }
+                for (Stage stage : Stage.values()) {
+                    if (name.equals(stage.mStartColumn)) {
+                        mStageStartIndex[stage.ordinal()] = column;
+                    }
+                    if (name.equals(stage.mEndColumn)) {
+                        mStageEndIndex[stage.ordinal()] = column;
+                    }
+                }
+            }
+            column++;
+            fieldStart = fieldEnd + 1;
+        }
+        if (mRow.length < column) {
+            mRow = new long[column];
+        }
+    }
+
+    private void readRow(String line, int start, int end) {
+        if (mIntendedVsyncIndex < 0 || mFrameCompletedIndex < 0) {
+            return;
+        }
+        int columns = 0;
+        int fieldStart = start;
+        while (fieldStart < end && columns < mRow.length) {
+            int fieldEnd = line.indexOf(',', fieldStart);
+            if (fieldEnd < 0 || fieldEnd > end) {
+                fieldEnd = end;
+            }
+            mRow[columns++] = parseLong(line, fieldStart, fieldEnd);
+            fieldStart = fieldEnd + 1;
+        }
+        if (columns <= Math.max(mIntendedVsyncIndex, mFrameCompletedIndex)) {
+            return;
+        }
+        // Frames with any flag set (e.g. window layout changed) are not regular frames.
+        if (mFlagsIndex >= 0 && mFlagsIndex < columns && mRow[mFlagsIndex] != 0) {
+            return;
+        }
+        long intendedVsync = mRow[mIntendedVsyncIndex];
+        long frameCompleted = mRow[mFrameCompletedIndex];
+        if (intendedVsync <= mLastIntendedVsync || frameCompleted < intendedVsync) {
+            return;
+        }
+        mLastIntendedVsync = intendedVsync;
+
+        long durationNs = frameCompleted - intendedVsync;
+        mHistogram[bucketOf(durationNs)]++;
+        mMaxDurationNs = Math.max(mMaxDurationNs, durationNs);
+        mFrameCount++;
+        if (mFrameDeadlineIndex >= 0 && mFrameDeadlineIndex < columns) {
+            long deadline = mRow[mFrameDeadlineIndex];
+            if (deadline > 0 && frameCompleted > deadline) {
+                mDeadlineMissed++;
+            }
+        }
+        for (int i = 0; i < mStageTotalNs.length; i++) {
+            int startIndex = mStageStartIndex[i];
+            int endIndex = mStageEndIndex[i];
+            if (startIndex < 0 || endIndex < 0 || startIndex >= columns || endIndex >= columns) {
+                continue;
+            }
+            long stageStart = mRow[startIndex];
+            long stageEnd = mRow[endIndex];
+            if (stageStart > 0 && stageEnd >= stageStart) {
+                mStageTotalNs[i] += stageEnd - stageStart;
+                mStageCount[i]++;
+            }
+        }
+    }
+
+    /** Parse a decimal long in {@code [start, end)} without allocating, 0 if malformed. */
+    private static long parseLong(String s, int start, int end) {
+        start = skipWhitespace(s, start, end);
+        end = trimEnd(s, start, end);
+        boolean negative = false;
+        if (start < end && s.charAt(start) == '-') {
+            negative = true;
+            start++;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    private static int skipWhitespace(String s, int start, int end) {
+        while (start < end && Character.isWhitespace(s.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(String s, int start, int end) {
+        while (end > start && Character.isWhitespace(s.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+}
@@ -27,9 +27,12 @@ import androidx.test.uiautomator.UiDevice;
 import com.google.common.base.Verify;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
@@ -49,6 +52,8 @@ public class JankCollectionHelper implements ICollectorHelper<Double> {
     // Shell dump commands to get and reset the tracked gfxinfo metrics.
     @VisibleForTesting static final String GFXINFO_COMMAND_GET = "dumpsys gfxinfo %s";
     @VisibleForTesting static final String GFXINFO_COMMAND_RESET = GFXINFO_COMMAND_GET + " reset";
+    @VisibleForTesting
+    static final String GFXINFO_COMMAND_FRAMESTATS = GFXINFO_COMMAND_GET + " framestats";
     // Pattern matchers and enumerators to verify and pull gfxinfo metrics.
     // Example: "** Graphics info for pid 853 [com.google.android.leanbacklauncher] **"
     private static final String GFXINFO_OUTPUT_HEADER = "Graphics info for pid (\\d+) \\[(%s)\\]";
@@ -59,23 +64,27 @@ public class JankCollectionHelper implements ICollectorHelper<Double> {
     public enum GfxInfoMetric {
         // Example: "Total frames rendered: 20391"
         TOTAL_FRAMES(
+                "Total frames rendered",
                 Pattern.compile("Total frames rendered: (\\d+)", Pattern.DOTALL),
                 1,
                 "total_frames"),
         // Example: "Janky frames: 785 (3.85%)"
         JANKY_FRAMES_COUNT(
+                "Janky frames",
                 Pattern.compile(
                         "Janky frames: (\\d+) \\(([0-9]+[\\.]?[0-9]+)\\%\\)", Pattern.DOTALL),
                 1,
                 "janky_frames_count"),
         // Example: "Janky frames: 785 (3.85%)"
         JANKY_FRAMES_PRCNT(
+                "Janky frames",
                 Pattern.compile(
                         "Janky frames: (\\d+) \\(([0-9]+[\\.]?[0-9]+)\\%\\)", Pattern.DOTALL),
                 2,
                 "janky_frames_percent"),
         // Example: "Janky frames (legacy): 785 (3.85%)"
         JANKY_FRAMES_LEGACY_COUNT(
+                "Janky frames (legacy)",
                 Pattern.compile(
                         "Janky frames \\(legacy\\): (\\d+) \\(([0-9]+[\\.]?[0-9]+)\\%\\)",
                         Pattern.DOTALL),
@@ -83,6 +92,7 @@ public class JankCollectionHelper implements ICollectorHelper<Double> {
                 "janky_frames_legacy_count"),
         // Example: "Janky frames (legacy): 785 (3.85%)"
         JANKY_FRAMES_LEGACY_PRCNT(
+                "Janky frames (legacy)",
                 Pattern.compile(
                         "Janky frames \\(legacy\\): (\\d+) \\(([0-9]+[\\.]?[0-9]+)\\%\\)",
                         Pattern.DOTALL),
@@ -90,86 +100,103 @@ public class JankCollectionHelper implements ICollectorHelper<Double> {
                 "janky_frames_legacy_percent"),
         // Example: "50th percentile: 9ms"
         FRAME_TIME_50TH(
+                "50th percentile",
                 Pattern.compile("50th percentile: (\\d+)ms", Pattern.DOTALL),
                 1,
                 "frame_render_time_percentile_50"),
         // Example: "90th percentile: 9ms"
         FRAME_TIME_90TH(
+                "90th percentile",
                 Pattern.compile("90th percentile: (\\d+)ms", Pattern.DOTALL),
                 1,
                 "frame_render_time_percentile_90"),
         // Example: "95th percentile: 9ms"
         FRAME_TIME_95TH(
+                "95th percentile",
                 Pattern.compile("95th percentile: (\\d+)ms", Pattern.DOTALL),
                 1,
                 "frame_render_time_percentile_95"),
         // Example: "99th percentile: 9ms"
         FRAME_TIME_99TH(
+                "99th percentile",
                 Pattern.compile("99th percentile: (\\d+)ms", Pattern.DOTALL),
                 1,
                 "frame_render_time_percentile_99"),
         // Example: "Number Missed Vsync: 0"
         NUM_MISSED_VSYNC(
+                "Number Missed Vsync",
                 Pattern.compile("Number Missed Vsync: (\\d+)", Pattern.DOTALL),
                 1,
                 "missed_vsync"),
         // Example: "Number High input latency: 0"
         NUM_HIGH_INPUT_LATENCY(
+                "Number High input latency",
                 Pattern.compile("Number High input latency: (\\d+)", Pattern.DOTALL),
                 1,
                 "high_input_latency"),
         // Example: "Number Slow UI thread: 0"
         NUM_SLOW_UI_THREAD(
+                "Number Slow UI thread",
                 Pattern.compile("Number Slow UI thread: (\\d+)", Pattern.DOTALL),
                 1,
                 "slow_ui_thread"),
         // Example: "Number Slow bitmap uploads: 0"
         NUM_SLOW_BITMAP_UPLOADS(
+                "Number Slow bitmap uploads",
                 Pattern.compile("Number Slow bitmap uploads: (\\d+)", Pattern.DOTALL),
                 1,
                 "slow_bmp_upload"),
         // Example: "Number Slow issue draw commands: 0"
         NUM_SLOW_DRAW(
+                "Number Slow issue draw commands",
                 Pattern.compile("Number Slow issue draw commands: (\\d+)", Pattern.DOTALL),
                 1,
                 "slow_issue_draw_cmds"),
         // Example: "Number Frame deadline missed: 0"
         NUM_FRAME_DEADLINE_MISSED(
+                "Number Frame deadline missed",
                 Pattern.compile("Number Frame deadline missed: (\\d+)", Pattern.DOTALL),
                 1,
                 "deadline_missed"),
         // Number Frame deadline missed (legacy): 0
         NUM_FRAME_DEADLINE_MISSED_LEGACY(
+                "Number Frame deadline missed (legacy)",
                 Pattern.compile(
                         "Number Frame deadline missed \\(legacy\\): (\\d+)", Pattern.DOTALL),
                 1,
                 "deadline_missed_legacy"),
         // Example: "50th gpu percentile: 9ms"
         GPU_FRAME_TIME_50TH(
+                "50th gpu percentile",
                 Pattern.compile("50th gpu percentile: (\\d+)ms", Pattern.DOTALL),
                 1,
                 "gpu_frame_render_time_percentile_50"),
         // Example: "90th gpu percentile: 9ms"
         GPU_FRAME_TIME_90TH(
+                "90th gpu percentile",
                 Pattern.compile("90th gpu percentile: (\\d+)ms", Pattern.DOTALL),
                 1,
                 "gpu_frame_render_time_percentile_90"),
         // Example: "95th gpu percentile: 9ms"
         GPU_FRAME_TIME_95TH(
+                "95th gpu percentile",
                 Pattern.compile("95th gpu percentile: (\\d+)ms", Pattern.DOTALL),
                 1,
                 "gpu_frame_render_time_percentile_95"),
         // Example: "99th gpu percentile: 9ms"
         GPU_FRAME_TIME_99TH(
+                "99th gpu percentile",
                 Pattern.compile("99th gpu percentile: (\\d+)ms", Pattern.DOTALL),
                 1,
                 "gpu_frame_render_time_percentile_99");
 
+        private String mLabel;
         private Pattern mPattern;
         private int mGroupIndex;
         private String mMetricId;
 
-        GfxInfoMetric(Pattern pattern, int groupIndex, String metricId) {
+        GfxInfoMetric(String label, Pattern pattern, int groupIndex, String metricId) {
+            mLabel = label;
             mPattern = pattern;
             mGroupIndex = groupIndex;
             mMetricId = metricId;
@@ -187,10 +214,29 @@ public class JankCollectionHelper implements ICollectorHelper<Double> {
         public String getMetricId() {
             return mMetricId;
         }
+
+        /** Returns the text preceding the ':' of the gfxinfo line holding this metric. */
+        String getLabel() {
+            return mLabel;
+        }
+    }
+
+    // Metrics indexed by the label of their line, so each section is scanned once.
+    private static final Map<String, List<GfxInfoMetric>> METRICS_BY_LABEL = new HashMap<>();
+
+    static {
+        for (GfxInfoMetric metric : GfxInfoMetric.values()) {
+            METRICS_BY_LABEL
+                    .computeIfAbsent(metric.getLabel(), k -> new ArrayList<>())
+                    .add(metric);
+        }
     }
 
     private Set<String> mTrackedPackages = new HashSet<>();
     private UiDevice mDevice;
+    private boolean mFrameStatsEnabled = false;
+    // Frame statistics accumulated since the last reset, per tracked package.
+    private Map<String, FrameStatsParser> mFrameStats = new HashMap<>();
 
     /** Clear existing jank metrics, unless explicitly configured. */
     @Override
@@ -255,6 +301,14 @@ public class JankCollectionHelper implements ICollectorHelper<Double> {
         return true;
     }
 
+    /**
+     * Also compute frame-time percentiles, per-stage durations and deadline misses from the
+     * {@code framestats} of the tracked packages. Only applies when packages are tracked.
+     */
+    public void setFrameStatsEnabled(boolean enabled) {
+        mFrameStatsEnabled = enabled;
+    }
+
     /** Add a package or list of packages to be tracked. */
     public void addTrackedPackages(String... packages) {
         Collections.addAll(mTrackedPackages, packages);
@@ -282,6 +336,10 @@ public class JankCollectionHelper implements ICollectorHelper<Double> {
                 String output = getDevice().executeShellCommand(command);
                 // Success if the specified package header exists in the output.
                 verifyMatches(output, getHeaderMatcher(pkg), "No package header in output.");
+                FrameStatsParser frameStats = mFrameStats.get(pkg);
+                if (frameStats != null) {
+                    frameStats.reset();
+                }
                 Log.v(LOG_TAG, String.format("Cleared %s gfxinfo.", pkg));
             }
         } catch (IOException e) {
@@ -299,23 +357,32 @@ public class JankCollectionHelper implements ICollectorHelper<Double> {
     @VisibleForTesting
     Map<String, Double> getGfxInfoMetrics(String pkg) {
         try {
-            String command = String.format(GFXINFO_COMMAND_GET, pkg);
+            boolean withFrameStats = mFrameStatsEnabled && !pkg.isEmpty();
+            String command =
+                    String.format(
+                            withFrameStats ? GFXINFO_COMMAND_FRAMESTATS : GFXINFO_COMMAND_GET, pkg);
             String output = getDevice().executeShellCommand(command);
-            verifyMatches(output, getHeaderMatcher(pkg), "Missing package header.");
-            // Split each new section starting with two asterisks '**', and then query and append
-            // all metrics. This method supports both single-package and multi-package outputs.
-            String[] pkgMetricSections = output.split("\n\\*\\*");
-            Map<String, Double> result = new HashMap<>();
-            // Skip the 1st section, which contains only header information.
-            for (int i = 1; i < pkgMetricSections.length; i++) {
-                result.putAll(parseGfxInfoMetrics(pkgMetricSections[i]));
-            }
-            return result;
+            return parseGfxInfoOutput(output, pkg);
         } catch (IOException e) {
             throw new RuntimeException("Failed to get gfxinfo.", e);
         }
     }
 
+    /** Parse the {@code gfxinfo} {@code output} of one or all ({@code pkg} empty) packages. */
+    @VisibleForTesting
+    Map<String, Double> parseGfxInfoOutput(String output, String pkg) {
+        verifyMatches(output, getHeaderMatcher(pkg), "Missing package header.");
+        // Split each new section starting with two asterisks '**', and then query and append
+        // all metrics. This method supports both single-package and multi-package outputs.
+        String[] pkgMetricSections = output.split("\n\\*\\*");
+        Map<String, Double> result = new HashMap<>();
+        // Skip the 1st section, which contains only header information.
+        for (int i = 1; i < pkgMetricSections.length; i++) {
+            result.putAll(parseGfxInfoMetrics(pkgMetricSections[i]));
+        }
+        return result;
+    }
+
     /** Parse the {@code output} of {@code gfxinfo} to a {@code Map<String, Double>} of metrics. */
     private Map<String, Double> parseGfxInfoMetrics(String output) {
         Matcher header = Pattern.compile(getHeaderMatcher("")).matcher(output);
@@ -325,22 +392,77 @@ public class JankCollectionHelper implements ICollectorHelper<Double> {
         // Package name is the only required field.
         String packageName = header.group(2);
         Log.v(LOG_TAG, String.format("Collecting metrics for: %s", packageName));
-        // Parse each metric from the results via a common pattern.
+        // Parse each metric in a single pass over the lines, only matching the metric patterns
+        // against the line carrying their label. The first occurrence of a metric wins.
         Map<String, Double> results = new HashMap<String, Double>();
+        Set<GfxInfoMetric> found = EnumSet.noneOf(GfxInfoMetric.class);
+        int lineStart = 0;
+        while (lineStart < output.length()) {
+            int lineEnd = output.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = output.length();
+            }
+            int separator = indexOf(output, ':', lineStart, lineEnd);
+            if (separator > lineStart) {
+                List<GfxInfoMetric> metrics =
+                        METRICS_BY_LABEL.get(output.substring(lineStart, separator).trim());
+                if (metrics != null) {
+                    String line = output.substring(lineStart, lineEnd);
+                    for (GfxInfoMetric metric : metrics) {
+                        if (found.contains(metric)) {
+                            continue;
+                        }
+                        Double value = metric.parse(line);
+                        if (value != null) {
+                            found.add(metric);
+                            results.put(
+                                    constructKey(
+                                            GFXINFO_METRICS_PREFIX,
+                                            packageName,
+                                            metric.getMetricId()),
+                                    value);
+                        }
+                    }
+                }
+            }
+            lineStart = lineEnd + 1;
+        }
+        // Log the metrics that are missing.
         for (GfxInfoMetric metric : GfxInfoMetric.values()) {
-            String metricKey =
-                    constructKey(GFXINFO_METRICS_PREFIX, packageName, metric.getMetricId());
-            // Find the metric or log that it's missing.
-            Double value = metric.parse(output);
-            if (value == null) {
-                Log.d(LOG_TAG, String.format("Did not find %s from %s", metricKey, packageName));
-            } else {
-                results.put(metricKey, value);
+            if (!found.contains(metric)) {
+                Log.d(
+                        LOG_TAG,
+                        String.format(
+                                "Did not find %s from %s",
+                                constructKey(
+                                        GFXINFO_METRICS_PREFIX,
+                                        packageName,
+                                        metric.getMetricId()),
+                                packageName));
             }
         }
+        if (mFrameStatsEnabled && mTrackedPackages.contains(packageName)) {
+            FrameStatsParser frameStats =
+                    mFrameStats.computeIfAbsent(packageName, k -> new FrameStatsParser());
+            frameStats.parse(output);
+            results.putAll(frameStats.getMetrics(GFXINFO_METRICS_PREFIX, packageName));
+        }
         return results;
     }
 
+    /**
+     * Returns the index of {@code c} in {@code s} between {@code start} included and {@code end}
+     * excluded, or -1 if it is not found, so that a line without the character is not scanned past.
+     */
+    private static int indexOf(String s, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Returns a matcher {@code String} for {@code pkg}'s {@code gfxinfo} headers.
      *
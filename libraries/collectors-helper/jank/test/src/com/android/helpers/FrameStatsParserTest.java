@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.helpers;
+
+import static com.android.helpers.MetricUtility.constructKey;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Map;
+
+/** Android Unit tests for {@link FrameStatsParser}. */
+@RunWith(AndroidJUnit4.class)
+public class FrameStatsParserTest {
+    private static final String PREFIX = "gfxinfo";
+    private static final String PKG = "pkg1";
+    private static final String HEADER =
+            "Flags,FrameTimelineVsyncId,IntendedVsync,Vsync,InputEventReceived,HandleInputStart,"
+                    + "AnimationStart,PerformTraversalsStart,DrawStart,FrameDeadline,"
+                    + "FrameStartTime,SyncQueued,SyncStart,IssueDrawCommandsStart,SwapBuffers,"
+                    + "FrameCompleted,";
+
+    /** Build a framestats row of a frame starting at {@code vsync} lasting {@code durationNs}. */
+    private static String row(long flags, long vsync, long durationNs) {
+        long step = durationNs / 10;
+        return String.format(
+                "%d,1,%d,%d,0,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,\n",
+                flags,
+                vsync,
+                vsync,
+                vsync + step,
+                vsync + 2 * step,
+                vsync + 3 * step,
+                vsync + 4 * step,
+                // 16ms deadline.
+                vsync + 16_000_000L,
+                vsync,
+                vsync + 5 * step,
+                vsync + 6 * step,
+                vsync + 7 * step,
+                vsync + 8 * step,
+                vsync + durationNs);
+    }
+
+    private static String dump(String rows) {
+        return "** Graphics info for pid 9999 [pkg1] **\n"
+                + "Total frames rendered: 10\n"
+                + "---PROFILEDATA---\n"
+                + HEADER
+                + "\n"
+                + rows
+                + "---PROFILEDATA---\n";
+    }
+
+    private static String key(String metric) {
+        return constructKey(PREFIX, PKG, metric);
+    }
+
+    /** Test percentiles, deadline misses and stages are computed from the frames. */
+    @Test
+    public void testParse() {
+        StringBuilder rows = new StringBuilder();
+        // 100 frames from 1ms to 100ms.
+        for (int i = 1; i <= 100; i++) {
+            rows.append(row(0, i * 1_000_000_000L, i * 1_000_000L));
+        }
+        // Frames with flags are ignored.
+        rows.append(row(1, 200_000_000_000L, 500_000_000L));
+        FrameStatsParser parser = new FrameStatsParser();
+        parser.parse(dump(rows.toString()));
+
+        Map<String, Double> metrics = parser.getMetrics(PREFIX, PKG);
+        assertThat(metrics.get(key(FrameStatsParser.FRAME_COUNT_METRIC))).isEqualTo(100.0);
+        // Frames of 17ms and above missed the 16ms deadline.
+        assertThat(metrics.get(key(FrameStatsParser.DEADLINE_MISSED_METRIC))).isEqualTo(84.0);
+        assertThat(metrics.get(key(String.format(FrameStatsParser.FRAME_TIME_METRIC_FORMAT, 50))))
+                .isWithin(0.11)
+                .of(50.0);
+        assertThat(metrics.get(key(String.format(FrameStatsParser.FRAME_TIME_METRIC_FORMAT, 99))))
+                .isWithin(0.11)
+                .of(99.0);
+        assertThat(metrics.get(key(FrameStatsParser.FRAME_TIME_MAX_METRIC))).isEqualTo(100.0);
+        // The draw stage is 1/10th of each frame: mean of 0.1ms to 10ms.
+        assertThat(
+                        metrics.get(
+                                key(
+                                        String.format(
+                                                FrameStatsParser.STAGE_METRIC_FORMAT,
+                                                FrameStatsParser.Stage.DRAW.getMetricId()))))
+                .isWithin(0.01)
+                .of(5.05);
+    }
+
+    /** Test frames already parsed are not counted twice and reset clears the statistics. */
+    @Test
+    public void testDedupAndReset() {
+        String output = dump(row(0, 1_000_000_000L, 10_000_000L));
+        FrameStatsParser parser = new FrameStatsParser();
+        parser.parse(output);
+        parser.parse(output);
+        assertThat(parser.getMetrics(PREFIX, PKG).get(key(FrameStatsParser.FRAME_COUNT_METRIC)))
+                .isEqualTo(1.0);
+
+        parser.reset();
+        parser.parse(output + dump(row(0, 2_000_000_000L, 20_000_000L)));
+        Map<String, Double> metrics = parser.getMetrics(PREFIX, PKG);
+        assertThat(metrics.get(key(FrameStatsParser.FRAME_COUNT_METRIC))).isEqualTo(1.0);
+        assertThat(metrics.get(key(FrameStatsParser.FRAME_TIME_MAX_METRIC))).isEqualTo(20.0);
+    }
+
+    /** Test output without framestats yields no frame. */
+    @Test
+    public void testNoFrameStats() {
+        FrameStatsParser parser = new FrameStatsParser();
+        parser.parse("** Graphics info for pid 9999 [pkg1] **\nTotal frames rendered: 10\n");
+        Map<String, Double> metrics = parser.getMetrics(PREFIX, PKG);
+        assertThat(metrics).containsExactly(key(FrameStatsParser.FRAME_COUNT_METRIC), 0.0);
+    }
+}
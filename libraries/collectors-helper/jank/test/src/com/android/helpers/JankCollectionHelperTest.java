@@ -148,6 +148,35 @@ public class JankCollectionHelperTest {
         mHelper.stopCollecting();
     }
 
+    /** Test framestats metrics are added to the summary ones when enabled. */
+    @Test
+    public void testCollect_frameStats() throws Exception {
+        String frameStats =
+                "\n---PROFILEDATA---"
+                        + "\nFlags,IntendedVsync,Vsync,FrameDeadline,FrameCompleted,"
+                        + "\n0,1000000000,1000000000,1016000000,1010000000,"
+                        + "\n0,2000000000,2000000000,2016000000,2030000000,"
+                        + "\n---PROFILEDATA---\n";
+        mockResetCommand("pkg1", String.format(GFXINFO_RESET_FORMAT, "pkg1"));
+        when(mUiDevice.executeShellCommand(
+                        String.format(JankCollectionHelper.GFXINFO_COMMAND_FRAMESTATS, "pkg1")))
+                .thenReturn(String.format(GFXINFO_GET_FORMAT, "pkg1") + frameStats);
+
+        mHelper.addTrackedPackages("pkg1");
+        mHelper.setFrameStatsEnabled(true);
+        mHelper.startCollecting();
+        Map<String, Double> metrics = mHelper.getMetrics();
+        assertThat(metrics.get(buildMetricKey("pkg1", TOTAL_FRAMES.getMetricId())))
+                .isEqualTo(900.0);
+        assertThat(metrics.get(buildMetricKey("pkg1", FrameStatsParser.FRAME_COUNT_METRIC)))
+                .isEqualTo(2.0);
+        assertThat(metrics.get(buildMetricKey("pkg1", FrameStatsParser.DEADLINE_MISSED_METRIC)))
+                .isEqualTo(1.0);
+        assertThat(metrics.get(buildMetricKey("pkg1", FrameStatsParser.FRAME_TIME_MAX_METRIC)))
+                .isEqualTo(30.0);
+        mHelper.stopCollecting();
+    }
+
     /** Test track a single, valid package. */
     @Test
     public void testCollect_singlePackage() throws Exception {
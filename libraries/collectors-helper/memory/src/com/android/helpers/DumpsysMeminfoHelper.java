@@ -16,8 +16,6 @@
 
 package com.android.helpers;
 
-import android.app.UiAutomation;
-import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
 import androidx.annotation.VisibleForTesting;
@@ -27,14 +25,14 @@ import com.android.server.am.nano.MemInfoDumpProto;
 
 import com.google.protobuf.nano.InvalidProtocolBufferNanoException;
 
-import java.io.ByteArrayOutputStream;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * This is a collector helper to use adb "dumpsys meminfo -a --proto" command to get important
@@ -48,6 +46,8 @@ public class DumpsysMeminfoHelper implements ICollectorHelper<Long> {
 
     private static final String METRIC_SOURCE = "dumpsys";
     private static final String METRIC_UNIT = "kb";
+    private static final String COMMAND_LATENCY = "command_latency";
+    private static final String LATENCY_UNIT = "us";
 
     // The metric names corresponding to the columns in the output of "dumpsys meminfo -a" command
     private static final String PSS_TOTAL = "pss_total";
@@ -63,11 +63,13 @@ public class DumpsysMeminfoHelper implements ICollectorHelper<Long> {
 
     private String[] mProcessNames = {};
     private Map<String, List<String>> mProcessObjNamesMap = new HashMap<>();
-    private UiAutomation mUiAutomation;
+    private BatchedShellExecutor mShellExecutor;
+    private boolean mReportCommandLatency = false;
 
     @Override
     public boolean startCollecting() {
-        mUiAutomation = InstrumentationRegistry.getInstrumentation().getUiAutomation();
+        mShellExecutor =
+                BatchedShellExecutor.getInstance(InstrumentationRegistry.getInstrumentation());
         return true;
     }
 
@@ -75,8 +77,13 @@ public class DumpsysMeminfoHelper implements ICollectorHelper<Long> {
     public Map<String, Long> getMetrics() {
         Map<String, Long> metrics = new HashMap<>();
 
+        // Dump all the processes with a single batch of commands.
+        Set<String> allProcessNames = new LinkedHashSet<>(Arrays.asList(mProcessNames));
+        allProcessNames.addAll(mProcessObjNamesMap.keySet());
+        Map<String, byte[]> rawOutputs = getRawDumpsysMeminfo(allProcessNames, metrics);
+
         for (String processName : mProcessNames) {
-            byte[] rawOutput = getRawDumpsysMeminfo(processName);
+            byte[] rawOutput = rawOutputs.get(processName);
             if (rawOutput == null) {
                 Log.e(TAG, "Missing meminfo output for process " + processName);
                 continue;
@@ -95,7 +102,7 @@ public class DumpsysMeminfoHelper implements ICollectorHelper<Long> {
             if (processNameList.contains(processName)) {
                 continue;
             }
-            byte[] rawOutput = getRawDumpsysMeminfo(processName);
+            byte[] rawOutput = rawOutputs.get(processName);
             if (rawOutput == null) {
                 Log.e(TAG, "Missing meminfo output for process " + processName);
                 continue;
@@ -111,21 +118,46 @@ public class DumpsysMeminfoHelper implements ICollectorHelper<Long> {
         return true;
     }
 
-    private byte[] getRawDumpsysMeminfo(String processName) {
-        if (processName == null || processName.isEmpty()) {
-            return null;
+    /**
+     * Returns the raw dumpsys meminfo output of each process, by process name, and add the time
+     * each command took to {@code latencies} if they are reported.
+     */
+    private Map<String, byte[]> getRawDumpsysMeminfo(
+            Collection<String> processNames, Map<String, Long> latencies) {
+        List<String> names = new ArrayList<>();
+        List<String> cmds = new ArrayList<>();
+        for (String processName : processNames) {
+            if (processName == null || processName.isEmpty()) {
+                continue;
+            }
+            names.add(processName);
+            cmds.add(String.format(DUMPSYS_MEMINFO_CMD, processName));
+        }
+        Map<String, byte[]> rawOutputs = new HashMap<>();
+        if (cmds.isEmpty()) {
+            return rawOutputs;
         }
-        final String cmd = String.format(DUMPSYS_MEMINFO_CMD, processName);
-        ParcelFileDescriptor pfd = mUiAutomation.executeShellCommand(cmd);
-        try (FileInputStream fis = new ParcelFileDescriptor.AutoCloseInputStream(pfd)) {
-            return readInputStreamFully(fis);
-        } catch (IOException e) {
-            Log.e(TAG, "Failed to execute command. " + cmd, e);
-            return null;
+        // A failing command only loses the output of its process.
+        List<BatchedShellExecutor.CommandResult> results =
+                mShellExecutor.executeIndependently(cmds);
+        for (int i = 0; i < names.size(); i++) {
+            BatchedShellExecutor.CommandResult result = results.get(i);
+            if (result == null) {
+                continue;
+            }
+            rawOutputs.put(names.get(i), result.getOutput());
+            if (mReportCommandLatency) {
+                latencies.put(
+                        MetricUtility.constructKey(
+                                METRIC_SOURCE, COMMAND_LATENCY, LATENCY_UNIT, names.get(i)),
+                        result.getLatencyUs());
+            }
         }
+        return rawOutputs;
     }
 
-    private Map<String, Long> parseMetrics(String processName, byte[] rawOutput) {
+    @VisibleForTesting
+    Map<String, Long> parseMetrics(String processName, byte[] rawOutput) {
         Map<String, Long> metrics = new HashMap<>();
         try {
             MemInfoDumpProto memInfo = MemInfoDumpProto.parseFrom(rawOutput);
@@ -272,20 +304,14 @@ public class DumpsysMeminfoHelper implements ICollectorHelper<Long> {
                 value);
     }
 
-    /** Copied from {@link com.android.compatibility.common.util.FileUtils#readInputStreamFully}. */
-    private static byte[] readInputStreamFully(InputStream is) {
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        byte[] buffer = new byte[32768];
-        int count;
-        try {
-            while ((count = is.read(buffer)) != -1) {
-                os.write(buffer, 0, count);
-            }
-            is.close();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        return os.toByteArray();
+    /** Report the time the dumpsys command of each process took, in microseconds. */
+    public void setReportCommandLatency(boolean reportCommandLatency) {
+        mReportCommandLatency = reportCommandLatency;
+    }
+
+    @VisibleForTesting
+    public boolean getReportCommandLatency() {
+        return mReportCommandLatency;
     }
 
     public void setProcessNames(String... processNames) {
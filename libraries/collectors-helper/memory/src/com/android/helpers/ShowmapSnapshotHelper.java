@@ -22,7 +22,6 @@ import android.util.Log;
 
 import androidx.annotation.VisibleForTesting;
 import androidx.test.InstrumentationRegistry;
-import androidx.test.uiautomator.UiDevice;
 
 import java.io.BufferedWriter;
 import java.io.File;
@@ -38,6 +37,10 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -50,9 +53,14 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
 
     private static final String DROP_CACHES_CMD = "echo %d > /proc/sys/vm/drop_caches";
     private static final String PIDOF_CMD = "pidof %s";
+    private static final String CHILDREN_PIDS_CMD =
+            "for pid in $(pidof %s); do pgrep -P $pid; done";
     public static final String ALL_PROCESSES_CMD = "ps -A";
     private static final String SHOWMAP_CMD = "showmap -v %d";
     private static final String CHILD_PROCESSES_CMD = "ps -A --ppid %d";
+    @VisibleForTesting public static final String PROCESS_TABLE_CMD = "ps -A -o PID,PPID,NAME";
+    private static final String GC_CMD = "dumpsys meminfo -a %d";
+    private static final String[] ZYGOTE_PROCESS_NAMES = {"zygote", "zygote64"};
     private static final String THREADS_FILE_PATH = "/sdcard/countThreads.sh";
     @VisibleForTesting public static final String THREADS_CMD = "sh /sdcard/countThreads.sh";
     private static final String THREADS_EXEC_SCRIPT =
@@ -77,9 +85,10 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
 
     private int mDropCacheOption;
     private boolean mCollectForAllProcesses = false;
-    private UiDevice mUiDevice;
+    private BatchedShellExecutor mShellExecutor;
     private boolean mRunGcPrecollection;
     private boolean mRunCountThreads;
+    private int mBatchedConcurrency = 0;
 
     // Map to maintain per-process memory info
     private Map<String, String> mMemoryMap = new HashMap<>();
@@ -94,7 +103,8 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
         mDropCacheOption = 0;
         mRunGcPrecollection = false;
         mRunCountThreads = false;
-        mUiDevice = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
+        mShellExecutor =
+                BatchedShellExecutor.getInstance(InstrumentationRegistry.getInstrumentation());
     }
 
     @Override
@@ -153,52 +163,21 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
             }
             if (mCollectForAllProcesses) {
                 Log.i(TAG, "Collecting memory metrics for all processes.");
-                mProcessNames = getAllProcessNames();
+                // The batched collection reads the names from its process table.
+                if (mBatchedConcurrency == 0) {
+                    mProcessNames = getAllProcessNames();
+                }
             } else if (mProcessNames.length > 0) {
                 Log.i(TAG, "Collecting memory only for given list of process");
             } else if (mProcessNames.length == 0) {
                 // No processes specified, just return empty map
                 return mMemoryMap;
             }
-            HashSet<Integer> zygoteChildrenPids = getZygoteChildrenPids();
             FileWriter writer = new FileWriter(new File(mTestOutputFile), true);
-            for (String processName : mProcessNames) {
-                List<Integer> pids = new ArrayList<>();
-                // Collect required data
-                try {
-                    pids = getPids(processName);
-                    for (Integer pid : pids) {
-                      // Force Garbage collect to trim transient objects before taking memory
-                      // measurements as memory tests aim to track persistent memory regression
-                      // instead of transient memory which also allows for de-noising and reducing
-                      // likelihood of false alerts.
-                      if (mRunGcPrecollection && zygoteChildrenPids.contains(pid)) {
-                        // Skip native processes from sending GC signal.
-                        android.os.Trace.beginSection("IssueGCForPid: " + pid);
-                        // Perform a synchronous GC which happens when we request meminfo
-                        // This save us the need of setting up timeouts that may or may not
-                        // match with the end time of GC.
-                        mUiDevice.executeShellCommand("dumpsys meminfo -a " + pid);
-                        android.os.Trace.endSection();
-                      }
-
-                      android.os.Trace.beginSection("ExecuteShowmap");
-                      String showmapOutput = execShowMap(processName, pid);
-                      android.os.Trace.endSection();
-                      parseAndUpdateMemoryInfo(processName, showmapOutput);
-                      // Store showmap output into file. If there are more than one process
-                      // with same name write the individual showmap associated with pid.
-                      storeToFile(mTestOutputFile, processName, pid, showmapOutput, writer);
-                      // Parse number of child processes for the given pid and update the
-                      // total number of child process count for the process name that pid
-                      // is associated with.
-                      updateChildProcessesDetails(processName, pid);
-                    }
-                } catch (RuntimeException e) {
-                    Log.e(TAG, e.getMessage(), e.getCause());
-                    // Skip this process and continue with the next one
-                    continue;
-                }
+            if (mBatchedConcurrency > 0) {
+                collectBatched(writer);
+            } else {
+                collectSequential(writer);
             }
             // To track total number of process with child processes.
             if (mMemoryMap.size() != 0) {
@@ -221,6 +200,125 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
         return mMemoryMap;
     }
 
+    /** Collect the processes one at a time, running separate commands for each of them. */
+    private void collectSequential(FileWriter writer) throws IOException {
+        HashSet<Integer> zygoteChildrenPids = getZygoteChildrenPids();
+        for (String processName : mProcessNames) {
+            List<Integer> pids = new ArrayList<>();
+            // Collect required data
+            try {
+                pids = getPids(processName);
+                for (Integer pid : pids) {
+                  // Force Garbage collect to trim transient objects before taking memory
+                  // measurements as memory tests aim to track persistent memory regression
+                  // instead of transient memory which also allows for de-noising and reducing
+                  // likelihood of false alerts.
+                  if (mRunGcPrecollection && zygoteChildrenPids.contains(pid)) {
+                    // Skip native processes from sending GC signal.
+                    android.os.Trace.beginSection("IssueGCForPid: " + pid);
+                    // Perform a synchronous GC which happens when we request meminfo
+                    // This save us the need of setting up timeouts that may or may not
+                    // match with the end time of GC.
+                    executeShellCommand("dumpsys meminfo -a " + pid);
+                    android.os.Trace.endSection();
+                  }
+
+                  android.os.Trace.beginSection("ExecuteShowmap");
+                  String showmapOutput = execShowMap(processName, pid);
+                  android.os.Trace.endSection();
+                  parseAndUpdateMemoryInfo(processName, showmapOutput);
+                  // Store showmap output into file. If there are more than one process
+                  // with same name write the individual showmap associated with pid.
+                  storeToFile(mTestOutputFile, processName, pid, showmapOutput, writer);
+                  // Parse number of child processes for the given pid and update the
+                  // total number of child process count for the process name that pid
+                  // is associated with.
+                  updateChildProcessesDetails(processName, pid);
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, e.getMessage(), e.getCause());
+                // Skip this process and continue with the next one
+                continue;
+            }
+        }
+    }
+
+    /**
+     * Collect all the processes from a single process table, running the showmap commands with
+     * bounded concurrency. Results are parsed and written in the same order as sequentially.
+     */
+    private void collectBatched(FileWriter writer) throws IOException {
+        ProcessTable table = getProcessTable();
+        if (mCollectForAllProcesses) {
+            mProcessNames = table.getProcessNames();
+        }
+        Set<Integer> zygoteChildrenPids = new HashSet<>();
+        for (String zygote : ZYGOTE_PROCESS_NAMES) {
+            for (Integer pid : table.getPids(zygote)) {
+                zygoteChildrenPids.addAll(table.getChildren(pid));
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(mBatchedConcurrency);
+        try {
+            List<String> processNames = new ArrayList<>();
+            List<Integer> pids = new ArrayList<>();
+            List<Future<String>> outputs = new ArrayList<>();
+            for (String processName : mProcessNames) {
+                for (Integer pid : table.getPids(processName)) {
+                    boolean runGc = mRunGcPrecollection && zygoteChildrenPids.contains(pid);
+                    processNames.add(processName);
+                    pids.add(pid);
+                    outputs.add(executor.submit(() -> execShowMapBatched(processName, pid, runGc)));
+                }
+            }
+            for (int i = 0; i < outputs.size(); i++) {
+                String processName = processNames.get(i);
+                int pid = pids.get(i);
+                try {
+                    String showmapOutput = outputs.get(i).get();
+                    parseAndUpdateMemoryInfo(processName, showmapOutput);
+                    storeToFile(mTestOutputFile, processName, pid, showmapOutput, writer);
+                    updateChildProcessesDetails(processName, table.getChildNames(pid));
+                } catch (ExecutionException | RuntimeException e) {
+                    Log.e(TAG, String.format("Skipping %s (%d)", processName, pid), e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while collecting showmap.", e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Runs the optional GC and showmap for one pid, from a worker thread. */
+    private String execShowMapBatched(String processName, int pid, boolean runGc)
+            throws IOException {
+        if (runGc) {
+            android.os.Trace.beginSection("IssueGCForPid: " + pid);
+            executeShellCommand(String.format(GC_CMD, pid));
+            android.os.Trace.endSection();
+        }
+        android.os.Trace.beginSection("ExecuteShowmap");
+        try {
+            return executeShellCommand(String.format(SHOWMAP_CMD, pid));
+        } finally {
+            android.os.Trace.endSection();
+        }
+    }
+
+    /** Reads pids, parent pids and names of all the processes in a single command. */
+    private ProcessTable getProcessTable() {
+        try {
+            return ProcessTable.parse(executeShellCommand(PROCESS_TABLE_CMD));
+        } catch (IOException e) {
+            throw new RuntimeException(
+                    String.format("Unable to execute process table command %s", PROCESS_TABLE_CMD),
+                    e);
+        }
+    }
+
     public HashSet<Integer> getZygoteChildrenPids() {
         HashSet<Integer> allZygoteChildren;
         allZygoteChildren = getChildrenPids("zygote");
@@ -233,9 +331,8 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
         HashSet<Integer> childrenPids = new HashSet<>();
         String childrenCmdOutput = "";
         try {
-            // Execute shell does not support shell substitution so it has to be executed twice.
-            childrenCmdOutput = mUiDevice.executeShellCommand(
-                "pgrep -P " + mUiDevice.executeShellCommand("pidof " + processName));
+            // pidof may return several pids, look for the children of each of them.
+            childrenCmdOutput = executeShellCommand(String.format(CHILDREN_PIDS_CMD, processName));
         } catch (IOException e) {
             Log.e(TAG, "Exception occurred reading children for process " + processName);
         }
@@ -299,7 +396,7 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
      */
     private void dropCache(int cacheOption) throws RuntimeException {
         try {
-            mUiDevice.executeShellCommand(String.format(DROP_CACHES_CMD, cacheOption));
+            executeShellCommand(String.format(DROP_CACHES_CMD, cacheOption));
         } catch (IOException e) {
             throw new RuntimeException("Unable to drop caches", e);
         }
@@ -313,8 +410,7 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
      */
     private List<Integer> getPids(String processName) throws RuntimeException {
         try {
-            String pidofOutput = mUiDevice
-                    .executeShellCommand(String.format(PIDOF_CMD, processName));
+            String pidofOutput = executeShellCommand(String.format(PIDOF_CMD, processName));
 
             // Sample output for the process with more than 1 pid.
             // Sample command : "pidof init"
@@ -339,7 +435,7 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
      */
     private String execShowMap(String processName, long pid) throws IOException {
         try {
-            return mUiDevice.executeShellCommand(String.format(SHOWMAP_CMD, pid));
+            return executeShellCommand(String.format(SHOWMAP_CMD, pid));
         } catch (IOException e) {
             throw new RuntimeException(
                     String.format("Unable to execute showmap command for %s ", processName), e);
@@ -388,7 +484,8 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
      * @param processName name of the process to extract memory info for
      * @param showmapOutput showmap command output
      */
-    private void parseAndUpdateMemoryInfo(String processName, String showmapOutput)
+    @VisibleForTesting
+    void parseAndUpdateMemoryInfo(String processName, String showmapOutput)
             throws RuntimeException {
         try {
 
@@ -401,16 +498,12 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
             // 10810272 5400 1585 3800 168 264 1168 0 0 TOTAL
 
             int pos = showmapOutput.lastIndexOf("----");
-            String summarySplit[] = showmapOutput.substring(pos).trim().split("\\s+");
-
-            for (Map.Entry<String, List<Integer>> entry : mMetricNameIndexMap.entrySet()) {
-                Long metricValue = 0L;
+            String summary = showmapOutput.substring(pos);
+            for (Map.Entry<String, Long> entry : parseSummary(summary).entrySet()) {
                 String metricKey = constructKey(
                         String.format(OUTPUT_METRIC_PATTERN, entry.getKey()),
                         processName);
-                for (int index = 0; index < entry.getValue().size(); index++) {
-                    metricValue += Long.parseLong(summarySplit[entry.getValue().get(index) + 1]);
-                }
+                long metricValue = entry.getValue();
                 // If there are multiple pids associated with the process name then update the
                 // existing entry in the map otherwise add new entry in the map.
                 if (mMemoryMap.containsKey(metricKey)) {
@@ -420,12 +513,26 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
                     mMemoryMap.put(metricKey, Long.toString(metricValue * 1024));
                 }
             }
-        } catch (IndexOutOfBoundsException | InputMismatchException e) {
+        } catch (IndexOutOfBoundsException | InputMismatchException | NumberFormatException e) {
             throw new RuntimeException(
                     String.format("Unexpected showmap format for %s ", processName), e);
         }
     }
 
+    /** Sum the configured columns of a showmap summary, in kB, keyed by metric name. */
+    private Map<String, Long> parseSummary(String summary) {
+        String summarySplit[] = summary.trim().split("\\s+");
+        Map<String, Long> values = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> entry : mMetricNameIndexMap.entrySet()) {
+            long metricValue = 0L;
+            for (int index = 0; index < entry.getValue().size(); index++) {
+                metricValue += Long.parseLong(summarySplit[entry.getValue().get(index) + 1]);
+            }
+            values.put(entry.getKey(), metricValue);
+        }
+        return values;
+    }
+
     /**
      * Store test results for one process into file.
      *
@@ -481,53 +588,66 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
      * @param pid
      */
     private void updateChildProcessesDetails(String processName, long pid) {
-        String childProcessName;
-        String completeChildProcessMetric;
         Pattern childProcessPattern = Pattern.compile(CHILD_PROCESS_NAME_REGEX);
         try {
             Log.i(TAG,
                     String.format("Retrieving child processes count for process name: %s with"
                             + " process id %d.", processName, pid));
-            String childProcessesStr = mUiDevice
-                    .executeShellCommand(String.format(CHILD_PROCESSES_CMD, pid));
+            String childProcessesStr =
+                    executeShellCommand(String.format(CHILD_PROCESSES_CMD, pid));
             Log.i(TAG, String.format("Child processes cmd output: %s", childProcessesStr));
             String[] childProcessStrSplit = childProcessesStr.split("\\n");
-            // To discard the header line in the command output.
-            int childProcessCount = childProcessStrSplit.length - 1;
-            String childCountMetricKey = String.format(OUTPUT_CHILD_PROCESS_COUNT_KEY, processName);
-
-            if (childProcessCount > 0) {
-                mMemoryMap.put(childCountMetricKey,
-                        Long.toString(
-                                Long.parseLong(mMemoryMap.getOrDefault(childCountMetricKey, "0"))
-                                        + childProcessCount));
-            }
+            List<String> childProcessNames = new ArrayList<>();
             for (String line : childProcessStrSplit) {
                 // To discard the header line in the command output.
                 if (Objects.equals(line, childProcessStrSplit[0])) continue;
                 Matcher childProcessMatcher = childProcessPattern.matcher(line);
                 if (childProcessMatcher.find()) {
-                    /**
-                     * final metric will be of following format
-                     * parent_process_<process>_child_process_<process>
-                     * parent_process_zygote64_child_process_system_server
-                     */
-                    childProcessName = childProcessMatcher.group(1);
-                    completeChildProcessMetric =
-                            String.join(
-                                    METRIC_VALUE_SEPARATOR,
-                                    PARENT_PROCESS_STRING,
-                                    processName,
-                                    CHILD_PROCESS_STRING,
-                                    childProcessName);
-                    mMemoryMap.put(completeChildProcessMetric, "1");
+                    childProcessNames.add(childProcessMatcher.group(1));
                 }
             }
+            // To discard the header line in the command output.
+            updateChildProcessesDetails(
+                    processName, childProcessStrSplit.length - 1, childProcessNames);
         } catch (IOException e) {
             throw new RuntimeException("Unable to run child process command.", e);
         }
     }
 
+    /**
+     * Updates the child process count and child process metrics of {@code processName} from
+     * already known child process names.
+     */
+    private void updateChildProcessesDetails(String processName, List<String> childProcessNames) {
+        updateChildProcessesDetails(processName, childProcessNames.size(), childProcessNames);
+    }
+
+    private void updateChildProcessesDetails(
+            String processName, int childProcessCount, List<String> childProcessNames) {
+        String childCountMetricKey = String.format(OUTPUT_CHILD_PROCESS_COUNT_KEY, processName);
+        if (childProcessCount > 0) {
+            mMemoryMap.put(childCountMetricKey,
+                    Long.toString(
+                            Long.parseLong(mMemoryMap.getOrDefault(childCountMetricKey, "0"))
+                                    + childProcessCount));
+        }
+        for (String childProcessName : childProcessNames) {
+            /**
+             * final metric will be of following format
+             * parent_process_<process>_child_process_<process>
+             * parent_process_zygote64_child_process_system_server
+             */
+            String completeChildProcessMetric =
+                    String.join(
+                            METRIC_VALUE_SEPARATOR,
+                            PARENT_PROCESS_STRING,
+                            processName,
+                            CHILD_PROCESS_STRING,
+                            childProcessName);
+            mMemoryMap.put(completeChildProcessMetric, "1");
+        }
+    }
+
     /**
      * Enables memory collection for all processes.
      */
@@ -535,13 +655,24 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
         mCollectForAllProcesses = true;
     }
 
+    /**
+     * Enables the batched collection: pids and parent relationships of all the processes are read
+     * from a single process table, and showmap runs for up to {@code concurrency} processes at a
+     * time.
+     *
+     * @param concurrency maximum number of concurrent showmap commands, 0 to collect sequentially
+     */
+    public void setBatchedCollection(int concurrency) {
+        mBatchedConcurrency = Math.max(0, concurrency);
+    }
+
     /**
      * Get all process names running in the system.
      */
     private String[] getAllProcessNames() {
         Set<String> allProcessNames = new LinkedHashSet<>();
         try {
-            String psOutput = mUiDevice.executeShellCommand(ALL_PROCESSES_CMD);
+            String psOutput = executeShellCommand(ALL_PROCESSES_CMD);
             // Split the lines
             String allProcesses[] = psOutput.split("\\n");
             for (String invidualProcessDetails : allProcesses) {
@@ -569,9 +700,75 @@ public class ShowmapSnapshotHelper implements ICollectorHelper<String> {
         return allProcessNames.toArray(new String[0]);
     }
 
+    /** Snapshot of the pid, parent pid and name of all the processes. */
+    @VisibleForTesting
+    static class ProcessTable {
+        // Process names in the order of the table, pids sharing a name are grouped.
+        private final Map<String, List<Integer>> mPidsByName = new LinkedHashMap<>();
+        private final Map<Integer, String> mNames = new HashMap<>();
+        private final Map<Integer, List<Integer>> mChildren = new HashMap<>();
+
+        /**
+         * Parse the output of {@link #PROCESS_TABLE_CMD}. Sample output:
+         *
+         * <pre>
+         *   PID  PPID NAME
+         *     1     0 init
+         *   559     1 init
+         *   603     1 servicemanager
+         * </pre>
+         */
+        static ProcessTable parse(String output) {
+            ProcessTable table = new ProcessTable();
+            for (String line : output.split("\\n")) {
+                String[] columns = line.trim().split("\\s+", 3);
+                if (columns.length < 3) {
+                    continue;
+                }
+                int pid;
+                int ppid;
+                try {
+                    pid = Integer.parseInt(columns[0]);
+                    ppid = Integer.parseInt(columns[1]);
+                } catch (NumberFormatException e) {
+                    // Header line.
+                    continue;
+                }
+                String name = columns[2].trim();
+                table.mNames.put(pid, name);
+                table.mPidsByName.computeIfAbsent(name, k -> new ArrayList<>()).add(pid);
+                table.mChildren.computeIfAbsent(ppid, k -> new ArrayList<>()).add(pid);
+            }
+            return table;
+        }
+
+        /** Returns the names of all the processes, excluding kernel threads. */
+        String[] getProcessNames() {
+            return mPidsByName.keySet().stream()
+                    .filter(name -> !name.startsWith("[") && !name.endsWith("]"))
+                    .toArray(String[]::new);
+        }
+
+        List<Integer> getPids(String processName) {
+            return mPidsByName.getOrDefault(processName, new ArrayList<>());
+        }
+
+        List<Integer> getChildren(int pid) {
+            return mChildren.getOrDefault(pid, new ArrayList<>());
+        }
+
+        List<String> getChildNames(int pid) {
+            List<String> names = new ArrayList<>();
+            for (Integer child : getChildren(pid)) {
+                names.add(mNames.get(child));
+            }
+            return names;
+        }
+    }
+
     /* Execute a shell command and return its output. */
     @VisibleForTesting
     public String executeShellCommand(String command) throws IOException {
-        return mUiDevice.executeShellCommand(command);
+        return mShellExecutor.execute(command);
     }
 }
@@ -210,6 +210,20 @@ public class DumpsysMeminfoHelperTest {
         assertTrue(results.keySet().contains(SYSTEMUI_VIEW_ROOT_KEY));
     }
 
+    @Test
+    public void testCollectMeminfo_commandLatency() {
+        mDumpsysMeminfoHelper.setProcessNames(TEST_PROCESS_NAME);
+        mDumpsysMeminfoHelper.setReportCommandLatency(true);
+        mDumpsysMeminfoHelper.startCollecting();
+        Map<String, Long> results = mDumpsysMeminfoHelper.getMetrics();
+        verifyKeysForProcess(results, TEST_PROCESS_NAME);
+        Long latency =
+                results.get(
+                        MetricUtility.constructKey(
+                                METRIC_SOURCE, "command_latency", "us", TEST_PROCESS_NAME));
+        assertTrue(latency != null && latency >= 0);
+    }
+
     private void verifyKeysForProcess(Map<String, Long> results, String processName) {
         for (String category : CATEGORIES) {
             for (String metric : METRICS) {
@@ -18,12 +18,14 @@ package com.android.helpers.tests;
 
 import static com.android.helpers.MetricUtility.constructKey;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.matches;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import androidx.test.runner.AndroidJUnit4;
@@ -290,6 +292,100 @@ public class ShowmapSnapshotHelperTest {
         assertTrue(metrics.containsKey(ShowmapSnapshotHelper.OUTPUT_FILE_PATH_KEY));
     }
 
+    /** Test the batched collection reads pids and children from a single process table. */
+    @Test
+    public void testGetMetrics_Batched() throws IOException {
+        String processTable =
+                "  PID  PPID NAME\n"
+                        + "    1     0 init\n"
+                        + "  559     1 init\n"
+                        + "  603     1 servicemanager\n"
+                        + "  700   559 ueventd\n";
+        String showmapOutput =
+                "-------- -------- -------- -------- -------- -------- -------- -------- ----\n"
+                        + "10810272     5400     1585     3800      168      264     1168"
+                        + "        0        0 TOTAL\n";
+        doReturn(processTable)
+                .when(mShowmapSnapshotHelper)
+                .executeShellCommand(ShowmapSnapshotHelper.PROCESS_TABLE_CMD);
+        doReturn(showmapOutput)
+                .when(mShowmapSnapshotHelper)
+                .executeShellCommand(matches("showmap -v \\d+"));
+        mShowmapSnapshotHelper.setUp(VALID_OUTPUT_DIR, "init");
+        mShowmapSnapshotHelper.setMetricNameIndex(METRIC_INDEX_STR);
+        mShowmapSnapshotHelper.setBatchedCollection(4);
+        assertTrue(mShowmapSnapshotHelper.startCollecting());
+
+        Map<String, String> metrics = mShowmapSnapshotHelper.getMetrics();
+
+        // Both init pids are summed up.
+        assertEquals(
+                Long.toString(2 * 5400 * 1024),
+                metrics.get(
+                        constructKey(
+                                String.format(ShowmapSnapshotHelper.OUTPUT_METRIC_PATTERN, "rss"),
+                                "init")));
+        assertEquals(
+                Long.toString(2 * 1585 * 1024),
+                metrics.get(
+                        constructKey(
+                                String.format(ShowmapSnapshotHelper.OUTPUT_METRIC_PATTERN, "pss"),
+                                "init")));
+        // 559, 603 are children of 1 and 700 of 559.
+        assertEquals("3", metrics.get(ShowmapSnapshotHelper.CHILD_PROCESS_COUNT_PREFIX + "_init"));
+        assertTrue(
+                metrics.containsKey(
+                        String.join(
+                                "_",
+                                ShowmapSnapshotHelper.PARENT_PROCESS_STRING,
+                                "init",
+                                ShowmapSnapshotHelper.CHILD_PROCESS_STRING,
+                                "ueventd")));
+        assertTrue(metrics.containsKey(ShowmapSnapshotHelper.OUTPUT_FILE_PATH_KEY));
+        verify(mShowmapSnapshotHelper, times(1))
+                .executeShellCommand(ShowmapSnapshotHelper.PROCESS_TABLE_CMD);
+    }
+
+    /** Test the batched collection of all processes reads their names from the process table. */
+    @Test
+    public void testGetMetrics_BatchedAllProcesses() throws IOException {
+        String processTable =
+                "  PID  PPID NAME\n"
+                        + "    1     0 init\n"
+                        + "    2     0 [kthreadd]\n"
+                        + "  603     1 servicemanager\n"
+                        + "  900     1 ps\n";
+        String showmapOutput =
+                "-------- -------- -------- -------- -------- -------- -------- -------- ----\n"
+                        + "10810272     5400     1585     3800      168      264     1168"
+                        + "        0        0 TOTAL\n";
+        doReturn(processTable)
+                .when(mShowmapSnapshotHelper)
+                .executeShellCommand(ShowmapSnapshotHelper.PROCESS_TABLE_CMD);
+        doReturn(showmapOutput)
+                .when(mShowmapSnapshotHelper)
+                .executeShellCommand(matches("showmap -v \\d+"));
+        mShowmapSnapshotHelper.setUp(VALID_OUTPUT_DIR);
+        mShowmapSnapshotHelper.setMetricNameIndex(METRIC_INDEX_STR);
+        mShowmapSnapshotHelper.setAllProcesses();
+        mShowmapSnapshotHelper.setBatchedCollection(4);
+        assertTrue(mShowmapSnapshotHelper.startCollecting());
+
+        Map<String, String> metrics = mShowmapSnapshotHelper.getMetrics();
+
+        assertTrue(
+                metrics.containsKey(
+                        constructKey(
+                                String.format(ShowmapSnapshotHelper.OUTPUT_METRIC_PATTERN, "rss"),
+                                "servicemanager")));
+        // init, servicemanager and ps, excluding the ps process itself.
+        assertEquals("2", metrics.get(ShowmapSnapshotHelper.PROCESS_COUNT));
+        verify(mShowmapSnapshotHelper, never())
+                .executeShellCommand(ShowmapSnapshotHelper.ALL_PROCESSES_CMD);
+        verify(mShowmapSnapshotHelper, times(1))
+                .executeShellCommand(ShowmapSnapshotHelper.PROCESS_TABLE_CMD);
+    }
+
     /** Test count threads. */
     @Test
     public void testCountThreads() throws IOException {
@@ -26,10 +26,22 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * PerfettoHelper is used to start and stop the perfetto tracing and move the
  * output perfetto trace file to destination folder.
+ *
+ * <p>With {@link #setAsyncFinalization(int)}, stopping a trace only signals perfetto: waiting for
+ * the trace to be flushed and moving it to its destination happen on a background worker while
+ * the next trace is started.
  */
 public class PerfettoHelper {
 
@@ -44,6 +56,9 @@ public class PerfettoHelper {
     private static final String PERFETTO_START_CMD = "perfetto --background -c %s%s -o %s";
     private static final String PERFETTO_TMP_OUTPUT_FILE =
             "/data/misc/perfetto-traces/trace_output.perfetto-trace";
+    // Temporary output file of each trace when they are finalized in the background.
+    private static final String PERFETTO_TMP_OUTPUT_FILE_FORMAT =
+            "/data/misc/perfetto-traces/trace_output_%d.perfetto-trace";
     // Additional arg to indicate that the perfetto config file is text format.
     private static final String PERFETTO_TXT_PROTO_ARG = " --txt";
     // Command to stop (i.e kill) the perfetto tracing.
@@ -56,11 +71,29 @@ public class PerfettoHelper {
     private static final String MOVE_CMD = "mv %s %s";
     // Max wait count for checking if perfetto is stopped successfully
     private static final int PERFETTO_KILL_WAIT_COUNT = 12;
-    // Check if perfetto is stopped every 5 secs.
+    // Check if perfetto is stopped at most every 5 secs.
     private static final long PERFETTO_KILL_WAIT_TIME = 5000;
+    // First interval between the checks, doubled after each check.
+    private static final long PERFETTO_KILL_FIRST_WAIT_TIME = 20;
 
     private UiDevice mUIDevice;
 
+    // Temporary output file of the current trace.
+    private String mTmpOutputFile = PERFETTO_TMP_OUTPUT_FILE;
+
+    // Worker finalizing the stopped traces, null unless asynchronous finalization is enabled.
+    private ExecutorService mFinalizer;
+
+    // Permits for the traces waiting to be finalized.
+    private Semaphore mPendingTraces;
+
+    private int mMaxPendingTraces;
+
+    // Destination files of the traces finalized in the background and not yet taken.
+    private final Queue<String> mFinalizedTraces = new ConcurrentLinkedQueue<>();
+
+    private int mTraceCount = 0;
+
     private String mConfigRootDir;
 
     private boolean mPerfettoStartBgWait;
@@ -79,6 +112,10 @@ public class PerfettoHelper {
      */
     public boolean startCollecting(String configFileName, boolean isTextProtoConfig) {
         mUIDevice = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
+        if (mFinalizer != null) {
+            // The previous traces may still be finalized, don't reuse their output file.
+            mTmpOutputFile = String.format(PERFETTO_TMP_OUTPUT_FILE_FORMAT, mTraceCount++);
+        }
         if (configFileName == null || configFileName.isEmpty()) {
             Log.e(LOG_TAG, "Perfetto config file name is null or empty.");
             return false;
@@ -92,7 +129,7 @@ public class PerfettoHelper {
         try {
             // Remove already existing temporary output trace file if any.
             String output = mUIDevice.executeShellCommand(String.format(REMOVE_CMD,
-                    PERFETTO_TMP_OUTPUT_FILE));
+                    mTmpOutputFile));
             Log.i(LOG_TAG, String.format("Perfetto output file cleanup - %s", output));
 
             String perfettoCmd =
@@ -100,7 +137,7 @@ public class PerfettoHelper {
                             mPerfettoStartBgWait ? PERFETTO_START_BG_WAIT_CMD : PERFETTO_START_CMD,
                             mConfigRootDir,
                             configFileName,
-                            PERFETTO_TMP_OUTPUT_FILE);
+                            mTmpOutputFile);
 
             if(isTextProtoConfig) {
                perfettoCmd = perfettoCmd + PERFETTO_TXT_PROTO_ARG;
@@ -120,7 +157,7 @@ public class PerfettoHelper {
                 SystemClock.sleep(1000);
             }
 
-            if(!isTestPerfettoRunning()) {
+            if (!isPerfettoRunning(mPerfettoProcId)) {
                 return false;
             }
         } catch (IOException ioe) {
@@ -149,7 +186,7 @@ public class PerfettoHelper {
         Log.i(LOG_TAG, "Stopping perfetto.");
         try {
             if (stopPerfetto()) {
-                if (!copyFileOutput(destinationFile)) {
+                if (!copyFileOutput(mTmpOutputFile, destinationFile)) {
                     return false;
                 }
             } else {
@@ -163,26 +200,144 @@ public class PerfettoHelper {
         return true;
     }
 
+    /**
+     * Stop the perfetto trace collection like {@link #stopCollecting(long, String)}, but only wait
+     * for perfetto to be signaled: waiting for the trace to be flushed and moving it to
+     * destinationFile are done in the background. Blocks while the maximum number of traces set in
+     * {@link #setAsyncFinalization(int)} are waiting to be finalized. Falls back to {@link
+     * #stopCollecting(long, String)} if asynchronous finalization is not enabled.
+     *
+     * @param waitTimeInMsecs time to wait in msecs before stopping the trace collection.
+     * @param destinationFile file to copy the perfetto output trace, or null to discard it.
+     * @return true if the trace collection is stopped and its finalization scheduled.
+     */
+    public boolean stopCollectingAsync(long waitTimeInMsecs, String destinationFile) {
+        if (mFinalizer == null) {
+            return stopCollecting(waitTimeInMsecs, destinationFile);
+        }
+        Log.i(LOG_TAG, String.format(
+                "Waiting for %d msecs before stopping perfetto.", waitTimeInMsecs));
+        SystemClock.sleep(waitTimeInMsecs);
+
+        int procId = mPerfettoProcId;
+        String tmpOutputFile = mTmpOutputFile;
+        try {
+            killPerfetto(procId);
+        } catch (IOException ioe) {
+            Log.e(LOG_TAG, "Unable to stop the perfetto tracing due to " + ioe.getMessage());
+            return false;
+        }
+        try {
+            if (!mPendingTraces.tryAcquire()) {
+                Log.i(LOG_TAG, "Waiting for a pending trace to be finalized.");
+                mPendingTraces.acquire();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        mFinalizer.execute(
+                () -> {
+                    try {
+                        finalizeTrace(procId, tmpOutputFile, destinationFile);
+                    } finally {
+                        mPendingTraces.release();
+                    }
+                });
+        return true;
+    }
+
+    /**
+     * Wait for the traces stopped with {@link #stopCollectingAsync(long, String)} to be finalized.
+     *
+     * @param timeoutInMsecs maximum time to wait in msecs.
+     * @return true if no trace is waiting to be finalized anymore.
+     */
+    public boolean awaitPendingTraces(long timeoutInMsecs) {
+        if (mFinalizer == null) {
+            return true;
+        }
+        try {
+            if (mPendingTraces.tryAcquire(
+                    mMaxPendingTraces, timeoutInMsecs, TimeUnit.MILLISECONDS)) {
+                mPendingTraces.release(mMaxPendingTraces);
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Log.e(LOG_TAG, "Timed out waiting for the perfetto traces to be finalized.");
+        return false;
+    }
+
+    /** Wait for the stopped perfetto process to flush its trace, then move or discard it. */
+    private void finalizeTrace(int procId, String tmpOutputFile, String destinationFile) {
+        boolean stopped = waitForPerfettoExit(procId);
+        if (!stopped) {
+            Log.e(LOG_TAG, String.format("Perfetto %d failed to stop.", procId));
+        }
+        if (!stopped || destinationFile == null) {
+            // Don't leave the per trace temporary files behind.
+            try {
+                mUIDevice.executeShellCommand(String.format(REMOVE_CMD, tmpOutputFile));
+            } catch (IOException ioe) {
+                Log.e(LOG_TAG, "Unable to remove the perfetto trace file. " + ioe.getMessage());
+            }
+        } else if (copyFileOutput(tmpOutputFile, destinationFile)) {
+            mFinalizedTraces.add(destinationFile);
+        } else {
+            Log.e(LOG_TAG, "Failed to finalize the perfetto trace " + destinationFile);
+        }
+    }
+
+    /**
+     * Returns the destination files of the traces finalized in the background since the last call,
+     * in the order they were finalized. A trace is only returned once it is complete.
+     */
+    public List<String> takeFinalizedTraces() {
+        List<String> traces = new ArrayList<>();
+        String trace;
+        while ((trace = mFinalizedTraces.poll()) != null) {
+            traces.add(trace);
+        }
+        return traces;
+    }
+
     /**
      * Utility method for stopping perfetto.
      *
      * @return true if perfetto is stopped successfully.
      */
     public boolean stopPerfetto() throws IOException {
-        Log.i(LOG_TAG, String.format("Killing the process id - %d", mPerfettoProcId));
+        killPerfetto(mPerfettoProcId);
+        return waitForPerfettoExit(mPerfettoProcId);
+    }
+
+    private void killPerfetto(int procId) throws IOException {
+        Log.i(LOG_TAG, String.format("Killing the process id - %d", procId));
         String stopOutput = mUIDevice.executeShellCommand(String.format(
-                PERFETTO_STOP_CMD, mPerfettoProcId));
+                PERFETTO_STOP_CMD, procId));
         Log.i(LOG_TAG, String.format("Perfetto stop command output - %s", stopOutput));
-        int waitCount = 0;
-        while (isTestPerfettoRunning()) {
-            // 60 secs timeout for perfetto shutdown.
-            if (waitCount < PERFETTO_KILL_WAIT_COUNT) {
-                // Check every 5 secs if perfetto stopped successfully.
-                SystemClock.sleep(PERFETTO_KILL_WAIT_TIME);
-                waitCount++;
-                continue;
+    }
+
+    /**
+     * Wait for perfetto to exit, which happens once the trace is flushed to the output file.
+     *
+     * @return true if perfetto exited before the timeout.
+     */
+    private boolean waitForPerfettoExit(int procId) {
+        // 60 secs timeout for perfetto shutdown.
+        long deadline =
+                SystemClock.uptimeMillis() + PERFETTO_KILL_WAIT_COUNT * PERFETTO_KILL_WAIT_TIME;
+        long waitTime = PERFETTO_KILL_FIRST_WAIT_TIME;
+        while (isPerfettoRunning(procId)) {
+            long remaining = deadline - SystemClock.uptimeMillis();
+            if (remaining <= 0) {
+                return false;
             }
-            return false;
+            // Check often first, most traces are flushed shortly after the kill.
+            SystemClock.sleep(Math.min(waitTime, remaining));
+            waitTime = Math.min(waitTime * 2, PERFETTO_KILL_WAIT_TIME);
         }
         Log.e(LOG_TAG, "Perfetto stopped successfully.");
         return true;
@@ -193,10 +348,10 @@ public class PerfettoHelper {
      *
      * @return true if perfetto is running otherwise false.
      */
-    private boolean isTestPerfettoRunning() {
+    private boolean isPerfettoRunning(int procId) {
         try {
             String perfettoProcStatus = mUIDevice.executeShellCommand(
-                    String.format(PERFETTO_PROC_ID_EXIST_CHECK, mPerfettoProcId));
+                    String.format(PERFETTO_PROC_ID_EXIST_CHECK, procId));
             Log.i(LOG_TAG, String.format("Perfetto process id status check - %s",
                     perfettoProcStatus));
             // If proc details not empty then process is still running.
@@ -214,10 +369,11 @@ public class PerfettoHelper {
      * Copy the temporary perfetto trace output file from /data/misc/perfetto-traces/ to given
      * destinationFile.
      *
+     * @param tmpOutputFile temporary perfetto output trace.
      * @param destinationFile file to copy the perfetto output trace.
      * @return true if the trace file copied successfully otherwise false.
      */
-    private boolean copyFileOutput(String destinationFile) {
+    private boolean copyFileOutput(String tmpOutputFile, String destinationFile) {
         Path path = Paths.get(destinationFile);
         String destDirectory = path.getParent().toString();
         // Check if the directory already exists
@@ -235,11 +391,11 @@ public class PerfettoHelper {
         // destinationFile
         try {
             String moveResult = mUIDevice.executeShellCommand(String.format(
-                    MOVE_CMD, PERFETTO_TMP_OUTPUT_FILE, destinationFile));
+                    MOVE_CMD, tmpOutputFile, destinationFile));
             if (!moveResult.isEmpty()) {
                 Log.e(LOG_TAG, String.format(
                         "Unable to move perfetto output file from %s to %s due to %s",
-                        PERFETTO_TMP_OUTPUT_FILE, destinationFile, moveResult));
+                        tmpOutputFile, destinationFile, moveResult));
                 return false;
             }
         } catch (IOException ioe) {
@@ -258,4 +414,29 @@ public class PerfettoHelper {
     public void setPerfettoStartBgWait(boolean perfettoStartBgWait) {
         mPerfettoStartBgWait = perfettoStartBgWait;
     }
+
+    /**
+     * Finalize the traces stopped with {@link #stopCollectingAsync(long, String)} on a background
+     * worker. Each trace is written to its own temporary file.
+     *
+     * @param maxPendingTraces number of traces waiting to be finalized above which stopping a
+     *     trace blocks.
+     */
+    public void setAsyncFinalization(int maxPendingTraces) {
+        if (maxPendingTraces <= 0) {
+            throw new IllegalArgumentException(
+                    "Max pending traces must be positive: " + maxPendingTraces);
+        }
+        if (mFinalizer == null) {
+            mFinalizer =
+                    Executors.newSingleThreadExecutor(
+                            r -> {
+                                Thread thread = new Thread(r, "perfetto-finalizer");
+                                thread.setDaemon(true);
+                                return thread;
+                            });
+        }
+        mMaxPendingTraces = maxPendingTraces;
+        mPendingTraces = new Semaphore(maxPendingTraces);
+    }
 }
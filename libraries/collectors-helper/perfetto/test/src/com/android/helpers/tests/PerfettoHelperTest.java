@@ -15,6 +15,7 @@
  */
 package com.android.helpers.tests;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -30,6 +31,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 
 import java.io.IOException;
+import java.util.Collections;
 
 /**
  * Android Unit tests for {@link PerfettoHelper}.
@@ -161,6 +163,28 @@ public class PerfettoHelperTest {
         assertTrue(fileSize > 0);
     }
 
+    /**
+     * Test the traces stopped asynchronously are moved to their destination once finalized.
+     */
+    @Test
+    public void testPerfettoAsyncSuccess() throws Exception {
+        mPerfettoHelper.setAsyncFinalization(1);
+        assertTrue(mPerfettoHelper.startCollecting("trace_config.textproto", true));
+        assertTrue(mPerfettoHelper.stopCollectingAsync(1000, "/data/local/tmp/out.perfetto-trace"));
+        assertTrue(mPerfettoHelper.awaitPendingTraces(60000));
+        assertEquals(
+                Collections.singletonList("/data/local/tmp/out.perfetto-trace"),
+                mPerfettoHelper.takeFinalizedTraces());
+        assertTrue(mPerfettoHelper.takeFinalizedTraces().isEmpty());
+        UiDevice uiDevice = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
+        String[] fileStats = uiDevice.executeShellCommand(String.format(
+                FILE_SIZE_IN_BYTES, "/data/local/tmp/out.perfetto-trace")).split(" ");
+        int fileSize = Integer.parseInt(fileStats[0].trim());
+        assertTrue(fileSize > 0);
+        uiDevice.executeShellCommand(String.format(REMOVE_CMD,
+                "/data/local/tmp/out.perfetto-trace"));
+    }
+
     /**
      * Test perfetto collection returns false when referring to the config root directory
      * which does not contain perfetto config file.
@@ -274,4 +274,11 @@ public class AppStartupHelper implements ICollectorHelper<StringBuilder> {
     public void setDisableProcStartDetails() {
         isProcStartDetailsDisabled = true;
     }
+
+    /**
+     * Track the app startup atoms in the {@link SharedStatsdConfig} of the process.
+     */
+    public void setUseSharedConfig() {
+        mStatsdHelper.setSharedConfig(SharedStatsdConfig.getInstance());
+    }
 }
@@ -201,6 +201,13 @@ public class CpuUsageHelper implements ICollectorHelper<Long> {
         isCpuUtilizationEnabled = true;
     }
 
+    /**
+     * Track the cpu usage gauges in the {@link SharedStatsdConfig} of the process.
+     */
+    public void setUseSharedConfig() {
+        mStatsdHelper.setSharedConfig(SharedStatsdConfig.getInstance());
+    }
+
     /**
      * return the number of cores that the device has.
      */
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.helpers;
+
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.os.nano.StatsLog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A statsd config shared by the {@link StatsdHelper}s of the instrumentation process, so that one
+ * config push and one report pull serve all the statsd based collectors of a test.
+ *
+ * <p>Helpers register their atoms when they start collecting. The first helper to start pushes a
+ * config holding the atoms of every helper registered so far, so once each helper has run one test
+ * the config is pushed once per test. The reports are pulled by the first helper asking for its
+ * metrics and kept for the other started helpers. The config is removed when the last started
+ * helper stops.
+ */
+public class SharedStatsdConfig {
+    private static final String LOG_TAG = SharedStatsdConfig.class.getSimpleName();
+
+    private static SharedStatsdConfig sInstance;
+
+    // Helper owning the pushed config.
+    private final StatsdHelper mStatsdHelper;
+    // Atoms registered by each helper, kept across tests.
+    private final Map<StatsdHelper, List<Integer>> mEventAtomIds = new LinkedHashMap<>();
+    private final Map<StatsdHelper, List<Integer>> mGaugeAtomIds = new LinkedHashMap<>();
+    // Helpers between their start and stop calls.
+    private final Set<StatsdHelper> mStarted = new HashSet<>();
+    // Started helpers which already got their metrics from mReports.
+    private final Set<StatsdHelper> mFetched = new HashSet<>();
+    // Atoms of the pushed config, null if no config is pushed.
+    private Set<Integer> mPushedEventAtomIds;
+    private Set<Integer> mPushedGaugeAtomIds;
+    // Reports of the current collection, shared by the started helpers.
+    private Map<Integer, List<StatsLog.StatsLogReport>> mReports;
+    // Reports of a config replaced before they were collected.
+    private final Map<Integer, List<StatsLog.StatsLogReport>> mPendingReports = new HashMap<>();
+
+    @VisibleForTesting
+    SharedStatsdConfig(StatsdHelper statsdHelper) {
+        mStatsdHelper = statsdHelper;
+    }
+
+    /** Returns the config shared by the instrumentation process. */
+    public static synchronized SharedStatsdConfig getInstance() {
+        if (sInstance == null) {
+            sInstance = new SharedStatsdConfig(new StatsdHelper());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Register the atoms of {@code client} and make sure the pushed config tracks them.
+     *
+     * @return true if the config tracking the atoms is active, otherwise false.
+     */
+    synchronized boolean start(
+            StatsdHelper client, List<Integer> eventAtomIdList, List<Integer> gaugeAtomIdList) {
+        mEventAtomIds.put(client, new ArrayList<>(eventAtomIdList));
+        mGaugeAtomIds.put(client, new ArrayList<>(gaugeAtomIdList));
+        if (mPushedEventAtomIds == null
+                || !mPushedEventAtomIds.containsAll(eventAtomIdList)
+                || !mPushedGaugeAtomIds.containsAll(gaugeAtomIdList)) {
+            if (!pushConfig()) {
+                return false;
+            }
+        }
+        mStarted.add(client);
+        return true;
+    }
+
+    /** Returns the event data of the atoms registered by {@code client}. */
+    synchronized List<StatsLog.EventMetricData> getEventMetrics(StatsdHelper client) {
+        if (!mStarted.contains(client)) {
+            return new ArrayList<>();
+        }
+        List<StatsLog.EventMetricData> eventData =
+                mStatsdHelper.extractEventMetrics(getReports(client), mEventAtomIds.get(client));
+        releaseReportsIfCollected();
+        Log.i(LOG_TAG, "Number of events: " + eventData.size());
+        return eventData;
+    }
+
+    /** Returns the gauge data of the atoms registered by {@code client}. */
+    synchronized List<StatsLog.GaugeMetricData> getGaugeMetrics(StatsdHelper client) {
+        if (!mStarted.contains(client)) {
+            return new ArrayList<>();
+        }
+        List<StatsLog.GaugeMetricData> gaugeData =
+                mStatsdHelper.extractGaugeMetrics(getReports(client), mGaugeAtomIds.get(client));
+        releaseReportsIfCollected();
+        Log.i(LOG_TAG, "Number of Gauge data: " + gaugeData.size());
+        return gaugeData;
+    }
+
+    /**
+     * Stop tracking the atoms for {@code client}, and remove the config if no other helper is
+     * collecting.
+     *
+     * @return true if the config is removed or still in use, false if the removal failed.
+     */
+    synchronized boolean stop(StatsdHelper client) {
+        mStarted.remove(client);
+        mFetched.remove(client);
+        if (!mStarted.isEmpty()) {
+            releaseReportsIfCollected();
+            return true;
+        }
+        mReports = null;
+        mFetched.clear();
+        mPendingReports.clear();
+        if (mPushedEventAtomIds == null) {
+            return true;
+        }
+        mPushedEventAtomIds = null;
+        mPushedGaugeAtomIds = null;
+        return mStatsdHelper.removeStatsConfig();
+    }
+
+    /** Push a config tracking the atoms of all the registered helpers. */
+    private boolean pushConfig() {
+        Set<Integer> eventAtomIds = union(mEventAtomIds);
+        Set<Integer> gaugeAtomIds = union(mGaugeAtomIds);
+        if (mPushedEventAtomIds != null) {
+            // Keep what the started helpers collected so far under the replaced config.
+            appendReports(mPendingReports, mStatsdHelper.getReportsByAtom(false));
+            mStatsdHelper.removeStatsConfig();
+            mPushedEventAtomIds = null;
+            mPushedGaugeAtomIds = null;
+        }
+        Log.i(
+                LOG_TAG,
+                String.format(
+                        "Pushing shared config with event atoms %s and gauge atoms %s.",
+                        eventAtomIds, gaugeAtomIds));
+        if (!mStatsdHelper.addConfig(
+                new ArrayList<>(eventAtomIds), new ArrayList<>(gaugeAtomIds))) {
+            return false;
+        }
+        mPushedEventAtomIds = eventAtomIds;
+        mPushedGaugeAtomIds = gaugeAtomIds;
+        return true;
+    }
+
+    /** Returns the reports for {@code client}, pulling them if it already got the last ones. */
+    private Map<Integer, List<StatsLog.StatsLogReport>> getReports(StatsdHelper client) {
+        if (mReports == null || mFetched.contains(client)) {
+            // Reports pulled earlier go first, gauge deltas rely on the pull order.
+            mReports = new HashMap<>(mPendingReports);
+            mPendingReports.clear();
+            boolean snapshotGauges =
+                    mPushedGaugeAtomIds != null && !mPushedGaugeAtomIds.isEmpty();
+            appendReports(mReports, mStatsdHelper.getReportsByAtom(snapshotGauges));
+            mFetched.clear();
+        }
+        mFetched.add(client);
+        return mReports;
+    }
+
+    /** Release the shared reports once every started helper got its metrics. */
+    private void releaseReportsIfCollected() {
+        if (mFetched.containsAll(mStarted)) {
+            mReports = null;
+            mFetched.clear();
+        }
+    }
+
+    private static Set<Integer> union(Map<StatsdHelper, List<Integer>> atomIds) {
+        Set<Integer> union = new LinkedHashSet<>();
+        for (List<Integer> clientAtomIds : atomIds.values()) {
+            union.addAll(clientAtomIds);
+        }
+        return union;
+    }
+
+    private static void appendReports(
+            Map<Integer, List<StatsLog.StatsLogReport>> target,
+            Map<Integer, List<StatsLog.StatsLogReport>> source) {
+        for (Map.Entry<Integer, List<StatsLog.StatsLogReport>> entry : source.entrySet()) {
+            target.computeIfAbsent(entry.getKey(), k -> new ArrayList<>())
+                    .addAll(entry.getValue());
+        }
+    }
+}
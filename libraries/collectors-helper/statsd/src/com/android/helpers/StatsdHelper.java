@@ -35,21 +35,47 @@ import com.google.protobuf.nano.InvalidProtocolBufferNanoException;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 /**
  * StatsdHelper consist of basic utilities that will be used to setup statsd
  * config, parse the collected information and remove the statsd config.
+ *
+ * <p>Waits on statsd (config registration, gauge snapshots) poll for the expected state with an
+ * exponential backoff bounded by a deadline, rather than sleeping for a fixed delay.
  */
 public class StatsdHelper {
     private static final String LOG_TAG = StatsdHelper.class.getSimpleName();
     private static final long MAX_ATOMS = 2000;
-    private static final long METRIC_DELAY_MS = 3000;
+    // Deadline for the gauge atoms to be pulled after the trigger event.
+    private static final long METRIC_TIMEOUT_MS = 3000;
     private static final long CONFIG_REGISTRATION_TIMEOUT_MS = 1000;
+    private static final long INITIAL_POLL_INTERVAL_MS = 10;
+    private static final long MAX_POLL_INTERVAL_MS = 200;
     private long mConfigId = -1;
     private StatsManager mStatsManager;
+    // Atom ids tracked by the current config, and the atom id tracked by each of its metrics.
+    private List<Integer> mEventAtomIds = Collections.emptyList();
+    private List<Integer> mGaugeAtomIds = Collections.emptyList();
+    private final Map<Long, Integer> mMetricAtomIds = new HashMap<>();
+    private SharedStatsdConfig mSharedConfig;
+
+    /**
+     * Register the atoms of this helper to {@code sharedConfig} instead of pushing a config of its
+     * own. The config, metrics and removal calls of this helper are then served by the shared
+     * config.
+     */
+    public void setSharedConfig(SharedStatsdConfig sharedConfig) {
+        mSharedConfig = sharedConfig;
+    }
 
     /**
      * Add simple event configurations using a list of atom ids.
@@ -58,35 +84,10 @@ public class StatsdHelper {
      * @return true if the configuration is added successfully, otherwise false.
      */
     public boolean addEventConfig(List<Integer> atomIdList) {
-        long configId = System.currentTimeMillis();
-        StatsdConfigProto.StatsdConfig config = getSimpleSources(configId);
-        List<StatsdConfigProto.EventMetric> metrics = new ArrayList<>(atomIdList.size());
-        List<StatsdConfigProto.AtomMatcher> atomMatchers = new ArrayList<>(atomIdList.size());
-        for (Integer atomId : atomIdList) {
-            int atomUniqueId = getUniqueId();
-            StatsdConfigProto.EventMetric metric = new StatsdConfigProto.EventMetric();
-            metric.id = getUniqueId();
-            metric.what = atomUniqueId;
-            metrics.add(metric);
-            atomMatchers.add(getSimpleAtomMatcher(atomUniqueId, atomId));
+        if (mSharedConfig != null) {
+            return mSharedConfig.start(this, atomIdList, Collections.emptyList());
         }
-        config.eventMetric = metrics.toArray(new StatsdConfigProto.EventMetric[0]);
-        config.atomMatcher = atomMatchers.toArray(new StatsdConfigProto.AtomMatcher[0]);
-        try {
-            adoptShellIdentity();
-            getStatsManager().addConfig(configId, toByteArray(config));
-            if (!pollForRegisteredConfig(configId)) {
-                return false;
-            }
-        } catch (Exception e) {
-            Log.e(LOG_TAG, "Not able to setup the event config.", e);
-            return false;
-        } finally {
-            dropShellIdentity();
-        }
-        Log.i(LOG_TAG, "Successfully added config with config-id:" + configId);
-        setConfigId(configId);
-        return true;
+        return addConfig(atomIdList, Collections.emptyList());
     }
 
     /**
@@ -100,19 +101,51 @@ public class StatsdHelper {
      * @return if the config is added successfully otherwise false.
      */
     public boolean addGaugeConfig(List<Integer> atomIdList) {
+        if (mSharedConfig != null) {
+            return mSharedConfig.start(this, Collections.emptyList(), atomIdList);
+        }
+        return addConfig(Collections.emptyList(), atomIdList);
+    }
+
+    /**
+     * Add a single config tracking event metrics and gauge metrics, as described in {@link
+     * #addEventConfig(List)} and {@link #addGaugeConfig(List)}.
+     *
+     * @param eventAtomIdList atoms to be collected in event metrics.
+     * @param gaugeAtomIdList atoms to be collected in gauge metrics.
+     * @return if the config is added successfully otherwise false.
+     */
+    public boolean addConfig(List<Integer> eventAtomIdList, List<Integer> gaugeAtomIdList) {
         long configId = System.currentTimeMillis();
         StatsdConfigProto.StatsdConfig config = getSimpleSources(configId);
-        int appBreadCrumbUniqueId = getUniqueId();
-        config.whitelistedAtomIds =
-                new int[] {AtomsProto.Atom.APP_BREADCRUMB_REPORTED_FIELD_NUMBER};
-        List<StatsdConfigProto.AtomMatcher> matchers = new ArrayList<>(atomIdList.size());
+        Map<Long, Integer> metricAtomIds = new HashMap<>();
+        List<StatsdConfigProto.AtomMatcher> matchers =
+                new ArrayList<>(eventAtomIdList.size() + gaugeAtomIdList.size() + 1);
+        List<StatsdConfigProto.EventMetric> eventMetrics = new ArrayList<>();
+        for (Integer atomId : eventAtomIdList) {
+            int atomUniqueId = getUniqueId();
+            StatsdConfigProto.EventMetric metric = new StatsdConfigProto.EventMetric();
+            metric.id = getUniqueId();
+            metric.what = atomUniqueId;
+            eventMetrics.add(metric);
+            matchers.add(getSimpleAtomMatcher(atomUniqueId, atomId));
+            metricAtomIds.put(metric.id, atomId);
+        }
         List<StatsdConfigProto.GaugeMetric> gaugeMetrics = new ArrayList<>();
-        // Needed for collecting gauge metric based on trigger events.
-        matchers.add(
-                getSimpleAtomMatcher(
-                        appBreadCrumbUniqueId,
-                        AtomsProto.Atom.APP_BREADCRUMB_REPORTED_FIELD_NUMBER));
-        for (Integer atomId : atomIdList) {
+        int appBreadCrumbUniqueId = getUniqueId();
+        if (!gaugeAtomIdList.isEmpty()) {
+            int[] whitelistedAtomIds =
+                    Arrays.copyOf(config.whitelistedAtomIds, config.whitelistedAtomIds.length + 1);
+            whitelistedAtomIds[whitelistedAtomIds.length - 1] =
+                    AtomsProto.Atom.APP_BREADCRUMB_REPORTED_FIELD_NUMBER;
+            config.whitelistedAtomIds = whitelistedAtomIds;
+            // Needed for collecting gauge metric based on trigger events.
+            matchers.add(
+                    getSimpleAtomMatcher(
+                            appBreadCrumbUniqueId,
+                            AtomsProto.Atom.APP_BREADCRUMB_REPORTED_FIELD_NUMBER));
+        }
+        for (Integer atomId : gaugeAtomIdList) {
             int atomUniqueId = getUniqueId();
             // Build Gauge metric config.
             StatsdConfigProto.GaugeMetric gaugeMetric = new StatsdConfigProto.GaugeMetric();
@@ -127,8 +160,10 @@ public class StatsdHelper {
             gaugeMetric.bucket = StatsdConfigProto.CTS;
             matchers.add(getSimpleAtomMatcher(atomUniqueId, atomId));
             gaugeMetrics.add(gaugeMetric);
+            metricAtomIds.put(gaugeMetric.id, atomId);
         }
         config.atomMatcher = matchers.toArray(new StatsdConfigProto.AtomMatcher[0]);
+        config.eventMetric = eventMetrics.toArray(new StatsdConfigProto.EventMetric[0]);
         config.gaugeMetric = gaugeMetrics.toArray(new StatsdConfigProto.GaugeMetric[0]);
         try {
             adoptShellIdentity();
@@ -136,17 +171,26 @@ public class StatsdHelper {
             if (!pollForRegisteredConfig(configId)) {
                 return false;
             }
-            StatsLog.logEvent(0);
-            // Dump the counters before the test started.
-            SystemClock.sleep(METRIC_DELAY_MS);
+            if (!gaugeAtomIdList.isEmpty()) {
+                // Dump the counters before the test started.
+                Map<Integer, Long> pullCounts = getPullCounts(gaugeAtomIdList);
+                StatsLog.logEvent(0);
+                if (!pollForPulledAtoms(gaugeAtomIdList, pullCounts)) {
+                    Log.w(LOG_TAG, "Gauge atoms not pulled, the initial values may be late.");
+                }
+            }
         } catch (Exception e) {
-            Log.e(LOG_TAG, "Not able to setup the gauge config.", e);
+            Log.e(LOG_TAG, "Not able to setup the config.", e);
             return false;
         } finally {
             dropShellIdentity();
         }
 
         Log.i(LOG_TAG, "Successfully added config with config-id:" + configId);
+        mMetricAtomIds.clear();
+        mMetricAtomIds.putAll(metricAtomIds);
+        mEventAtomIds = new ArrayList<>(eventAtomIdList);
+        mGaugeAtomIds = new ArrayList<>(gaugeAtomIdList);
         setConfigId(configId);
         return true;
     }
@@ -210,66 +254,97 @@ public class StatsdHelper {
 
     /** Returns the list of EventMetricData tracked under the config. */
     public List<com.android.os.nano.StatsLog.EventMetricData> getEventMetrics() {
-        List<com.android.os.nano.StatsLog.EventMetricData> eventData = new ArrayList<>();
-        com.android.os.nano.StatsLog.ConfigMetricsReportList reportList = null;
+        if (mSharedConfig != null) {
+            return mSharedConfig.getEventMetrics(this);
+        }
+        List<com.android.os.nano.StatsLog.EventMetricData> eventData =
+                extractEventMetrics(getReportsByAtom(false), mEventAtomIds);
+        Log.i(LOG_TAG, "Number of events: " + eventData.size());
+        return eventData;
+    }
+
+    /** Returns the list of GaugeMetric data tracked under the config. */
+    public List<com.android.os.nano.StatsLog.GaugeMetricData> getGaugeMetrics() {
+        if (mSharedConfig != null) {
+            return mSharedConfig.getGaugeMetrics(this);
+        }
+        // Dump the the counters after the test completed.
+        List<com.android.os.nano.StatsLog.GaugeMetricData> gaugeData =
+                extractGaugeMetrics(getReportsByAtom(true), mGaugeAtomIds);
+        Log.i(LOG_TAG, "Number of Gauge data: " + gaugeData.size());
+        return gaugeData;
+    }
+
+    /**
+     * Pulls the reports of the config, grouped by the atom tracked by each metric.
+     *
+     * @param snapshotGauges if the config has gauge metrics, trigger a snapshot of them first and
+     *     keep polling the reports until the snapshot of each gauge atom arrived, or until the
+     *     deadline.
+     */
+    Map<Integer, List<com.android.os.nano.StatsLog.StatsLogReport>> getReportsByAtom(
+            boolean snapshotGauges) {
+        Map<Integer, List<com.android.os.nano.StatsLog.StatsLogReport>> reports = new HashMap<>();
+        if (getConfigId() == -1) {
+            return reports;
+        }
         try {
-            if (getConfigId() != -1) {
-                adoptShellIdentity();
-                byte[] serializedReports = getStatsManager().getReports(getConfigId());
-                reportList =
-                        com.android.os.nano.StatsLog.ConfigMetricsReportList.parseFrom(
-                                serializedReports);
-                dropShellIdentity();
+            if (!snapshotGauges || mGaugeAtomIds.isEmpty()) {
+                pullReports(reports);
+                return reports;
             }
+            long triggerTimeNs = SystemClock.elapsedRealtimeNanos();
+            StatsLog.logEvent(0);
+            Set<Integer> pendingAtomIds = new HashSet<>(mGaugeAtomIds);
+            // The reports are drained by every pull, so they are accumulated across polls.
+            Backoff backoff = new Backoff(METRIC_TIMEOUT_MS);
+            do {
+                pullReports(reports);
+                pendingAtomIds.removeIf(
+                        atomId -> hasGaugeDataSince(reports.get(atomId), triggerTimeNs));
+                if (pendingAtomIds.isEmpty()) {
+                    return reports;
+                }
+            } while (backoff.await());
+            Log.w(LOG_TAG, "No gauge data after the trigger for atoms: " + pendingAtomIds);
         } catch (InvalidProtocolBufferNanoException | StatsUnavailableException se) {
-            Log.e(LOG_TAG, "Retrieving event metrics failed.", se);
-            return eventData;
+            Log.e(LOG_TAG, "Retrieving metrics failed.", se);
         }
+        return reports;
+    }
 
-        if (reportList != null && reportList.reports.length > 0) {
-            com.android.os.nano.StatsLog.ConfigMetricsReport configReport = reportList.reports[0];
-            for (com.android.os.nano.StatsLog.StatsLogReport metric : configReport.metrics) {
+    /** Returns the event data of {@code atomIds} found in {@code reports}, in time order. */
+    List<com.android.os.nano.StatsLog.EventMetricData> extractEventMetrics(
+            Map<Integer, List<com.android.os.nano.StatsLog.StatsLogReport>> reports,
+            Collection<Integer> atomIds) {
+        List<com.android.os.nano.StatsLog.EventMetricData> eventData = new ArrayList<>();
+        for (Integer atomId : atomIds) {
+            List<com.android.os.nano.StatsLog.EventMetricData> backfilledData = new ArrayList<>();
+            for (com.android.os.nano.StatsLog.StatsLogReport metric :
+                    reports.getOrDefault(atomId, Collections.emptyList())) {
                 com.android.os.nano.StatsLog.StatsLogReport.EventMetricDataWrapper
                         eventMetricDataWrapper = metric.getEventMetrics();
-                List<com.android.os.nano.StatsLog.EventMetricData> backfilledData =
-                        new ArrayList<>();
                 if (eventMetricDataWrapper != null) {
                     for (com.android.os.nano.StatsLog.EventMetricData eventMetricData :
                             eventMetricDataWrapper.data) {
                         backfilledData.addAll(backfillEventMetricData(eventMetricData));
                     }
-                    backfilledData.sort(Comparator.comparing(d -> d.elapsedTimestampNanos));
-                    eventData.addAll(backfilledData);
                 }
             }
+            backfilledData.sort(Comparator.comparing(d -> d.elapsedTimestampNanos));
+            eventData.addAll(backfilledData);
         }
-        Log.i(LOG_TAG, "Number of events: " + eventData.size());
         return eventData;
     }
 
-    /** Returns the list of GaugeMetric data tracked under the config. */
-    public List<com.android.os.nano.StatsLog.GaugeMetricData> getGaugeMetrics() {
-        com.android.os.nano.StatsLog.ConfigMetricsReportList reportList = null;
+    /** Returns the gauge data of {@code atomIds} found in {@code reports}, in pull order. */
+    List<com.android.os.nano.StatsLog.GaugeMetricData> extractGaugeMetrics(
+            Map<Integer, List<com.android.os.nano.StatsLog.StatsLogReport>> reports,
+            Collection<Integer> atomIds) {
         List<com.android.os.nano.StatsLog.GaugeMetricData> gaugeData = new ArrayList<>();
-        try {
-            if (getConfigId() != -1) {
-                adoptShellIdentity();
-                StatsLog.logEvent(0);
-                // Dump the the counters after the test completed.
-                SystemClock.sleep(METRIC_DELAY_MS);
-                reportList =
-                        com.android.os.nano.StatsLog.ConfigMetricsReportList.parseFrom(
-                                getStatsManager().getReports(getConfigId()));
-                dropShellIdentity();
-            }
-        } catch (InvalidProtocolBufferNanoException | StatsUnavailableException se) {
-            Log.e(LOG_TAG, "Retrieving gauge metrics failed.", se);
-            return gaugeData;
-        }
-
-        if (reportList != null && reportList.reports.length > 0) {
-            com.android.os.nano.StatsLog.ConfigMetricsReport configReport = reportList.reports[0];
-            for (com.android.os.nano.StatsLog.StatsLogReport metric : configReport.metrics) {
+        for (Integer atomId : atomIds) {
+            for (com.android.os.nano.StatsLog.StatsLogReport metric :
+                    reports.getOrDefault(atomId, Collections.emptyList())) {
                 com.android.os.nano.StatsLog.StatsLogReport.GaugeMetricDataWrapper
                         gaugeMetricDataWrapper = metric.getGaugeMetrics();
                 backfillGaugeMetricData(gaugeMetricDataWrapper);
@@ -278,7 +353,6 @@ public class StatsdHelper {
                 }
             }
         }
-        Log.i(LOG_TAG, "Number of Gauge data: " + gaugeData.size());
         return gaugeData;
     }
 
@@ -288,6 +362,9 @@ public class StatsdHelper {
      * @return true if the config is removed successfully otherwise false.
      */
     public boolean removeStatsConfig() {
+        if (mSharedConfig != null) {
+            return mSharedConfig.stop(this);
+        }
         Log.i(LOG_TAG, "Removing statsd config-id: " + getConfigId());
         try {
             adoptShellIdentity();
@@ -364,15 +441,109 @@ public class StatsdHelper {
         }
     }
 
+    /** Appends the metrics of the reports pulled for the config to {@code reports}. */
+    private void pullReports(
+            Map<Integer, List<com.android.os.nano.StatsLog.StatsLogReport>> reports)
+            throws InvalidProtocolBufferNanoException, StatsUnavailableException {
+        byte[] serializedReports;
+        adoptShellIdentity();
+        try {
+            serializedReports = getStatsManager().getReports(getConfigId());
+        } finally {
+            dropShellIdentity();
+        }
+        com.android.os.nano.StatsLog.ConfigMetricsReportList reportList =
+                com.android.os.nano.StatsLog.ConfigMetricsReportList.parseFrom(serializedReports);
+        for (com.android.os.nano.StatsLog.ConfigMetricsReport configReport : reportList.reports) {
+            for (com.android.os.nano.StatsLog.StatsLogReport metric : configReport.metrics) {
+                Integer atomId = mMetricAtomIds.get(metric.metricId);
+                if (atomId != null) {
+                    reports.computeIfAbsent(atomId, k -> new ArrayList<>()).add(metric);
+                }
+            }
+        }
+    }
+
+    /** Returns whether {@code metrics} hold a gauge atom pulled at or after {@code timeNs}. */
+    private static boolean hasGaugeDataSince(
+            List<com.android.os.nano.StatsLog.StatsLogReport> metrics, long timeNs) {
+        if (metrics == null) {
+            return false;
+        }
+        for (com.android.os.nano.StatsLog.StatsLogReport metric : metrics) {
+            com.android.os.nano.StatsLog.StatsLogReport.GaugeMetricDataWrapper dataWrapper =
+                    metric.getGaugeMetrics();
+            if (dataWrapper == null) {
+                continue;
+            }
+            for (com.android.os.nano.StatsLog.GaugeMetricData gaugeMetricData : dataWrapper.data) {
+                for (com.android.os.nano.StatsLog.GaugeBucketInfo bucketInfo :
+                        gaugeMetricData.bucketInfo) {
+                    for (long timestampNs : bucketInfo.elapsedTimestampNanos) {
+                        if (timestampNs >= timeNs) {
+                            return true;
+                        }
+                    }
+                    for (com.android.os.nano.StatsLog.AggregatedAtomInfo atomInfo :
+                            bucketInfo.aggregatedAtomInfo) {
+                        for (long timestampNs : atomInfo.elapsedTimestampNanos) {
+                            if (timestampNs >= timeNs) {
+                                return true;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Returns the number of pull attempts statsd made so far for each of {@code atomIds}. */
+    private Map<Integer, Long> getPullCounts(Collection<Integer> atomIds) {
+        Map<Integer, Long> pullCounts = new HashMap<>();
+        for (com.android.os.nano.StatsLog.StatsdStatsReport.PulledAtomStats stats :
+                getStatsdStatsReport().pulledAtomStats) {
+            if (atomIds.contains(stats.atomId)) {
+                pullCounts.put(
+                        stats.atomId,
+                        stats.totalPull
+                                + stats.totalPullFromCache
+                                + stats.pullFailed
+                                + stats.pullTimeout);
+            }
+        }
+        return pullCounts;
+    }
+
+    /** Waits until each of {@code atomIds} was pulled since {@code initialPullCounts}. */
+    private boolean pollForPulledAtoms(
+            Collection<Integer> atomIds, Map<Integer, Long> initialPullCounts) {
+        Backoff backoff = new Backoff(METRIC_TIMEOUT_MS);
+        do {
+            Map<Integer, Long> pullCounts = getPullCounts(atomIds);
+            boolean allPulled = true;
+            for (Integer atomId : atomIds) {
+                if (pullCounts.getOrDefault(atomId, 0L)
+                        <= initialPullCounts.getOrDefault(atomId, 0L)) {
+                    allPulled = false;
+                    break;
+                }
+            }
+            if (allPulled) {
+                return true;
+            }
+        } while (backoff.await());
+        return false;
+    }
+
     private boolean pollForRegisteredConfig(long configId) {
-        long endTime = System.currentTimeMillis() + CONFIG_REGISTRATION_TIMEOUT_MS;
-        while (System.currentTimeMillis() < endTime) {
+        Backoff backoff = new Backoff(CONFIG_REGISTRATION_TIMEOUT_MS);
+        do {
             if (verifyConfigIsRegistered(configId)) {
                 Log.i(LOG_TAG, String.format("Found config %d registered.", configId));
                 return true;
             }
-            SystemClock.sleep(100);
-        }
+        } while (backoff.await());
         Log.e(
                 LOG_TAG,
                 String.format(
@@ -432,6 +603,27 @@ public class StatsdHelper {
         return UUID.randomUUID().hashCode();
     }
 
+    /** Exponential backoff between two polls of statsd, bounded by a deadline. */
+    private static class Backoff {
+        private final long mDeadlineMs;
+        private long mIntervalMs = INITIAL_POLL_INTERVAL_MS;
+
+        Backoff(long timeoutMs) {
+            mDeadlineMs = SystemClock.uptimeMillis() + timeoutMs;
+        }
+
+        /** Sleeps until the next poll, returns false once the deadline has passed. */
+        boolean await() {
+            long remainingMs = mDeadlineMs - SystemClock.uptimeMillis();
+            if (remainingMs <= 0) {
+                return false;
+            }
+            SystemClock.sleep(Math.min(mIntervalMs, remainingMs));
+            mIntervalMs = Math.min(mIntervalMs * 2, MAX_POLL_INTERVAL_MS);
+            return true;
+        }
+    }
+
     /**
      * Adopts shell permission identity needed to access StatsManager service
      */
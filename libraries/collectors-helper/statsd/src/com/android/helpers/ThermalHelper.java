@@ -226,6 +226,11 @@ public class ThermalHelper implements ICollectorHelper<StringBuilder> {
         }
     }
 
+    /** Track the thermal events in the {@link SharedStatsdConfig} of the process. */
+    public void setUseSharedConfig() {
+        getStatsdHelper().setSharedConfig(SharedStatsdConfig.getInstance());
+    }
+
     private StatsdHelper getStatsdHelper() {
         if (mStatsdHelper == null) {
             mStatsdHelper = new StatsdHelper();
@@ -76,4 +76,9 @@ public class UiActionLatencyHelper implements ICollectorHelper<StringBuilder> {
     public boolean stopCollecting() {
         return mStatsdHelper.removeStatsConfig();
     }
+
+    /** Track the latency atoms in the {@link SharedStatsdConfig} of the process. */
+    public void setUseSharedConfig() {
+        mStatsdHelper.setSharedConfig(SharedStatsdConfig.getInstance());
+    }
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.helpers;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+
+/**
+ * Android Unit tests for {@link SharedStatsdConfig}.
+ *
+ * <p>To run: atest CollectorsHelperTest:com.android.helpers.SharedStatsdConfigTest
+ */
+@RunWith(AndroidJUnit4.class)
+public class SharedStatsdConfigTest {
+    private StatsdHelper mStatsdHelper;
+    private SharedStatsdConfig mSharedConfig;
+    private StatsdHelper mEventClient;
+    private StatsdHelper mGaugeClient;
+
+    @Before
+    public void setUp() {
+        mStatsdHelper = Mockito.mock(StatsdHelper.class);
+        when(mStatsdHelper.addConfig(any(), any())).thenReturn(true);
+        when(mStatsdHelper.removeStatsConfig()).thenReturn(true);
+        when(mStatsdHelper.getReportsByAtom(anyBoolean())).thenReturn(new HashMap<>());
+        mSharedConfig = new SharedStatsdConfig(mStatsdHelper);
+        mEventClient = new StatsdHelper();
+        mEventClient.setSharedConfig(mSharedConfig);
+        mGaugeClient = new StatsdHelper();
+        mGaugeClient.setSharedConfig(mSharedConfig);
+    }
+
+    /** Test the config is pushed and pulled once per test once all the atoms are known. */
+    @Test
+    public void testSinglePushAndPull() throws Exception {
+        // First test, the gauge client brings new atoms so the config is updated.
+        runTest();
+        verify(mStatsdHelper, times(2)).addConfig(any(), any());
+        verify(mStatsdHelper, times(1)).getReportsByAtom(false);
+        verify(mStatsdHelper, times(1)).getReportsByAtom(true);
+        verify(mStatsdHelper, times(2)).removeStatsConfig();
+
+        // Following tests, a single push, pull and removal.
+        runTest();
+        verify(mStatsdHelper, times(3)).addConfig(any(), any());
+        verify(mStatsdHelper, times(2))
+                .addConfig(Collections.singletonList(1), Collections.singletonList(2));
+        verify(mStatsdHelper, times(1)).getReportsByAtom(false);
+        verify(mStatsdHelper, times(2)).getReportsByAtom(true);
+        verify(mStatsdHelper, times(3)).removeStatsConfig();
+    }
+
+    /** Test a helper asking twice for metrics triggers a new pull. */
+    @Test
+    public void testRepeatedCollection() throws Exception {
+        assertTrue(mEventClient.addEventConfig(Arrays.asList(1)));
+        assertTrue(mGaugeClient.addGaugeConfig(Arrays.asList(2)));
+        mEventClient.getEventMetrics();
+        mEventClient.getEventMetrics();
+        verify(mStatsdHelper, times(2)).getReportsByAtom(true);
+    }
+
+    /** Test nothing is pulled when the config could not be pushed. */
+    @Test
+    public void testPushFailure() throws Exception {
+        when(mStatsdHelper.addConfig(any(), any())).thenReturn(false);
+        assertFalse(mEventClient.addEventConfig(Arrays.asList(1)));
+        assertTrue(mEventClient.getEventMetrics().isEmpty());
+        assertTrue(mEventClient.removeStatsConfig());
+        verify(mStatsdHelper, never()).getReportsByAtom(anyBoolean());
+        verify(mStatsdHelper, never()).removeStatsConfig();
+    }
+
+    private void runTest() {
+        assertTrue(mEventClient.addEventConfig(Arrays.asList(1)));
+        assertTrue(mGaugeClient.addGaugeConfig(Arrays.asList(2)));
+        mEventClient.getEventMetrics();
+        mGaugeClient.getGaugeMetrics();
+        assertTrue(mEventClient.removeStatsConfig());
+        assertTrue(mGaugeClient.removeStatsConfig());
+    }
+}
@@ -16,17 +16,13 @@
 
 package com.android.helpers;
 
-import android.app.UiAutomation;
-import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
 import androidx.annotation.VisibleForTesting;
 import androidx.test.platform.app.InstrumentationRegistry;
-import androidx.test.uiautomator.UiDevice;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -75,7 +71,7 @@ public class BugReportDurationHelper implements ICollectorHelper<Double> {
 
     private String bugReportDir;
 
-    private UiDevice device;
+    private BatchedShellExecutor shellExecutor;
 
     public BugReportDurationHelper(String dir) {
         super();
@@ -88,7 +84,6 @@ public class BugReportDurationHelper implements ICollectorHelper<Double> {
 
     @Override
     public boolean startCollecting() {
-        device = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
         Log.d(TAG, "Started collecting for BugReportDuration.");
         return true;
     }
@@ -247,7 +242,7 @@ public class BugReportDurationHelper implements ICollectorHelper<Double> {
         try {
             // executeShellCommand will return files (separated by '\n') in a single String.
             String[] files =
-                    device.executeShellCommand(String.format(LS_CMD, bugReportDir)).split("\n");
+                    getShellExecutor().execute(String.format(LS_CMD, bugReportDir)).split("\n");
             HashSet<String> bugreports = new HashSet<>();
             for (String file : files) {
                 if (file.contains("bugreport") && file.contains("zip")) {
@@ -285,32 +280,32 @@ public class BugReportDurationHelper implements ICollectorHelper<Double> {
     public BugReportDurationLines extractAndFilterBugReport(String archive) {
         Path archivePath = Paths.get(bugReportDir, archive);
         String entry = archive.replace("zip", "txt");
-        UiAutomation automation = InstrumentationRegistry.getInstrumentation().getUiAutomation();
         String cmd = String.format(UNZIP_EXTRACT_CMD, archivePath.toString(), entry);
         Log.d(TAG, "The unzip command that will be run is: " + cmd);
 
         // We keep track of whether the buffered reader was empty because this probably indicates an
         // issue in unzipping (e.g. a mismatch in the bugreport's .zip name and .txt entry name).
-        boolean bufferedReaderNotEmpty = false;
+        boolean[] bufferedReaderNotEmpty = {false};
         BugReportDurationLines bugReportDurationLines = new BugReportDurationLines();
-        try (InputStream is =
-                        new ParcelFileDescriptor.AutoCloseInputStream(
-                                automation.executeShellCommand(cmd));
-                BufferedReader br = new BufferedReader(new InputStreamReader(is)); ) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                bufferedReaderNotEmpty = true;
-                if (line.contains(DUMPSTATE_DURATION_FILTER) && !line.contains(SHOWMAP_FILTER)) {
-                    bugReportDurationLines.dumpstateLines.add(line);
-                } else if (line.contains(DUMPSYS_DURATION_FILTER)) {
-                    bugReportDurationLines.dumpsysLines.add(line);
-                }
-            }
+        try {
+            // The bug report is filtered as it is extracted, without holding it in memory.
+            getShellExecutor()
+                    .execute(
+                            Collections.singletonList(cmd),
+                            (index, output) -> {
+                                BufferedReader br =
+                                        new BufferedReader(new InputStreamReader(output));
+                                String line;
+                                while ((line = br.readLine()) != null) {
+                                    bufferedReaderNotEmpty[0] = true;
+                                    filterBugReportLine(line, bugReportDurationLines);
+                                }
+                            });
         } catch (IOException e) {
             Log.e(TAG, "Failed to extract and parse the raw bug report: " + e.getMessage());
             return null;
         }
-        if (!bufferedReaderNotEmpty) {
+        if (!bufferedReaderNotEmpty[0]) {
             Log.e(
                     TAG,
                     String.format(
@@ -327,32 +322,31 @@ public class BugReportDurationHelper implements ICollectorHelper<Double> {
     public DumpstateBoardLines extractAndFilterDumpstateBoard(String archive) {
         Path archivePath = Paths.get(bugReportDir, archive);
         String entry = "dumpstate_board.txt";
-        UiAutomation automation = InstrumentationRegistry.getInstrumentation().getUiAutomation();
         String cmd = String.format(UNZIP_EXTRACT_CMD, archivePath.toString(), entry);
         Log.d(TAG, "The unzip command that will be run is: " + cmd);
 
         // We keep track of whether the buffered reader was empty because this may indicate an issue
         // in unzipping (e.g. dumpstate_board.txt doesn't exist for some reason).
-        boolean bufferedReaderNotEmpty = false;
+        boolean[] bufferedReaderNotEmpty = {false};
         DumpstateBoardLines dumpstateBoardLines = new DumpstateBoardLines();
-        try (InputStream is =
-                        new ParcelFileDescriptor.AutoCloseInputStream(
-                                automation.executeShellCommand(cmd));
-                BufferedReader br = new BufferedReader(new InputStreamReader(is)); ) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                bufferedReaderNotEmpty = true;
-                if (line.contains(DUMPSTATE_BOARD_SECTION_FILTER)) {
-                    dumpstateBoardLines.sectionNameLines.add(line);
-                } else if (line.contains(DUMPSTATE_BOARD_DURATION_FILTER)) {
-                    dumpstateBoardLines.durationLines.add(line);
-                }
-            }
+        try {
+            getShellExecutor()
+                    .execute(
+                            Collections.singletonList(cmd),
+                            (index, output) -> {
+                                BufferedReader br =
+                                        new BufferedReader(new InputStreamReader(output));
+                                String line;
+                                while ((line = br.readLine()) != null) {
+                                    bufferedReaderNotEmpty[0] = true;
+                                    filterDumpstateBoardLine(line, dumpstateBoardLines);
+                                }
+                            });
         } catch (IOException e) {
             Log.e(TAG, "Failed to extract and parse dumpstate_board.txt: " + e.getMessage());
             return null;
         }
-        if (!bufferedReaderNotEmpty) {
+        if (!bufferedReaderNotEmpty[0]) {
             Log.e(
                     TAG,
                     String.format(
@@ -363,18 +357,36 @@ public class BugReportDurationHelper implements ICollectorHelper<Double> {
         return dumpstateBoardLines;
     }
 
+    // Adds the line of the raw bug report to bugReportDurationLines if it holds a dumpstate or
+    // dumpsys duration.
+    @VisibleForTesting
+    void filterBugReportLine(String line, BugReportDurationLines bugReportDurationLines) {
+        if (line.contains(DUMPSTATE_DURATION_FILTER) && !line.contains(SHOWMAP_FILTER)) {
+            bugReportDurationLines.dumpstateLines.add(line);
+        } else if (line.contains(DUMPSYS_DURATION_FILTER)) {
+            bugReportDurationLines.dumpsysLines.add(line);
+        }
+    }
+
+    // Adds the line of dumpstate_board.txt to dumpstateBoardLines if it holds a section name or a
+    // duration.
+    @VisibleForTesting
+    void filterDumpstateBoardLine(String line, DumpstateBoardLines dumpstateBoardLines) {
+        if (line.contains(DUMPSTATE_BOARD_SECTION_FILTER)) {
+            dumpstateBoardLines.sectionNameLines.add(line);
+        } else if (line.contains(DUMPSTATE_BOARD_DURATION_FILTER)) {
+            dumpstateBoardLines.durationLines.add(line);
+        }
+    }
+
     // Prints out every entry contained in the zip archive at archivePath.
     private void dumpBugReportEntries(Path archivePath) {
-        UiAutomation automation = InstrumentationRegistry.getInstrumentation().getUiAutomation();
         String cmd = String.format(UNZIP_CONTENTS_CMD, archivePath.toString());
         Log.d(TAG, "The list-contents command that will be run is: " + cmd);
-        try (InputStream is =
-                        new ParcelFileDescriptor.AutoCloseInputStream(
-                                automation.executeShellCommand(cmd));
-                BufferedReader br = new BufferedReader(new InputStreamReader(is)); ) {
-            String line;
+        try {
+            String contents = getShellExecutor().execute(cmd);
             Log.d(TAG, "Dumping list of entries in " + archivePath);
-            while ((line = br.readLine()) != null) {
+            for (String line : contents.split("\n")) {
                 Log.d(TAG, "    " + line);
             }
         } catch (IOException e) {
@@ -382,6 +394,14 @@ public class BugReportDurationHelper implements ICollectorHelper<Double> {
         }
     }
 
+    private BatchedShellExecutor getShellExecutor() {
+        if (shellExecutor == null) {
+            shellExecutor =
+                    BatchedShellExecutor.getInstance(InstrumentationRegistry.getInstrumentation());
+        }
+        return shellExecutor;
+    }
+
     // Parses a decimal duration from the input duration-relevant log line. This should only be
     // called for dumpstate/dumpsys lines.
     @VisibleForTesting
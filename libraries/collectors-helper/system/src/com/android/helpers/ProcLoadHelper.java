@@ -19,8 +19,8 @@ package com.android.helpers;
 import android.os.SystemClock;
 import android.util.Log;
 
+import androidx.annotation.VisibleForTesting;
 import androidx.test.InstrumentationRegistry;
-import androidx.test.uiautomator.UiDevice;
 
 import java.io.IOException;
 import java.util.HashMap;
@@ -46,7 +46,7 @@ public class ProcLoadHelper implements ICollectorHelper<Double> {
     // Default to 500 msecs timeout.
     private long mProcLoadIntervalInMs = 500;
     private double mRecentLoad = 0;
-    private UiDevice mDevice;
+    private BatchedShellExecutor mShellExecutor;
     private double mTotalWaitTime = 0;
 
     /** Wait untill the proc/load reaches below the threshold or timeout expires */
@@ -101,33 +101,42 @@ public class ProcLoadHelper implements ICollectorHelper<Double> {
      */
     private double getProcLoadInLastMinute() {
         try {
-            String output = getDevice().executeShellCommand(LOAD_CMD);
+            String output = getShellExecutor().execute(LOAD_CMD);
             Log.i(LOG_TAG, String.format("Output of proc_loadavg is : %s", output));
-            // Output of the load command
-            // 1.39 1.10 1.21 2/2679 6380
-            // 1.39 is the proc load in the last minute.
-
-            Matcher match = null;
-            if ((match = matches(LOAD_OUTPUT_PATTERN, output.trim())) != null) {
-                Log.i(LOG_TAG, String.format("Current load is : %s",
-                        match.group("LASTMINUTELOAD")));
-                return Double.parseDouble(match.group("LASTMINUTELOAD"));
-            } else {
-                Log.w(LOG_TAG, "Not able to parse the proc/loadavg");
-            }
+            return parseProcLoadInLastMinute(output);
         } catch (IOException e) {
             throw new RuntimeException("Failed to get proc/loadavg.", e);
         }
+    }
 
+    /**
+     * Parse the last minute cpu load from the {@code output} of proc/loadavg.
+     *
+     * @return cpu load in last minute. Returns -1 in case if it is failed to parse.
+     */
+    @VisibleForTesting
+    static double parseProcLoadInLastMinute(String output) {
+        // Output of the load command
+        // 1.39 1.10 1.21 2/2679 6380
+        // 1.39 is the proc load in the last minute.
+        Matcher match = null;
+        if ((match = matches(LOAD_OUTPUT_PATTERN, output.trim())) != null) {
+            Log.i(LOG_TAG, String.format("Current load is : %s",
+                    match.group("LASTMINUTELOAD")));
+            return Double.parseDouble(match.group("LASTMINUTELOAD"));
+        } else {
+            Log.w(LOG_TAG, "Not able to parse the proc/loadavg");
+        }
         return -1;
     }
 
-    /** Returns the {@link UiDevice} under test. */
-    private UiDevice getDevice() {
-        if (mDevice == null) {
-            mDevice = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
+    /** Returns the executor running the shell commands, reusing its shell between polls. */
+    private BatchedShellExecutor getShellExecutor() {
+        if (mShellExecutor == null) {
+            mShellExecutor =
+                    BatchedShellExecutor.getInstance(InstrumentationRegistry.getInstrumentation());
         }
-        return mDevice;
+        return mShellExecutor;
     }
 
     /**
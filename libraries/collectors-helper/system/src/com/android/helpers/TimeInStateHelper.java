@@ -19,10 +19,9 @@ package com.android.helpers;
 import static com.android.helpers.MetricUtility.constructKey;
 
 import android.util.Log;
+import androidx.annotation.VisibleForTesting;
 import androidx.test.InstrumentationRegistry;
-import androidx.test.uiautomator.UiDevice;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -46,34 +45,42 @@ public class TimeInStateHelper implements ICollectorHelper<Long> {
     private List<String> mSourceLocations = new ArrayList<>();
     private List<Map<String, Long>> mBeforeFreqStats;
     private List<Map<String, Long>> mAfterFreqStats;
-    private UiDevice mDevice;
+    private BatchedShellExecutor mShellExecutor;
 
     public void setUp(String... freqKeys) {
         if (freqKeys == null) {
             return;
         }
+        List<String> keys = new ArrayList<>();
+        List<String> sources = new ArrayList<>();
+        List<String> cmds = new ArrayList<>();
         for (int i = 0; i < freqKeys.length; i++) {
-            String[] keys = freqKeys[i].split(KEY_SOURCE_SEPARATOR);
-            if (keys.length != 2) {
+            String[] keySource = freqKeys[i].split(KEY_SOURCE_SEPARATOR);
+            if (keySource.length != 2) {
                 Log.e(LOG_TAG, "Failed to parse " + freqKeys[i]);
                 throw new RuntimeException("Failed to parse " + freqKeys[i]);
             }
-            String key = keys[0].trim();
-            String source = keys[1].trim();
+            String key = keySource[0].trim();
+            String source = keySource[1].trim();
             Log.i(LOG_TAG, "key: " + key + ", source: " + source);
+            keys.add(key);
+            sources.add(source);
+            cmds.add(String.format(CHECK_FILE_EXIST_CMD, source));
+        }
 
-            String cmd = String.format(CHECK_FILE_EXIST_CMD, source);
-            String result = null;
-            try {
-                result = getDevice().executeShellCommand(cmd);
-            } catch (IOException e) {
-                Log.e(LOG_TAG, "Error when checking source file " + source);
+        // Check all the sources with a single batch of commands.
+        List<BatchedShellExecutor.CommandResult> results =
+                getShellExecutor().executeIndependently(cmds);
+        for (int i = 0; i < sources.size(); i++) {
+            if (results.get(i) == null) {
+                Log.e(LOG_TAG, "Error when checking source file " + sources.get(i));
             }
+            String result = results.get(i) == null ? null : results.get(i).getOutputAsString();
             if (result == null || result.contains("No such file or directory")) {
-                Log.e(LOG_TAG, "Source " + source + " does not exist");
+                Log.e(LOG_TAG, "Source " + sources.get(i) + " does not exist");
             } else {
-                mMetricKeys.add(key);
-                mSourceLocations.add(source);
+                mMetricKeys.add(keys.get(i));
+                mSourceLocations.add(sources.get(i));
             }
         }
     }
@@ -96,11 +103,12 @@ public class TimeInStateHelper implements ICollectorHelper<Long> {
         return true;
     }
 
-    protected UiDevice getDevice() {
-        if (mDevice == null) {
-            mDevice = UiDevice.getInstance(InstrumentationRegistry.getInstrumentation());
+    protected BatchedShellExecutor getShellExecutor() {
+        if (mShellExecutor == null) {
+            mShellExecutor =
+                    BatchedShellExecutor.getInstance(InstrumentationRegistry.getInstrumentation());
         }
-        return mDevice;
+        return mShellExecutor;
     }
 
     @Override
@@ -117,20 +125,32 @@ public class TimeInStateHelper implements ICollectorHelper<Long> {
     }
 
     private List<Map<String, Long>> readAllFreqStats() {
-        List<Map<String, Long>> freqStatsMapList = new ArrayList<Map<String, Long>>();
+        // Read all the sources with a single batch of commands.
+        List<String> cmds = new ArrayList<>();
         for (String source : mSourceLocations) {
-            Map<String, Long> result = readFreqStats(source);
-            freqStatsMapList.add(result);
+            cmds.add(String.format(READ_FILE_CMD, source));
+        }
+        List<BatchedShellExecutor.CommandResult> results =
+                getShellExecutor().executeIndependently(cmds);
+        List<Map<String, Long>> freqStatsMapList = new ArrayList<Map<String, Long>>();
+        for (int i = 0; i < mSourceLocations.size(); i++) {
+            String source = mSourceLocations.get(i);
+            if (results.get(i) == null) {
+                // Only the metrics of this source are missing.
+                Log.e(LOG_TAG, "Failed to read time_in_state from " + source);
+                freqStatsMapList.add(new HashMap<String, Long>());
+                continue;
+            }
+            freqStatsMapList.add(readFreqStats(source, results.get(i).getOutputAsString()));
         }
         return freqStatsMapList;
     }
 
-    private Map<String, Long> readFreqStats(String source) {
+    /** Parse the {@code timeInStateData} read from {@code source}, by frequency. */
+    @VisibleForTesting
+    Map<String, Long> readFreqStats(String source, String timeInStateData) {
         Map<String, Long> freqStatsMap = new HashMap<String, Long>();
-        String timeInStateData = "";
         try {
-            String cmd = String.format(READ_FILE_CMD, source);
-            timeInStateData = getDevice().executeShellCommand(cmd);
             Matcher m = TIME_IN_STATE_PATTERN.matcher(timeInStateData);
             while (m.find()) {
                 String freq = m.group(1);
@@ -169,6 +189,10 @@ public class TimeInStateHelper implements ICollectorHelper<Long> {
 
             Map<String, Long> afterFreqStatsMap = mAfterFreqStats.get(i);
             Map<String, Long> beforeFreqStatsMap = mBeforeFreqStats.get(i);
+            if (afterFreqStatsMap.isEmpty() || beforeFreqStatsMap.isEmpty()) {
+                // The source could not be read at the start or the end time.
+                continue;
+            }
             String metricsPrefixKey = constructKey(METRIC_KEY_PREFIX, mMetricKeys.get(i));
             for (Map.Entry<String, Long> entry : afterFreqStatsMap.entrySet()) {
                 String freq = entry.getKey();
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.helpers.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import androidx.test.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.helpers.BatchedShellExecutor;
+import com.android.helpers.BatchedShellExecutor.CommandResult;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Android Unit tests for {@link BatchedShellExecutor}.
+ *
+ * <p>To run: atest CollectorsHelperTest:com.android.helpers.tests.BatchedShellExecutorTest
+ */
+@RunWith(AndroidJUnit4.class)
+public class BatchedShellExecutorTest {
+
+    private BatchedShellExecutor mExecutor;
+
+    @Before
+    public void setUp() {
+        mExecutor =
+                new BatchedShellExecutor(
+                        InstrumentationRegistry.getInstrumentation().getUiAutomation());
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.close();
+    }
+
+    /** Test the output and exit code of each command of a batch are split back. */
+    @Test
+    public void testBatchOutputs() throws Exception {
+        List<CommandResult> results =
+                mExecutor.execute(Arrays.asList("echo first", "printf second", "false"));
+        assertEquals(3, results.size());
+        assertEquals("first\n", results.get(0).getOutputAsString());
+        assertEquals("second", results.get(1).getOutputAsString());
+        assertEquals("", results.get(2).getOutputAsString());
+        for (CommandResult result : results) {
+            assertTrue(result.getLatencyUs() >= 0);
+        }
+    }
+
+    /** Test the shell session is reused across batches. */
+    @Test
+    public void testSessionReused() throws Exception {
+        assertEquals("one\n", mExecutor.execute("echo one"));
+        assertEquals("two\n", mExecutor.execute("echo two"));
+        assertEquals(2, mExecutor.getCommandCount());
+        assertTrue(mExecutor.getSessionCount() <= 1);
+    }
+
+    /** Test large outputs can be streamed, and unread output is skipped. */
+    @Test
+    public void testStreamedOutput() throws Exception {
+        long[] lengths = new long[2];
+        List<CommandResult> results =
+                mExecutor.execute(
+                        Arrays.asList("seq 1 100000", "echo done"),
+                        (index, output) -> {
+                            if (index == 0) {
+                                // Only read the first bytes of the large output.
+                                lengths[0] = output.read(new byte[4]);
+                                return;
+                            }
+                            byte[] buffer = new byte[1024];
+                            int length;
+                            while ((length = output.read(buffer)) >= 0) {
+                                lengths[1] += length;
+                            }
+                        });
+        assertEquals(4, lengths[0]);
+        assertEquals("done\n".length(), lengths[1]);
+        assertNull(results.get(1).getOutput());
+    }
+
+    /** Test a failing consumer fails the batch but not the following ones. */
+    @Test
+    public void testConsumerFailure() throws Exception {
+        try {
+            mExecutor.execute(
+                    Arrays.asList("echo one", "echo two"),
+                    (index, output) -> {
+                        throw new IOException("failed");
+                    });
+            fail("The consumer failure should be rethrown.");
+        } catch (IOException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertEquals("three\n", mExecutor.execute("echo three"));
+    }
+
+    /** Test a command failing the batch only loses its own output when run independently. */
+    @Test
+    public void testExecuteIndependently() throws Exception {
+        List<CommandResult> results =
+                mExecutor.executeIndependently(Arrays.asList("echo one", "exit 3", "echo two"));
+        assertEquals(3, results.size());
+        assertEquals("one\n", results.get(0).getOutputAsString());
+        assertNull(results.get(1));
+        assertEquals("two\n", results.get(2).getOutputAsString());
+    }
+}
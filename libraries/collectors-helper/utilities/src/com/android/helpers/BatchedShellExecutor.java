@@ -0,0 +1,568 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.helpers;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import android.app.Instrumentation;
+import android.app.UiAutomation;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Runs shell commands in long-lived shell sessions instead of starting a shell process per
+ * command.
+ *
+ * <p>A batch of commands is written to the standard input of a shell session, each command framed
+ * by a header and a footer line carrying its exit code and timing, so the outputs are split back
+ * per command from a single pipe. The output of each command can be consumed as a stream with
+ * {@link #execute(List, OutputConsumer)}, without building it in memory. Sessions are kept for
+ * the following batches, and a new session is only opened when the idle ones are all in use.
+ *
+ * <p>Commands are interpreted by the shell and run with their standard input redirected from
+ * {@code /dev/null}. They must not exit the shell, which would fail the rest of the batch. On
+ * devices without {@link UiAutomation#executeShellCommandRw}, each command is run on its own and
+ * its exit code is not available.
+ */
+public class BatchedShellExecutor {
+    private static final String TAG = BatchedShellExecutor.class.getSimpleName();
+
+    /** Exit code reported when it is not available. */
+    public static final int UNKNOWN_EXIT_CODE = -1;
+
+    private static final String SHELL_CMD = "sh";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Frame header and footer of a command, see Session#execute.
+    private static final String HEADER_FORMAT = "printf '%s:B:%d:%%s\\n' \"$EPOCHREALTIME\"\n";
+    private static final String FOOTER_FORMAT =
+            "printf '\\n%s:E:%d:%%d:%%s\\n' $? \"$EPOCHREALTIME\"\n";
+    // Idle sessions kept for later batches, the others are closed when released.
+    private static final int MAX_IDLE_SESSIONS = 4;
+
+    private static BatchedShellExecutor sInstance;
+
+    private final UiAutomation mUiAutomation;
+    private final boolean mUseSessions;
+    // Delimits the frames, unique to this executor so command outputs can not forge one.
+    private final String mToken = "frame-" + UUID.randomUUID().toString().substring(0, 8);
+    private final byte[] mFooter = ("\n" + mToken + ":E:").getBytes(UTF_8);
+
+    private final Deque<Session> mIdleSessions = new ArrayDeque<>();
+    private long mSessionCount = 0;
+    private long mCommandCount = 0;
+
+    /** Consumer of the output of the commands of a batch. */
+    public interface OutputConsumer {
+        /**
+         * Called in order for each command of a batch. Output not read by the consumer is
+         * discarded.
+         *
+         * @param index the index of the command in the batch.
+         * @param output the output of the command, ending when the command ends.
+         */
+        void accept(int index, InputStream output) throws IOException;
+    }
+
+    /** The outcome of a command of a batch. */
+    public static class CommandResult {
+        private final String mCommand;
+        private final int mExitCode;
+        private final long mLatencyUs;
+        private final byte[] mOutput;
+
+        CommandResult(String command, int exitCode, long latencyUs, byte[] output) {
+            mCommand = command;
+            mExitCode = exitCode;
+            mLatencyUs = latencyUs;
+            mOutput = output;
+        }
+
+        public String getCommand() {
+            return mCommand;
+        }
+
+        /** Returns the exit code of the command, or {@link #UNKNOWN_EXIT_CODE}. */
+        public int getExitCode() {
+            return mExitCode;
+        }
+
+        /** Returns the time the command took to run, in microseconds. */
+        public long getLatencyUs() {
+            return mLatencyUs;
+        }
+
+        /** Returns the output of the command, or null if it was given to an OutputConsumer. */
+        public byte[] getOutput() {
+            return mOutput;
+        }
+
+        /** Returns the output of the command as a String, or null if it was streamed. */
+        public String getOutputAsString() {
+            return mOutput == null ? null : new String(mOutput, UTF_8);
+        }
+    }
+
+    public BatchedShellExecutor(UiAutomation uiAutomation) {
+        this(uiAutomation, Build.VERSION.SDK_INT >= Build.VERSION_CODES.S);
+    }
+
+    BatchedShellExecutor(UiAutomation uiAutomation, boolean useSessions) {
+        mUiAutomation = uiAutomation;
+        mUseSessions = useSessions;
+    }
+
+    /** Returns the executor shared by the helpers of the instrumentation process. */
+    public static synchronized BatchedShellExecutor getInstance(Instrumentation instr) {
+        if (sInstance == null) {
+            sInstance = new BatchedShellExecutor(instr.getUiAutomation());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Run a single command and return its output.
+     *
+     * @param command shell command to be executed.
+     * @return the output of the command.
+     */
+    public String execute(String command) throws IOException {
+        return execute(Collections.singletonList(command)).get(0).getOutputAsString();
+    }
+
+    /**
+     * Run a single command and return its output.
+     *
+     * @param command shell command to be executed.
+     * @return the output of the command.
+     */
+    public byte[] executeForBytes(String command) throws IOException {
+        return execute(Collections.singletonList(command)).get(0).getOutput();
+    }
+
+    /**
+     * Run the commands in a single shell session and return their outputs.
+     *
+     * @param commands the shell commands to run in order.
+     * @return the {@link CommandResult} of each command, holding its output.
+     */
+    public List<CommandResult> execute(List<String> commands) throws IOException {
+        List<byte[]> outputs = new ArrayList<>(Collections.nCopies(commands.size(), null));
+        List<CommandResult> results =
+                execute(
+                        commands,
+                        (index, output) -> {
+                            ByteArrayOutputStream out = new ByteArrayOutputStream();
+                            byte[] buffer = new byte[BUFFER_SIZE];
+                            int length;
+                            while ((length = output.read(buffer)) >= 0) {
+                                out.write(buffer, 0, length);
+                            }
+                            outputs.set(index, out.toByteArray());
+                        });
+        List<CommandResult> withOutputs = new ArrayList<>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            CommandResult result = results.get(i);
+            withOutputs.add(
+                    new CommandResult(
+                            result.getCommand(),
+                            result.getExitCode(),
+                            result.getLatencyUs(),
+                            outputs.get(i)));
+        }
+        return withOutputs;
+    }
+
+    /**
+     * Run the commands like {@link #execute(List)}, but if the batch fails run each command on its
+     * own, so that a failing command does not lose the outputs of the others.
+     *
+     * @param commands the shell commands to run in order.
+     * @return the {@link CommandResult} of each command, or null for the commands that failed.
+     */
+    public List<CommandResult> executeIndependently(List<String> commands) {
+        try {
+            return execute(commands);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to run the batch, running its commands one by one.", e);
+        }
+        List<CommandResult> results = new ArrayList<>(commands.size());
+        for (String command : commands) {
+            CommandResult result = null;
+            try {
+                result = execute(Collections.singletonList(command)).get(0);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to run " + command, e);
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    /**
+     * Run the commands in a single shell session and stream their outputs to {@code consumer}.
+     *
+     * <p>If the consumer throws, the outputs of the remaining commands are discarded and the
+     * exception is rethrown once the batch is complete.
+     *
+     * @param commands the shell commands to run in order.
+     * @param consumer the {@link OutputConsumer} reading the output of each command.
+     * @return the {@link CommandResult} of each command, without its output.
+     */
+    public List<CommandResult> execute(List<String> commands, OutputConsumer consumer)
+            throws IOException {
+        synchronized (this) {
+            mCommandCount += commands.size();
+        }
+        if (!mUseSessions) {
+            return executeEach(commands, consumer);
+        }
+        Session session = acquireSession();
+        try {
+            return session.execute(commands, consumer);
+        } finally {
+            releaseSession(session);
+        }
+    }
+
+    /** Returns the number of shell sessions opened so far. */
+    public synchronized long getSessionCount() {
+        return mSessionCount;
+    }
+
+    /** Returns the number of commands run so far. */
+    public synchronized long getCommandCount() {
+        return mCommandCount;
+    }
+
+    /** Close the idle shell sessions. Sessions in use are closed once their batch is done. */
+    public void close() {
+        List<Session> sessions;
+        synchronized (this) {
+            sessions = new ArrayList<>(mIdleSessions);
+            mIdleSessions.clear();
+        }
+        for (Session session : sessions) {
+            session.close();
+        }
+    }
+
+    private Session acquireSession() throws IOException {
+        synchronized (this) {
+            Session session = mIdleSessions.pollFirst();
+            if (session != null) {
+                return session;
+            }
+            mSessionCount++;
+        }
+        Log.i(TAG, "Opening a new shell session.");
+        return new Session(mUiAutomation.executeShellCommandRw(SHELL_CMD));
+    }
+
+    private void releaseSession(Session session) {
+        synchronized (this) {
+            if (session.mInSync && mIdleSessions.size() < MAX_IDLE_SESSIONS) {
+                mIdleSessions.addFirst(session);
+                return;
+            }
+        }
+        session.close();
+    }
+
+    /** Run each command with its own shell command, when sessions are not available. */
+    private List<CommandResult> executeEach(List<String> commands, OutputConsumer consumer)
+            throws IOException {
+        List<CommandResult> results = new ArrayList<>(commands.size());
+        IOException consumerException = null;
+        for (int i = 0; i < commands.size(); i++) {
+            String command = commands.get(i);
+            long startNs = SystemClock.elapsedRealtimeNanos();
+            try (InputStream output =
+                    new ParcelFileDescriptor.AutoCloseInputStream(
+                            mUiAutomation.executeShellCommand(command))) {
+                if (consumerException == null) {
+                    try {
+                        consumer.accept(i, output);
+                    } catch (IOException e) {
+                        consumerException = e;
+                    }
+                }
+                drain(output);
+            }
+            long latencyUs = (SystemClock.elapsedRealtimeNanos() - startNs) / 1000;
+            results.add(new CommandResult(command, UNKNOWN_EXIT_CODE, latencyUs, null));
+        }
+        if (consumerException != null) {
+            throw consumerException;
+        }
+        return results;
+    }
+
+    private static void drain(InputStream input) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (input.read(buffer) >= 0) {}
+    }
+
+    /** Quote {@code command} as a single shell word. */
+    private static String quote(String command) {
+        return "'" + command.replace("'", "'\\''") + "'";
+    }
+
+    /** Parse a {@code $EPOCHREALTIME} value in microseconds, or -1 if not available. */
+    private static long parseRealtimeUs(String realtime) {
+        String[] parts = realtime.split("\\.");
+        try {
+            if (parts.length == 2 && parts[1].length() == 6) {
+                return Long.parseLong(parts[0]) * 1000000 + Long.parseLong(parts[1]);
+            }
+        } catch (NumberFormatException e) {
+            // Fall through, the shell does not support $EPOCHREALTIME.
+        }
+        return -1;
+    }
+
+    /** A shell process reading commands from its standard input. */
+    private class Session implements Closeable {
+        private final ParcelFileDescriptor mStdout;
+        private final ParcelFileDescriptor mStdin;
+        private final OutputStream mInput;
+        private final FrameReader mReader;
+        // Whether the output of all the commands written so far was read.
+        private boolean mInSync = true;
+
+        private Session(ParcelFileDescriptor[] fds) {
+            mStdout = fds[0];
+            mStdin = fds[1];
+            mInput = new ParcelFileDescriptor.AutoCloseOutputStream(mStdin);
+            mReader = new FrameReader(new ParcelFileDescriptor.AutoCloseInputStream(mStdout));
+        }
+
+        private List<CommandResult> execute(List<String> commands, OutputConsumer consumer)
+                throws IOException {
+            StringBuilder script = new StringBuilder();
+            for (int i = 0; i < commands.size(); i++) {
+                // The header and footer carry the time the command started and ended, and the
+                // footer its exit code. The footer starts with a new line in case the output
+                // does not end with one, it is not part of the output.
+                script.append(String.format(HEADER_FORMAT, mToken, i));
+                script.append("eval ").append(quote(commands.get(i))).append(" </dev/null\n");
+                script.append(String.format(FOOTER_FORMAT, mToken, i));
+            }
+            mInSync = false;
+            mInput.write(script.toString().getBytes(UTF_8));
+            mInput.flush();
+
+            List<CommandResult> results = new ArrayList<>(commands.size());
+            IOException consumerException = null;
+            for (int i = 0; i < commands.size(); i++) {
+                String header = mReader.readLine();
+                String expected = mToken + ":B:" + i + ":";
+                if (header == null || !header.startsWith(expected)) {
+                    throw new IOException("Unexpected shell output: " + header);
+                }
+                long hostStartNs = SystemClock.elapsedRealtimeNanos();
+                long startUs = parseRealtimeUs(header.substring(expected.length()));
+
+                InputStream output = mReader.openFrame();
+                if (consumerException == null) {
+                    try {
+                        consumer.accept(i, output);
+                    } catch (IOException e) {
+                        consumerException = e;
+                    }
+                }
+                drain(output);
+
+                // Rest of the footer, "<index>:<exit code>:<time>".
+                String footer = mReader.readLine();
+                String[] fields = footer == null ? new String[0] : footer.split(":", -1);
+                if (fields.length != 3 || !fields[0].equals(String.valueOf(i))) {
+                    throw new IOException("Unexpected shell output: " + footer);
+                }
+                int exitCode;
+                try {
+                    exitCode = Integer.parseInt(fields[1]);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Unexpected shell output: " + footer, e);
+                }
+                long endUs = parseRealtimeUs(fields[2]);
+                long latencyUs =
+                        startUs >= 0 && endUs >= startUs
+                                ? endUs - startUs
+                                : (SystemClock.elapsedRealtimeNanos() - hostStartNs) / 1000;
+                results.add(new CommandResult(commands.get(i), exitCode, latencyUs, null));
+            }
+            mInSync = true;
+            if (consumerException != null) {
+                throw consumerException;
+            }
+            return results;
+        }
+
+        @Override
+        public void close() {
+            // Closing the input ends the shell.
+            try {
+                mInput.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close the shell session input.", e);
+            }
+            try {
+                mReader.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close the shell session output.", e);
+            }
+        }
+    }
+
+    /** Splits the output of a shell session into lines and frames ending with the footer. */
+    private class FrameReader implements Closeable {
+        private final InputStream mInput;
+        private final byte[] mBuffer = new byte[BUFFER_SIZE];
+        private int mPosition = 0;
+        private int mLimit = 0;
+        private boolean mEof = false;
+
+        // End of the bytes of the current frame known to be output, and whether the footer
+        // starts there.
+        private int mFrameEnd = 0;
+        private boolean mFooterFound = false;
+        private boolean mInFrame = false;
+
+        private FrameReader(InputStream input) {
+            mInput = input;
+        }
+
+        /** Returns the next line, without its line break, or null at the end of the output. */
+        private String readLine() throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            while (true) {
+                for (int i = mPosition; i < mLimit; i++) {
+                    if (mBuffer[i] == '\n') {
+                        line.write(mBuffer, mPosition, i - mPosition);
+                        mPosition = i + 1;
+                        return line.toString(UTF_8.name());
+                    }
+                }
+                line.write(mBuffer, mPosition, mLimit - mPosition);
+                mPosition = mLimit;
+                if (!fill()) {
+                    return null;
+                }
+            }
+        }
+
+        /** Returns a stream over the output until the next footer, which it consumes. */
+        private InputStream openFrame() {
+            mInFrame = true;
+            mFrameEnd = mPosition;
+            mFooterFound = false;
+            return new InputStream() {
+                @Override
+                public int read() throws IOException {
+                    byte[] b = new byte[1];
+                    return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    return readFrame(b, off, len);
+                }
+            };
+        }
+
+        private int readFrame(byte[] b, int off, int len) throws IOException {
+            if (!mInFrame) {
+                return -1;
+            }
+            while (mPosition == mFrameEnd) {
+                if (mFooterFound) {
+                    mPosition += mFooter.length;
+                    mInFrame = false;
+                    return -1;
+                }
+                findFrameEnd();
+                if (mPosition == mFrameEnd && !mFooterFound) {
+                    if (!fill()) {
+                        throw new EOFException("Shell session ended during a command.");
+                    }
+                }
+            }
+            int length = Math.min(len, mFrameEnd - mPosition);
+            System.arraycopy(mBuffer, mPosition, b, off, length);
+            mPosition += length;
+            return length;
+        }
+
+        /** Look for the footer in the buffer, and update how much of it is output. */
+        private void findFrameEnd() {
+            int last = mLimit - mFooter.length;
+            for (int i = mPosition; i <= last; i++) {
+                int j = 0;
+                while (j < mFooter.length && mBuffer[i + j] == mFooter[j]) {
+                    j++;
+                }
+                if (j == mFooter.length) {
+                    mFrameEnd = i;
+                    mFooterFound = true;
+                    return;
+                }
+            }
+            // The end of the buffer may be the start of the footer, keep it until more is read.
+            mFrameEnd = Math.max(mPosition, last + 1);
+        }
+
+        /** Read more output, returns false at the end of the output. */
+        private boolean fill() throws IOException {
+            if (mEof) {
+                return false;
+            }
+            if (mPosition > 0) {
+                System.arraycopy(mBuffer, mPosition, mBuffer, 0, mLimit - mPosition);
+                mLimit -= mPosition;
+                mFrameEnd -= mPosition;
+                mPosition = 0;
+            }
+            int read = mInput.read(mBuffer, mLimit, mBuffer.length - mLimit);
+            if (read < 0) {
+                mEof = true;
+                return false;
+            }
+            mLimit += read;
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            mInput.close();
+        }
+    }
+}
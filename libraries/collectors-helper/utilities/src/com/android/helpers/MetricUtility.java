@@ -1,11 +1,8 @@
 package com.android.helpers;
 
 import android.app.Instrumentation;
-import android.os.ParcelFileDescriptor;
 import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.ParseException;
@@ -113,24 +110,19 @@ public class MetricUtility {
     }
 
     /**
-     * Turn executeShellCommand into a blocking operation.
+     * Turn executeShellCommand into a blocking operation. The command is run by the shell
+     * sessions of the shared {@link BatchedShellExecutor}.
      *
      * @param command shell command to be executed.
      * @param instr used to run the shell command.
      * @return byte array of execution result
      */
     public static byte[] executeCommandBlocking(String command, Instrumentation instr) {
-        try (InputStream is = new ParcelFileDescriptor.AutoCloseInputStream(instr.getUiAutomation()
-                .executeShellCommand(command));
-                ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            byte[] buf = new byte[BUFFER_SIZE];
-            int length;
+        try {
             Log.i(TAG, "Start reading the data");
-            while ((length = is.read(buf)) >= 0) {
-                out.write(buf, 0, length);
-            }
+            byte[] output = BatchedShellExecutor.getInstance(instr).executeForBytes(command);
             Log.i(TAG, "Stop reading the data");
-            return out.toByteArray();
+            return output;
         } catch (IOException e) {
             Log.e(TAG, "Error executing: " + command, e);
             return null;
@@ -88,6 +88,13 @@ public class BaseMetricListener extends InstrumentationRunListener {
     // to 3. Metric will not be collected for 1st,2nd and 3rd iteration.
     public static final String SKIP_METRIC_UNTIL_ITERATION = "skip_metric_until_iteration";
 
+    // Approximate number of bytes of metrics each DataRecord keeps in memory before spilling
+    // them to files under METRIC_SPILL_DIR. No limit by default.
+    public static final String METRIC_MEMORY_BUDGET = "metric-memory-budget";
+    // Directory, relative to the external storage, where metrics over budget are written.
+    public static final String METRIC_SPILL_DIR = "metric-spill-dir";
+    private static final String DEFAULT_METRIC_SPILL_DIR = "test_results/spilled_metrics";
+
     private static final String NAMESPACE_SEPARATOR = ":";
 
     private DataRecord mRunData;
@@ -101,6 +108,8 @@ public class BaseMetricListener extends InstrumentationRunListener {
     private Map<String, Integer> mTestIdInvocationCount = new HashMap<>();
     private int mCollectIterationInterval = 1;
     private int mSkipMetricUntilIteration = 0;
+    private long mMetricMemoryBudget = 0L;
+    private String mMetricSpillDir = DEFAULT_METRIC_SPILL_DIR;
 
     // Whether to report the results as instrumentation results. Used by metric collector rules,
     // which do not have the information to invoke InstrumentationRunFinished() to report metrics.
@@ -249,9 +258,29 @@ public class BaseMetricListener extends InstrumentationRunListener {
      */
     @VisibleForTesting
     DataRecord createDataRecord() {
+        if (mMetricMemoryBudget > 0) {
+            File spillDir = createDirectory(mMetricSpillDir, false);
+            if (spillDir != null) {
+                return new DataRecord(mMetricMemoryBudget, spillDir);
+            }
+        }
         return new DataRecord();
     }
 
+    /**
+     * Report the metrics accumulated so far in {@code data} as an in-progress status, and clear
+     * them from the record. This lets long running tests or runs emit their metrics in several
+     * batches instead of a single large bundle at the end.
+     *
+     * @param data the {@link DataRecord} to send the metrics of.
+     */
+    protected final void sendMetricBatch(DataRecord data) {
+        if (data == null || !data.hasMetrics()) {
+            return;
+        }
+        SendToInstrumentation.sendBundle(getInstrumentation(), data.drainToBundle());
+    }
+
     // ---------- Interfaces that can be implemented to set up and clean up metric collection.
 
     /** Called if custom set-up is needed for this metric collector. */
@@ -443,6 +472,15 @@ public class BaseMetricListener extends InstrumentationRunListener {
             // Reset to collect for all the iterations.
             mCollectIterationInterval = 1;
         }
+        String metricMemoryBudget = args.getString(METRIC_MEMORY_BUDGET);
+        if (metricMemoryBudget != null) {
+            try {
+                mMetricMemoryBudget = Long.parseLong(metricMemoryBudget);
+            } catch (NumberFormatException e) {
+                Log.e(getTag(), "Invalid metric memory budget: " + metricMemoryBudget, e);
+            }
+        }
+        mMetricSpillDir = args.getString(METRIC_SPILL_DIR, DEFAULT_METRIC_SPILL_DIR);
         String logOnly = args.getString(ARGUMENT_LOG_ONLY);
         if (logOnly != null) {
             mLogOnly = Boolean.parseBoolean(logOnly);
@@ -18,27 +18,90 @@ package android.device.collectors;
 import android.os.Bundle;
 import androidx.annotation.VisibleForTesting;
 
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
 /**
  * Object to hold all the data collected by metric collectors.
+ *
+ * <p>A memory budget can be given so that a record does not grow without bound: once the
+ * approximate size of the retained metrics exceeds it, new binary metrics are written to a file in
+ * the spill directory and reported as a file metric under their key, and new string metrics are
+ * appended to a single spill file reported under {@link #SPILLED_STRING_METRICS_KEY}. A metric
+ * added again replaces its spilled copy.
  */
 public class DataRecord {
+    private static final String LOG_TAG = DataRecord.class.getSimpleName();
+    @VisibleForTesting static final String SPILLED_STRING_METRICS_KEY = "spilled_string_metrics";
+    private static final long UNLIMITED_BUDGET = 0L;
+
     // TODO: expend type supports to more complex type: Object,etc.
     private LinkedHashMap<String, String> mCurrentStringMetrics = new LinkedHashMap<>();
     private LinkedHashMap<String, File> mCurrentFileMetrics = new LinkedHashMap<>();
     private LinkedHashMap<String, byte[]> mCurrentBinaryMetrics = new LinkedHashMap<>();
 
+    private final long mMemoryBudgetBytes;
+    private final File mSpillDir;
+    // Approximate number of bytes held by the in-memory metrics.
+    private long mRetainedBytes = 0L;
+    private File mStringSpillFile;
+    // Keys whose current value is in a spill file.
+    private final Set<String> mSpilledBinaryKeys = new HashSet<>();
+    private final Set<String> mSpilledStringKeys = new HashSet<>();
+
+    public DataRecord() {
+        this(UNLIMITED_BUDGET, null);
+    }
+
+    /**
+     * @param memoryBudgetBytes approximate number of bytes of metrics to keep in memory, 0 for no
+     *     limit.
+     * @param spillDir the directory where metrics exceeding the budget are written.
+     */
+    public DataRecord(long memoryBudgetBytes, File spillDir) {
+        mMemoryBudgetBytes = memoryBudgetBytes;
+        mSpillDir = spillDir;
+    }
+
     /**
      * Add a metric to be tracked by a key.
      *
      * @param key the key under which to find the metric
      * @param value the value associated with the key
      */
-    public void addStringMetric(String key, String value) {
-        mCurrentStringMetrics.put(key, value);
+    public synchronized void addStringMetric(String key, String value) {
+        if (mSpilledStringKeys.remove(key)) {
+            removeSpilledStringMetric(key);
+        }
+        long size = sizeOf(key) + sizeOf(value);
+        if (exceedsBudget(size, sizeOf(key) + sizeOf(mCurrentStringMetrics.get(key)))
+                && spillStringMetric(key, value)) {
+            // The spilled value replaces any earlier one kept in memory.
+            String previous = mCurrentStringMetrics.remove(key);
+            if (previous != null) {
+                mRetainedBytes -= sizeOf(key) + sizeOf(previous);
+            }
+            return;
+        }
+        String previous = mCurrentStringMetrics.put(key, value);
+        mRetainedBytes += size - (previous == null ? 0 : sizeOf(key) + sizeOf(previous));
     }
 
     /**
@@ -48,7 +111,7 @@ public class DataRecord {
      * @param fileKey the key under which the file will be found.
      * @param value the {@link File} associated to the key.
      */
-    public void addFileMetric(String fileKey, File value) {
+    public synchronized void addFileMetric(String fileKey, File value) {
         mCurrentFileMetrics.put(fileKey, value);
     }
 
@@ -58,18 +121,41 @@ public class DataRecord {
      * @param key the key under which to find the metric
      * @param value the byte[] value associated with the key
      */
-    public void addBinaryMetric(String key, byte[] value) {
-        mCurrentBinaryMetrics.put(key, value);
+    public synchronized void addBinaryMetric(String key, byte[] value) {
+        if (value == null) {
+            throw new IllegalArgumentException(
+                    String.format("Binary metric %s can't have a null value.", key));
+        }
+        if (mSpilledBinaryKeys.remove(key)) {
+            File spilled = mCurrentFileMetrics.remove(key);
+            if (spilled != null && !spilled.delete()) {
+                Log.w(LOG_TAG, String.format("Failed to delete spilled metric %s.", spilled));
+            }
+        }
+        long size = sizeOf(key) + value.length;
+        byte[] current = mCurrentBinaryMetrics.get(key);
+        if (exceedsBudget(size, current == null ? 0 : sizeOf(key) + current.length)
+                && spillBinaryMetric(key, value)) {
+            return;
+        }
+        byte[] previous = mCurrentBinaryMetrics.put(key, value);
+        mRetainedBytes += size - (previous == null ? 0 : sizeOf(key) + previous.length);
     }
 
     /**
      * Returns True if the {@link DataRecord} already contains some metrics, False otherwise.
      */
-    public boolean hasMetrics() {
+    public synchronized boolean hasMetrics() {
         return (mCurrentStringMetrics.size() + mCurrentFileMetrics.size()
                 + mCurrentBinaryMetrics.size()) > 0;
     }
 
+    /** Returns the approximate number of bytes held in memory by the metrics. */
+    @VisibleForTesting
+    synchronized long getRetainedBytes() {
+        return mRetainedBytes;
+    }
+
     /**
      * Returns all the string and file data received so far to the map of metrics that will be
      * reported.
@@ -87,7 +173,7 @@ public class DataRecord {
      * Create a {@link Bundle} and populate it with the metrics, or return null if no metrics are
      * available.
      */
-    final Bundle createBundleFromMetrics() {
+    final synchronized Bundle createBundleFromMetrics() {
         Map<String, String> map = getStringMetrics();
         Bundle b = createBundle();
         for (String key : map.keySet()) {
@@ -99,6 +185,16 @@ public class DataRecord {
         return b;
     }
 
+    /**
+     * Atomically create a {@link Bundle} of the metrics and clear them, so that the following
+     * metrics can be reported in a separate batch.
+     */
+    final synchronized Bundle drainToBundle() {
+        Bundle b = createBundleFromMetrics();
+        clear();
+        return b;
+    }
+
     /**
      * Create a {@link Bundle} that will hold the metrics. Exposed for testing.
      */
@@ -107,9 +203,91 @@ public class DataRecord {
         return new Bundle();
     }
 
-    final void clear() {
+    final synchronized void clear() {
         mCurrentStringMetrics.clear();
         mCurrentFileMetrics.clear();
         mCurrentBinaryMetrics.clear();
+        mRetainedBytes = 0L;
+        // Files already reported stay on the device, following metrics go to a new one.
+        mStringSpillFile = null;
+        mSpilledBinaryKeys.clear();
+        mSpilledStringKeys.clear();
+    }
+
+    private boolean exceedsBudget(long addedBytes, long replacedBytes) {
+        return mMemoryBudgetBytes > UNLIMITED_BUDGET
+                && mSpillDir != null
+                && mRetainedBytes - replacedBytes + addedBytes > mMemoryBudgetBytes;
+    }
+
+    /** Write a binary metric to its own file. Returns false if it should be kept in memory. */
+    private boolean spillBinaryMetric(String key, byte[] value) {
+        File file =
+                new File(mSpillDir, String.format("%s-%s.bin", sanitize(key), UUID.randomUUID()));
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            out.write(value);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, String.format("Failed to spill binary metric %s.", key), e);
+            return false;
+        }
+        byte[] previous = mCurrentBinaryMetrics.remove(key);
+        if (previous != null) {
+            mRetainedBytes -= sizeOf(key) + previous.length;
+        }
+        mCurrentFileMetrics.put(key, file);
+        mSpilledBinaryKeys.add(key);
+        return true;
+    }
+
+    /**
+     * Append a string metric to the spill file of this record, one "key=value" line per metric
+     * with line breaks in the value escaped. Returns false if it should be kept in memory.
+     */
+    private boolean spillStringMetric(String key, String value) {
+        File file = mStringSpillFile;
+        if (file == null) {
+            file = new File(mSpillDir, String.format("string_metrics-%s.txt", UUID.randomUUID()));
+        }
+        try (Writer writer = new BufferedWriter(new FileWriter(file, true))) {
+            writer.append(key).append('=');
+            writer.append(value.replace("\\", "\\\\").replace("\n", "\\n"));
+            writer.append('\n');
+        } catch (IOException e) {
+            Log.e(LOG_TAG, String.format("Failed to spill string metric %s.", key), e);
+            return false;
+        }
+        if (mStringSpillFile == null) {
+            mStringSpillFile = file;
+            mCurrentFileMetrics.put(SPILLED_STRING_METRICS_KEY, file);
+        }
+        mSpilledStringKeys.add(key);
+        return true;
+    }
+
+    /** Rewrite the spill file of this record without the line of {@code key}. */
+    private void removeSpilledStringMetric(String key) {
+        String prefix = key + "=";
+        try {
+            List<String> lines =
+                    Files.readAllLines(mStringSpillFile.toPath(), StandardCharsets.UTF_8);
+            List<String> kept = new ArrayList<>(lines.size());
+            for (String line : lines) {
+                if (!line.startsWith(prefix)) {
+                    kept.add(line);
+                }
+            }
+            Files.write(mStringSpillFile.toPath(), kept, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, String.format("Failed to remove spilled string metric %s.", key), e);
+        }
+    }
+
+    private static long sizeOf(String value) {
+        // Strings are stored as UTF-16.
+        return value == null ? 0 : 2L * value.length();
+    }
+
+    private static String sanitize(String key) {
+        return key.replaceAll("[^A-Za-z0-9._-]", "_");
     }
 }
@@ -43,6 +43,8 @@ public class DumpsysMeminfoListener extends BaseCollectionListener<Long> {
     // com.android.systemui:View#ViewRootImpl#Proxy_Binders,com.google.android.apps.nexuslauncher:View
     @VisibleForTesting
     static final String PROCESS_NAMES_OBJECT_NAMES_KEY = "process-names-object-names";
+    // Report the time taken by the dumpsys command of each process.
+    @VisibleForTesting static final String REPORT_COMMAND_LATENCY_KEY = "report-command-latency";
 
     private DumpsysMeminfoHelper mDumpsysMeminfoHelper = new DumpsysMeminfoHelper();
 
@@ -59,6 +61,8 @@ public class DumpsysMeminfoListener extends BaseCollectionListener<Long> {
     @Override
     public void setupAdditionalArgs() {
         Bundle args = getArgsBundle();
+        mDumpsysMeminfoHelper.setReportCommandLatency(
+                Boolean.parseBoolean(args.getString(REPORT_COMMAND_LATENCY_KEY)));
         String processesString = args.getString(PROCESS_NAMES_KEY, "");
         String processObjectString = args.getString(PROCESS_NAMES_OBJECT_NAMES_KEY, "");
         if (processesString.isEmpty() && processObjectString.isEmpty()) {
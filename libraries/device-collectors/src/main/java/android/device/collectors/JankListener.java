@@ -35,6 +35,7 @@ public class JankListener extends BaseCollectionListener<Double> {
 
     @VisibleForTesting static final String PACKAGE_SEPARATOR = ",";
     @VisibleForTesting static final String PACKAGE_NAMES_KEY = "jank-package-names";
+    @VisibleForTesting static final String FRAMESTATS_KEY = "jank-framestats";
 
     public JankListener() {
         createHelperInstance(new JankCollectionHelper());
@@ -59,6 +60,8 @@ public class JankListener extends BaseCollectionListener<Double> {
                             .filter(item -> !item.isEmpty())
                             .toArray(String[]::new);
             ((JankCollectionHelper) mHelper).addTrackedPackages(splitPkgs);
+            ((JankCollectionHelper) mHelper)
+                    .setFrameStatsEnabled(Boolean.parseBoolean(args.getString(FRAMESTATS_KEY)));
         } else {
             Log.v(LOG_TAG, "Tracking all packages for jank.");
         }
@@ -38,6 +38,9 @@ import java.text.SimpleDateFormat;
  * This class needs external storage permission. See {@link BaseMetricListener} how to grant
  * external storage permission, especially at install time.
  *
+ * <p>With the {@link #STREAM_LOGCAT} option, a single logcat process streams the log for the whole
+ * run into a {@link LogcatStream}, and the logcat of each test is sliced out of it between markers
+ * logged at the start and end of the test, instead of starting a logcat process per test.
  */
 @OptionClass(alias = "logcat-collector")
 public class LogcatCollector extends BaseMetricListener {
@@ -51,6 +54,18 @@ public class LogcatCollector extends BaseMetricListener {
     @VisibleForTesting static final String COLLECT_ON_FAILURE_ONLY = "collect-on-failure-only";
     @VisibleForTesting static final String RETURN_LOGCAT_DIR = "return-logcat-directory";
     @VisibleForTesting static final String DEFAULT_DIR = "run_listeners/logcats";
+    // Stream the logcat with a single process for the whole run. The before duration option is
+    // not supported in this mode, the logcat of a test starts at its start marker.
+    @VisibleForTesting static final String STREAM_LOGCAT = "stream-logcat";
+    // Size in bytes of each file of the stream ring.
+    @VisibleForTesting static final String STREAM_SEGMENT_BYTES = "stream-logcat-segment-bytes";
+    // Number of files kept in the stream ring.
+    @VisibleForTesting static final String STREAM_SEGMENTS = "stream-logcat-segments";
+    @VisibleForTesting static final String STREAM_DIR = "run_listeners/logcat_stream";
+    private static final long DEFAULT_STREAM_SEGMENT_BYTES = 32 * 1024 * 1024;
+    private static final int DEFAULT_STREAM_SEGMENTS = 4;
+    // Maximum time to wait for the end marker of a test to be streamed.
+    private static final long STREAM_MARK_TIMEOUT_MS = 5000;
 
     private static final int BUFFER_SIZE = 16 * 1024;
 
@@ -66,6 +81,12 @@ public class LogcatCollector extends BaseMetricListener {
     // otherwise individual logcat file will be reported associated with the test.
     // The final directory which contains all the logcat files will be <DEFAULT_DIR>_all.
     private boolean mReturnLogcatDir = false;
+    private boolean mStreamLogcat = false;
+    private long mStreamSegmentBytes = DEFAULT_STREAM_SEGMENT_BYTES;
+    private int mStreamSegments = DEFAULT_STREAM_SEGMENTS;
+    private LogcatStream mStream;
+    // Stream marker logged at the start of the current test.
+    private long mStartMark = -1;
 
     // Map to keep track of test iterations for multiple test iterations.
     private HashMap<Description, Integer> mTestIterations = new HashMap<>();
@@ -86,9 +107,13 @@ public class LogcatCollector extends BaseMetricListener {
     @Override
     public void onTestRunStart(DataRecord runData, Description description) {
         mDestDir = createAndEmptyDirectory(DEFAULT_DIR);
+        if (mStreamLogcat) {
+            startLogcatStream();
+        }
         // Capture the start time in case onTestStart() is never called due to failure during
         // @BeforeClass.
         mStartTime = getLogcatStartTime();
+        mStartMark = markLogcatStream();
     }
 
     @Override
@@ -97,6 +122,7 @@ public class LogcatCollector extends BaseMetricListener {
         // Overwrites any start time set prior to the test and adds custom
         // duration to capture before current start time.
         mStartTime = getLogcatStartTime();
+        mStartMark = markLogcatStream();
         // Keep track of test iterations.
         mTestIterations.computeIfPresent(description, (desc, iteration) -> iteration + 1);
         mTestIterations.computeIfAbsent(description, desc -> 1);
@@ -117,6 +143,7 @@ public class LogcatCollector extends BaseMetricListener {
      */
     @Override
     public void onTestEnd(DataRecord testData, Description description) {
+        long endMark = markLogcatStream();
         if (!mCollectOnlyTestFailed || (mCollectOnlyTestFailed && mTestFailed)) {
             // Capture logcat from start time
             if (mDestDir == null) {
@@ -132,7 +159,11 @@ public class LogcatCollector extends BaseMetricListener {
                                 iteration == 1 ? "" : (METRIC_SEP + String.valueOf(iteration)),
                                 METRIC_SEP + FILENAME_SUFFIX);
                 File logcat = new File(mDestDir, fileName);
-                getLogcatSince(mStartTime, logcat);
+                if (mStream != null) {
+                    getLogcatBetweenMarks(mStartMark, endMark, logcat);
+                } else {
+                    getLogcatSince(mStartTime, logcat);
+                }
                 if (!mReturnLogcatDir) {
                     // Do not return individual logcat file path if the logcat directory
                     // option is enabled. Logcat root directory path will be returned in the
@@ -150,6 +181,10 @@ public class LogcatCollector extends BaseMetricListener {
         // Update the start time here in case onTestStart() is not called for the next test. If it
         // is called, the start time will be overwritten.
         mStartTime = getLogcatStartTime();
+        if (mStream != null) {
+            mStream.releaseMarksBefore(endMark);
+        }
+        mStartMark = endMark;
     }
 
     @Override
@@ -157,6 +192,38 @@ public class LogcatCollector extends BaseMetricListener {
         if (mReturnLogcatDir) {
             runData.addStringMetric(getTag(), mDestDir.getAbsolutePath().toString());
         }
+        if (mStream != null) {
+            mStream.close();
+            mStream = null;
+        }
+    }
+
+    /** Start streaming the logcat, falling back to a logcat per test if it fails. */
+    private void startLogcatStream() {
+        mStream =
+                new LogcatStream(
+                        createAndEmptyDirectory(STREAM_DIR), mStreamSegmentBytes, mStreamSegments);
+        try {
+            mStream.start();
+        } catch (IOException | InterruptedException e) {
+            Log.e(getTag(), "Failed to start the logcat stream, using a logcat per test.", e);
+            mStream.close();
+            mStream = null;
+        }
+    }
+
+    /** Log a marker to the logcat stream if any, and return its id. */
+    private long markLogcatStream() {
+        return mStream != null ? mStream.mark() : -1;
+    }
+
+    /** Save the streamed logcat between the markers {@code startMark} and {@code endMark}. */
+    @VisibleForTesting
+    protected void getLogcatBetweenMarks(long startMark, long endMark, File saveTo)
+            throws IOException, InterruptedException {
+        long startOffset = mStream.awaitMark(startMark, STREAM_MARK_TIMEOUT_MS);
+        long endOffset = mStream.awaitMark(endMark, STREAM_MARK_TIMEOUT_MS);
+        mStream.slice(startOffset, endOffset, saveTo);
     }
 
     /** @hide */
@@ -204,5 +271,29 @@ public class LogcatCollector extends BaseMetricListener {
                     .parseBoolean(args.getString(RETURN_LOGCAT_DIR));
         }
 
+        mStreamLogcat = Boolean.parseBoolean(args.getString(STREAM_LOGCAT));
+        if (args.getString(STREAM_SEGMENT_BYTES) != null) {
+            try {
+                mStreamSegmentBytes = Long.parseLong(args.getString(STREAM_SEGMENT_BYTES));
+            } catch (NumberFormatException e) {
+                Log.e(getTag(), "Failed to parse the stream segment size.", e);
+            }
+            if (mStreamSegmentBytes <= 0) {
+                Log.e(getTag(), "Stream segment size must be positive, using the default.");
+                mStreamSegmentBytes = DEFAULT_STREAM_SEGMENT_BYTES;
+            }
+        }
+        if (args.getString(STREAM_SEGMENTS) != null) {
+            try {
+                mStreamSegments = Integer.parseInt(args.getString(STREAM_SEGMENTS));
+            } catch (NumberFormatException e) {
+                Log.e(getTag(), "Failed to parse the stream segment count.", e);
+            }
+            if (mStreamSegments <= 0) {
+                Log.e(getTag(), "Stream segment count must be positive, using the default.");
+                mStreamSegments = DEFAULT_STREAM_SEGMENTS;
+            }
+        }
+
     }
 }
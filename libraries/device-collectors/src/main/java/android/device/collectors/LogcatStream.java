@@ -0,0 +1,375 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.device.collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single long-lived logcat reader streaming into a ring of segment files, from which the logs
+ * between two points of the run are sliced without starting a new logcat process.
+ *
+ * <p>Points of the run are recorded with {@link #mark()}, which logs a marker line. The reader
+ * records the offset of each marker line in the stream, so slices are delimited by the position
+ * of the markers in the log itself rather than by wall clock timestamps. Slices are copied out of
+ * the segments with {@link FileChannel#transferTo}, without going through the Java heap.
+ */
+class LogcatStream {
+    private static final String LOG_TAG = LogcatStream.class.getSimpleName();
+    @VisibleForTesting static final String MARKER_PREFIX = "logcat-stream-mark:";
+    // Follow the log, starting from its last line.
+    @VisibleForTesting
+    static final List<String> LOGCAT_COMMAND = Arrays.asList("logcat", "-T", "1");
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Maximum time to wait for logcat to attach to the log when starting.
+    private static final long START_TIMEOUT_MS = 2000;
+
+    private final List<String> mCommand;
+    private final File mDir;
+    private final long mSegmentBytes;
+    private final int mMaxSegments;
+    // Marker of this stream, distinguishes it from markers of other streams in the log.
+    private final byte[] mMarker;
+    private final AtomicLong mNextMarkId = new AtomicLong();
+
+    private final Object mLock = new Object();
+    // Segments still on disk, oldest first. Guarded by mLock.
+    private final Deque<Segment> mSegments = new ArrayDeque<>();
+    // Stream offset of each marker line seen by the reader. Guarded by mLock.
+    private final Map<Long, Long> mMarkOffsets = new HashMap<>();
+    // Number of bytes written to the segments so far. Guarded by mLock.
+    private long mOffset = 0;
+
+    private Process mProcess;
+    private Thread mReader;
+    private FileOutputStream mOutput;
+    private int mSegmentCount = 0;
+
+    /**
+     * @param dir the directory holding the segment files.
+     * @param segmentBytes the size after which a segment is closed and a new one started.
+     * @param maxSegments the number of segments kept on disk, the oldest ones are deleted.
+     */
+    LogcatStream(File dir, long segmentBytes, int maxSegments) {
+        this(LOGCAT_COMMAND, dir, segmentBytes, maxSegments);
+    }
+
+    @VisibleForTesting
+    LogcatStream(List<String> command, File dir, long segmentBytes, int maxSegments) {
+        if (segmentBytes <= 0 || maxSegments <= 0) {
+            throw new IllegalArgumentException("Segment size and count must be positive.");
+        }
+        mCommand = command;
+        mDir = dir;
+        mSegmentBytes = segmentBytes;
+        mMaxSegments = maxSegments;
+        mMarker = (MARKER_PREFIX + UUID.randomUUID().toString().substring(0, 8) + ":")
+                .getBytes(UTF_8);
+    }
+
+    /**
+     * Start the logcat process and the reader thread. Returns once logcat follows the log, so
+     * that the following markers are seen by the reader.
+     */
+    void start() throws IOException, InterruptedException {
+        openSegment();
+        ProcessBuilder pb = new ProcessBuilder(mCommand);
+        pb.redirectErrorStream(true);
+        mProcess = pb.start();
+        mReader = new Thread(() -> read(mProcess.getInputStream()), LOG_TAG);
+        mReader.setDaemon(true);
+        mReader.start();
+        long deadline = SystemClock.uptimeMillis() + START_TIMEOUT_MS;
+        synchronized (mLock) {
+            long remaining;
+            while (mOffset == 0
+                    && mReader.isAlive()
+                    && (remaining = deadline - SystemClock.uptimeMillis()) > 0) {
+                mLock.wait(remaining);
+            }
+        }
+    }
+
+    /** Log a new marker and return its id, to later pass to {@link #awaitMark(long, long)}. */
+    long mark() {
+        long id = mNextMarkId.getAndIncrement();
+        Log.i(LOG_TAG, new String(mMarker, UTF_8) + id);
+        return id;
+    }
+
+    /**
+     * Wait for the reader to reach the marker {@code id}.
+     *
+     * @return the stream offset of the marker line, or the current offset of the stream if the
+     *     marker was not seen before the timeout.
+     */
+    long awaitMark(long id, long timeoutMs) throws InterruptedException {
+        long deadline = SystemClock.uptimeMillis() + timeoutMs;
+        synchronized (mLock) {
+            Long offset;
+            while ((offset = mMarkOffsets.get(id)) == null) {
+                long remaining = deadline - SystemClock.uptimeMillis();
+                if (remaining <= 0 || mReader == null || !mReader.isAlive()) {
+                    Log.w(LOG_TAG, String.format("Marker %d not seen, using current offset.", id));
+                    return mOffset;
+                }
+                mLock.wait(remaining);
+            }
+            return offset;
+        }
+    }
+
+    /** Forget the offsets of the markers before {@code id}. */
+    void releaseMarksBefore(long id) {
+        synchronized (mLock) {
+            mMarkOffsets.keySet().removeIf(markId -> markId < id);
+        }
+    }
+
+    /**
+     * Copy the bytes of the stream in [{@code start}, {@code end}) to {@code saveTo}. Bytes of the
+     * segments already deleted from the ring are skipped.
+     */
+    void slice(long start, long end, File saveTo) throws IOException {
+        List<Segment> segments = new ArrayList<>();
+        synchronized (mLock) {
+            for (Segment segment : mSegments) {
+                segments.add(segment.copy());
+            }
+        }
+        if (!segments.isEmpty() && start < segments.get(0).mBaseOffset) {
+            Log.w(LOG_TAG, "Start of the slice already rotated out of the ring, truncating.");
+        }
+        try (FileOutputStream output = new FileOutputStream(saveTo);
+                FileChannel out = output.getChannel()) {
+            for (Segment segment : segments) {
+                long from = Math.max(start, segment.mBaseOffset);
+                long to = Math.min(end, segment.mBaseOffset + segment.mLength);
+                if (from >= to) {
+                    continue;
+                }
+                try (FileInputStream input = new FileInputStream(segment.mFile);
+                        FileChannel in = input.getChannel()) {
+                    long position = from - segment.mBaseOffset;
+                    long remaining = to - from;
+                    while (remaining > 0) {
+                        long transferred = in.transferTo(position, remaining, out);
+                        if (transferred <= 0) {
+                            break;
+                        }
+                        position += transferred;
+                        remaining -= transferred;
+                    }
+                } catch (FileNotFoundException e) {
+                    // Rotated out while slicing.
+                    Log.w(LOG_TAG, "Segment deleted while slicing: " + segment.mFile);
+                }
+            }
+        }
+    }
+
+    /** Returns the number of bytes streamed so far. */
+    long getOffset() {
+        synchronized (mLock) {
+            return mOffset;
+        }
+    }
+
+    /** Stop the logcat process and delete the segments. */
+    void close() {
+        if (mProcess != null) {
+            mProcess.destroy();
+        }
+        if (mReader != null) {
+            try {
+                mReader.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (mLock) {
+            closeOutput();
+            for (Segment segment : mSegments) {
+                segment.mFile.delete();
+            }
+            mSegments.clear();
+            mMarkOffsets.clear();
+            mLock.notifyAll();
+        }
+    }
+
+    private void read(InputStream input) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        // Bytes at the start of the buffer which are not part of a complete line yet.
+        int pending = 0;
+        List<Long> markIds = new ArrayList<>();
+        List<Integer> markPositions = new ArrayList<>();
+        try {
+            int read;
+            while ((read = input.read(buffer, pending, buffer.length - pending)) != -1) {
+                int filled = pending + read;
+                int end = filled;
+                // Only write complete lines, unless a single line fills the buffer.
+                while (end > 0 && buffer[end - 1] != '\n') {
+                    end--;
+                }
+                if (end == 0 && filled == buffer.length) {
+                    end = filled;
+                }
+                findMarks(buffer, end, markIds, markPositions);
+                write(buffer, end, markIds, markPositions);
+                markIds.clear();
+                markPositions.clear();
+                pending = filled - end;
+                System.arraycopy(buffer, end, buffer, 0, pending);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Logcat stream interrupted.", e);
+        } finally {
+            synchronized (mLock) {
+                // Wake up the waiters, no marker will be seen anymore.
+                mLock.notifyAll();
+            }
+        }
+    }
+
+    /** Find the marker lines in the {@code length} first bytes of {@code buffer}. */
+    private void findMarks(
+            byte[] buffer, int length, List<Long> markIds, List<Integer> markPositions) {
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            if (buffer[i] != '\n') {
+                continue;
+            }
+            int markerEnd = indexOf(buffer, lineStart, i, mMarker);
+            if (markerEnd >= 0) {
+                long id = 0;
+                int digits = 0;
+                for (int j = markerEnd; j < i && buffer[j] >= '0' && buffer[j] <= '9'; j++) {
+                    id = id * 10 + (buffer[j] - '0');
+                    digits++;
+                }
+                if (digits > 0) {
+                    markIds.add(id);
+                    markPositions.add(lineStart);
+                }
+            }
+            lineStart = i + 1;
+        }
+    }
+
+    /** Returns the index right after {@code pattern} in {@code buffer[from, to)}, or -1. */
+    private static int indexOf(byte[] buffer, int from, int to, byte[] pattern) {
+        outer:
+        for (int i = from; i <= to - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (buffer[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i + pattern.length;
+        }
+        return -1;
+    }
+
+    private void write(byte[] buffer, int length, List<Long> markIds, List<Integer> markPositions)
+            throws IOException {
+        if (length == 0) {
+            return;
+        }
+        synchronized (mLock) {
+            if (mOutput == null) {
+                // Closed.
+                return;
+            }
+            mOutput.write(buffer, 0, length);
+            // Publish the markers once the bytes before them are readable from the segment.
+            for (int i = 0; i < markIds.size(); i++) {
+                mMarkOffsets.put(markIds.get(i), mOffset + markPositions.get(i));
+            }
+            mOffset += length;
+            mSegments.getLast().mLength += length;
+            if (mSegments.getLast().mLength >= mSegmentBytes) {
+                openSegment();
+            }
+            mLock.notifyAll();
+        }
+    }
+
+    /** Close the current segment if any, and start a new one. */
+    private void openSegment() throws IOException {
+        synchronized (mLock) {
+            closeOutput();
+            File file = new File(mDir, String.format("logcat-stream-%d.txt", mSegmentCount++));
+            mOutput = new FileOutputStream(file);
+            mSegments.addLast(new Segment(file, mOffset));
+            while (mSegments.size() > mMaxSegments) {
+                mSegments.removeFirst().mFile.delete();
+            }
+        }
+    }
+
+    private void closeOutput() {
+        if (mOutput == null) {
+            return;
+        }
+        try {
+            mOutput.close();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Failed to close the logcat segment.", e);
+        }
+        mOutput = null;
+    }
+
+    /** A file of the ring, holding the bytes of the stream from its base offset. */
+    private static class Segment {
+        private final File mFile;
+        private final long mBaseOffset;
+        private long mLength = 0;
+
+        private Segment(File file, long baseOffset) {
+            mFile = file;
+            mBaseOffset = baseOffset;
+        }
+
+        private Segment copy() {
+            Segment copy = new Segment(mFile, mBaseOffset);
+            copy.mLength = mLength;
+            return copy;
+        }
+    }
+}
@@ -86,6 +86,16 @@ public class PerfettoListener extends BaseMetricListener {
     public static final String SPACES_PATTERN = "\\s+";
     // Space replacement value
     public static final String REPLACEMENT_CHAR = "#";
+    // Finalize (flush and move) the per test traces in the background while the next test runs.
+    // The traces are then only reported once finalized, at the end of the run, as run metrics
+    // under keys starting with perfetto_file_path and followed by the trace file name.
+    public static final String PERFETTO_ASYNC_FINALIZE = "perfetto_async_finalize";
+    // Number of traces waiting to be finalized above which the end of a test blocks.
+    public static final String PERFETTO_MAX_PENDING_TRACES = "perfetto_max_pending_traces";
+    // Default number of traces waiting to be finalized.
+    public static final String DEFAULT_MAX_PENDING_TRACES = "2";
+    // Maximum time to wait for the pending traces at the end of the run.
+    private static final long PENDING_TRACES_TIMEOUT_MS = 5 * 60 * 1000;
 
     private final WakeLockContext mWakeLockContext;
     private final Supplier<WakeLock> mWakelockSupplier;
@@ -112,6 +122,7 @@ public class PerfettoListener extends BaseMetricListener {
     private boolean mPerfettoStartBgWait = true;
     private boolean mSkipTestFailureMetrics;
     private boolean mIsTestFailed = false;
+    private boolean mAsyncFinalize;
 
     private PerfettoHelper mPerfettoHelper = new PerfettoHelper();
 
@@ -219,6 +230,13 @@ public class PerfettoListener extends BaseMetricListener {
         if (mSkipTestFailureMetrics && mIsTestFailed) {
             Log.i(getTag(), "Skipping the metric collection due to test failure.");
             // Stop the existing perfetto trace collection.
+            if (mAsyncFinalize) {
+                // Discard the trace in the background.
+                if (!mPerfettoHelper.stopCollectingAsync(0, null)) {
+                    Log.e(getTag(), "Failed to stop the perfetto process.");
+                }
+                return;
+            }
             try {
                 if (!mPerfettoHelper.stopPerfetto()) {
                     Log.e(getTag(), "Failed to stop the perfetto process.");
@@ -243,7 +261,11 @@ public class PerfettoListener extends BaseMetricListener {
                                                 getTestFileName(description),
                                                 mTestIdInvocationCount.get(
                                                         getTestFileName(description))));
-                        stopPerfettoTracing(path, testData);
+                        if (mAsyncFinalize) {
+                            stopPerfettoTracingAsync(path);
+                        } else {
+                            stopPerfettoTracing(path, testData);
+                        }
                     };
             if (mHoldWakelockWhileCollecting) {
                 Log.d(getTag(), "Holding a wakelock at onTestEnd.");
@@ -256,6 +278,19 @@ public class PerfettoListener extends BaseMetricListener {
 
     @Override
     public void onTestRunEnd(DataRecord runData, Result result) {
+        if (mAsyncFinalize) {
+            if (!mPerfettoHelper.awaitPendingTraces(PENDING_TRACES_TIMEOUT_MS)) {
+                Log.e(
+                        getTag(),
+                        "Timed out waiting for the perfetto traces to be finalized, only the"
+                                + " finalized traces are reported.");
+            }
+            for (String trace : mPerfettoHelper.takeFinalizedTraces()) {
+                runData.addStringMetric(
+                        String.format("%s_%s", PERFETTO_FILE_PATH, Paths.get(trace).getFileName()),
+                        trace);
+            }
+        }
         if (!mIsCollectPerRun) {
             return;
         }
@@ -344,6 +379,29 @@ public class PerfettoListener extends BaseMetricListener {
 
         // By default this flag is set to false to collect the metrics on test failure.
         mSkipTestFailureMetrics = "true".equals(args.getString(SKIP_TEST_FAILURE_METRICS));
+
+        // Finalize the traces in the background, only useful when collecting per test.
+        mAsyncFinalize =
+                !mIsCollectPerRun
+                        && Boolean.parseBoolean(args.getString(PERFETTO_ASYNC_FINALIZE));
+        if (mAsyncFinalize) {
+            int maxPendingTraces = Integer.parseInt(DEFAULT_MAX_PENDING_TRACES);
+            String maxPendingTracesArg = args.getString(PERFETTO_MAX_PENDING_TRACES);
+            if (maxPendingTracesArg != null) {
+                try {
+                    maxPendingTraces = Integer.parseInt(maxPendingTracesArg);
+                } catch (NumberFormatException e) {
+                    Log.e(getTag(), "Invalid max pending traces: " + maxPendingTracesArg, e);
+                }
+            }
+            if (maxPendingTraces < 1) {
+                Log.e(getTag(), String.format(
+                        "Max pending traces must be positive, using %s.",
+                        DEFAULT_MAX_PENDING_TRACES));
+                maxPendingTraces = Integer.parseInt(DEFAULT_MAX_PENDING_TRACES);
+            }
+            mPerfettoHelper.setAsyncFinalization(maxPendingTraces);
+        }
     }
 
     @VisibleForTesting
@@ -424,6 +482,17 @@ public class PerfettoListener extends BaseMetricListener {
         }
     }
 
+    /**
+     * Stop perfetto tracing and schedule the move of the trace file to the given path in the
+     * background. The path of the trace file is only reported at the end of the run, once the
+     * trace is finalized, since the file may be missing or incomplete until then.
+     */
+    private void stopPerfettoTracingAsync(Path path) {
+        if (!mPerfettoHelper.stopCollectingAsync(mWaitTimeInMs, path.toString())) {
+            Log.e(getTag(), "Failed to stop the perfetto collection.");
+        }
+    }
+
     /**
      * Returns the packagename.classname_methodname which has no spaces and used to create file
      * names.
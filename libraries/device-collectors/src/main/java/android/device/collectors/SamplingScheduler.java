@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.device.collectors;
+
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Process wide scheduler shared by all the {@link ScheduledRunMetricListener}s of a run.
+ *
+ * <p>All samplers are placed on the same time grid, anchored when the scheduler becomes active:
+ * the n-th tick of a sampler with interval {@code i} is due at {@code origin + n * i}, so
+ * collectors with the same (or multiple) intervals wake up together, and the schedule does not
+ * drift with the duration of a collection. A sampler never runs concurrently with itself: if a
+ * collection overruns one or more ticks, those ticks are skipped rather than queued up.
+ */
+final class SamplingScheduler {
+    private static final String LOG_TAG = SamplingScheduler.class.getSimpleName();
+    // Enough to keep a slow collector from delaying the others on the same tick.
+    private static final int WORKER_THREADS = 2;
+
+    private static SamplingScheduler sInstance;
+
+    private final Set<Sampler> mSamplers = new HashSet<>();
+    private final LongSupplier mClock;
+    private final Supplier<Timer> mTimerFactory;
+    private Timer mTimer;
+    private long mOriginMs;
+
+    /** Task run at every tick of a {@link Sampler}. */
+    interface SampleTask {
+        /**
+         * @param sampler the {@link Sampler} running the task, holding the current sample timing.
+         */
+        void sample(Sampler sampler) throws InterruptedException;
+    }
+
+    /** Runs the ticks of the samplers, replaced in tests to control the time. */
+    @VisibleForTesting
+    interface Timer {
+        /**
+         * Run {@code task} once {@code delayMs} milliseconds have passed.
+         *
+         * @return the {@link Future} to cancel the task.
+         */
+        Future<?> schedule(Runnable task, long delayMs);
+
+        /** Release the threads of the timer. Tasks not started yet are not run anymore. */
+        void shutdown();
+    }
+
+    private SamplingScheduler() {
+        this(SystemClock::uptimeMillis, ExecutorTimer::new);
+    }
+
+    /**
+     * @param clock the uptime in milliseconds.
+     * @param timerFactory creates the {@link Timer} used while samplers are registered.
+     */
+    @VisibleForTesting
+    SamplingScheduler(LongSupplier clock, Supplier<Timer> timerFactory) {
+        mClock = clock;
+        mTimerFactory = timerFactory;
+    }
+
+    /** Returns the scheduler shared by the instrumentation process. */
+    static synchronized SamplingScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new SamplingScheduler();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Register a new periodic task. The first sample is taken right away, the following ones on
+     * the shared tick grid.
+     *
+     * @param name the name of the sampler, used for logging.
+     * @param intervalMs the interval between two samples in milliseconds.
+     * @param task the {@link SampleTask} to run.
+     * @return the {@link Sampler} to later pass to {@link #unregister(Sampler)}.
+     */
+    synchronized Sampler register(String name, long intervalMs, SampleTask task) {
+        if (intervalMs <= 0) {
+            throw new IllegalArgumentException("Sampling interval must be positive: " + intervalMs);
+        }
+        if (mTimer == null) {
+            mTimer = mTimerFactory.get();
+            mOriginMs = mClock.getAsLong();
+        }
+        Sampler sampler = new Sampler(name, intervalMs, task);
+        mSamplers.add(sampler);
+        sampler.schedule(mClock.getAsLong());
+        return sampler;
+    }
+
+    /**
+     * Stop a periodic task. A collection already in progress is not interrupted. The scheduler
+     * threads are released once no sampler is left.
+     */
+    synchronized void unregister(Sampler sampler) {
+        sampler.cancel();
+        mSamplers.remove(sampler);
+        if (mSamplers.isEmpty() && mTimer != null) {
+            mTimer.shutdown();
+            mTimer = null;
+        }
+    }
+
+    private synchronized boolean schedule(Sampler sampler, long delayMs) {
+        if (mTimer == null || !mSamplers.contains(sampler)) {
+            return false;
+        }
+        sampler.mFuture = mTimer.schedule(sampler, delayMs);
+        return true;
+    }
+
+    /** A periodic task registered to the scheduler, with its timing statistics. */
+    final class Sampler implements Runnable {
+        private final String mName;
+        private final long mIntervalMs;
+        private final SampleTask mTask;
+        private Future<?> mFuture;
+        private volatile boolean mCancelled = false;
+
+        private volatile long mDueTimeMs;
+        private volatile long mSampleTimeMs;
+        private long mSampleCount;
+        private long mSkippedCount;
+        private long mTotalLatenessMs;
+        private long mMaxLatenessMs;
+        private long mTotalCostMs;
+        private long mMaxCostMs;
+
+        private Sampler(String name, long intervalMs, SampleTask task) {
+            mName = name;
+            mIntervalMs = intervalMs;
+            mTask = task;
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+            long startMs = mClock.getAsLong();
+            mSampleTimeMs = startMs;
+            long latenessMs = Math.max(0, startMs - mDueTimeMs);
+            try {
+                mTask.sample(this);
+            } catch (InterruptedException e) {
+                Log.e(LOG_TAG, String.format("Sampler %s interrupted, stopping.", mName), e);
+                unregister(this);
+                // Restore the interrupt status for the thread owner.
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // Keep sampling, a single failed collection should not end the time series.
+                Log.e(LOG_TAG, String.format("Sampler %s failed to collect.", mName), e);
+            }
+            long endMs = mClock.getAsLong();
+            synchronized (this) {
+                mSampleCount++;
+                mTotalLatenessMs += latenessMs;
+                mMaxLatenessMs = Math.max(mMaxLatenessMs, latenessMs);
+                mTotalCostMs += endMs - startMs;
+                mMaxCostMs = Math.max(mMaxCostMs, endMs - startMs);
+            }
+            schedule(endMs);
+        }
+
+        /** Schedule the next tick strictly after {@code nowMs}, skipping the overrun ones. */
+        private void schedule(long nowMs) {
+            long dueMs;
+            if (mDueTimeMs == 0) {
+                // First sample, taken right away.
+                dueMs = nowMs;
+            } else {
+                long nextTick = (nowMs - mOriginMs) / mIntervalMs + 1;
+                dueMs = mOriginMs + nextTick * mIntervalMs;
+                long skipped = (dueMs - mDueTimeMs) / mIntervalMs - 1;
+                if (skipped > 0) {
+                    synchronized (this) {
+                        mSkippedCount += skipped;
+                    }
+                }
+            }
+            mDueTimeMs = dueMs;
+            SamplingScheduler.this.schedule(this, dueMs - nowMs);
+        }
+
+        private void cancel() {
+            mCancelled = true;
+            if (mFuture != null) {
+                mFuture.cancel(false);
+            }
+        }
+
+        /** Returns the uptime in milliseconds at which the current or last sample was due. */
+        long getDueTimeMs() {
+            return mDueTimeMs;
+        }
+
+        /** Returns the uptime in milliseconds at which the current or last sample started. */
+        long getSampleTimeMs() {
+            return mSampleTimeMs;
+        }
+
+        /** Returns how late the current or last sample started compared to its tick. */
+        long getLatenessMs() {
+            return Math.max(0, mSampleTimeMs - mDueTimeMs);
+        }
+
+        synchronized long getSampleCount() {
+            return mSampleCount;
+        }
+
+        synchronized long getSkippedCount() {
+            return mSkippedCount;
+        }
+
+        synchronized long getMaxLatenessMs() {
+            return mMaxLatenessMs;
+        }
+
+        synchronized double getMeanLatenessMs() {
+            return mSampleCount == 0 ? 0 : (double) mTotalLatenessMs / mSampleCount;
+        }
+
+        synchronized long getMaxCostMs() {
+            return mMaxCostMs;
+        }
+
+        synchronized double getMeanCostMs() {
+            return mSampleCount == 0 ? 0 : (double) mTotalCostMs / mSampleCount;
+        }
+    }
+
+    /** {@link Timer} running the ticks on a small pool of daemon threads. */
+    private static class ExecutorTimer implements Timer {
+        private final ScheduledThreadPoolExecutor mExecutor =
+                new ScheduledThreadPoolExecutor(WORKER_THREADS, new SamplerThreadFactory());
+
+        ExecutorTimer() {
+            mExecutor.setRemoveOnCancelPolicy(true);
+        }
+
+        @Override
+        public Future<?> schedule(Runnable task, long delayMs) {
+            return mExecutor.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void shutdown() {
+            mExecutor.shutdown();
+        }
+    }
+
+    private static class SamplerThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "sampling-scheduler-" + mCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
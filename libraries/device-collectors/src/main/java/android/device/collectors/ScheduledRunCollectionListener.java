@@ -16,6 +16,7 @@
 package android.device.collectors;
 
 import android.device.collectors.util.SendToInstrumentation;
+import android.device.collectors.util.StreamingQuantileEstimator;
 import android.os.Bundle;
 import android.os.SystemClock;
 import android.util.Log;
@@ -58,10 +59,18 @@ public class ScheduledRunCollectionListener<T extends Number> extends ScheduledR
     public static final String TIME_SERIES_HEADER =
             String.format("%-20s,%-100s,%-20s", "time", "metric_key", "value");
 
-    private static final String TIME_SERIES_BODY = "%-20d,%-100s,%-20s";
+    private static final int TIME_COLUMN_WIDTH = 20;
+    private static final int KEY_COLUMN_WIDTH = 100;
+    private static final int VALUE_COLUMN_WIDTH = 20;
+    private static final int TIME_SERIES_ROW_CAPACITY =
+            TIME_COLUMN_WIDTH + KEY_COLUMN_WIDTH + VALUE_COLUMN_WIDTH + 3;
     @VisibleForTesting public static final String MEAN_SUFFIX = "-mean";
     @VisibleForTesting public static final String MAX_SUFFIX = "-max";
     @VisibleForTesting public static final String MIN_SUFFIX = "-min";
+    @VisibleForTesting public static final String STDDEV_SUFFIX = "-stddev";
+    @VisibleForTesting public static final String P50_SUFFIX = "-p50";
+    @VisibleForTesting public static final String P90_SUFFIX = "-p90";
+    @VisibleForTesting public static final String P99_SUFFIX = "-p99";
 
     protected ICollectorHelper<T> mHelper;
     private TimeSeriesCsvWriter mTimeSeriesCsvWriter;
@@ -87,10 +96,16 @@ public class ScheduledRunCollectionListener<T extends Number> extends ScheduledR
      * 1000  ,metric1    ,6
      * 1000  ,metric2    ,11
      * 1000  ,metric3    ,16
+     *
+     * The file is kept open for the whole run and appended to through a single buffered writer.
+     * The buffer is flushed after every data point so the time series up to a crash is preserved.
      */
     private class TimeSeriesCsvWriter {
         private File mDestFile;
-        private boolean mIsHeaderWritten = false;
+        private BufferedWriter mWriter;
+        private boolean mIsClosed = false;
+        // Reused for every row to avoid per-sample formatting allocations.
+        private final StringBuilder mRow = new StringBuilder(TIME_SERIES_ROW_CAPACITY);
 
         private TimeSeriesCsvWriter(Path destination) {
             // Create parent directory if it doesn't exist.
@@ -98,71 +113,133 @@ public class ScheduledRunCollectionListener<T extends Number> extends ScheduledR
             mDestFile = new File(destDir, destination.getFileName().toString());
         }
 
-        private void write(Map<String, T> dataPoint, long timeStamp) {
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(mDestFile, true))) {
-                if (!mIsHeaderWritten) {
-                    writer.append(TIME_SERIES_HEADER);
-                    writer.append("\n");
-                    mIsHeaderWritten = true;
+        private synchronized void write(Map<String, T> dataPoint, long timeStamp) {
+            if (mIsClosed) {
+                return;
+            }
+            try {
+                if (mWriter == null) {
+                    mWriter = new BufferedWriter(new FileWriter(mDestFile, true));
+                    mWriter.append(TIME_SERIES_HEADER);
+                    mWriter.append('\n');
                 }
-
-                for (String key : dataPoint.keySet()) {
-                    writer.append(
-                            String.format(TIME_SERIES_BODY, timeStamp, key, dataPoint.get(key)));
-                    writer.append("\n");
+                for (Map.Entry<String, T> entry : dataPoint.entrySet()) {
+                    mRow.setLength(0);
+                    appendPadded(mRow, timeStamp, TIME_COLUMN_WIDTH);
+                    mRow.append(',');
+                    appendPadded(mRow, entry.getKey(), KEY_COLUMN_WIDTH);
+                    mRow.append(',');
+                    appendPadded(mRow, entry.getValue(), VALUE_COLUMN_WIDTH);
+                    mRow.append('\n');
+                    mWriter.append(mRow);
                 }
+                mWriter.flush();
             } catch (IOException e) {
                 Log.e(
                         LOG_TAG,
                         String.format("Fail to output time series due to : %s.", e.getMessage()));
             }
         }
+
+        private synchronized void close() {
+            mIsClosed = true;
+            if (mWriter == null) {
+                return;
+            }
+            try {
+                mWriter.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Fail to close time series file.", e);
+            }
+            mWriter = null;
+        }
+
+        /** Left-justify {@code value} in a column of {@code width}, like {@code %-<width>s}. */
+        private void appendPadded(StringBuilder builder, Object value, int width) {
+            int start = builder.length();
+            builder.append(value);
+            for (int i = builder.length() - start; i < width; i++) {
+                builder.append(' ');
+            }
+        }
     }
 
+    /**
+     * Running statistics of each metric key. Each key owns a single accumulator backed by
+     * primitives, with constant memory percentile estimators, so no sample is retained.
+     */
     private class TimeSeriesStatistics {
-        Map<String, T> minMap = new HashMap<>();
-        Map<String, T> maxMap = new HashMap<>();
-        Map<String, Double> sumMap = new HashMap<>();
-        Map<String, Long> countMap = new HashMap<>();
+        private final Map<String, KeyStatistics> mStatistics = new HashMap<>();
 
         private void update(Map<String, T> dataPoint) {
-            for (String key : dataPoint.keySet()) {
-                T value = dataPoint.get(key);
-                // Add / replace min.
-                minMap.computeIfPresent(key, (k, v) -> compareAsDouble(value, v) == -1 ? value : v);
-                minMap.computeIfAbsent(key, k -> value);
-                // Add / replace max.
-                maxMap.computeIfPresent(key, (k, v) -> compareAsDouble(value, v) == 1 ? value : v);
-                maxMap.computeIfAbsent(key, k -> value);
-                // Add / update sum.
-                sumMap.put(key, value.doubleValue() + sumMap.getOrDefault(key, 0.));
-                // Add / update count.
-                countMap.put(key, 1 + countMap.getOrDefault(key, 0L));
+            for (Map.Entry<String, T> entry : dataPoint.entrySet()) {
+                T value = entry.getValue();
+                if (value == null) {
+                    continue;
+                }
+                KeyStatistics statistics = mStatistics.get(entry.getKey());
+                if (statistics == null) {
+                    statistics = new KeyStatistics();
+                    mStatistics.put(entry.getKey(), statistics);
+                }
+                statistics.add(value);
             }
         }
 
         private Map<String, String> getStatistics() {
             Map<String, String> res = new HashMap<>();
-            for (String key : minMap.keySet()) {
-                res.put(key + MIN_SUFFIX, minMap.get(key).toString());
+            for (Map.Entry<String, KeyStatistics> entry : mStatistics.entrySet()) {
+                String key = entry.getKey();
+                KeyStatistics statistics = entry.getValue();
+                res.put(key + MIN_SUFFIX, statistics.mMin.toString());
+                res.put(key + MAX_SUFFIX, statistics.mMax.toString());
+                res.put(key + MEAN_SUFFIX, Double.toString(statistics.mMean));
+                res.put(key + STDDEV_SUFFIX, Double.toString(statistics.getStandardDeviation()));
+                res.put(key + P50_SUFFIX, Double.toString(statistics.mP50.getValue()));
+                res.put(key + P90_SUFFIX, Double.toString(statistics.mP90.getValue()));
+                res.put(key + P99_SUFFIX, Double.toString(statistics.mP99.getValue()));
             }
-            for (String key : maxMap.keySet()) {
-                res.put(key + MAX_SUFFIX, maxMap.get(key).toString());
+            return res;
+        }
+    }
+
+    /** Streaming accumulator of a single metric key. */
+    private class KeyStatistics {
+        // Min and max keep the original value so they are reported in the metric's own format.
+        private T mMin;
+        private T mMax;
+        private double mMinValue;
+        private double mMaxValue;
+        private long mCount;
+        // Welford's online mean and sum of squared differences from the mean.
+        private double mMean;
+        private double mSquaredDiffSum;
+        private final StreamingQuantileEstimator mP50 = new StreamingQuantileEstimator(0.5);
+        private final StreamingQuantileEstimator mP90 = new StreamingQuantileEstimator(0.9);
+        private final StreamingQuantileEstimator mP99 = new StreamingQuantileEstimator(0.99);
+
+        private void add(T value) {
+            double d = value.doubleValue();
+            if (mCount == 0 || d < mMinValue) {
+                mMin = value;
+                mMinValue = d;
             }
-            for (String key : sumMap.keySet()) {
-                if (countMap.containsKey(key)) {
-                    double mean = sumMap.get(key) / countMap.get(key);
-                    res.put(key + MEAN_SUFFIX, Double.toString(mean));
-                }
+            if (mCount == 0 || d > mMaxValue) {
+                mMax = value;
+                mMaxValue = d;
             }
-            return res;
+            mCount++;
+            double delta = d - mMean;
+            mMean += delta / mCount;
+            mSquaredDiffSum += delta * (d - mMean);
+            mP50.add(d);
+            mP90.add(d);
+            mP99.add(d);
         }
 
-        /** Compare to Number objects. Return -1 if the n1 < n2; 0 if n1 == n2; 1 if n1 > n2. */
-        private int compareAsDouble(Number n1, Number n2) {
-            Double d1 = Double.valueOf(n1.doubleValue());
-            Double d2 = Double.valueOf(n2.doubleValue());
-            return d1.compareTo(d2);
+        /** Population standard deviation of the samples seen so far. */
+        private double getStandardDeviation() {
+            return mCount == 0 ? 0 : Math.sqrt(mSquaredDiffSum / mCount);
         }
     }
 
@@ -194,6 +271,7 @@ public class ScheduledRunCollectionListener<T extends Number> extends ScheduledR
     @Override
     void onEnd(DataRecord runData, Result result) {
         mHelper.stopCollecting();
+        mTimeSeriesCsvWriter.close();
         for (Map.Entry<String, String> entry : mTimeSeriesStatistics.getStatistics().entrySet()) {
             runData.addStringMetric(entry.getKey(), entry.getValue());
         }
@@ -202,7 +280,7 @@ public class ScheduledRunCollectionListener<T extends Number> extends ScheduledR
     /** {@inheritDoc} */
     @Override
     public void collect(DataRecord runData, Description description) throws InterruptedException {
-        long timeStamp = SystemClock.uptimeMillis() - mStartTime;
+        long timeStamp = getSampleTimeMs() - mStartTime;
         Map<String, T> dataPoint = mHelper.getMetrics();
         mTimeSeriesCsvWriter.write(dataPoint, timeStamp);
         mTimeSeriesStatistics.update(dataPoint);
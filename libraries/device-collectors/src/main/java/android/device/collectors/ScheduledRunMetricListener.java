@@ -16,27 +16,43 @@
 package android.device.collectors;
 
 import android.os.Bundle;
+import android.os.SystemClock;
 import androidx.annotation.VisibleForTesting;
 import android.util.Log;
 
 import org.junit.runner.Description;
 import org.junit.runner.Result;
 
-import java.util.Timer;
-import java.util.TimerTask;
-
 /**
  * Implementation of {@link BaseMetricListener} that allows to run a periodic collection during the
  * instrumentation run. Implementing {@link #collect(DataRecord, Description)} as the periodic task
  * running. It is possible to run some actions before and at the end of the periodic run using
  * {@link #onStart(DataRecord, Description)} and {@link #onEnd(DataRecord, Result)}.
+ *
+ * <p>All the periodic listeners of a run share a single {@link SamplingScheduler}, which aligns
+ * their collections on the same ticks and skips ticks instead of queuing them when a collection
+ * overruns. Pass {@link #REPORT_SAMPLING_STATS_ARG_KEY} to report the sampling lateness and the
+ * collection cost of the listener in the run metrics, and {@link #BATCH_SAMPLES_ARG_KEY} to send
+ * the run metrics as an in-progress status every given number of samples instead of only at the
+ * end of the run.
  */
 public abstract class ScheduledRunMetricListener extends BaseMetricListener {
 
     public static final String INTERVAL_ARG_KEY = "interval";
+    public static final String REPORT_SAMPLING_STATS_ARG_KEY = "report-sampling-stats";
+    public static final String BATCH_SAMPLES_ARG_KEY = "batch-samples";
     private static final long DEFAULT_INTERVAL_MS = 60 * 1000L; // 1 min
 
-    private Timer mTimer;
+    @VisibleForTesting static final String SAMPLE_COUNT_SUFFIX = "_sample_count";
+    @VisibleForTesting static final String SKIPPED_TICKS_SUFFIX = "_skipped_ticks";
+    @VisibleForTesting static final String MEAN_LATENESS_SUFFIX = "_sample_lateness_mean_ms";
+    @VisibleForTesting static final String MAX_LATENESS_SUFFIX = "_sample_lateness_max_ms";
+    @VisibleForTesting static final String MEAN_COST_SUFFIX = "_collect_cost_mean_ms";
+    @VisibleForTesting static final String MAX_COST_SUFFIX = "_collect_cost_max_ms";
+
+    private SamplingScheduler.Sampler mSampler;
+    // Samples collected since the run metrics were last sent, only used by the sampling thread.
+    private int mUnsentSamples = 0;
 
     public ScheduledRunMetricListener() {}
 
@@ -49,35 +65,65 @@ public abstract class ScheduledRunMetricListener extends BaseMetricListener {
     public final void onTestRunStart(final DataRecord runData, final Description description) {
         Log.d(getTag(), "Starting");
         onStart(runData, description);
-        // TODO: could this be done with Handlers ?
-        mTimer = new Timer();
-        TimerTask timerTask =
-                new TimerTask() {
-                    @Override
-                    public void run() {
-                        try {
-                            collect(runData, description);
-                        } catch (InterruptedException e) {
-                            mTimer.cancel();
-                            Thread.currentThread().interrupt();
-                            Log.e(getTag(), "Interrupted exception thrown from task:", e);
-                        }
-                    }
-                };
-
-        mTimer.scheduleAtFixedRate(timerTask, 0, getIntervalFromArgs());
+        final int batchSamples = getBatchSamplesFromArgs();
+        mUnsentSamples = 0;
+        mSampler =
+                SamplingScheduler.getInstance()
+                        .register(
+                                getTag(),
+                                getIntervalFromArgs(),
+                                sampler -> {
+                                    collect(runData, description);
+                                    if (batchSamples > 0 && ++mUnsentSamples >= batchSamples) {
+                                        sendMetricBatch(runData);
+                                        mUnsentSamples = 0;
+                                    }
+                                });
     }
 
     @Override
     public final void onTestRunEnd(DataRecord runData, Result result) {
-        if (mTimer != null) {
-            mTimer.cancel();
-            mTimer.purge();
+        if (mSampler != null) {
+            SamplingScheduler.getInstance().unregister(mSampler);
+            if (Boolean.parseBoolean(getArgsBundle().getString(REPORT_SAMPLING_STATS_ARG_KEY))) {
+                reportSamplingStats(runData);
+            }
         }
         onEnd(runData, result);
         Log.d(getTag(), "Finished");
     }
 
+    /**
+     * Returns the uptime in milliseconds at which the sample in progress actually started. Only
+     * meaningful from {@link #collect(DataRecord, Description)}.
+     */
+    protected long getSampleTimeMs() {
+        return mSampler != null ? mSampler.getSampleTimeMs() : SystemClock.uptimeMillis();
+    }
+
+    /**
+     * Returns how many milliseconds after its scheduled tick the sample in progress started. Only
+     * meaningful from {@link #collect(DataRecord, Description)}.
+     */
+    protected long getSampleLatenessMs() {
+        return mSampler != null ? mSampler.getLatenessMs() : 0L;
+    }
+
+    private void reportSamplingStats(DataRecord runData) {
+        String prefix = getTag();
+        runData.addStringMetric(
+                prefix + SAMPLE_COUNT_SUFFIX, Long.toString(mSampler.getSampleCount()));
+        runData.addStringMetric(
+                prefix + SKIPPED_TICKS_SUFFIX, Long.toString(mSampler.getSkippedCount()));
+        runData.addStringMetric(
+                prefix + MEAN_LATENESS_SUFFIX, Double.toString(mSampler.getMeanLatenessMs()));
+        runData.addStringMetric(
+                prefix + MAX_LATENESS_SUFFIX, Long.toString(mSampler.getMaxLatenessMs()));
+        runData.addStringMetric(
+                prefix + MEAN_COST_SUFFIX, Double.toString(mSampler.getMeanCostMs()));
+        runData.addStringMetric(prefix + MAX_COST_SUFFIX, Long.toString(mSampler.getMaxCostMs()));
+    }
+
     /**
      * Executed when entering this collector.
      *
@@ -108,6 +154,23 @@ public abstract class ScheduledRunMetricListener extends BaseMetricListener {
     public abstract void collect(DataRecord runData, Description description)
             throws InterruptedException;
 
+    /**
+     * Extract the number of samples per batch of run metrics from the instrumentation arguments, or
+     * 0 to only report the run metrics at the end of the run.
+     */
+    private int getBatchSamplesFromArgs() {
+        String batchSamplesValue = getArgsBundle().getString(BATCH_SAMPLES_ARG_KEY);
+        if (batchSamplesValue == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Integer.parseInt(batchSamplesValue));
+        } catch (NumberFormatException e) {
+            Log.e(getTag(), "Failed to parse the batch samples value.", e);
+            return 0;
+        }
+    }
+
     /**
      * Extract the interval from the instrumentation arguments or use the default interval value.
      */
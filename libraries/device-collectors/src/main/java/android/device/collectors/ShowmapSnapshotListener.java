@@ -37,6 +37,8 @@ import java.util.Map;
  * -e metric-index [rss:2,pss:3,privatedirty:7] : memory metric name corresponding
  * -e gc-precollect [true | false] : whether it needs to run a GC prior to collecting memory
  * metrics. to index in the showmap output.
+ * -e batched-concurrency [count] : read all the pids from a single process table and run up to
+ * count showmap commands concurrently. Processes are collected one at a time if unset or 0.
  */
 @OptionClass(alias = "showmapsnapshot-collector")
 public class ShowmapSnapshotListener extends BaseCollectionListener<String> {
@@ -50,6 +52,7 @@ public class ShowmapSnapshotListener extends BaseCollectionListener<String> {
   @VisibleForTesting static final String OUTPUT_DIR_KEY = "test-output-dir";
   @VisibleForTesting static final String GC_PRECOLLECT_KEY = "gc-precollect";
     @VisibleForTesting static final String COUNT_THREADS_KEY = "count-threads";
+  @VisibleForTesting static final String BATCHED_CONCURRENCY_KEY = "batched-concurrency";
 
   private ShowmapSnapshotHelper mShowmapSnapshotHelper = new ShowmapSnapshotHelper();
   private final Map<String, Integer> dropCacheValues = Map.of(
@@ -124,5 +127,14 @@ public class ShowmapSnapshotListener extends BaseCollectionListener<String> {
 
         boolean runCountThreads = "true".equals(args.getString(COUNT_THREADS_KEY, "false"));
         mShowmapSnapshotHelper.setCountThreadsOption(runCountThreads);
+
+    String batchedConcurrency = args.getString(BATCHED_CONCURRENCY_KEY);
+    if (batchedConcurrency != null) {
+      try {
+        mShowmapSnapshotHelper.setBatchedCollection(Integer.parseInt(batchedConcurrency));
+      } catch (NumberFormatException e) {
+        Log.e(TAG, "Value for \"" + BATCHED_CONCURRENCY_KEY + "\" parameter is invalid");
+      }
+    }
   }
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.device.collectors.util;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Arrays;
+
+/**
+ * Constant memory estimator of a single quantile over a stream of values, based on the P-square
+ * algorithm (Jain & Chlamtac, 1985). Only five markers are kept regardless of the number of
+ * observed samples, so it is suitable for long running periodic collections.
+ *
+ * <p>The first {@link #EXACT_SAMPLES} samples are buffered and the exact nearest-rank quantile is
+ * returned for them; the markers are then seeded from that buffer, which keeps the estimate of
+ * tail quantiles stable from the start.
+ */
+public class StreamingQuantileEstimator {
+    private static final int MARKERS = 5;
+    @VisibleForTesting static final int EXACT_SAMPLES = 128;
+
+    private final double mQuantile;
+    // Marker heights.
+    private final double[] mHeights = new double[MARKERS];
+    // Actual marker positions (1-based).
+    private final int[] mPositions = new int[MARKERS];
+    // Desired marker positions.
+    private final double[] mDesired = new double[MARKERS];
+    // Increments of the desired marker positions.
+    private final double[] mIncrements = new double[MARKERS];
+    // Exact samples, released once the markers are seeded.
+    private double[] mSamples = new double[EXACT_SAMPLES];
+    private long mCount = 0;
+
+    /** @param quantile the quantile to estimate, in the range [0, 1]. */
+    public StreamingQuantileEstimator(double quantile) {
+        if (quantile < 0 || quantile > 1) {
+            throw new IllegalArgumentException("Quantile must be in [0, 1]: " + quantile);
+        }
+        mQuantile = quantile;
+        mIncrements[0] = 0;
+        mIncrements[1] = quantile / 2;
+        mIncrements[2] = quantile;
+        mIncrements[3] = (1 + quantile) / 2;
+        mIncrements[4] = 1;
+    }
+
+    /** Add a new observation. */
+    public void add(double value) {
+        if (mSamples != null) {
+            if (mCount < EXACT_SAMPLES) {
+                mSamples[(int) mCount] = value;
+                mCount++;
+                return;
+            }
+            seedMarkers();
+        }
+        mCount++;
+
+        // Find the cell the value falls into, extending the extreme markers if needed.
+        int cell;
+        if (value < mHeights[0]) {
+            mHeights[0] = value;
+            cell = 0;
+        } else if (value >= mHeights[MARKERS - 1]) {
+            mHeights[MARKERS - 1] = value;
+            cell = MARKERS - 2;
+        } else {
+            cell = 0;
+            while (value >= mHeights[cell + 1]) {
+                cell++;
+            }
+        }
+        for (int i = cell + 1; i < MARKERS; i++) {
+            mPositions[i]++;
+        }
+        for (int i = 0; i < MARKERS; i++) {
+            mDesired[i] += mIncrements[i];
+        }
+
+        // Adjust the heights of the middle markers.
+        for (int i = 1; i < MARKERS - 1; i++) {
+            double delta = mDesired[i] - mPositions[i];
+            if ((delta >= 1 && mPositions[i + 1] - mPositions[i] > 1)
+                    || (delta <= -1 && mPositions[i - 1] - mPositions[i] < -1)) {
+                int sign = delta > 0 ? 1 : -1;
+                double candidate = parabolic(i, sign);
+                if (mHeights[i - 1] < candidate && candidate < mHeights[i + 1]) {
+                    mHeights[i] = candidate;
+                } else {
+                    mHeights[i] = linear(i, sign);
+                }
+                mPositions[i] += sign;
+            }
+        }
+    }
+
+    /** Returns the number of observations seen so far. */
+    public long getCount() {
+        return mCount;
+    }
+
+    /** Returns the current quantile estimate, or {@link Double#NaN} if no value was added. */
+    public double getValue() {
+        if (mCount == 0) {
+            return Double.NaN;
+        }
+        if (mSamples != null) {
+            double[] sorted = Arrays.copyOf(mSamples, (int) mCount);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(mQuantile * mCount) - 1;
+            return sorted[Math.max(0, Math.min(rank, sorted.length - 1))];
+        }
+        return mHeights[2];
+    }
+
+    /** Initialize the markers from the buffered exact samples. */
+    private void seedMarkers() {
+        Arrays.sort(mSamples);
+        int n = mSamples.length;
+        mDesired[0] = 1;
+        mDesired[1] = 1 + (n - 1) * mQuantile / 2;
+        mDesired[2] = 1 + (n - 1) * mQuantile;
+        mDesired[3] = 1 + (n - 1) * (1 + mQuantile) / 2;
+        mDesired[4] = n;
+        for (int i = 0; i < MARKERS; i++) {
+            // Positions must be strictly increasing.
+            int position = (int) Math.round(mDesired[i]);
+            position = Math.min(position, n - (MARKERS - 1 - i));
+            position = i == 0 ? 1 : Math.max(position, mPositions[i - 1] + 1);
+            mPositions[i] = position;
+            mHeights[i] = mSamples[position - 1];
+        }
+        mSamples = null;
+    }
+
+    private double parabolic(int i, int sign) {
+        double left = mPositions[i] - mPositions[i - 1];
+        double right = mPositions[i + 1] - mPositions[i];
+        double span = mPositions[i + 1] - mPositions[i - 1];
+        return mHeights[i]
+                + sign
+                        / span
+                        * ((left + sign) * (mHeights[i + 1] - mHeights[i]) / right
+                                + (right - sign) * (mHeights[i] - mHeights[i - 1]) / left);
+    }
+
+    private double linear(int i, int sign) {
+        return mHeights[i]
+                + sign * (mHeights[i + sign] - mHeights[i]) / (mPositions[i + sign] - mPositions[i]);
+    }
+}
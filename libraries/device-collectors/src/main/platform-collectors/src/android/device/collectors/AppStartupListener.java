@@ -30,6 +30,7 @@ import com.android.helpers.AppStartupHelper;
 public class AppStartupListener extends BaseCollectionListener<StringBuilder> {
 
     private static final String DISABLE_PROC_START_DETAILS = "disable_process_start_details";
+    private static final String USE_SHARED_STATSD_CONFIG = "use_shared_statsd_config";
 
     public AppStartupListener() {
         createHelperInstance(new AppStartupHelper());
@@ -45,5 +46,8 @@ public class AppStartupListener extends BaseCollectionListener<StringBuilder> {
         if ("true".equals(args.getString(DISABLE_PROC_START_DETAILS))) {
             appstartupHelper.setDisableProcStartDetails();
         }
+        if ("true".equals(args.getString(USE_SHARED_STATSD_CONFIG))) {
+            appstartupHelper.setUseSharedConfig();
+        }
     }
 }
@@ -32,6 +32,7 @@ public class CpuUsageListener extends BaseCollectionListener<Long> {
     private static final String DISABLE_PER_PACKAGE = "disable_per_pkg";
     private static final String DISABLE_TOTAL_PKG = "disable_total_pkg";
     private static final String ENABLE_CPU_UTILIZATION = "enable_cpu_utilization";
+    private static final String USE_SHARED_STATSD_CONFIG = "use_shared_statsd_config";
 
     public CpuUsageListener() {
         createHelperInstance(new CpuUsageHelper());
@@ -55,6 +56,10 @@ public class CpuUsageListener extends BaseCollectionListener<Long> {
         if ("true".equals(args.getString(ENABLE_CPU_UTILIZATION))) {
             cpuUsageHelper.setEnableCpuUtilization();
         }
+
+        if ("true".equals(args.getString(USE_SHARED_STATSD_CONFIG))) {
+            cpuUsageHelper.setUseSharedConfig();
+        }
     }
 }
 
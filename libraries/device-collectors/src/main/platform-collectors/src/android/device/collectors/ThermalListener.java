@@ -16,6 +16,7 @@
 package android.device.collectors;
 
 import android.device.collectors.annotations.OptionClass;
+import android.os.Bundle;
 
 import com.android.helpers.ThermalHelper;
 
@@ -27,7 +28,18 @@ import com.android.helpers.ThermalHelper;
  */
 @OptionClass(alias = "thermal-collector")
 public class ThermalListener extends BaseCollectionListener<StringBuilder> {
+    private static final String USE_SHARED_STATSD_CONFIG = "use_shared_statsd_config";
+
     public ThermalListener() {
         createHelperInstance(new ThermalHelper());
     }
+
+    /** Register the thermal atoms to the shared statsd config if requested. */
+    @Override
+    public void setupAdditionalArgs() {
+        Bundle args = getArgsBundle();
+        if ("true".equals(args.getString(USE_SHARED_STATSD_CONFIG))) {
+            ((ThermalHelper) mHelper).setUseSharedConfig();
+        }
+    }
 }
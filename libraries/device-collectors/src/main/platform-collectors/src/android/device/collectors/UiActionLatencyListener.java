@@ -15,6 +15,8 @@
  */
 package android.device.collectors;
 
+import android.os.Bundle;
+
 import com.android.helpers.UiActionLatencyHelper;
 
 /**
@@ -24,7 +26,18 @@ import com.android.helpers.UiActionLatencyHelper;
  * collection fails.
  */
 public class UiActionLatencyListener extends BaseCollectionListener<StringBuilder> {
+    private static final String USE_SHARED_STATSD_CONFIG = "use_shared_statsd_config";
+
     public UiActionLatencyListener() {
         createHelperInstance(new UiActionLatencyHelper());
     }
+
+    /** Track the latency atoms in the process wide statsd config if requested. */
+    @Override
+    public void setupAdditionalArgs() {
+        Bundle args = getArgsBundle();
+        if ("true".equals(args.getString(USE_SHARED_STATSD_CONFIG))) {
+            ((UiActionLatencyHelper) mHelper).setUseSharedConfig();
+        }
+    }
 }
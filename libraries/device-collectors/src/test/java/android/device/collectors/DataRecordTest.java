@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.device.collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.os.Bundle;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/** Android Unit tests for {@link DataRecord}. */
+@RunWith(AndroidJUnit4.class)
+public class DataRecordTest {
+
+    @Rule public TemporaryFolder mSpillDir = new TemporaryFolder();
+
+    /** Test that without a budget every metric stays in memory. */
+    @Test
+    public void testNoBudget() {
+        DataRecord record = new DataRecord();
+        record.addStringMetric("key", "value");
+        record.addBinaryMetric("binary", new byte[1024]);
+        Bundle bundle = record.createBundleFromMetrics();
+        assertEquals("value", bundle.getString("key"));
+        assertEquals(1024, bundle.getByteArray("binary").length);
+    }
+
+    /** Test that a binary metric over the budget is written to a file. */
+    @Test
+    public void testBinaryMetricSpilled() throws Exception {
+        DataRecord record = new DataRecord(100, mSpillDir.getRoot());
+        byte[] value = new byte[1024];
+        value[10] = 42;
+        record.addBinaryMetric("binary", value);
+
+        Bundle bundle = record.createBundleFromMetrics();
+        assertNull(bundle.getByteArray("binary"));
+        File file = new File(bundle.getString("binary"));
+        assertArrayEquals(value, Files.readAllBytes(file.toPath()));
+        assertEquals(0, record.getRetainedBytes());
+    }
+
+    /** Test that string metrics over the budget are appended to a single spill file. */
+    @Test
+    public void testStringMetricsSpilled() throws Exception {
+        // Room for the first metric only.
+        DataRecord record = new DataRecord(20, mSpillDir.getRoot());
+        record.addStringMetric("a", "1");
+        record.addStringMetric("key", "multi\nline");
+        record.addStringMetric("other", "22222222");
+
+        Bundle bundle = record.createBundleFromMetrics();
+        assertEquals("1", bundle.getString("a"));
+        assertFalse(bundle.containsKey("key"));
+        File file = new File(bundle.getString(DataRecord.SPILLED_STRING_METRICS_KEY));
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(2, lines.size());
+        assertEquals("key=multi\\nline", lines.get(0));
+        assertEquals("other=22222222", lines.get(1));
+    }
+
+    /** Test that a binary metric overwritten over the budget no longer counts as retained. */
+    @Test
+    public void testBinaryMetricOverwrittenOverBudget() throws Exception {
+        DataRecord record = new DataRecord(100, mSpillDir.getRoot());
+        record.addBinaryMetric("binary", new byte[50]);
+        assertEquals(62, record.getRetainedBytes());
+
+        byte[] value = new byte[200];
+        value[0] = 42;
+        record.addBinaryMetric("binary", value);
+
+        Bundle bundle = record.createBundleFromMetrics();
+        assertNull(bundle.getByteArray("binary"));
+        File file = new File(bundle.getString("binary"));
+        assertArrayEquals(value, Files.readAllBytes(file.toPath()));
+        assertEquals(0, record.getRetainedBytes());
+    }
+
+    /** Test that a string metric overwritten over the budget drops the value kept in memory. */
+    @Test
+    public void testStringMetricOverwrittenOverBudget() throws Exception {
+        DataRecord record = new DataRecord(20, mSpillDir.getRoot());
+        record.addStringMetric("key", "old");
+        assertEquals(12, record.getRetainedBytes());
+        record.addStringMetric("key", "a longer value");
+
+        Bundle bundle = record.createBundleFromMetrics();
+        assertFalse(bundle.containsKey("key"));
+        File file = new File(bundle.getString(DataRecord.SPILLED_STRING_METRICS_KEY));
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        assertEquals("key=a longer value", lines.get(0));
+        assertEquals(0, record.getRetainedBytes());
+
+        // The freed budget is available to the following metrics again.
+        record.addStringMetric("b", "2");
+        assertEquals("2", record.createBundleFromMetrics().getString("b"));
+        assertEquals(4, record.getRetainedBytes());
+    }
+
+    /** Test that a binary metric added again replaces its spilled copy. */
+    @Test
+    public void testBinaryMetricReaddedAfterSpill() throws Exception {
+        DataRecord record = new DataRecord(100, mSpillDir.getRoot());
+        record.addBinaryMetric("binary", new byte[200]);
+        File spilled = new File(record.createBundleFromMetrics().getString("binary"));
+        assertTrue(spilled.exists());
+
+        record.addBinaryMetric("binary", new byte[10]);
+        Bundle bundle = record.createBundleFromMetrics();
+        assertEquals(10, bundle.getByteArray("binary").length);
+        assertFalse(spilled.exists());
+        assertEquals(22, record.getRetainedBytes());
+    }
+
+    /** Test that a string metric added again replaces its spilled copy. */
+    @Test
+    public void testStringMetricReaddedAfterSpill() throws Exception {
+        DataRecord record = new DataRecord(20, mSpillDir.getRoot());
+        record.addStringMetric("a", "1");
+        record.addStringMetric("key", "multi\nline");
+        record.addStringMetric("key", "x");
+
+        Bundle bundle = record.createBundleFromMetrics();
+        assertEquals("x", bundle.getString("key"));
+        File file = new File(bundle.getString(DataRecord.SPILLED_STRING_METRICS_KEY));
+        assertTrue(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8).isEmpty());
+
+        record.addStringMetric("key", "a longer value");
+        bundle = record.createBundleFromMetrics();
+        assertFalse(bundle.containsKey("key"));
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(1, lines.size());
+        assertEquals("key=a longer value", lines.get(0));
+    }
+
+    /** Test that a null binary metric is rejected before reaching the spill code. */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullBinaryMetric() {
+        new DataRecord(100, mSpillDir.getRoot()).addBinaryMetric("binary", null);
+    }
+
+    /** Test that draining reports the metrics and resets the record. */
+    @Test
+    public void testDrainToBundle() {
+        DataRecord record = new DataRecord(1000, mSpillDir.getRoot());
+        record.addStringMetric("key", "value");
+        Bundle batch = record.drainToBundle();
+        assertEquals("value", batch.getString("key"));
+        assertFalse(record.hasMetrics());
+        assertEquals(0, record.getRetainedBytes());
+
+        record.addStringMetric("key2", "value2");
+        assertTrue(record.hasMetrics());
+        assertFalse(record.createBundleFromMetrics().containsKey("key"));
+    }
+}
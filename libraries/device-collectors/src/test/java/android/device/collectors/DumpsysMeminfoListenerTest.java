@@ -96,6 +96,16 @@ public class DumpsysMeminfoListenerTest {
         assertTrue(mDumpsysMeminfoHelper.getProcessObjectNamesMap().size() == 2);
     }
 
+    @Test
+    public void testListener_reportCommandLatency() throws Exception {
+        mDumpsysMeminfoHelper = new DumpsysMeminfoHelper();
+        Bundle bundle = new Bundle();
+        bundle.putString(DumpsysMeminfoListener.REPORT_COMMAND_LATENCY_KEY, "true");
+        DumpsysMeminfoListener listener = initListener(bundle, mDumpsysMeminfoHelper);
+        listener.setupAdditionalArgs();
+        assertTrue(mDumpsysMeminfoHelper.getReportCommandLatency());
+    }
+
     private DumpsysMeminfoListener initListener(Bundle bundle, DumpsysMeminfoHelper helper) {
         DumpsysMeminfoListener listener = new DumpsysMeminfoListener(bundle, helper);
         listener.setInstrumentation(mInstrumentation);
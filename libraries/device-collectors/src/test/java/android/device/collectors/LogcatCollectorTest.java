@@ -45,6 +45,7 @@ import java.util.Date;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -365,6 +366,82 @@ public final class LogcatCollectorTest {
         }
     }
 
+    /** Test that the collector retrieves the logcat of a test from the logcat stream. */
+    @Test
+    public void testRetrievingLogcatFromStream() throws Exception {
+        Bundle bundle = new Bundle();
+        bundle.putString(LogcatCollector.STREAM_LOGCAT, "true");
+        LogcatCollector listener = initListener(bundle);
+        listener.testRunStarted(RUN_DESCRIPTION);
+
+        // Lines logged by the first test should not be part of the second one.
+        Description firstDescription = Description.createTestDescription("run", "test_first");
+        String logTag = this.getClass().getSimpleName() + "_testRetrievingLogcatFromStream";
+        listener.testStarted(firstDescription);
+        Log.i(logTag, "First test message");
+        listener.testFinished(firstDescription);
+
+        Description testDescription = Description.createTestDescription("run", "test_logcat");
+        listener.testStarted(testDescription);
+        Log.i(logTag, "Message 1");
+        Log.w(logTag, "Message 2");
+        listener.testFinished(testDescription);
+        listener.testRunFinished(new Result());
+        Mockito.verify(listener, Mockito.never())
+                .getLogcatSince(Mockito.any(String.class), Mockito.any(File.class));
+
+        ArgumentCaptor<Bundle> capture = ArgumentCaptor.forClass(Bundle.class);
+        Mockito.verify(mMockInstrumentation, Mockito.times(2))
+                .sendStatus(
+                        Mockito.eq(SendToInstrumentation.INST_STATUS_IN_PROGRESS),
+                        capture.capture());
+        String logPath = null;
+        for (Bundle check : capture.getAllValues()) {
+            for (String key : check.keySet()) {
+                if (key.contains("run.test_logcat")) {
+                    logPath = check.getString(key);
+                }
+            }
+        }
+        assertTrue(logPath != null);
+
+        String firstRegex = String.format(LOGCAT_REGEX_TEMPLATE, "I", logTag, "First test message");
+        String message1Regex = String.format(LOGCAT_REGEX_TEMPLATE, "I", logTag, "Message 1");
+        String message2Regex = String.format(LOGCAT_REGEX_TEMPLATE, "W", logTag, "Message 2");
+        boolean hasFirst = false;
+        boolean hasMessage1 = false;
+        boolean hasMessage2 = false;
+        try (BufferedReader reader = new BufferedReader(new FileReader(new File(logPath)))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                hasFirst |= line.matches(firstRegex);
+                hasMessage1 |= line.matches(message1Regex);
+                hasMessage2 |= line.matches(message2Regex);
+            }
+        }
+        assertFalse(hasFirst);
+        assertTrue(hasMessage1);
+        assertTrue(hasMessage2);
+    }
+
+    /** Test that malformed stream arguments fall back to their defaults. */
+    @Test
+    public void testMalformedStreamArgs() throws Exception {
+        Bundle bundle = new Bundle();
+        bundle.putString(LogcatCollector.STREAM_LOGCAT, "true");
+        bundle.putString(LogcatCollector.STREAM_SEGMENT_BYTES, "32M");
+        bundle.putString(LogcatCollector.STREAM_SEGMENTS, "-1");
+        LogcatCollector listener = initListener(bundle);
+        listener.testRunStarted(RUN_DESCRIPTION);
+
+        Description testDescription = Description.createTestDescription("run", "test_logcat");
+        listener.testStarted(testDescription);
+        listener.testFinished(testDescription);
+        listener.testRunFinished(new Result());
+        // The stream is still used with the default segments.
+        Mockito.verify(listener, Mockito.never())
+                .getLogcatSince(Mockito.any(String.class), Mockito.any(File.class));
+    }
+
     /** Test that the logcat retrieved are within the time bounds of the test. */
     @Ignore
     @Test
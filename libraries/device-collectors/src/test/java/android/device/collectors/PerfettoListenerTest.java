@@ -16,6 +16,7 @@
 package android.device.collectors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
@@ -37,6 +38,7 @@ import android.device.collectors.PerfettoListener.WakeLockReleaser;
 import android.os.Bundle;
 import androidx.test.runner.AndroidJUnit4;
 import com.android.helpers.PerfettoHelper;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import org.junit.Before;
@@ -164,6 +166,80 @@ public class PerfettoListenerTest {
 
     }
 
+    /*
+     * Verify the traces are finalized in the background when async finalization is enabled.
+     */
+    @Test
+    public void testPerfettoAsyncFinalizeFlow() throws Exception {
+        Bundle b = new Bundle();
+        b.putString(PerfettoListener.PERFETTO_ASYNC_FINALIZE, "true");
+        b.putString(PerfettoListener.PERFETTO_MAX_PENDING_TRACES, "3");
+        mListener = initListener(b);
+        doReturn(true).when(mPerfettoHelper).startCollecting(anyString(), anyBoolean());
+        doReturn(true).when(mPerfettoHelper).stopCollectingAsync(anyLong(), anyString());
+        doReturn(true).when(mPerfettoHelper).awaitPendingTraces(anyLong());
+
+        mListener.testRunStarted(mRunDesc);
+        verify(mPerfettoHelper, times(1)).setAsyncFinalization(3);
+        mListener.testStarted(mTest1Desc);
+        mListener.onTestEnd(mDataRecord, mTest1Desc);
+        verify(mPerfettoHelper, times(1)).stopCollectingAsync(anyLong(), eq(
+                "/sdcard/test_results/run_test1/PerfettoListener_1_Proxy/"
+                + "perfetto_run_test1-1.perfetto-trace"));
+        verify(mPerfettoHelper, times(0)).stopCollecting(anyLong(), anyString());
+        // The trace is only reported once finalized.
+        assertFalse(mDataRecord.hasMetrics());
+
+        String trace =
+                "/sdcard/test_results/run_test1/PerfettoListener_1_Proxy/"
+                        + "perfetto_run_test1-1.perfetto-trace";
+        doReturn(Collections.singletonList(trace)).when(mPerfettoHelper).takeFinalizedTraces();
+        DataRecord runData = mListener.createDataRecord();
+        mListener.onTestRunEnd(runData, new Result());
+        verify(mPerfettoHelper, times(1)).awaitPendingTraces(anyLong());
+        assertEquals(
+                trace,
+                runData.createBundleFromMetrics()
+                        .getString("perfetto_file_path_perfetto_run_test1-1.perfetto-trace"));
+    }
+
+    /*
+     * Verify the finalized traces are still reported when waiting for the pending ones times out.
+     */
+    @Test
+    public void testPerfettoAsyncFinalizeTimeout() throws Exception {
+        Bundle b = new Bundle();
+        b.putString(PerfettoListener.PERFETTO_ASYNC_FINALIZE, "true");
+        mListener = initListener(b);
+        doReturn(false).when(mPerfettoHelper).awaitPendingTraces(anyLong());
+        doReturn(Collections.singletonList("/sdcard/test_results/done.perfetto-trace"))
+                .when(mPerfettoHelper)
+                .takeFinalizedTraces();
+
+        mListener.testRunStarted(mRunDesc);
+        DataRecord runData = mListener.createDataRecord();
+        mListener.onTestRunEnd(runData, new Result());
+        Bundle metrics = runData.createBundleFromMetrics();
+        assertEquals(1, metrics.size());
+        assertEquals(
+                "/sdcard/test_results/done.perfetto-trace",
+                metrics.getString("perfetto_file_path_done.perfetto-trace"));
+    }
+
+    /*
+     * Verify an invalid max pending traces argument falls back to the default.
+     */
+    @Test
+    public void testPerfettoAsyncFinalizeInvalidMaxPendingTraces() throws Exception {
+        Bundle b = new Bundle();
+        b.putString(PerfettoListener.PERFETTO_ASYNC_FINALIZE, "true");
+        b.putString(PerfettoListener.PERFETTO_MAX_PENDING_TRACES, "two");
+        mListener = initListener(b);
+
+        mListener.testRunStarted(mRunDesc);
+        verify(mPerfettoHelper, times(1)).setAsyncFinalization(2);
+    }
+
     /*
      * Verify stop perfetto called exactly once when the test failed and the
      * skip test failure metrics is enabled.
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.device.collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Android Unit tests for {@link SamplingScheduler}. */
+@RunWith(AndroidJUnit4.class)
+public class SamplingSchedulerTest {
+    // Not 0, which the scheduler uses for samplers without any tick yet.
+    private static final long START_TIME_MS = 1000L;
+
+    private FakeTimer mTimer;
+    private SamplingScheduler mScheduler;
+
+    @Before
+    public void setUp() {
+        mTimer = new FakeTimer();
+        mScheduler = new SamplingScheduler(mTimer::now, () -> mTimer);
+    }
+
+    /** Test that samplers with related intervals are woken up on the same ticks. */
+    @Test
+    public void testAlignedTicks() throws Exception {
+        List<Long> fast = new ArrayList<>();
+        List<Long> slow = new ArrayList<>();
+        SamplingScheduler.Sampler fastSampler =
+                mScheduler.register("fast", 100, s -> fast.add(s.getDueTimeMs()));
+        SamplingScheduler.Sampler slowSampler =
+                mScheduler.register("slow", 200, s -> slow.add(s.getDueTimeMs()));
+        mTimer.advance(650L);
+        mScheduler.unregister(fastSampler);
+        mScheduler.unregister(slowSampler);
+
+        assertEquals(7, fast.size());
+        for (int i = 1; i < fast.size(); i++) {
+            assertEquals(100, fast.get(i) - fast.get(i - 1));
+        }
+        assertEquals(4, slow.size());
+        for (long tick : slow) {
+            assertTrue(fast.contains(tick));
+        }
+    }
+
+    /** Test that an overrunning collection skips ticks instead of queueing them. */
+    @Test
+    public void testOverrunSkipsTicks() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        SamplingScheduler.Sampler sampler =
+                mScheduler.register(
+                        "overrun",
+                        50,
+                        s -> {
+                            count.incrementAndGet();
+                            mTimer.sleep(120L);
+                        });
+        mTimer.advance(550L);
+        mScheduler.unregister(sampler);
+
+        // Samples start at 0, 150, 300 and 450 ms, each skipping the two ticks it overran.
+        assertEquals(4, count.get());
+        assertEquals(4, sampler.getSampleCount());
+        assertEquals(8, sampler.getSkippedCount());
+        assertEquals(120, sampler.getMeanCostMs(), 0);
+        assertEquals(0, sampler.getMaxLatenessMs());
+    }
+
+    /** Test that no more sample is taken once unregistered. */
+    @Test
+    public void testUnregister() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        SamplingScheduler.Sampler sampler =
+                mScheduler.register("unregister", 50, s -> count.incrementAndGet());
+        mTimer.advance(120L);
+        mScheduler.unregister(sampler);
+        assertEquals(3, count.get());
+        assertTrue(mTimer.isShutdown());
+
+        mTimer.advance(200L);
+        assertEquals(3, count.get());
+    }
+
+    /** Test that an interrupted sampler stops and keeps the interrupt status of its thread. */
+    @Test
+    public void testInterruptStopsSampler() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        mScheduler.register(
+                "interrupted",
+                50,
+                s -> {
+                    count.incrementAndGet();
+                    throw new InterruptedException();
+                });
+        try {
+            mTimer.advance(200L);
+            assertEquals(1, count.get());
+            assertTrue(mTimer.isShutdown());
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    /** {@link SamplingScheduler.Timer} running the tasks on the test thread in simulated time. */
+    private static class FakeTimer implements SamplingScheduler.Timer {
+        private final PriorityQueue<Task> mTasks =
+                new PriorityQueue<>(
+                        Comparator.<Task>comparingLong(t -> t.mDueMs)
+                                .thenComparingLong(t -> t.mSequence));
+        private long mNowMs = START_TIME_MS;
+        private long mSequence;
+        private boolean mShutdown;
+
+        long now() {
+            return mNowMs;
+        }
+
+        /** Let the time pass while a task runs. */
+        void sleep(long durationMs) {
+            mNowMs += durationMs;
+        }
+
+        /** Let the time pass, running the tasks due in the meantime. */
+        void advance(long durationMs) {
+            long targetMs = mNowMs + durationMs;
+            while (!mTasks.isEmpty() && mTasks.peek().mDueMs <= targetMs) {
+                Task task = mTasks.poll();
+                mNowMs = Math.max(mNowMs, task.mDueMs);
+                task.mFuture.run();
+            }
+            mNowMs = Math.max(mNowMs, targetMs);
+        }
+
+        boolean isShutdown() {
+            return mShutdown;
+        }
+
+        @Override
+        public Future<?> schedule(Runnable runnable, long delayMs) {
+            Task task = new Task(mNowMs + delayMs, mSequence++, runnable);
+            mTasks.add(task);
+            return task.mFuture;
+        }
+
+        @Override
+        public void shutdown() {
+            mShutdown = true;
+            mTasks.clear();
+        }
+    }
+
+    private static class Task {
+        final long mDueMs;
+        final long mSequence;
+        final FutureTask<Void> mFuture;
+
+        Task(long dueMs, long sequence, Runnable runnable) {
+            mDueMs = dueMs;
+            mSequence = sequence;
+            mFuture = new FutureTask<>(runnable, null);
+        }
+    }
+}
@@ -162,6 +162,20 @@ public class ScheduledRunCollectionListenerTest {
                         result.getString(
                                 TEST_METRIC_KEY + ScheduledRunCollectionListener.MEAN_SUFFIX)),
                 0.1);
+        assertEquals(
+                2,
+                Double.parseDouble(
+                        result.getString(
+                                TEST_METRIC_KEY + ScheduledRunCollectionListener.P50_SUFFIX)),
+                0);
+        assertEquals(
+                expectedMax,
+                Double.parseDouble(
+                        result.getString(
+                                TEST_METRIC_KEY + ScheduledRunCollectionListener.P99_SUFFIX)),
+                0);
+        assertNotNull(
+                result.getString(TEST_METRIC_KEY + ScheduledRunCollectionListener.STDDEV_SUFFIX));
     }
 
     private void testRun(boolean isComplete) throws Exception {
@@ -16,6 +16,7 @@
 package android.device.collectors;
 
 import android.app.Instrumentation;
+import android.device.collectors.util.SendToInstrumentation;
 import android.os.Bundle;
 import androidx.test.runner.AndroidJUnit4;
 
@@ -25,8 +26,12 @@ import org.junit.Test;
 import org.junit.runner.Description;
 import org.junit.runner.Result;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -72,4 +77,77 @@ public class ScheduledRunMetricListenerTest {
         assertEquals(TEST_RUN_VALUE + "1", resultBundle.getString(TEST_RUN_KEY + "1"));
         assertEquals(TEST_RUN_VALUE + "2", resultBundle.getString(TEST_RUN_KEY + "2"));
     }
+
+    @Test
+    public void testSamplingStatsReported() throws Exception {
+        Bundle b = new Bundle();
+        b.putString(ScheduledRunMetricListener.INTERVAL_ARG_KEY, "100");
+        b.putString(ScheduledRunMetricListener.REPORT_SAMPLING_STATS_ARG_KEY, "true");
+        // A sample is only counted once collected, so the 4th collection proves 3 were counted.
+        CountDownLatch collections = new CountDownLatch(4);
+        ScheduledRunMetricListener listener =
+                new ScheduledRunMetricListener(b) {
+                    @Override
+                    public void collect(DataRecord runData, Description desc) {
+                        collections.countDown();
+                    }
+                };
+        listener.setInstrumentation(Mockito.mock(Instrumentation.class));
+        listener.testRunStarted(Description.createSuiteDescription("run"));
+        Assert.assertTrue(collections.await(10, TimeUnit.SECONDS));
+        listener.testRunFinished(new Result());
+        Bundle resultBundle = new Bundle();
+        listener.instrumentationRunFinished(System.out, resultBundle, new Result());
+
+        String prefix = listener.getTag();
+        Assert.assertTrue(
+                Long.parseLong(
+                                resultBundle.getString(
+                                        prefix + ScheduledRunMetricListener.SAMPLE_COUNT_SUFFIX))
+                        >= 3);
+        Assert.assertNotNull(
+                resultBundle.getString(prefix + ScheduledRunMetricListener.MAX_LATENESS_SUFFIX));
+        Assert.assertNotNull(
+                resultBundle.getString(prefix + ScheduledRunMetricListener.MEAN_COST_SUFFIX));
+    }
+
+    @Test
+    public void testMetricsSentInBatches() throws Exception {
+        Bundle b = new Bundle();
+        b.putString(ScheduledRunMetricListener.INTERVAL_ARG_KEY, "10");
+        b.putString(ScheduledRunMetricListener.BATCH_SAMPLES_ARG_KEY, "2");
+        // The third collection only starts once the batch of the first two samples is sent.
+        CountDownLatch collections = new CountDownLatch(3);
+        ScheduledRunMetricListener listener =
+                new ScheduledRunMetricListener(b) {
+                    private int counter = 0;
+
+                    @Override
+                    public void collect(DataRecord runData, Description desc) {
+                        if (collections.getCount() > 1) {
+                            runData.addStringMetric(
+                                    TEST_RUN_KEY + counter, TEST_RUN_VALUE + counter);
+                            counter++;
+                        }
+                        collections.countDown();
+                    }
+                };
+        Instrumentation mockInstrumentation = Mockito.mock(Instrumentation.class);
+        listener.setInstrumentation(mockInstrumentation);
+        listener.testRunStarted(Description.createSuiteDescription("run"));
+        Assert.assertTrue(collections.await(10, TimeUnit.SECONDS));
+        listener.testRunFinished(new Result());
+        Bundle resultBundle = new Bundle();
+        listener.instrumentationRunFinished(System.out, resultBundle, new Result());
+
+        ArgumentCaptor<Bundle> batch = ArgumentCaptor.forClass(Bundle.class);
+        Mockito.verify(mockInstrumentation)
+                .sendStatus(
+                        Mockito.eq(SendToInstrumentation.INST_STATUS_IN_PROGRESS), batch.capture());
+        assertEquals(TEST_RUN_VALUE + "0", batch.getValue().getString(TEST_RUN_KEY + "0"));
+        assertEquals(TEST_RUN_VALUE + "1", batch.getValue().getString(TEST_RUN_KEY + "1"));
+        // The metrics sent in a batch are not reported again at the end of the run.
+        Assert.assertFalse(resultBundle.containsKey(TEST_RUN_KEY + "0"));
+        Assert.assertFalse(resultBundle.containsKey(TEST_RUN_KEY + "1"));
+    }
 }
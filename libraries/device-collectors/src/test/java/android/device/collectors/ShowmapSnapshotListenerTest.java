@@ -16,6 +16,7 @@
 
 package android.device.collectors;
 
+import static android.device.collectors.ShowmapSnapshotListener.BATCHED_CONCURRENCY_KEY;
 import static android.device.collectors.ShowmapSnapshotListener.DROP_CACHE_KEY;
 import static android.device.collectors.ShowmapSnapshotListener.METRIC_NAME_INDEX;
 import static android.device.collectors.ShowmapSnapshotListener.OUTPUT_DIR_KEY;
@@ -92,4 +93,17 @@ public class ShowmapSnapshotListenerTest {
     // DROP_CACHE_KEY values: "pagecache" = 1, "slab" = 2, "all" = 3
     verify(mShowmapSnapshotHelper).setDropCacheOption(3);
   }
+
+  @Test
+  public void testBatchedConcurrencyOption() throws Exception {
+    Bundle b = new Bundle();
+    b.putString(PROCESS_NAMES_KEY, "process1");
+    b.putString(OUTPUT_DIR_KEY, VALID_OUTPUT_DIR);
+    b.putString(BATCHED_CONCURRENCY_KEY, "4");
+    mListener = initListener(b);
+
+    mListener.testRunStarted(mRunDesc);
+
+    verify(mShowmapSnapshotHelper).setBatchedCollection(4);
+  }
 }
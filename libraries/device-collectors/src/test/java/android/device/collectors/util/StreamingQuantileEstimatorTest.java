@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.device.collectors.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Random;
+
+/** Android Unit tests for {@link StreamingQuantileEstimator}. */
+@RunWith(AndroidJUnit4.class)
+public class StreamingQuantileEstimatorTest {
+
+    /** Test that no value yields NaN. */
+    @Test
+    public void testEmpty() {
+        assertTrue(Double.isNaN(new StreamingQuantileEstimator(0.5).getValue()));
+    }
+
+    /** Test that the exact nearest-rank quantile is returned for few samples. */
+    @Test
+    public void testFewSamplesAreExact() {
+        StreamingQuantileEstimator p50 = new StreamingQuantileEstimator(0.5);
+        StreamingQuantileEstimator p90 = new StreamingQuantileEstimator(0.9);
+        for (double value : new double[] {4, 0, 3, 1, 2}) {
+            p50.add(value);
+            p90.add(value);
+        }
+        assertEquals(2, p50.getValue(), 0);
+        assertEquals(4, p90.getValue(), 0);
+        assertEquals(5, p50.getCount());
+    }
+
+    /** Test that the estimates converge on a large uniform stream. */
+    @Test
+    public void testUniformStream() {
+        StreamingQuantileEstimator p50 = new StreamingQuantileEstimator(0.5);
+        StreamingQuantileEstimator p99 = new StreamingQuantileEstimator(0.99);
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            double value = random.nextDouble() * 1000;
+            p50.add(value);
+            p99.add(value);
+        }
+        assertEquals(500, p50.getValue(), 10);
+        assertEquals(990, p99.getValue(), 5);
+    }
+
+    /** Test that an invalid quantile is rejected. */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidQuantile() {
+        new StreamingQuantileEstimator(1.5);
+    }
+}
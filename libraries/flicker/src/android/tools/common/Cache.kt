@@ -16,24 +16,53 @@
 
 package android.tools.common
 
+/**
+ * Interning cache of the parse session running on the current thread
+ *
+ * Each session uses its own [ICache], created and tracked by [Caches]. A parser opens a new session
+ * for each parse, see [withScope], so the objects of one trace are shared between its entries
+ * without retaining them after the parse.
+ */
 object Cache {
-    private var cache = mutableMapOf<Any, Any>()
-
     data class Backup(val cache: MutableMap<Any, Any>)
 
+    /** Cache of the current parse session */
+    val current: ICache
+        get() = Caches.current
+
+    /** Usage counters of the cache of the current parse session */
+    val stats: CacheStats
+        get() = current.stats
+
     fun <T : Any> get(element: T): T {
-        return cache.getOrPut(element) { element } as T
+        return current.get(element)
     }
 
     fun clear() {
-        cache = mutableMapOf()
+        current.clear()
     }
 
     fun backup(): Backup {
-        return Backup(cache.toMutableMap())
+        return Backup(current.backup())
     }
 
     fun restore(backup: Backup) {
-        cache = backup.cache
+        current.restore(backup.cache)
+    }
+
+    /**
+     * Runs [predicate] in a parse session using [cache], restoring the previous session afterwards
+     *
+     * @param cache Cache of the session, by default a new one
+     * @param predicate Code to run in the session
+     */
+    fun <T> withScope(cache: ICache = Caches.newCache(), predicate: () -> T): T {
+        val previous = Caches.current
+        Caches.current = cache
+        try {
+            return predicate()
+        } finally {
+            Caches.current = previous
+        }
     }
 }
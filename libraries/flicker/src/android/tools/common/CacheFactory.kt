@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.common
+
+/**
+ * Creates the caches of the parse sessions and keeps track of the cache in use
+ *
+ * This implementation keeps a single cache in use for the whole process, and is meant for single
+ * threaded environments. Platforms running parsers concurrently replace it, see
+ * [CrossPlatform.setCacheFactory].
+ */
+open class CacheFactory {
+    private var cache: ICache? = null
+
+    /** Cache of the running parse session */
+    open var current: ICache
+        get() = cache ?: newCache().also { cache = it }
+        set(value) {
+            cache = value
+        }
+
+    /** Creates the cache of a new parse session */
+    open fun newCache(): ICache = InterningCache()
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.common
+
+/**
+ * Usage counters of an [ICache]
+ *
+ * @param hits Number of lookups returning an already cached instance
+ * @param misses Number of lookups caching a new instance
+ * @param evictions Number of elements removed to keep the cache within its bounds, or collected
+ *   after they were no longer used
+ * @param size Number of elements in the cache
+ */
+data class CacheStats(val hits: Long, val misses: Long, val evictions: Long, val size: Int) {
+    val hitRate: Double
+        get() = if (hits + misses == 0L) 0.0 else hits.toDouble() / (hits + misses)
+}
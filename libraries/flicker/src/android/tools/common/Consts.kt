@@ -28,3 +28,6 @@ var Logger: ILogger = ConsoleLogger()
 
 var Timestamps: TimestampFactory = TimestampFactory()
     internal set
+
+var Caches: CacheFactory = CacheFactory()
+    internal set
@@ -28,4 +28,7 @@ object CrossPlatform {
 
     @JsName("setTimestampFactory")
     fun setTimestampFactory(factory: TimestampFactory) = apply { Timestamps = factory }
+
+    @JsName("setCacheFactory")
+    fun setCacheFactory(factory: CacheFactory) = apply { Caches = factory }
 }
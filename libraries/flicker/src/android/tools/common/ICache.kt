@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.common
+
+/** Interning cache for the immutable objects created while parsing traces */
+interface ICache {
+    /** If the cache can be used by multiple threads at once */
+    val isThreadSafe: Boolean
+
+    /** Usage counters of the cache */
+    val stats: CacheStats
+
+    /**
+     * Returns the cached instance equal to [element], caching [element] if there is none
+     *
+     * @param element Element to intern
+     */
+    fun <T : Any> get(element: T): T
+
+    /** Removes all elements from the cache */
+    fun clear()
+
+    /** Returns a copy of the elements in the cache */
+    fun backup(): MutableMap<Any, Any>
+
+    /** Replaces the elements in the cache with [elements] */
+    fun restore(elements: Map<Any, Any>)
+}
@@ -19,10 +19,27 @@ package android.tools.common
 import kotlin.js.JsExport
 import kotlin.js.JsName
 
+/**
+ * Trace with entries sorted by timestamp
+ *
+ * Lookups by timestamp are binary searches on the entry timestamps.
+ */
 @JsExport
 interface ITrace<Entry : ITraceEntry> {
     @JsName("entries") val entries: Array<Entry>
 
+    /** Number of entries in the trace, which traces with lazy entries know without building them */
+    @JsName("entryCount")
+    val entryCount: Int
+        get() = entries.size
+
+    /** @return the entry at [index], building only this entry on traces with lazy entries */
+    @JsName("getEntry") fun getEntry(index: Int): Entry = entries[index]
+
+    /** @return the timestamp of the entry at [index], without building it if it is lazy */
+    @JsName("getEntryTimestamp")
+    fun getEntryTimestamp(index: Int): Timestamp = getEntry(index).timestamp
+
     @JsName("slice") fun slice(startTimestamp: Timestamp, endTimestamp: Timestamp): ITrace<Entry>
 
     /**
@@ -31,8 +48,14 @@ interface ITrace<Entry : ITraceEntry> {
      */
     @JsName("getEntryExactlyAt")
     fun getEntryExactlyAt(timestamp: Timestamp): Entry {
-        return entries.firstOrNull { it.timestamp == timestamp }
-            ?: throw RuntimeException("Entry does not exist for timestamp $timestamp")
+        var index = findFirstIndex { getEntryTimestamp(it) >= timestamp }
+        while (index < entryCount && getEntryTimestamp(index) <= timestamp) {
+            if (getEntryTimestamp(index) == timestamp) {
+                return getEntry(index)
+            }
+            index++
+        }
+        throw RuntimeException("Entry does not exist for timestamp $timestamp")
     }
 
     /**
@@ -47,7 +70,56 @@ interface ITrace<Entry : ITraceEntry> {
      */
     @JsName("getEntryAt")
     fun getEntryAt(timestamp: Timestamp): Entry {
-        return entries.dropLastWhile { it.timestamp > timestamp }.lastOrNull()
-            ?: error("No entry at or before timestamp $timestamp")
+        val index = findFirstIndex { getEntryTimestamp(it) > timestamp } - 1
+        if (index < 0) {
+            error("No entry at or before timestamp $timestamp")
+        }
+        return getEntry(index)
+    }
+}
+
+/**
+ * @return the indexes of the entries between [startTimestamp] and [endTimestamp], inclusive, read
+ *   from the entry timestamps only
+ */
+internal fun ITrace<*>.getIndexesBetween(
+    startTimestamp: Timestamp,
+    endTimestamp: Timestamp
+): IntRange {
+    val first = findFirstIndex { getEntryTimestamp(it) >= startTimestamp }
+    val end = findFirstIndex { getEntryTimestamp(it) > endTimestamp }
+    return first until maxOf(first, end)
+}
+
+/**
+ * @return the entries between [startTimestamp] and [endTimestamp], inclusive, copied from
+ *   [ITrace.entries] at once
+ */
+internal fun <Entry : ITraceEntry> ITrace<Entry>.getEntriesBetween(
+    startTimestamp: Timestamp,
+    endTimestamp: Timestamp
+): Array<Entry> {
+    val indexes = getIndexesBetween(startTimestamp, endTimestamp)
+    return entries.copyOfRange(indexes.first, indexes.last + 1)
+}
+
+/**
+ * Binary search of the entries of the trace
+ *
+ * @param predicate Condition on the entry index, false for the first entries of the trace and true
+ *   for all the entries after them
+ * @return the index of the first entry matching [predicate], or [ITrace.entryCount] if none does
+ */
+internal inline fun ITrace<*>.findFirstIndex(predicate: (Int) -> Boolean): Int {
+    var low = 0
+    var high = entryCount
+    while (low < high) {
+        val middle = (low + high) ushr 1
+        if (predicate(middle)) {
+            high = middle
+        } else {
+            low = middle + 1
+        }
     }
+    return low
 }
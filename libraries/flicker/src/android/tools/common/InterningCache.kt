@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.common
+
+/**
+ * Single threaded [ICache] holding at most [maxSize] elements
+ *
+ * When full, the oldest elements are evicted first. Evicted elements remain valid, later lookups
+ * of equal elements are just no longer shared with them.
+ *
+ * @param maxSize Maximum number of elements in the cache
+ */
+class InterningCache(private val maxSize: Int = DEFAULT_MAX_SIZE) : ICache {
+    private val elements = LinkedHashMap<Any, Any>()
+    private var hits = 0L
+    private var misses = 0L
+    private var evictions = 0L
+
+    init {
+        require(maxSize > 0) { "Cache size must be positive but was $maxSize" }
+    }
+
+    override val isThreadSafe = false
+
+    override val stats: CacheStats
+        get() = CacheStats(hits, misses, evictions, elements.size)
+
+    override fun <T : Any> get(element: T): T {
+        val cached = elements[element]
+        if (cached != null) {
+            hits++
+            return cached as T
+        }
+
+        misses++
+        if (elements.size >= maxSize) {
+            val iterator = elements.keys.iterator()
+            iterator.next()
+            iterator.remove()
+            evictions++
+        }
+        elements[element] = element
+        return element
+    }
+
+    override fun clear() {
+        elements.clear()
+    }
+
+    override fun backup(): MutableMap<Any, Any> = elements.toMutableMap()
+
+    override fun restore(elements: Map<Any, Any>) {
+        this.elements.clear()
+        this.elements.putAll(elements)
+    }
+
+    companion object {
+        const val DEFAULT_MAX_SIZE = 500_000
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.common
+
+import kotlin.jvm.Volatile
+
+/**
+ * Entries of a trace which are only built when they are accessed
+ *
+ * Only the timestamps of the entries are kept up front. An entry accessed by its index is built on
+ * its own and kept in a small cache of [cacheSize] entries, so reading the first and last entries
+ * of a long trace doesn't build the entries in between. [buildAll] builds all the entries at once,
+ * which allows the builder to parse them concurrently.
+ *
+ * The cache is indexed by the position of the entry in the trace, and two entries at positions
+ * mapped to the same slot evict each other. As the entries are read by assertions running
+ * concurrently, the cache is replaced on each update instead of being updated in place. Concurrent
+ * reads may build an entry more than once, but always return a complete entry.
+ *
+ * An entry built again after it was evicted is a new, equal, instance. [buildAll] reuses the
+ * entries still in the cache, so they are the same instances as the ones returned by [get].
+ *
+ * @param timestamps Timestamps of the entries, sorted
+ * @param buildEntries Builds the entries at a range of indexes, in order
+ * @param cacheSize Number of entries built on their own which are kept
+ */
+class LazyTraceEntries<Entry>(
+    private val timestamps: Array<Timestamp>,
+    private val buildEntries: (IntRange) -> List<Entry>,
+    private val cacheSize: Int = DEFAULT_CACHE_SIZE
+) {
+    @Volatile private var cache: List<CachedEntry<Entry>?> = List(cacheSize) { null }
+
+    init {
+        require(cacheSize > 0) { "Cache size must be positive, but was $cacheSize" }
+    }
+
+    /** Number of entries */
+    val size: Int
+        get() = timestamps.size
+
+    /** @return the timestamp of the entry at [index], without building the entry */
+    fun getTimestamp(index: Int): Timestamp = timestamps[index]
+
+    /** @return the entry at [index], from the cache or built on its own */
+    operator fun get(index: Int): Entry {
+        if (index < 0 || index >= size) {
+            throw IndexOutOfBoundsException("Index $index out of bounds for $size entries")
+        }
+        val slot = index % cacheSize
+        val cached = cache[slot]
+        if (cached != null && cached.index == index) {
+            return cached.entry
+        }
+        val entry = buildEntries(index..index).single()
+        cache = cache.toMutableList().also { it[slot] = CachedEntry(index, entry) }
+        return entry
+    }
+
+    /** Builds all the entries, in order, reusing the cached ones. The others are not cached */
+    fun buildAll(): List<Entry> {
+        if (size == 0) {
+            return emptyList()
+        }
+        val entries = buildEntries(0 until size).toMutableList()
+        cache.forEach { cached -> if (cached != null) entries[cached.index] = cached.entry }
+        return entries
+    }
+
+    /**
+     * @return the entries from [fromIndex] (inclusive) to [toIndex] (exclusive), still to be built
+     */
+    fun slice(fromIndex: Int, toIndex: Int): LazyTraceEntries<Entry> {
+        return LazyTraceEntries(
+            timestamps.copyOfRange(fromIndex, toIndex),
+            { range -> buildEntries((range.first + fromIndex)..(range.last + fromIndex)) },
+            cacheSize
+        )
+    }
+
+    private class CachedEntry<Entry>(val index: Int, val entry: Entry)
+
+    companion object {
+        /** Enough entries for the start and end states and a few tagged states */
+        const val DEFAULT_CACHE_SIZE = 8
+    }
+}
@@ -35,17 +35,26 @@ internal constructor(
     val unixNanos: Long = 0L,
     private val realTimestampFormatter: (Long) -> String
 ) : Comparable<Timestamp> {
-    val hasElapsedTimestamp = elapsedNanos != 0L
-    val hasSystemUptimeTimestamp = systemUptimeNanos != 0L
-    val hasUnixTimestamp = unixNanos != 0L
-    val isEmpty = !hasElapsedTimestamp && !hasSystemUptimeTimestamp && !hasUnixTimestamp
-    val hasAllTimestamps = hasUnixTimestamp && hasSystemUptimeTimestamp && hasElapsedTimestamp
-    @JsName("isMin") val isMin = elapsedNanos == 1L && systemUptimeNanos == 1L && unixNanos == 1L
+    // Computed on access, so a timestamp only holds its values and the shared formatter
+    val hasElapsedTimestamp
+        get() = elapsedNanos != 0L
+    val hasSystemUptimeTimestamp
+        get() = systemUptimeNanos != 0L
+    val hasUnixTimestamp
+        get() = unixNanos != 0L
+    val isEmpty
+        get() = !hasElapsedTimestamp && !hasSystemUptimeTimestamp && !hasUnixTimestamp
+    val hasAllTimestamps
+        get() = hasUnixTimestamp && hasSystemUptimeTimestamp && hasElapsedTimestamp
+    @JsName("isMin")
+    val isMin
+        get() = elapsedNanos == 1L && systemUptimeNanos == 1L && unixNanos == 1L
     @JsName("isMax")
-    val isMax =
-        elapsedNanos == Long.MAX_VALUE &&
-            systemUptimeNanos == Long.MAX_VALUE &&
-            unixNanos == Long.MAX_VALUE
+    val isMax
+        get() =
+            elapsedNanos == Long.MAX_VALUE &&
+                systemUptimeNanos == Long.MAX_VALUE &&
+                unixNanos == Long.MAX_VALUE
 
     fun unixNanosToLogFormat(): String {
         val seconds = unixNanos / SECOND_AS_NANOSECONDS
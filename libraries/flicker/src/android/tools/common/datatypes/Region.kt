@@ -47,8 +47,16 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
     }
 
     @JsName("rects")
-    val rects
-        get() = getRectsFromString(toString())
+    val rects: Array<Rect>
+        get() {
+            val rects = mutableListOf<Rect>()
+            val iter = Iterator(this)
+            while (!iter.done()) {
+                rects.add(iter.rect())
+                iter.next()
+            }
+            return rects.toTypedArray()
+        }
 
     @JsName("width")
     val width: Int
@@ -119,10 +127,9 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
         }
         require(this.isComplex())
 
-        val runs = fRunHead!!.findScanline(y)
-
+        val runs = fRunHead!!.readonlyRuns
         // Skip the Bottom and IntervalCount
-        var runsIndex = 2
+        var runsIndex = fRunHead!!.findScanline(y) + 2
 
         // Just walk this scanline, checking each interval. The X-sentinel will
         // appear as a left-interval (runs[0]) and should abort the search.
@@ -142,12 +149,25 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
         return false
     }
 
+    /**
+     * Iterates over the rectangles of a region, without allocating a [Rect] for each step unless
+     * [rect] is called
+     */
     class Iterator(private val rgn: Region) {
         private var done: Boolean
-        private var rect: Rect
-        private var fRuns: Array<Int>? = null
+        private var rect: Rect? = null
+        private var fRuns: IntArray? = null
         private var fRunsIndex = 0
 
+        internal var left = 0
+            private set
+        internal var top = 0
+            private set
+        internal var right = 0
+            private set
+        internal var bottom = 0
+            private set
+
         init {
             fRunsIndex = 0
             if (rgn.isEmpty) {
@@ -156,16 +176,27 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
             } else {
                 done = false
                 if (rgn.isRect()) {
-                    rect = rgn.fBounds
+                    val bounds = rgn.fBounds
+                    setCurrent(bounds.left, bounds.top, bounds.right, bounds.bottom)
+                    rect = bounds
                     fRuns = null
                 } else {
-                    fRuns = rgn.fRunHead!!.readonlyRuns
-                    rect = Rect.withoutCache(fRuns!![3], fRuns!![0], fRuns!![4], fRuns!![1])
+                    val runs = rgn.fRunHead!!.readonlyRuns
+                    fRuns = runs
+                    setCurrent(runs[3], runs[0], runs[4], runs[1])
                     fRunsIndex = 5
                 }
             }
         }
 
+        private fun setCurrent(left: Int, top: Int, right: Int, bottom: Int) {
+            this.left = left
+            this.top = top
+            this.right = right
+            this.bottom = bottom
+            rect = null
+        }
+
         fun next() {
             if (done) {
                 return
@@ -180,30 +211,22 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
             var runsIndex = fRunsIndex
 
             if (runs[runsIndex] < RUN_TYPE_SENTINEL) { // valid X value
-                rect =
-                    Rect.withoutCache(runs[runsIndex], rect.top, runs[runsIndex + 1], rect.bottom)
+                setCurrent(runs[runsIndex], top, runs[runsIndex + 1], bottom)
                 runsIndex += 2
             } else { // we're at the end of a line
                 runsIndex += 1
                 if (runs[runsIndex] < RUN_TYPE_SENTINEL) { // valid Y value
                     val intervals = runs[runsIndex + 1]
                     if (0 == intervals) { // empty line
-                        rect =
-                            Rect.withoutCache(rect.left, runs[runsIndex], rect.right, rect.bottom)
+                        setCurrent(left, runs[runsIndex], right, bottom)
                         runsIndex += 3
                     } else {
-                        rect = Rect.withoutCache(rect.left, rect.bottom, rect.right, rect.bottom)
+                        setCurrent(left, bottom, right, bottom)
                     }
 
                     assertSentinel(runs[runsIndex + 2], false)
                     assertSentinel(runs[runsIndex + 3], false)
-                    rect =
-                        Rect.withoutCache(
-                            runs[runsIndex + 2],
-                            rect.top,
-                            runs[runsIndex + 3],
-                            runs[runsIndex]
-                        )
+                    setCurrent(runs[runsIndex + 2], top, runs[runsIndex + 3], runs[runsIndex])
                     runsIndex += 4
                 } else { // end of rgn
                     done = true
@@ -218,7 +241,7 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
         }
 
         fun rect(): Rect {
-            return rect
+            return rect ?: Rect.withoutCache(left, top, right, bottom).also { rect = it }
         }
     }
 
@@ -226,8 +249,7 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
         val iter = Iterator(this)
         val result = StringBuilder("SkRegion(")
         while (!iter.done()) {
-            val r = iter.rect()
-            result.append("(${r.left},${r.top},${r.right},${r.bottom})")
+            result.append("(${iter.left},${iter.top},${iter.right},${iter.bottom})")
             iter.next()
         }
         result.append(")")
@@ -268,33 +290,39 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
                     this.setEmpty()
                     return false
                 }
-                if (rgnB.isEmpty || rgnA.bounds.intersection(rgnB.bounds).isEmpty) {
+                if (rgnB.isEmpty || !intersects(rgnA.bounds, rgnB.bounds)) {
                     this.set(rgnA)
                     return !rgnA.isEmpty
                 }
-                if (rgnB.isRect() && rgnB.bounds.contains(rgnA.bounds)) {
+                if (rgnB.isRect() && contains(rgnB.bounds, rgnA.bounds)) {
                     this.setEmpty()
                     return false
                 }
             }
             Op.INTERSECT -> {
                 when {
-                    rgnA.isEmpty ||
-                        rgnB.isEmpty ||
-                        rgnA.bounds.intersection(rgnB.bounds).isEmpty -> {
+                    rgnA.isEmpty || rgnB.isEmpty || !intersects(rgnA.bounds, rgnB.bounds) -> {
                         this.setEmpty()
                         return false
                     }
                     rgnA.isRect() && rgnB.isRect() -> {
-                        val rectIntersection = rgnA.bounds.intersection(rgnB.bounds)
-                        this.set(rgnA.bounds.intersection(rgnB.bounds))
+                        val a = rgnA.bounds
+                        val b = rgnB.bounds
+                        val rectIntersection =
+                            Rect.withoutCache(
+                                maxOf(a.left, b.left),
+                                maxOf(a.top, b.top),
+                                minOf(a.right, b.right),
+                                minOf(a.bottom, b.bottom)
+                            )
+                        this.set(rectIntersection)
                         return !rectIntersection.isEmpty
                     }
-                    rgnA.isRect() && rgnA.bounds.contains(rgnB.bounds) -> {
+                    rgnA.isRect() && contains(rgnA.bounds, rgnB.bounds) -> {
                         this.set(rgnB)
                         return !rgnB.isEmpty
                     }
-                    rgnB.isRect() && rgnB.bounds.contains(rgnA.bounds) -> {
+                    rgnB.isRect() && contains(rgnB.bounds, rgnA.bounds) -> {
                         this.set(rgnA)
                         return !rgnA.isEmpty
                     }
@@ -310,11 +338,11 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
                         this.set(rgnA)
                         return !rgnA.isEmpty
                     }
-                    rgnA.isRect() && rgnA.bounds.contains(rgnB.bounds) -> {
+                    rgnA.isRect() && contains(rgnA.bounds, rgnB.bounds) -> {
                         this.set(rgnA)
                         return !rgnA.isEmpty
                     }
-                    rgnB.isRect() && rgnB.bounds.contains(rgnA.bounds) -> {
+                    rgnB.isRect() && contains(rgnB.bounds, rgnA.bounds) -> {
                         this.set(rgnB)
                         return !rgnB.isEmpty
                     }
@@ -342,7 +370,7 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
 
     class RunArray {
         private val kRunArrayStackCount = 256
-        var runs: Array<Int> = Array(kRunArrayStackCount) { 0 }
+        var runs: IntArray = IntArray(kRunArrayStackCount)
         private var fCount: Int = kRunArrayStackCount
 
         val count: Int
@@ -357,9 +385,7 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
             if (count > fCount) {
                 // leave at least 50% extra space for future growth.
                 count += count shr 1
-                val newRuns = Array(count) { 0 }
-                runs.forEachIndexed { index, value -> newRuns[index] = value }
-                runs = newRuns
+                runs = runs.copyOf(count)
                 fCount = count
             }
         }
@@ -368,12 +394,20 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
             runs[i] = value
         }
 
+        /** @return if the [length] runs from [first] and from [second] are equal */
+        fun rangeEquals(first: Int, second: Int, length: Int): Boolean {
+            for (i in 0 until length) {
+                if (runs[first + i] != runs[second + i]) {
+                    return false
+                }
+            }
+            return true
+        }
+
         fun subList(startIndex: Int, stopIndex: Int): RunArray {
             val subRuns = RunArray()
             subRuns.resizeToAtLeast(this.fCount)
-            for (i in startIndex until stopIndex) {
-                subRuns.runs[i - startIndex] = this.runs[i]
-            }
+            this.runs.copyInto(subRuns.runs, startIndex = startIndex, endIndex = stopIndex)
             return subRuns
         }
 
@@ -394,10 +428,10 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
         return this.oper(rgnA, rgnB, op)
     }
 
-    private fun getRuns(): Array<Int> {
-        val runs: Array<Int>
+    private fun getRuns(): IntArray {
+        val runs: IntArray
         if (this.isEmpty) {
-            runs = Array(RECT_REGION_RUNS) { 0 }
+            runs = IntArray(RECT_REGION_RUNS)
             runs[0] = RUN_TYPE_SENTINEL
         } else if (this.isRect()) {
             runs = buildRectRuns(fBounds)
@@ -408,8 +442,8 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
         return runs
     }
 
-    private fun buildRectRuns(bounds: Rect): Array<Int> {
-        val runs = Array(RECT_REGION_RUNS) { 0 }
+    private fun buildRectRuns(bounds: Rect): IntArray {
+        val runs = IntArray(RECT_REGION_RUNS)
         runs[0] = bounds.top
         runs[1] = bounds.bottom
         runs[2] = 1 // 1 interval for this scanline
@@ -487,12 +521,12 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
 
         /**
          * Return the scanline that contains the Y value. This requires that the Y value is already
-         * known to be contained within the bounds of the region, and so this routine never returns
-         * nullptr.
+         * known to be contained within the bounds of the region, and so this routine never fails.
          *
-         * It returns the beginning of the scanline, starting with its Bottom value.
+         * It returns the index of the beginning of the scanline in [readonlyRuns], starting with
+         * its Bottom value.
          */
-        fun findScanline(y: Int): Array<Int> {
+        fun findScanline(y: Int): Int {
             val runs = readonlyRuns
 
             // if the top-check fails, we didn't do a quick check on the bounds
@@ -510,14 +544,7 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
                 runsIndex = skipEntireScanline(runsIndex)
             }
 
-            val newArray = Array(runs.size - runsIndex) { 0 }
-            runs.copyInto(
-                newArray,
-                destinationOffset = 0,
-                startIndex = runsIndex,
-                endIndex = runs.size - runsIndex
-            )
-            return newArray
+            return runsIndex
         }
 
         /**
@@ -542,7 +569,7 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
         var runs = RunArray()
         var fRunCount: Int = 0
 
-        val readonlyRuns: Array<Int>
+        val readonlyRuns: IntArray
             get() = runs.runs
     }
 
@@ -678,8 +705,8 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
 
         fun addSpan(
             bottom: Int,
-            aRuns: Array<Int>,
-            bRuns: Array<Int>,
+            aRuns: IntArray,
+            bRuns: IntArray,
             aRunsIndex: Int,
             bRunsIndex: Int
         ) {
@@ -694,14 +721,7 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
 
             // Assert memcmp won't exceed fArray->count().
             require(runArray.count >= start + len - 1)
-            if (
-                fPrevLen == len &&
-                    (1 == len ||
-                        runArray
-                            .subList(fPrevDst, fPrevDst + len)
-                            .runs
-                            .contentEquals(runArray.subList(start, start + len).runs))
-            ) {
+            if (fPrevLen == len && (1 == len || runArray.rangeEquals(fPrevDst, start, len))) {
                 // update Y value
                 runArray[fPrevDst - 2] = bottom
             } else { // accept the new span
@@ -725,8 +745,8 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
         }
 
         class SpanRect(
-            private val aRuns: Array<Int>,
-            private val bRuns: Array<Int>,
+            private val aRuns: IntArray,
+            private val bRuns: IntArray,
             aIndex: Int,
             bIndex: Int
         ) {
@@ -831,8 +851,8 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
         }
 
         private fun operateOnSpan(
-            a_runs: Array<Int>,
-            b_runs: Array<Int>,
+            a_runs: IntArray,
+            b_runs: IntArray,
             a_run_index: Int,
             b_run_index: Int,
             array: RunArray,
@@ -880,7 +900,7 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
             return dstIndex // dst - &(*array)[0]
         }
 
-        private fun distanceToSentinel(runs: Array<Int>, startIndex: Int): Int {
+        private fun distanceToSentinel(runs: IntArray, startIndex: Int): Int {
             var index = startIndex
             if (runs.size <= index) {
                 println("We fucked up...")
@@ -897,8 +917,8 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
     }
 
     private fun operate(
-        aRuns: Array<Int>,
-        bRuns: Array<Int>,
+        aRuns: IntArray,
+        bRuns: IntArray,
         dst: RunArray,
         op: Op,
         _aRunsIndex: Int = 0,
@@ -919,8 +939,8 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
         aRunsIndex++ // skip the intervalCount
         bRunsIndex++ // skip the intervalCount
 
-        val gEmptyScanline: Array<Int> =
-            arrayOf(
+        val gEmptyScanline: IntArray =
+            intArrayOf(
                 0, // fake bottom value
                 0, // zero intervals
                 RUN_TYPE_SENTINEL,
@@ -1027,7 +1047,7 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
         return oper.flush()
     }
 
-    private fun skipIntervals(runs: Array<Int>, index: Int): Int {
+    private fun skipIntervals(runs: IntArray, index: Int): Int {
         val intervals = runs[index - 1]
         return index + intervals * 2 + 1
     }
@@ -1078,12 +1098,24 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
     @JsName("coversAtMost")
     fun coversAtMost(testRegion: Region): Boolean {
         val testRect = testRegion.bounds
+        if (this.isEmpty) {
+            return false
+        }
+        if (this.isRect()) {
+            return contains(testRect, fBounds)
+        }
         val intersection = from(this)
         return intersection.op(testRect, Op.INTERSECT) && !intersection.op(this, Op.XOR)
     }
 
     @JsName("coversAtLeast")
     fun coversAtLeast(testRegion: Region): Boolean {
+        if (this.isEmpty || testRegion.isEmpty) {
+            return false
+        }
+        if (this.isRect() && testRegion.isRect()) {
+            return contains(fBounds, testRegion.fBounds)
+        }
         val intersection = from(this)
         return intersection.op(testRegion, Op.INTERSECT) && !intersection.op(testRegion, Op.XOR)
     }
@@ -1152,31 +1184,20 @@ class Region(rects: Array<Rect> = arrayOf()) : DataType() {
             require(skRegionValueIsSentinel(value) == isSentinel)
         }
 
-        private fun getRectsFromString(regionString: String): Array<Rect> {
-            val rects = mutableListOf<Rect>()
-
-            if (regionString == "SkRegion()") {
-                return rects.toTypedArray()
-            }
-
-            var nativeRegionString = regionString.replace("SkRegion", "")
-            nativeRegionString = nativeRegionString.substring(2, nativeRegionString.length - 2)
-            nativeRegionString = nativeRegionString.replace(")(", ",")
-
-            var rect = Rect.EMPTY
-            for ((i, coord) in nativeRegionString.split(",").withIndex()) {
-                when (i % 4) {
-                    0 -> rect = Rect.withoutCache(coord.toInt(), 0, 0, 0)
-                    1 -> rect = Rect.withoutCache(rect.left, coord.toInt(), 0, 0)
-                    2 -> rect = Rect.withoutCache(rect.left, rect.top, coord.toInt(), 0)
-                    3 -> {
-                        rect = Rect.withoutCache(rect.left, rect.top, rect.right, coord.toInt())
-                        rects.add(rect)
-                    }
-                }
-            }
+        /** Same as `!a.intersection(b).isEmpty`, without allocating the intersection */
+        private fun intersects(a: Rect, b: Rect): Boolean {
+            return maxOf(a.left, b.left) < minOf(a.right, b.right) &&
+                maxOf(a.top, b.top) < minOf(a.bottom, b.bottom)
+        }
 
-            return rects.toTypedArray()
+        /** Same as `outer.contains(inner)`, without converting the rectangles to [RectF] */
+        private fun contains(outer: Rect, inner: Rect): Boolean {
+            return outer.left < outer.right &&
+                outer.top < outer.bottom &&
+                outer.left <= inner.left &&
+                outer.top <= inner.top &&
+                outer.right >= inner.right &&
+                outer.bottom >= inner.bottom
         }
     }
 }
@@ -21,6 +21,9 @@ import android.tools.common.flicker.config.FlickerConfigImpl
 import kotlin.js.JsName
 
 @JsName("FlickerServiceFactory")
-fun FlickerService(flickerConfig: FlickerConfig): FlickerService = FlickerServiceImpl(flickerConfig)
+fun FlickerService(
+    flickerConfig: FlickerConfig,
+    taskRunner: TaskRunner = TaskRunner()
+): FlickerService = FlickerServiceImpl(flickerConfig, taskRunner)
 
 @JsName("ServiceRegistryFactory") fun FlickerConfig(): FlickerConfig = FlickerConfigImpl()
@@ -16,6 +16,8 @@
 
 package android.tools.common.flicker
 
+import android.tools.common.flicker.assertions.AssertionResult
+import android.tools.common.flicker.assertions.ScenarioAssertion
 import android.tools.common.io.Reader
 
 interface FlickerService {
@@ -26,4 +28,13 @@ interface FlickerService {
      * @return A list of scenarios
      */
     fun detectScenarios(reader: Reader): Collection<ScenarioInstance>
+
+    /**
+     * Executes the [assertions] of the detected scenarios
+     *
+     * @param assertions Assertions to execute, which don't depend on each other
+     * @return the results of the assertions, in the same order as [assertions]
+     */
+    fun executeAssertions(assertions: Collection<ScenarioAssertion>): List<AssertionResult> =
+        assertions.map { it.execute() }
 }
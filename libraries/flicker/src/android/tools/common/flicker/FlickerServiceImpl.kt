@@ -17,18 +17,45 @@
 package android.tools.common.flicker
 
 import android.tools.common.Logger
+import android.tools.common.flicker.assertions.AssertionResult
+import android.tools.common.flicker.assertions.ScenarioAssertion
 import android.tools.common.flicker.config.FlickerConfig
 import android.tools.common.io.Reader
 
-/** Contains the logic for Flicker as a Service. */
-class FlickerServiceImpl(private val flickerConfig: FlickerConfig) : FlickerService {
+/**
+ * Contains the logic for Flicker as a Service.
+ *
+ * The scenarios of each config entry are extracted, and the assertions executed, as independent
+ * tasks of [taskRunner], which may run them concurrently. The results are always returned in the
+ * order of the config entries and of the assertions.
+ */
+class FlickerServiceImpl(
+    private val flickerConfig: FlickerConfig,
+    private val taskRunner: TaskRunner = TaskRunner()
+) : FlickerService {
     override fun detectScenarios(reader: Reader): Collection<ScenarioInstance> {
         return Logger.withTracing("FlickerService#detectScenarios") {
-            flickerConfig.getEntries().flatMap { configEntry ->
-                configEntry.extractor.extract(reader).map { traceSlice ->
-                    ScenarioInstanceImpl.fromSlice(traceSlice, reader, configEntry)
+            val tasks =
+                flickerConfig.getEntries().map { configEntry ->
+                    TaskRunner.Task(configEntry.scenarioId.name) {
+                        configEntry.extractor.extract(reader).map { traceSlice ->
+                            ScenarioInstanceImpl.fromSlice(traceSlice, reader, configEntry)
+                        }
+                    }
+                }
+            taskRunner.runAll("extractScenarios", tasks).flatten()
+        }
+    }
+
+    override fun executeAssertions(
+        assertions: Collection<ScenarioAssertion>
+    ): List<AssertionResult> {
+        return Logger.withTracing("FlickerService#executeAssertions") {
+            val tasks =
+                assertions.map { assertion ->
+                    TaskRunner.Task(assertion.toString()) { assertion.execute() }
                 }
-            }
+            taskRunner.runAll("executeAssertion", tasks)
         }
     }
 }
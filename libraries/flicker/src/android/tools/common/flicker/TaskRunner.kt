@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.common.flicker
+
+import android.tools.common.Logger
+
+/**
+ * Runs the independent tasks of the flicker service, such as extracting the scenarios of a config
+ * entry or executing the assertions of a scenario
+ *
+ * This implementation runs the tasks one after the other on the calling thread, tracing each of
+ * them. Platforms able to run tasks concurrently override [runAll].
+ */
+open class TaskRunner {
+    /**
+     * Runs [tasks], which must not depend on each other
+     *
+     * @param category Kind of the tasks, used with the name of each task to trace it
+     * @param tasks Tasks to run
+     * @return the results of the tasks, in the same order as [tasks]. If tasks fail, the failure
+     *   of the earliest one is thrown.
+     */
+    open fun <T> runAll(category: String, tasks: List<Task<T>>): List<T> =
+        tasks.map { runTask(category, it) }
+
+    /** Runs a single [task] of [category], tracing the call */
+    protected fun <T> runTask(category: String, task: Task<T>): T =
+        Logger.withTracing("$category#${task.name}") { task.run() }
+
+    /**
+     * A task to run
+     *
+     * @param name Name of the task, e.g. the scenario or the assertion it handles
+     * @param run Runs the task
+     */
+    class Task<T>(val name: String, val run: () -> T)
+}
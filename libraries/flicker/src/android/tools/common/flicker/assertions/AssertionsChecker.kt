@@ -67,38 +67,37 @@ class AssertionsChecker<T : FlickerSubject> {
         var entryIndex = 0
         var assertionIndex = 0
         var lastPassedAssertionIndex = -1
-        val assertionTrace = mutableListOf<String>()
         while (assertionIndex < assertions.size && entryIndex < entries.size) {
             val currentAssertion = assertions[assertionIndex]
-            val currEntry = entries[entryIndex]
-            try {
-                val log =
-                    "${assertionIndex + 1}/${assertions.size}:[${currentAssertion.name}]\t" +
-                        "Entry: ${entryIndex + 1}/${entries.size} $currEntry"
-                assertionTrace.add(log)
-                currentAssertion.invoke(currEntry)
+            // The subjects still throw their failures, but evaluate() returns them instead of
+            // rethrowing them to the checker, and their messages are only built when reported
+            val failure = currentAssertion.evaluate(entries[entryIndex])
+            if (failure == null) {
                 lastPassedAssertionIndex = assertionIndex
                 entryIndex++
-            } catch (e: AssertionError) {
-                // ignore errors at the start of the trace
-                val ignoreFailure = skipUntilFirstAssertion && lastPassedAssertionIndex == -1
-                if (ignoreFailure) {
-                    entryIndex++
-                    continue
-                }
-                // failure is an optional assertion, just consider it passed skip it
-                if (currentAssertion.isOptional) {
-                    lastPassedAssertionIndex = assertionIndex
-                    assertionIndex++
-                    continue
-                }
-                if (lastPassedAssertionIndex != assertionIndex) {
-                    throw e
-                }
+                continue
+            }
+            if (failure !is AssertionError) {
+                throw failure
+            }
+            // ignore errors at the start of the trace
+            val ignoreFailure = skipUntilFirstAssertion && lastPassedAssertionIndex == -1
+            if (ignoreFailure) {
+                entryIndex++
+                continue
+            }
+            // failure is an optional assertion, just consider it passed skip it
+            if (currentAssertion.isOptional) {
+                lastPassedAssertionIndex = assertionIndex
                 assertionIndex++
-                if (assertionIndex == assertions.size) {
-                    throw e
-                }
+                continue
+            }
+            if (lastPassedAssertionIndex != assertionIndex) {
+                throw failure
+            }
+            assertionIndex++
+            if (assertionIndex == assertions.size) {
+                throw failure
             }
         }
         // Didn't pass any assertions
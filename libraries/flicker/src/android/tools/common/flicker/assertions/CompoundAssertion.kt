@@ -33,33 +33,47 @@ class CompoundAssertion<T>(assertion: (T) -> Unit, name: String, optional: Boole
     /**
      * Executes all [assertions] on [target]
      *
-     * In case of failure, returns the first non-optional failure (if available) or the first failed
+     * In case of failure, throws the first non-optional failure (if available) or the first failed
      * assertion
      */
     override fun invoke(target: T) {
-        val failures =
-            assertions.mapNotNull { assertion ->
-                val error = kotlin.runCatching { assertion.invoke(target) }.exceptionOrNull()
-                if (error != null) {
-                    Pair(assertion, error)
-                } else {
-                    null
-                }
-            }
-        val nonOptionalFailure = failures.firstOrNull { !it.first.isOptional }
-        if (nonOptionalFailure != null) {
-            throw nonOptionalFailure.second
+        val failure = evaluate(target)
+        if (failure != null) {
+            throw failure
         }
-        val firstFailure = failures.firstOrNull()
-        // Only throw first failure if all siblings are also optional otherwise don't throw anything
-        // If the CompoundAssertion is fully optional (i.e. all assertions in the compound assertion
-        // are optional), then we want to make sure the AssertionsChecker knows about the failure to
-        // not advance to the next state. Otherwise, the AssertionChecker doesn't need to know about
-        // the failure and can just consider the assertion as passed and advance to the next state
-        // since there were non-optional assertions which passed.
-        if (firstFailure != null && isOptional) {
-            throw firstFailure.second
+    }
+
+    /**
+     * Executes [assertions] on [target] and returns their failure instead of throwing it
+     *
+     * The subject checks of [assertions] still throw their failures, which are caught here, so
+     * each failed assertion still creates an exception. Only its message is left to be built when
+     * it is reported. Stops at the first non-optional failure, since it is the one reported
+     * regardless of the result of the assertions after it.
+     *
+     * @return the failure [invoke] would throw, or null if the assertion passed
+     */
+    fun evaluate(target: T): Throwable? {
+        var firstFailure: Throwable? = null
+        for (assertion in assertions) {
+            val error = kotlin.runCatching { assertion.invoke(target) }.exceptionOrNull()
+            if (error == null) {
+                continue
+            }
+            if (!assertion.isOptional) {
+                return error
+            }
+            if (firstFailure == null) {
+                firstFailure = error
+            }
         }
+        // Only return first failure if all siblings are also optional otherwise don't return
+        // anything. If the CompoundAssertion is fully optional (i.e. all assertions in the compound
+        // assertion are optional), then we want to make sure the AssertionsChecker knows about the
+        // failure to not advance to the next state. Otherwise, the AssertionChecker doesn't need to
+        // know about the failure and can just consider the assertion as passed and advance to the
+        // next state since there were non-optional assertions which passed.
+        return firstFailure?.takeIf { isOptional }
     }
 
     /** Adds a new assertion to the list */
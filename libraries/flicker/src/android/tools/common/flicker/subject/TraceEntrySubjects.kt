@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.common.flicker.subject
+
+import android.tools.common.ITrace
+import android.tools.common.ITraceEntry
+
+/**
+ * Subjects of the entries of a [trace], created when they are first accessed
+ *
+ * Accessing a subject by its index, e.g. with [first] or [last], only builds its entry when the
+ * trace has lazy entries. Iterating over the subjects builds all the entries of the trace at once.
+ */
+internal class TraceEntrySubjects<Entry : ITraceEntry, EntrySubject : FlickerSubject>(
+    private val trace: ITrace<Entry>,
+    private val createSubject: (Entry) -> EntrySubject
+) : AbstractList<EntrySubject>() {
+    private val subjects = MutableList<EntrySubject?>(trace.entryCount) { null }
+
+    override val size: Int
+        get() = subjects.size
+
+    override fun get(index: Int): EntrySubject =
+        subjects[index] ?: createSubject(trace.getEntry(index)).also { subjects[index] = it }
+
+    override fun iterator(): Iterator<EntrySubject> {
+        // Build all entries at once instead of one by one
+        trace.entries
+        return super.iterator()
+    }
+}
@@ -22,11 +22,16 @@ import android.tools.common.flicker.assertions.Fact
 import android.tools.common.flicker.subject.FlickerSubject
 import android.tools.common.io.Reader
 
-/** Class to build flicker exception messages */
+/**
+ * Class to build flicker exception messages
+ *
+ * The expected and actual values are only converted to strings when the message is built, so
+ * failures which are never reported don't pay for it.
+ */
 class ExceptionMessageBuilder {
     private var timestamp = Timestamps.empty()
-    private var expected = ""
-    private var actual = mutableListOf<String>()
+    private var expected: Any = ""
+    private var actual = mutableListOf<Any>()
     private var headerDescription = ""
     private var extraDescription = mutableListOf<Fact>()
 
@@ -55,13 +60,13 @@ class ExceptionMessageBuilder {
 
     fun setMessage(value: String) = apply { headerDescription = value }
 
-    fun setExpected(value: Any?) = apply { expected = value?.toString() ?: "null" }
+    fun setExpected(value: Any?) = apply { expected = value ?: "null" }
 
     fun setActual(value: Collection<String>) = apply { actual.addAll(value) }
 
-    fun setActual(value: List<Fact>) = apply { actual.addAll(value.map { it.toString() }) }
+    fun setActual(value: List<Fact>) = apply { actual.addAll(value) }
 
-    fun setActual(value: Any?) = setActual(listOf(value?.toString() ?: "null"))
+    fun setActual(value: Any?) = apply { actual.add(value ?: "null") }
 
     fun setReader(value: Reader) = addExtraDescription("Artifact", value.artifact)
 
@@ -70,6 +75,7 @@ class ExceptionMessageBuilder {
     fun addExtraDescription(vararg value: Fact) = apply { extraDescription.addAll(value.toList()) }
 
     fun build(): String = buildString {
+        val expected = expected.toString()
         if (headerDescription.isNotEmpty()) {
             appendLine(headerDescription)
             appendLine()
@@ -91,6 +97,7 @@ class ExceptionMessageBuilder {
         }
 
         actual
+            .map { it.toString() }
             .filter { it.isNotEmpty() }
             .forEach {
                 append("Actual: ".prependIndent("\t"))
@@ -17,6 +17,7 @@
 package android.tools.common.flicker.subject.layers
 
 import android.tools.common.flicker.subject.FlickerTraceSubject
+import android.tools.common.flicker.subject.TraceEntrySubjects
 import android.tools.common.flicker.subject.exceptions.ExceptionMessageBuilder
 import android.tools.common.flicker.subject.exceptions.InvalidElementException
 import android.tools.common.flicker.subject.exceptions.InvalidPropertyException
@@ -59,8 +60,8 @@ class LayersTraceSubject(val trace: LayersTrace, override val reader: Reader? =
     FlickerTraceSubject<LayerTraceEntrySubject>(),
     ILayerSubject<LayersTraceSubject, RegionTraceSubject> {
 
-    override val subjects by lazy {
-        trace.entries.map { LayerTraceEntrySubject(it, reader, trace) }
+    override val subjects: List<LayerTraceEntrySubject> by lazy {
+        TraceEntrySubjects(trace) { LayerTraceEntrySubject(it, reader, trace) }
     }
 
     /** {@inheritDoc} */
@@ -68,12 +69,12 @@ class LayersTraceSubject(val trace: LayersTrace, override val reader: Reader? =
 
     /** {@inheritDoc} */
     override fun isEmpty(): LayersTraceSubject = apply {
-        check { "Trace is empty" }.that(trace.entries.isEmpty()).isEqual(true)
+        check { "Trace is empty" }.that(trace.entryCount == 0).isEqual(true)
     }
 
     /** {@inheritDoc} */
     override fun isNotEmpty(): LayersTraceSubject = apply {
-        check { "Trace is not empty" }.that(trace.entries.isNotEmpty()).isEqual(true)
+        check { "Trace is not empty" }.that(trace.entryCount > 0).isEqual(true)
     }
 
     /** {@inheritDoc} */
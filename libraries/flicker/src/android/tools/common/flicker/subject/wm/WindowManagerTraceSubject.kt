@@ -18,6 +18,7 @@ package android.tools.common.flicker.subject.wm
 
 import android.tools.common.Rotation
 import android.tools.common.flicker.subject.FlickerTraceSubject
+import android.tools.common.flicker.subject.TraceEntrySubjects
 import android.tools.common.flicker.subject.region.RegionTraceSubject
 import android.tools.common.io.Reader
 import android.tools.common.traces.component.ComponentNameMatcher
@@ -58,8 +59,8 @@ class WindowManagerTraceSubject(
     FlickerTraceSubject<WindowManagerStateSubject>(),
     IWindowManagerSubject<WindowManagerTraceSubject, RegionTraceSubject> {
 
-    override val subjects by lazy {
-        trace.entries.map { WindowManagerStateSubject(it, reader, this) }
+    override val subjects: List<WindowManagerStateSubject> by lazy {
+        TraceEntrySubjects(trace) { WindowManagerStateSubject(it, reader, this) }
     }
 
     /** {@inheritDoc} */
@@ -72,12 +73,12 @@ class WindowManagerTraceSubject(
 
     /** {@inheritDoc} */
     override fun isEmpty(): WindowManagerTraceSubject = apply {
-        check { "Trace is empty" }.that(trace.entries.isEmpty()).isEqual(true)
+        check { "Trace is empty" }.that(trace.entryCount == 0).isEqual(true)
     }
 
     /** {@inheritDoc} */
     override fun isNotEmpty(): WindowManagerTraceSubject = apply {
-        check { "Trace is not empty" }.that(trace.entries.isEmpty()).isEqual(false)
+        check { "Trace is not empty" }.that(trace.entryCount == 0).isEqual(false)
     }
 
     /**
@@ -30,7 +30,8 @@ abstract class AbstractParser<InputTypeTrace, OutputTypeTrace> {
      * Uses a [ByteArray] to generates a trace
      *
      * @param bytes Parsed proto data
-     * @param clearCache If the caching used while parsing the object should be cleared
+     * @param clearCache If the objects should be cached in a new parse session, discarded after
+     *   the parse, instead of the current session of [Cache]
      */
     @JsName("parse")
     open fun parse(bytes: ByteArray, clearCache: Boolean = true): OutputTypeTrace {
@@ -42,16 +43,16 @@ abstract class AbstractParser<InputTypeTrace, OutputTypeTrace> {
      * Uses [InputTypeTrace] to generates a trace
      *
      * @param input Parsed proto data
-     * @param clearCache If the caching used while parsing the object should be cleared
+     * @param clearCache If the objects should be cached in a new parse session, discarded after
+     *   the parse, instead of the current session of [Cache]
      */
     open fun parse(input: InputTypeTrace, clearCache: Boolean): OutputTypeTrace {
-        return try {
-            doParse(input)
-        } finally {
-            if (clearCache) {
-                Cache.clear()
-            }
-        }
+        return withParseSession(clearCache) { doParse(input) }
+    }
+
+    /** Runs [predicate] in a new parse session of [Cache] if [clearCache], or the current one */
+    protected fun <T> withParseSession(clearCache: Boolean, predicate: () -> T): T {
+        return if (clearCache) Cache.withScope(predicate = predicate) else predicate()
     }
 
     protected fun decodeByteArray(input: ByteArray): InputTypeTrace {
@@ -106,4 +107,89 @@ abstract class AbstractParser<InputTypeTrace, OutputTypeTrace> {
             }
         }
     }
+
+    /**
+     * Finds the indexes of the [entries] between [from] and [to], like [getTimestampsInRange]
+     *
+     * The [entries] must be sorted by timestamp. The bounds of the range are found with a binary
+     * search, so only O(log n) timestamps are read with [getTimestamp].
+     *
+     * @param entries Entries sorted by timestamp
+     * @param from Initial timestamp of the range
+     * @param to Final timestamp of the range
+     * @param addInitialEntry If the last entry smaller than [from] should be included as well
+     * @param getTimestamp Returns the timestamp of an entry
+     */
+    protected fun <T> getIndexesInRange(
+        entries: List<T>,
+        from: Timestamp,
+        to: Timestamp,
+        addInitialEntry: Boolean,
+        getTimestamp: (T) -> Timestamp
+    ): IntRange {
+        require(from <= to) { "`from` must be smaller or equal to `to` but was $from and $to" }
+
+        return when {
+            entries.isEmpty() -> {
+                IntRange.EMPTY
+            }
+            to < getTimestamp(entries.first()) -> {
+                // Slice before all entries
+                IntRange.EMPTY
+            }
+            getTimestamp(entries.last()) < from -> {
+                // Slice after all entries
+                if (addInitialEntry) {
+                    // Keep the last entry as the start entry of the sliced trace
+                    entries.lastIndex..entries.lastIndex
+                } else {
+                    IntRange.EMPTY
+                }
+            }
+            else -> {
+                // first entry <= to
+                // last entry >= from
+                // -----|--------|------
+                //      [   to     to
+                //  from    from ]
+
+                var first = entries.indexOfFirstTimestamp(getTimestamp) { it >= from }
+                require(first < entries.size) { "No match found for first index" }
+                val last = entries.indexOfFirstTimestamp(getTimestamp) { it > to } - 1
+                require(last >= 0) { "No match found for last index" }
+
+                if (addInitialEntry && first > 0 && getTimestamp(entries[first]) > from) {
+                    // Include previous state since from timestamp is in between the previous
+                    // one and first, and the previous state is the state we were still at a
+                    // timestamp from.
+                    first--
+                }
+
+                first..last
+            }
+        }
+    }
+
+    /**
+     * Binary search of the first entry whose timestamp matches [predicate], assuming the entries
+     * are sorted and [predicate] is monotonic over the timestamps.
+     *
+     * @return the index of the entry, or the size of the list if no entry matches
+     */
+    private inline fun <T> List<T>.indexOfFirstTimestamp(
+        getTimestamp: (T) -> Timestamp,
+        predicate: (Timestamp) -> Boolean
+    ): Int {
+        var low = 0
+        var high = size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (predicate(getTimestamp(this[mid]))) {
+                high = mid
+            } else {
+                low = mid + 1
+            }
+        }
+        return low
+    }
 }
@@ -17,6 +17,7 @@
 package android.tools.common.parsers
 
 import android.tools.common.Cache
+import android.tools.common.LazyTraceEntries
 import android.tools.common.Logger
 import android.tools.common.Timestamp
 import android.tools.common.Timestamps
@@ -33,6 +34,13 @@ abstract class AbstractTraceParser<
 
     open fun shouldParseEntry(entry: InputTypeEntry) = true
 
+    /**
+     * If the entries returned by [getEntries] are always sorted by [getTimestamp], so that the
+     * entries in a range are found with a binary search. Otherwise the timestamps of all entries
+     * are read.
+     */
+    protected open val areEntriesSorted: Boolean = false
+
     final override fun parse(bytes: ByteArray, clearCache: Boolean): OutputTypeTrace {
         return parse(
             bytes,
@@ -77,20 +85,66 @@ abstract class AbstractTraceParser<
         addInitialEntry: Boolean
     ): OutputTypeTrace {
         onBeforeParse(input)
-        val parsedEntries = mutableListOf<OutputTypeEntry>()
-        val rawEntries = getEntries(input)
-        val allInputTimestamps = rawEntries.map { getTimestamp(it) }
-        val selectedInputTimestamps =
-            getTimestampsInRange(allInputTimestamps, from, to, addInitialEntry)
-        for (rawEntry in rawEntries) {
-            val currTimestamp = getTimestamp(rawEntry)
-            if (!selectedInputTimestamps.contains(currTimestamp) || !shouldParseEntry(rawEntry)) {
-                continue
+        val selectedEntries = selectEntries(getEntries(input), from, to, addInitialEntry)
+        return createTrace(doParseEntries(selectedEntries))
+    }
+
+    /** @return the [rawEntries] between [from] and [to] which should be parsed, in order */
+    private fun selectEntries(
+        rawEntries: List<InputTypeEntry>,
+        from: Timestamp,
+        to: Timestamp,
+        addInitialEntry: Boolean
+    ): List<InputTypeEntry> {
+        val selectedEntries =
+            if (areEntriesSorted) {
+                rawEntries.slice(
+                    getIndexesInRange(rawEntries, from, to, addInitialEntry) { getTimestamp(it) }
+                )
+            } else {
+                val allInputTimestamps = rawEntries.map { getTimestamp(it) }
+                val selectedInputTimestamps =
+                    getTimestampsInRange(allInputTimestamps, from, to, addInitialEntry)
+                rawEntries.filterIndexed { index, _ ->
+                    selectedInputTimestamps.contains(allInputTimestamps[index])
+                }
             }
-            val parsedEntry = Logger.withTracing("doParseEntry") { doParseEntry(rawEntry) }
-            parsedEntries.add(parsedEntry)
-        }
-        return createTrace(parsedEntries)
+        return selectedEntries.filter { shouldParseEntry(it) }
+    }
+
+    /**
+     * Parses the selected [entries] of the trace
+     *
+     * Parsers whose [doParseEntry] only depends on the entry itself can override this method to
+     * parse the entries concurrently, as long as the parsed entries are returned in the same
+     * order as [entries].
+     *
+     * @param entries Entries to parse, in the order of the trace
+     */
+    protected open fun doParseEntries(entries: List<InputTypeEntry>): List<OutputTypeEntry> {
+        return entries.map { parseEntry(it) }
+    }
+
+    /**
+     * Creates a trace whose [entries] are only parsed when they are accessed
+     *
+     * Parsers whose traces can hold [LazyTraceEntries] override this method, the other ones parse
+     * all the entries when the trace is created.
+     */
+    protected open fun createLazyTrace(
+        entries: LazyTraceEntries<OutputTypeEntry>
+    ): OutputTypeTrace = createTrace(entries.buildAll())
+
+    /**
+     * @return the timestamp of the entry parsed from [entry], by which the entries of a lazily
+     *   parsed trace are indexed. The same as [getTimestamp] unless overridden.
+     */
+    protected open fun getParsedEntryTimestamp(entry: InputTypeEntry): Timestamp =
+        getTimestamp(entry)
+
+    /** Parses a single [entry], tracing the call to [doParseEntry] */
+    protected fun parseEntry(entry: InputTypeEntry): OutputTypeEntry {
+        return Logger.withTracing("doParseEntry") { doParseEntry(entry) }
     }
 
     /**
@@ -100,7 +154,8 @@ abstract class AbstractTraceParser<
      * @param from Initial timestamp to be parsed
      * @param to Final timestamp to be parsed
      * @param addInitialEntry If the last entry smaller than [from] should be included as well
-     * @param clearCache If the caching used while parsing the object should be cleared
+     * @param clearCache If the objects should be cached in a new parse session, discarded after
+     *   the parse, instead of the current session of [Cache]
      */
     fun parse(
         input: InputTypeTrace,
@@ -110,16 +165,65 @@ abstract class AbstractTraceParser<
         clearCache: Boolean = true
     ): OutputTypeTrace {
         return Logger.withTracing("${this::class.simpleName}#parse") {
-            try {
-                doParse(input, from, to, addInitialEntry)
-            } finally {
-                if (clearCache) {
-                    Cache.clear()
-                }
-            }
+            withParseSession(clearCache) { doParse(input, from, to, addInitialEntry) }
+        }
+    }
+
+    /**
+     * Uses [InputTypeTrace] to generate a trace whose entries are only parsed when they are
+     * accessed, see [LazyTraceEntries]
+     *
+     * The [input] entries in the range are kept by the trace until all its entries are parsed. Each
+     * parse of an entry, or of all of them at once, runs in a new parse session of [Cache]. The
+     * parser keeps the state read from [input], so it must not be used for other traces.
+     *
+     * @param input Parsed proto data
+     * @param from Initial timestamp to be parsed
+     * @param to Final timestamp to be parsed
+     * @param addInitialEntry If the last entry smaller than [from] should be included as well
+     * @param cacheSize Number of entries parsed on their own which are kept by the trace
+     */
+    fun parseLazily(
+        input: InputTypeTrace,
+        from: Timestamp,
+        to: Timestamp,
+        addInitialEntry: Boolean = true,
+        cacheSize: Int = LazyTraceEntries.DEFAULT_CACHE_SIZE
+    ): OutputTypeTrace {
+        return Logger.withTracing("${this::class.simpleName}#parseLazily") {
+            onBeforeParse(input)
+            val selectedEntries = selectEntries(getEntries(input), from, to, addInitialEntry)
+            val timestamps = selectedEntries.map { getParsedEntryTimestamp(it) }.toTypedArray()
+            val entries =
+                LazyTraceEntries(
+                    timestamps,
+                    { range -> Cache.withScope { doParseEntries(selectedEntries.slice(range)) } },
+                    cacheSize
+                )
+            createLazyTrace(entries)
         }
     }
 
+    /**
+     * Uses a [ByteArray] to generate a trace whose entries are only parsed when they are accessed
+     *
+     * @param bytes Parsed proto data
+     * @param from Initial timestamp to be parsed
+     * @param to Final timestamp to be parsed
+     * @param addInitialEntry If the last entry smaller than [from] should be included as well
+     * @param cacheSize Number of entries parsed on their own which are kept by the trace
+     */
+    fun parseLazily(
+        bytes: ByteArray,
+        from: Timestamp,
+        to: Timestamp,
+        addInitialEntry: Boolean = true,
+        cacheSize: Int = LazyTraceEntries.DEFAULT_CACHE_SIZE
+    ): OutputTypeTrace {
+        val input = decodeByteArray(bytes)
+        return parseLazily(input, from, to, addInitialEntry, cacheSize)
+    }
+
     /**
      * Uses a [ByteArray] to generates a trace
      *
@@ -127,7 +231,8 @@ abstract class AbstractTraceParser<
      * @param from Initial timestamp to be parsed
      * @param to Final timestamp to be parsed
      * @param addInitialEntry If the last entry smaller than [from] should be included as well
-     * @param clearCache If the caching used while parsing the object should be cleared
+     * @param clearCache If the objects should be cached in a new parse session, discarded after
+     *   the parse, instead of the current session of [Cache]
      */
     fun parse(
         bytes: ByteArray,
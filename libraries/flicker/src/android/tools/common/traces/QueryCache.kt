@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.common.traces
+
+import kotlin.jvm.Volatile
+
+/**
+ * Results of a query on an immutable trace entry, for each key it was run with, such as an
+ * [android.tools.common.traces.component.IComponentMatcher]
+ *
+ * The same entry can be queried by assertions running concurrently, so the results are replaced
+ * by a new map on each update instead of being updated in place. A result computed concurrently for
+ * the same key may be computed more than once, and either result is kept.
+ *
+ * Keys without value equality, such as new matcher instances created for each query, never hit the
+ * cache, so at most [maxSize] results are kept, and the results are dropped once it's reached.
+ */
+internal class QueryCache<Key : Any, Result>(private val maxSize: Int = DEFAULT_MAX_SIZE) {
+    @Volatile private var results = emptyMap<Key, Result>()
+
+    /** @return the result cached for [key], or the result of [query] once cached for [key] */
+    fun getOrPut(key: Key, query: () -> Result): Result {
+        val current = results
+        if (current.containsKey(key)) {
+            @Suppress("UNCHECKED_CAST")
+            return current[key] as Result
+        }
+        val result = query()
+        val updated = results
+        results = if (updated.size < maxSize) updated + (key to result) else mapOf(key to result)
+        return result
+    }
+
+    companion object {
+        const val DEFAULT_MAX_SIZE = 64
+    }
+}
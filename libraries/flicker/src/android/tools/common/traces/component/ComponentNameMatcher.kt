@@ -19,9 +19,31 @@ package android.tools.common.traces.component
 import android.tools.common.traces.surfaceflinger.Layer
 import android.tools.common.traces.wm.Activity
 import android.tools.common.traces.wm.IWindowContainer
+import kotlin.jvm.Volatile
+
+/**
+ * ComponentMatcher based on name
+ *
+ * The names searched for the component are only built once, when the component is set.
+ */
+class ComponentNameMatcher(component: ComponentName) : IComponentNameMatcher {
+    var component: ComponentName = component
+        set(value) {
+            field = value
+            patterns = ComponentPatterns(value)
+            version++
+        }
+
+    @Volatile private var patterns = ComponentPatterns(component)
+
+    /**
+     * Number of times [component] was replaced, so the matchers combining this one know when to
+     * compile their patterns again
+     */
+    @Volatile
+    internal var version = 0
+        private set
 
-/** ComponentMatcher based on name */
-class ComponentNameMatcher(var component: ComponentName) : IComponentNameMatcher {
     override val packageName: String
         get() = component.packageName
     override val className: String
@@ -40,18 +62,45 @@ class ComponentNameMatcher(var component: ComponentName) : IComponentNameMatcher
     override fun activityRecordMatchesAnyOf(layers: Array<Layer>): Boolean =
         layers.any { activityRecordFilter.invoke(it.name) }
 
+    /** {@inheritDoc} */
+    override fun activityRecordMatchesAnyOf(layer: Layer): Boolean =
+        activityRecordFilter.invoke(layer.name)
+
     override fun componentNameMatcherToString(): String {
         return "ComponentNameMatcher(\"${this.packageName}\", " + "\"${this.className}\")"
     }
 
+    /** {@inheritDoc} */
+    override fun windowMatchesAnyOf(window: IWindowContainer): Boolean =
+        windowNameFilter.invoke(window.title)
+
+    /** {@inheritDoc} */
+    override fun windowMatchesAnyOf(windows: Collection<IWindowContainer>): Boolean =
+        windows.any { windowNameFilter.invoke(it.title) }
+
     /** {@inheritDoc} */
     override fun windowMatchesAnyOf(windows: Array<IWindowContainer>): Boolean =
         windows.any { windowNameFilter.invoke(it.title) }
 
+    /** {@inheritDoc} */
+    override fun activityMatchesAnyOf(activity: Activity): Boolean =
+        activityNameFilter.invoke(activity.name)
+
+    /** {@inheritDoc} */
+    override fun activityMatchesAnyOf(activities: Collection<Activity>): Boolean =
+        activities.any { activityNameFilter.invoke(it.name) }
+
     /** {@inheritDoc} */
     override fun activityMatchesAnyOf(activities: Array<Activity>): Boolean =
         activities.any { activityNameFilter.invoke(it.name) }
 
+    /** {@inheritDoc} */
+    override fun layerMatchesAnyOf(layer: Layer): Boolean = layerNameFilter.invoke(layer.name)
+
+    /** {@inheritDoc} */
+    override fun layerMatchesAnyOf(layers: Collection<Layer>): Boolean =
+        layers.any { layerNameFilter.invoke(it.name) }
+
     /** {@inheritDoc} */
     override fun layerMatchesAnyOf(layers: Array<Layer>): Boolean =
         layers.any { layerNameFilter.invoke(it.name) }
@@ -82,16 +131,24 @@ class ComponentNameMatcher(var component: ComponentName) : IComponentNameMatcher
     override fun toString(): String = component.toString()
 
     private val activityRecordFilter: (String) -> Boolean
-        get() = { it.startsWith("ActivityRecord{") && it.contains(component.toShortWindowName()) }
+        get() = { it.startsWith("ActivityRecord{") && patterns.shortWindowNames.matches(it) }
 
     private val activityNameFilter: (String) -> Boolean
-        get() = { it.contains(component.toActivityName()) }
+        get() = { patterns.activityNames.matches(it) }
 
     private val windowNameFilter: (String) -> Boolean
-        get() = { it.contains(component.toWindowName()) }
+        get() = { patterns.windowNames.matches(it) }
 
     private val layerNameFilter: (String) -> Boolean
-        get() = { it.contains(component.toLayerName()) }
+        get() = { patterns.layerNames.matches(it) }
+
+    /** Names searched for [component], built when first used */
+    private class ComponentPatterns(component: ComponentName) {
+        val activityNames by lazy { NamePatterns(listOf(component.toActivityName())) }
+        val windowNames by lazy { NamePatterns(listOf(component.toWindowName())) }
+        val shortWindowNames by lazy { NamePatterns(listOf(component.toShortWindowName())) }
+        val layerNames by lazy { NamePatterns(listOf(component.toLayerName())) }
+    }
 
     companion object {
         val NAV_BAR = ComponentNameMatcher("", "NavigationBar0")
@@ -70,4 +70,9 @@ class EdgeExtensionComponentMatcher : IComponentMatcher {
     override fun toLayerIdentifier(): String {
         return "EdgeExtensionLayer"
     }
+
+    // Stateless, so all the instances match the same layers
+    override fun equals(other: Any?): Boolean = other is EdgeExtensionComponentMatcher
+
+    override fun hashCode(): Int = toLayerIdentifier().hashCode()
 }
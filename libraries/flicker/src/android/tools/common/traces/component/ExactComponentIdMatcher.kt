@@ -63,4 +63,12 @@ class ExactComponentIdMatcher(private val windowId: Int, private val layerId: In
 
     /** {@inheritDoc} */
     override fun toLayerIdentifier(): String = "Layer#$layerId"
+
+    override fun equals(other: Any?): Boolean {
+        if (this === other) return true
+        if (other !is ExactComponentIdMatcher) return false
+        return windowId == other.windowId && layerId == other.layerId
+    }
+
+    override fun hashCode(): Int = 31 * windowId + layerId
 }
@@ -77,4 +77,12 @@ class FullComponentIdMatcher(val windowId: Int, val layerId: Int) : IComponentMa
 
     /** {@inheritDoc} */
     override fun toLayerIdentifier(): String = "Layer#$layerId & children"
+
+    override fun equals(other: Any?): Boolean {
+        if (this === other) return true
+        if (other !is FullComponentIdMatcher) return false
+        return windowId == other.windowId && layerId == other.layerId
+    }
+
+    override fun hashCode(): Int = 31 * windowId + layerId
 }
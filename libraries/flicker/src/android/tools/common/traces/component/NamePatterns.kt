@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.common.traces.component
+
+/**
+ * Checks if names contain any of a set of [patterns]
+ *
+ * Several patterns are compiled into an Aho-Corasick automaton, so a name is checked against all of
+ * them in a single pass. The results are kept by name in a small table of [memoSize] slots indexed
+ * by the hash of the name, since the same layer and window names repeat in every entry of a trace.
+ * Two names mapped to the same slot evict each other. The table can be read and updated from
+ * multiple threads, a result lost to a concurrent update is only computed again.
+ *
+ * @param patterns Substrings to search
+ * @param memoSize Number of results kept
+ */
+internal class NamePatterns(
+    patterns: Collection<String>,
+    private val memoSize: Int = DEFAULT_MEMO_SIZE
+) {
+    private val singlePattern = patterns.singleOrNull()
+    private val automaton =
+        if (singlePattern == null && patterns.none { it.isEmpty() }) Automaton(patterns) else null
+    private val results = arrayOfNulls<Result>(memoSize)
+
+    /** @return if [name] contains any of the patterns */
+    fun matches(name: String): Boolean {
+        val slot = (name.hashCode() and Int.MAX_VALUE) % memoSize
+        val cached = results[slot]
+        if (cached != null && cached.name == name) {
+            return cached.matches
+        }
+        val matches =
+            when {
+                singlePattern != null -> name.contains(singlePattern)
+                automaton != null -> automaton.matches(name)
+                // One of the patterns is empty, which every name contains
+                else -> true
+            }
+        results[slot] = Result(name, matches)
+        return matches
+    }
+
+    private class Result(val name: String, val matches: Boolean)
+
+    /** Trie of the patterns, where each node links to the longest suffix which is also a node */
+    private class Automaton(patterns: Collection<String>) {
+        private val transitions = mutableListOf(mutableMapOf<Char, Int>())
+        private val failures = mutableListOf(0)
+        private val isMatch = mutableListOf(false)
+
+        init {
+            patterns.forEach { addPattern(it) }
+            linkFailures()
+        }
+
+        fun matches(name: String): Boolean {
+            var node = 0
+            for (char in name) {
+                node = next(node, char)
+                if (isMatch[node]) {
+                    return true
+                }
+            }
+            return false
+        }
+
+        private fun next(from: Int, char: Char): Int {
+            var node = from
+            while (true) {
+                val target = transitions[node][char]
+                if (target != null) {
+                    return target
+                }
+                if (node == 0) {
+                    return 0
+                }
+                node = failures[node]
+            }
+        }
+
+        private fun addPattern(pattern: String) {
+            var node = 0
+            for (char in pattern) {
+                node =
+                    transitions[node].getOrPut(char) {
+                        transitions.add(mutableMapOf())
+                        failures.add(0)
+                        isMatch.add(false)
+                        transitions.lastIndex
+                    }
+            }
+            isMatch[node] = true
+        }
+
+        /** Links the nodes breadth first, so the links of shorter prefixes are set first */
+        private fun linkFailures() {
+            val queue = ArrayDeque(transitions[0].values)
+            while (queue.isNotEmpty()) {
+                val node = queue.removeFirst()
+                for ((char, child) in transitions[node]) {
+                    val failure = if (node == 0) 0 else next(failures[node], char)
+                    failures[child] = failure
+                    // A node also matches when a pattern ends at its longest suffix
+                    isMatch[child] = isMatch[child] || isMatch[failure]
+                    queue.addLast(child)
+                }
+            }
+        }
+    }
+
+    companion object {
+        /** Enough results for the layers or windows of a few trace entries */
+        const val DEFAULT_MEMO_SIZE = 256
+    }
+}
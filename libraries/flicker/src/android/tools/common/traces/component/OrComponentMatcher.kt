@@ -19,53 +19,91 @@ package android.tools.common.traces.component
 import android.tools.common.traces.surfaceflinger.Layer
 import android.tools.common.traces.wm.Activity
 import android.tools.common.traces.wm.IWindowContainer
+import kotlin.jvm.Volatile
 
 class OrComponentMatcher(private val componentMatchers: Array<out IComponentMatcher>) :
     IComponentMatcher {
+    @Volatile private var compiledPatterns: CompiledPatterns? = null
 
     /** {@inheritDoc} */
     override fun windowMatchesAnyOf(window: IWindowContainer): Boolean {
-        return componentMatchers.any { it.windowMatchesAnyOf(window) }
+        val patterns = getCompiledPatterns()
+        if (patterns == null) {
+            return componentMatchers.any { it.windowMatchesAnyOf(window) }
+        }
+        return patterns.windowNames.matches(window.title)
     }
 
     /** {@inheritDoc} */
     override fun windowMatchesAnyOf(windows: Collection<IWindowContainer>): Boolean {
-        return componentMatchers.any { it.windowMatchesAnyOf(windows) }
+        val patterns = getCompiledPatterns()
+        if (patterns == null) {
+            return componentMatchers.any { it.windowMatchesAnyOf(windows) }
+        }
+        return windows.any { patterns.windowNames.matches(it.title) }
     }
 
     /** {@inheritDoc} */
     override fun windowMatchesAnyOf(windows: Array<IWindowContainer>): Boolean {
-        return componentMatchers.any { it.windowMatchesAnyOf(windows) }
+        val patterns = getCompiledPatterns()
+        if (patterns == null) {
+            return componentMatchers.any { it.windowMatchesAnyOf(windows) }
+        }
+        return windows.any { patterns.windowNames.matches(it.title) }
     }
 
     /** {@inheritDoc} */
     override fun activityMatchesAnyOf(activity: Activity): Boolean {
-        return componentMatchers.any { it.activityMatchesAnyOf(activity) }
+        val patterns = getCompiledPatterns()
+        if (patterns == null) {
+            return componentMatchers.any { it.activityMatchesAnyOf(activity) }
+        }
+        return patterns.activityNames.matches(activity.name)
     }
 
     /** {@inheritDoc} */
     override fun activityMatchesAnyOf(activities: Collection<Activity>): Boolean {
-        return componentMatchers.any { it.activityMatchesAnyOf(activities) }
+        val patterns = getCompiledPatterns()
+        if (patterns == null) {
+            return componentMatchers.any { it.activityMatchesAnyOf(activities) }
+        }
+        return activities.any { patterns.activityNames.matches(it.name) }
     }
 
     /** {@inheritDoc} */
     override fun activityMatchesAnyOf(activities: Array<Activity>): Boolean {
-        return componentMatchers.any { it.activityMatchesAnyOf(activities) }
+        val patterns = getCompiledPatterns()
+        if (patterns == null) {
+            return componentMatchers.any { it.activityMatchesAnyOf(activities) }
+        }
+        return activities.any { patterns.activityNames.matches(it.name) }
     }
 
     /** {@inheritDoc} */
     override fun layerMatchesAnyOf(layer: Layer): Boolean {
-        return componentMatchers.any { it.layerMatchesAnyOf(layer) }
+        val patterns = getCompiledPatterns()
+        if (patterns == null) {
+            return componentMatchers.any { it.layerMatchesAnyOf(layer) }
+        }
+        return patterns.layerNames.matches(layer.name)
     }
 
     /** {@inheritDoc} */
     override fun layerMatchesAnyOf(layers: Collection<Layer>): Boolean {
-        return componentMatchers.any { it.layerMatchesAnyOf(layers) }
+        val patterns = getCompiledPatterns()
+        if (patterns == null) {
+            return componentMatchers.any { it.layerMatchesAnyOf(layers) }
+        }
+        return layers.any { patterns.layerNames.matches(it.name) }
     }
 
     /** {@inheritDoc} */
     override fun layerMatchesAnyOf(layers: Array<Layer>): Boolean {
-        return componentMatchers.any { it.layerMatchesAnyOf(layers) }
+        val patterns = getCompiledPatterns()
+        if (patterns == null) {
+            return componentMatchers.any { it.layerMatchesAnyOf(layers) }
+        }
+        return layers.any { patterns.layerNames.matches(it.name) }
     }
 
     /** {@inheritDoc} */
@@ -89,4 +127,64 @@ class OrComponentMatcher(private val componentMatchers: Array<out IComponentMatc
     /** {@inheritDoc} */
     override fun toLayerIdentifier(): String =
         componentMatchers.joinToString(" or ") { it.toLayerIdentifier() }
+
+    override fun equals(other: Any?): Boolean {
+        if (this === other) return true
+        if (other !is OrComponentMatcher) return false
+        return componentMatchers.contentEquals(other.componentMatchers)
+    }
+
+    override fun hashCode(): Int = componentMatchers.contentHashCode()
+
+    /**
+     * @return the names searched by this matcher, compiled into one automaton per kind of name, or
+     *   null if this matcher doesn't only combine [ComponentNameMatcher]s
+     */
+    private fun getCompiledPatterns(): CompiledPatterns? {
+        val version = getVersion()
+        if (version < 0) {
+            return null
+        }
+        // The components of the combined matchers can be replaced, which changes their version
+        val compiled =
+            compiledPatterns?.takeIf { it.version == version }
+                ?: CompiledPatterns(version, getComponents()).also { compiledPatterns = it }
+        return compiled.takeIf { it.canMatch }
+    }
+
+    /**
+     * @return the sum of the versions of the combined [ComponentNameMatcher]s, which only grows, or
+     *   -1 if this matcher doesn't only combine [ComponentNameMatcher]s
+     */
+    private fun getVersion(): Int {
+        var version = 0
+        for (componentMatcher in componentMatchers) {
+            version +=
+                when (componentMatcher) {
+                    is ComponentNameMatcher -> componentMatcher.version
+                    is OrComponentMatcher ->
+                        componentMatcher.getVersion().takeIf { it >= 0 } ?: return -1
+                    else -> return -1
+                }
+        }
+        return version
+    }
+
+    /** @return the components of the combined matchers, which are all [ComponentNameMatcher]s */
+    private fun getComponents(): List<ComponentName> =
+        componentMatchers.flatMap { componentMatcher ->
+            when (componentMatcher) {
+                is ComponentNameMatcher -> listOf(componentMatcher.component)
+                is OrComponentMatcher -> componentMatcher.getComponents()
+                else -> error("Not a component name matcher: $componentMatcher")
+            }
+        }
+
+    private class CompiledPatterns(val version: Int, components: List<ComponentName>) {
+        // Components without any name fail when matched, which is left to the combined matchers
+        val canMatch = components.none { it.packageName.isEmpty() && it.className.isEmpty() }
+        val activityNames by lazy { NamePatterns(components.map { it.toActivityName() }) }
+        val windowNames by lazy { NamePatterns(components.map { it.toWindowName() }) }
+        val layerNames by lazy { NamePatterns(components.map { it.toLayerName() }) }
+    }
 }
@@ -25,12 +25,12 @@ import kotlin.js.JsExport
 class CujTrace(override val entries: Array<Cuj>) : ITrace<Cuj> {
 
     override fun slice(startTimestamp: Timestamp, endTimestamp: Timestamp): CujTrace {
-        return CujTrace(
-            entries
-                .dropWhile { it.endTimestamp < startTimestamp }
-                .dropLastWhile { it.startTimestamp > endTimestamp }
-                .toTypedArray()
-        )
+        // Cujs are sorted by start time only, so the bounds are searched linearly
+        val first =
+            entries.indexOfFirst { it.endTimestamp >= startTimestamp }.takeIf { it >= 0 }
+                ?: entries.size
+        val last = entries.indexOfLast { it.startTimestamp <= endTimestamp }
+        return CujTrace(entries.copyOfRange(first, maxOf(first, last + 1)))
     }
 
     companion object {
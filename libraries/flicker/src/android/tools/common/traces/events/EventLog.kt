@@ -18,6 +18,7 @@ package android.tools.common.traces.events
 
 import android.tools.common.ITrace
 import android.tools.common.Timestamp
+import android.tools.common.getEntriesBetween
 import kotlin.js.JsExport
 import kotlin.js.JsName
 
@@ -45,11 +46,6 @@ class EventLog(override val entries: Array<Event>) : ITrace<Event> {
     }
 
     override fun slice(startTimestamp: Timestamp, endTimestamp: Timestamp): EventLog {
-        return EventLog(
-            entries
-                .dropWhile { it.timestamp < startTimestamp }
-                .dropLastWhile { it.timestamp > endTimestamp }
-                .toTypedArray()
-        )
+        return EventLog(getEntriesBetween(startTimestamp, endTimestamp))
     }
 }
@@ -17,6 +17,7 @@ package android.tools.common.traces.inputmethod
 
 import android.tools.common.ITrace
 import android.tools.common.Timestamp
+import android.tools.common.getEntriesBetween
 
 /**
  * Contains a collection of parsed Ime Client trace entries and assertions to apply over a single
@@ -51,11 +52,6 @@ data class ImeClientTrace(override val entries: Array<ImeClientEntry>) : ITrace<
      * @return the sub-trace trace(from, to)
      */
     override fun slice(startTimestamp: Timestamp, endTimestamp: Timestamp): ImeClientTrace {
-        return ImeClientTrace(
-            this.entries
-                .dropWhile { it.timestamp < startTimestamp }
-                .dropLastWhile { it.timestamp > endTimestamp }
-                .toTypedArray()
-        )
+        return ImeClientTrace(getEntriesBetween(startTimestamp, endTimestamp))
     }
 }
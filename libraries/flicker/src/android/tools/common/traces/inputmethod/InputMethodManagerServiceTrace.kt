@@ -18,6 +18,7 @@ package android.tools.common.traces.inputmethod
 
 import android.tools.common.ITrace
 import android.tools.common.Timestamp
+import android.tools.common.getEntriesBetween
 
 /**
  * Contains a collection of parsed InputMethodManagerService trace entries and assertions to apply
@@ -60,11 +61,6 @@ data class InputMethodManagerServiceTrace(
         startTimestamp: Timestamp,
         endTimestamp: Timestamp
     ): InputMethodManagerServiceTrace {
-        return InputMethodManagerServiceTrace(
-            this.entries
-                .dropWhile { it.timestamp < startTimestamp }
-                .dropLastWhile { it.timestamp > endTimestamp }
-                .toTypedArray()
-        )
+        return InputMethodManagerServiceTrace(getEntriesBetween(startTimestamp, endTimestamp))
     }
 }
@@ -18,6 +18,7 @@ package android.tools.common.traces.inputmethod
 
 import android.tools.common.ITrace
 import android.tools.common.Timestamp
+import android.tools.common.getEntriesBetween
 
 /**
  * Contains a collection of parsed Ime InputMethodService trace entries and assertions to apply over
@@ -59,11 +60,6 @@ data class InputMethodServiceTrace(override val entries: Array<InputMethodServic
         startTimestamp: Timestamp,
         endTimestamp: Timestamp
     ): InputMethodServiceTrace {
-        return InputMethodServiceTrace(
-            this.entries
-                .dropWhile { it.timestamp < startTimestamp }
-                .dropLastWhile { it.timestamp > endTimestamp }
-                .toTypedArray()
-        )
+        return InputMethodServiceTrace(getEntriesBetween(startTimestamp, endTimestamp))
     }
 }
@@ -18,6 +18,7 @@ package android.tools.common.traces.region
 
 import android.tools.common.ITrace
 import android.tools.common.Timestamp
+import android.tools.common.getEntriesBetween
 import android.tools.common.traces.component.IComponentMatcher
 
 /**
@@ -49,12 +50,6 @@ data class RegionTrace(
     }
 
     override fun slice(startTimestamp: Timestamp, endTimestamp: Timestamp): ITrace<RegionEntry> {
-        return RegionTrace(
-            components,
-            entries
-                .dropWhile { it.timestamp < startTimestamp }
-                .dropLastWhile { it.timestamp > endTimestamp }
-                .toTypedArray()
-        )
+        return RegionTrace(components, getEntriesBetween(startTimestamp, endTimestamp))
     }
 }
@@ -39,13 +39,13 @@ private constructor(
     val parentId: Int,
     val z: Int,
     val currFrame: Long,
-    properties: ILayerProperties,
+    private val properties: ILayerProperties,
+    val stableId: String,
+    val packageName: String
 ) : ILayerProperties by properties {
-    val stableId: String = "$type $id $name"
     var parent: Layer? = null
     var zOrderRelativeOf: Layer? = null
     var zOrderRelativeParentOf: Int = 0
-    val packageName = ComponentName.fromLayerName(name).packageName
 
     /**
      * Checks if the [Layer] is a root layer in the hierarchy
@@ -398,7 +398,36 @@ private constructor(
                     inputRegion,
                     excludesCompositionState
                 )
-            return Layer(name, id, parentId, z, currFrame, properties)
+            return Layer(
+                name,
+                id,
+                parentId,
+                z,
+                currFrame,
+                properties,
+                stableId = "${properties.type} $id $name",
+                packageName = ComponentName.fromLayerName(name).packageName
+            )
         }
+
+        /**
+         * Creates a new layer with the same name, id, z-order and properties as [layer], sharing
+         * their objects with [layer]
+         *
+         * The new layer doesn't have the parent, children and occlusion state of [layer], so it
+         * can be added to the hierarchy of another trace entry.
+         */
+        @JsName("copyOf")
+        fun copyOf(layer: Layer): Layer =
+            Layer(
+                layer.name,
+                layer.id,
+                layer.parentId,
+                layer.z,
+                layer.currFrame,
+                layer.properties,
+                layer.stableId,
+                layer.packageName
+            )
     }
 }
@@ -20,6 +20,7 @@ import android.tools.common.ITraceEntry
 import android.tools.common.Timestamps
 import android.tools.common.datatypes.Rect
 import android.tools.common.datatypes.RectF
+import android.tools.common.traces.QueryCache
 import android.tools.common.traces.component.ComponentNameMatcher
 import android.tools.common.traces.component.IComponentMatcher
 import kotlin.js.JsExport
@@ -52,9 +53,22 @@ class LayerTraceEntry(
     // for winscope
     @JsName("isVisible") val isVisible: Boolean = true
 
+    // The layers don't change once the entry is created, so the lookups over them are only built
+    // when first used. The visible layers are returned as they are, and must not be modified by
+    // the callers.
+    private val allVisibleLayers by lazy { flattenedLayers.filter { it.isVisible }.toTypedArray() }
+    private val layersById by lazy {
+        val layers = mutableMapOf<Int, Layer>()
+        flattenedLayers.forEach { layers.getOrPut(it.id) { it } }
+        layers
+    }
+    private val visibleResults = QueryCache<IComponentMatcher, Boolean>()
+    private val layerWithBufferResults = QueryCache<IComponentMatcher, Layer?>()
+
+    /** Visible layers, shared between calls and not to be modified */
     @JsName("visibleLayers")
     val visibleLayers: Array<Layer>
-        get() = flattenedLayers.filter { it.isVisible }.toTypedArray()
+        get() = allVisibleLayers
 
     @JsName("children")
     val children: Array<Layer>
@@ -73,14 +87,15 @@ class LayerTraceEntry(
      * @return A [Layer] matching [componentMatcher] with a non-empty active buffer, or null if no
      *   layer matches [componentMatcher] or if the matching layer's buffer is empty
      */
-    fun getLayerWithBuffer(componentMatcher: IComponentMatcher): Layer? {
-        return flattenedLayers.firstOrNull {
-            componentMatcher.layerMatchesAnyOf(it) && !it.activeBuffer.isEmpty
+    fun getLayerWithBuffer(componentMatcher: IComponentMatcher): Layer? =
+        layerWithBufferResults.getOrPut(componentMatcher) {
+            flattenedLayers.firstOrNull {
+                componentMatcher.layerMatchesAnyOf(it) && !it.activeBuffer.isEmpty
+            }
         }
-    }
 
     /** @return The [Layer] with [layerId], or null if the layer is not found */
-    fun getLayerById(layerId: Int): Layer? = this.flattenedLayers.firstOrNull { it.id == layerId }
+    fun getLayerById(layerId: Int): Layer? = layersById[layerId]
 
     /**
      * Checks if any layer matching [componentMatcher] in the screen is animating.
@@ -117,7 +132,9 @@ class LayerTraceEntry(
      */
     @JsName("isVisibleComponent")
     fun isVisible(componentMatcher: IComponentMatcher): Boolean =
-        componentMatcher.layerMatchesAnyOf(visibleLayers)
+        visibleResults.getOrPut(componentMatcher) {
+            componentMatcher.layerMatchesAnyOf(visibleLayers)
+        }
 
     /** @return A [LayersTrace] object containing this state as its only entry */
     fun asTrace(): LayersTrace = LayersTrace(arrayOf(this))
@@ -164,53 +181,56 @@ class LayerTraceEntry(
     }
 
     private fun Array<Layer>.fillOcclusionState(): Array<Layer> {
-        val traversalList = topDownTraversal().reversed()
-
-        val opaqueLayers = mutableListOf<Layer>()
-        val transparentLayers = mutableListOf<Layer>()
-
-        traversalList.forEach { layer ->
-            val visible = layer.isVisible
-            val displaySize =
-                displays
-                    .firstOrNull { it.layerStackId == layer.stackId }
-                    ?.layerStackSpace
-                    ?.toRectF()
-                    ?: RectF.EMPTY
-
-            if (visible) {
-                val occludedBy =
-                    opaqueLayers
-                        .filter {
-                            it.stackId == layer.stackId &&
-                                it.contains(layer, displaySize) &&
-                                (!it.hasRoundedCorners || (layer.cornerRadius == it.cornerRadius))
-                        }
-                        .toTypedArray()
-                layer.addOccludedBy(occludedBy)
-                val partiallyOccludedBy =
-                    opaqueLayers
-                        .filter {
-                            it.stackId == layer.stackId &&
-                                it.overlaps(layer, displaySize) &&
-                                it !in layer.occludedBy
-                        }
-                        .toTypedArray()
-                layer.addPartiallyOccludedBy(partiallyOccludedBy)
-                val coveredBy =
-                    transparentLayers
-                        .filter { it.stackId == layer.stackId && it.overlaps(layer, displaySize) }
-                        .toTypedArray()
-                layer.addCoveredBy(coveredBy)
-
-                if (layer.isOpaque) {
-                    opaqueLayers.add(layer)
-                } else {
-                    transparentLayers.add(layer)
-                }
-            }
+        val displaySizes = mutableMapOf<Int, RectF>()
+        displays.forEach { display ->
+            displaySizes.getOrPut(display.layerStackId) { display.layerStackSpace.toRectF() }
         }
 
+        topDownTraversal()
+            .reversed()
+            .filter { it.isVisible }
+            .groupBy { it.stackId }
+            .forEach { (stackId, layers) ->
+                fillOcclusionState(layers, displaySizes[stackId] ?: RectF.EMPTY)
+            }
+
         return this
     }
+
+    /**
+     * Fills the occlusion state of the visible [layers] of a layer stack, ordered from top to
+     * bottom, only comparing the layers whose bounds within [displaySize] intersect
+     */
+    private fun fillOcclusionState(layers: List<Layer>, displaySize: RectF) {
+        val bounds =
+            layers.map {
+                if (displaySize.isNotEmpty) it.screenBounds.crop(displaySize) else it.screenBounds
+            }
+        val intersections = OverlapSweep.findPrecedingIntersections(bounds)
+
+        layers.forEachIndexed { index, layer ->
+            // An empty layer doesn't intersect other layers, but can still be contained in them
+            val layersAbove =
+                if (bounds[index].isEmpty) {
+                    layers.subList(0, index)
+                } else {
+                    intersections[index].map { layers[it] }
+                }
+
+            val occludedBy =
+                layersAbove.filter {
+                    it.isOpaque &&
+                        it.contains(layer, displaySize) &&
+                        (!it.hasRoundedCorners || (layer.cornerRadius == it.cornerRadius))
+                }
+            layer.addOccludedBy(occludedBy.toTypedArray())
+            val partiallyOccludedBy =
+                layersAbove.filter {
+                    it.isOpaque && it.overlaps(layer, displaySize) && it !in occludedBy
+                }
+            layer.addPartiallyOccludedBy(partiallyOccludedBy.toTypedArray())
+            val coveredBy = layersAbove.filter { !it.isOpaque && it.overlaps(layer, displaySize) }
+            layer.addCoveredBy(coveredBy.toTypedArray())
+        }
+    }
 }
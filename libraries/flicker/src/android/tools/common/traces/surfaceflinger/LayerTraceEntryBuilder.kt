@@ -42,7 +42,10 @@ class LayerTraceEntryBuilder {
     @JsName("setVSyncId")
     fun setVSyncId(vSyncId: String): LayerTraceEntryBuilder =
         // Necessary for compatibility with JS number type
-        apply { this.vSyncId = vSyncId.toLong() }
+        setVSyncId(vSyncId.toLong())
+
+    @JsName("setVSyncIdLong")
+    fun setVSyncId(vSyncId: Long): LayerTraceEntryBuilder = apply { this.vSyncId = vSyncId }
 
     @JsName("setHwcBlob")
     fun setHwcBlob(hwcBlob: String): LayerTraceEntryBuilder = apply { this.hwcBlob = hwcBlob }
@@ -58,14 +61,23 @@ class LayerTraceEntryBuilder {
     @JsName("setElapsedTimestamp")
     fun setElapsedTimestamp(timestamp: String): LayerTraceEntryBuilder =
         // Necessary for compatibility with JS number type
-        apply { this.elapsedTimestamp = timestamp.toLong() }
+        setElapsedTimestamp(timestamp.toLong())
+
+    @JsName("setElapsedTimestampLong")
+    fun setElapsedTimestamp(timestamp: Long): LayerTraceEntryBuilder = apply {
+        this.elapsedTimestamp = timestamp
+    }
 
     @JsName("setRealToElapsedTimeOffsetNs")
     fun setRealToElapsedTimeOffsetNs(realToElapsedTimeOffsetNs: String?): LayerTraceEntryBuilder =
+        setRealToElapsedTimeOffsetNs(realToElapsedTimeOffsetNs?.toLong() ?: 0L)
+
+    @JsName("setRealToElapsedTimeOffsetNsLong")
+    fun setRealToElapsedTimeOffsetNs(realToElapsedTimeOffsetNs: Long): LayerTraceEntryBuilder =
         apply {
             this.realTimestamp =
-                if (realToElapsedTimeOffsetNs != null && realToElapsedTimeOffsetNs.toLong() != 0L) {
-                    realToElapsedTimeOffsetNs.toLong() + elapsedTimestamp
+                if (realToElapsedTimeOffsetNs != 0L) {
+                    realToElapsedTimeOffsetNs + elapsedTimestamp
                 } else {
                     null
                 }
@@ -17,22 +17,73 @@
 package android.tools.common.traces.surfaceflinger
 
 import android.tools.common.ITrace
+import android.tools.common.LazyTraceEntries
 import android.tools.common.Timestamp
+import android.tools.common.findFirstIndex
+import android.tools.common.getIndexesBetween
 import kotlin.js.JsExport
 import kotlin.js.JsName
+import kotlin.jvm.Volatile
 
 /**
  * Contains a collection of parsed Layers trace entries and assertions to apply over a single entry.
  *
- * Each entry is parsed into a list of [LayerTraceEntry] objects.
+ * Each entry is parsed into a list of [LayerTraceEntry] objects. The entries of a trace created
+ * from [LazyTraceEntries] are only built when they are accessed, see [getEntry], and all at once
+ * when [entries] is first read.
  *
  * This is a generic object that is reused by both Flicker and Winscope and cannot access internal
  * Java/Android functionality
  */
 @JsExport
-data class LayersTrace(override val entries: Array<LayerTraceEntry>) : ITrace<LayerTraceEntry> {
+class LayersTrace
+private constructor(
+    lazyEntries: LazyTraceEntries<LayerTraceEntry>?,
+    builtEntries: Array<LayerTraceEntry>?
+) : ITrace<LayerTraceEntry> {
+    constructor(entries: Array<LayerTraceEntry>) : this(null, entries)
+
+    constructor(entries: LazyTraceEntries<LayerTraceEntry>) : this(entries, null)
+
+    /** Entries still to be built, released with the raw entries they hold once all are built */
+    @Volatile private var lazyEntries: LazyTraceEntries<LayerTraceEntry>? = lazyEntries
+
+    private val allEntries: Lazy<Array<LayerTraceEntry>> =
+        builtEntries?.let { lazyOf(it) }
+            ?: lazy {
+                requireNotNull(this.lazyEntries).buildAll().toTypedArray().also {
+                    this.lazyEntries = null
+                }
+            }
+
+    override val entries: Array<LayerTraceEntry>
+        get() = allEntries.value
+
+    override val entryCount: Int
+        get() = lazyEntries?.size ?: entries.size
+
+    override fun getEntry(index: Int): LayerTraceEntry {
+        val lazyEntries = this.lazyEntries
+        return if (lazyEntries == null || allEntries.isInitialized()) {
+            entries[index]
+        } else {
+            lazyEntries[index]
+        }
+    }
+
+    override fun getEntryTimestamp(index: Int): Timestamp {
+        val lazyEntries = this.lazyEntries
+        return if (lazyEntries == null || allEntries.isInitialized()) {
+            entries[index].timestamp
+        } else {
+            lazyEntries.getTimestamp(index)
+        }
+    }
+
     override fun toString(): String {
-        return "LayersTrace(Start: ${entries.firstOrNull()}, " + "End: ${entries.lastOrNull()})"
+        val first = if (entryCount > 0) getEntry(0) else null
+        val last = if (entryCount > 0) getEntry(entryCount - 1) else null
+        return "LayersTrace(Start: $first, End: $last)"
     }
 
     override fun equals(other: Any?): Boolean {
@@ -48,33 +99,44 @@ data class LayersTrace(override val entries: Array<LayerTraceEntry>) : ITrace<La
         return entries.contentHashCode()
     }
 
+    /**
+     * @return a trace with the entries with a vsync id between [from] and [to], inclusive, which
+     *   are still lazy if the entries of this trace were not built yet
+     */
     @JsName("vSyncSlice")
     fun vSyncSlice(from: Int, to: Int): LayersTrace {
-        return LayersTrace(
-            this.entries
-                .dropWhile { it.vSyncId < from }
-                .dropLastWhile { it.vSyncId > to }
-                .toTypedArray()
-        )
+        val first = findFirstIndex { getEntry(it).vSyncId >= from }
+        val end = findFirstIndex { getEntry(it).vSyncId > to }
+        return sliceEntries(first, maxOf(first, end))
     }
 
     override fun slice(startTimestamp: Timestamp, endTimestamp: Timestamp): LayersTrace {
-        return LayersTrace(
-            entries
-                .dropWhile { it.timestamp < startTimestamp }
-                .dropLastWhile { it.timestamp > endTimestamp }
-                .toTypedArray()
-        )
+        val indexes = getIndexesBetween(startTimestamp, endTimestamp)
+        return sliceEntries(indexes.first, indexes.last + 1)
+    }
+
+    /**
+     * @return a trace with the entries from [fromIndex] (inclusive) to [toIndex] (exclusive), which
+     *   are still lazy if the entries of this trace were not built yet
+     */
+    @JsName("sliceEntries")
+    fun sliceEntries(fromIndex: Int, toIndex: Int): LayersTrace {
+        val lazyEntries = this.lazyEntries
+        return if (lazyEntries == null || allEntries.isInitialized()) {
+            LayersTrace(entries.copyOfRange(fromIndex, toIndex))
+        } else {
+            LayersTrace(lazyEntries.slice(fromIndex, toIndex))
+        }
     }
 
     fun getEntryForTransaction(transaction: Transaction): LayerTraceEntry {
         require(
-            this.entries.first().vSyncId <= transaction.appliedVSyncId &&
-                transaction.appliedVSyncId <= this.entries.last().vSyncId
+            getEntry(0).vSyncId <= transaction.appliedVSyncId &&
+                transaction.appliedVSyncId <= getEntry(entryCount - 1).vSyncId
         ) {
             "Finish transaction not in layer trace"
         }
-        return this.entries.first { it.vSyncId >= transaction.appliedVSyncId }
+        return getEntry(findFirstIndex { getEntry(it).vSyncId >= transaction.appliedVSyncId })
     }
 
     fun getFirstEntryWithOnDisplayAfter(timestamp: Timestamp): LayerTraceEntry {
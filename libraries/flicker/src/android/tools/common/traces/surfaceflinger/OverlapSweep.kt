@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.common.traces.surfaceflinger
+
+import android.tools.common.datatypes.RectF
+
+/**
+ * Sweep line over the left and right edges of a list of rectangles, to find the pairs of
+ * rectangles which intersect without comparing all pairs of rectangles.
+ *
+ * This is used to restrict the occlusion checks of a [LayerTraceEntry] to the layers whose screen
+ * bounds may overlap.
+ */
+internal object OverlapSweep {
+    /**
+     * Finds, for each rectangle of [rects], the rectangles before it in [rects] that intersect it,
+     * including rectangles which only share an edge
+     *
+     * Empty rectangles don't intersect any rectangle.
+     *
+     * @return the indexes of the intersecting rectangles, in increasing order, for each rectangle
+     */
+    fun findPrecedingIntersections(rects: List<RectF>): Array<IntArray> {
+        val intersections = Array(rects.size) { mutableListOf<Int>() }
+        val byLeftEdge = rects.indices.filter { !rects[it].isEmpty }.sortedBy { rects[it].left }
+        val active = mutableListOf<Int>()
+
+        byLeftEdge.forEach { index ->
+            val rect = rects[index]
+            // Keep the rectangles still crossing the sweep line, and compare their vertical span
+            active.removeAll { rects[it].right < rect.left }
+            active.forEach { other ->
+                val otherRect = rects[other]
+                if (otherRect.top <= rect.bottom && rect.top <= otherRect.bottom) {
+                    if (other < index) {
+                        intersections[index].add(other)
+                    } else {
+                        intersections[other].add(index)
+                    }
+                }
+            }
+            active.add(index)
+        }
+
+        return Array(rects.size) { intersections[it].toIntArray().apply { sort() } }
+    }
+}
@@ -18,6 +18,7 @@ package android.tools.common.traces.surfaceflinger
 
 import android.tools.common.ITrace
 import android.tools.common.Timestamp
+import android.tools.common.getEntriesBetween
 import kotlin.js.JsExport
 import kotlin.js.JsName
 
@@ -40,11 +41,6 @@ class TransactionsTrace(override val entries: Array<TransactionsTraceEntry>) :
     val allTransactions: List<Transaction> = entries.toList().flatMap { it.transactions.toList() }
 
     override fun slice(startTimestamp: Timestamp, endTimestamp: Timestamp): TransactionsTrace {
-        return TransactionsTrace(
-            entries
-                .dropWhile { it.timestamp < startTimestamp }
-                .dropLastWhile { it.timestamp > endTimestamp }
-                .toTypedArray()
-        )
+        return TransactionsTrace(getEntriesBetween(startTimestamp, endTimestamp))
     }
 }
@@ -18,6 +18,7 @@ package android.tools.common.traces.view
 
 import android.tools.common.ITrace
 import android.tools.common.Timestamp
+import android.tools.common.getEntriesBetween
 
 /**
  * Contains a collection of parsed View trace entries and for a window entry.
@@ -30,13 +31,7 @@ import android.tools.common.Timestamp
 class ViewTrace(val windowTitle: String, override val entries: Array<ViewFrame>) :
     ITrace<ViewFrame> {
     override fun slice(startTimestamp: Timestamp, endTimestamp: Timestamp): ViewTrace =
-        ViewTrace(
-            windowTitle,
-            entries
-                .dropWhile { it.timestamp < startTimestamp }
-                .dropLastWhile { it.timestamp > endTimestamp }
-                .toTypedArray()
-        )
+        ViewTrace(windowTitle, getEntriesBetween(startTimestamp, endTimestamp))
 
     override fun toString(): String {
         return "ViewTrace(Start: ${entries.firstOrNull()}, " + "End: ${entries.lastOrNull()})"
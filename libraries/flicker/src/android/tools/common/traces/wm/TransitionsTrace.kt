@@ -78,12 +78,15 @@ data class TransitionsTrace(override val entries: Array<Transition>) : ITrace<Tr
         return sliceElapsed(startTimestamp.elapsedNanos, endTimestamp.elapsedNanos)
     }
 
+    /**
+     * Transitions are not sorted by send or create time, so the bounds of the slice are searched
+     * linearly, but the transitions are only copied once
+     */
     private fun sliceElapsed(from: Long, to: Long): TransitionsTrace {
-        return TransitionsTrace(
-            this.entries
-                .dropWhile { it.sendTime.elapsedNanos < from }
-                .dropLastWhile { it.createTime.elapsedNanos > to }
-                .toTypedArray()
-        )
+        val first =
+            entries.indexOfFirst { it.sendTime.elapsedNanos >= from }.takeIf { it >= 0 }
+                ?: entries.size
+        val last = entries.indexOfLast { it.createTime.elapsedNanos <= to }
+        return TransitionsTrace(entries.copyOfRange(first, maxOf(first, last + 1)))
     }
 }
@@ -20,6 +20,7 @@ import android.tools.common.ITraceEntry
 import android.tools.common.PlatformConsts
 import android.tools.common.Rotation
 import android.tools.common.Timestamps
+import android.tools.common.traces.QueryCache
 import android.tools.common.traces.component.IComponentMatcher
 import android.tools.common.traces.wm.Utils.collectDescendants
 import kotlin.js.JsExport
@@ -58,34 +59,84 @@ class WindowManagerState(
     val isTablet: Boolean
         get() = displays.any { it.isTablet }
 
+    // The hierarchy doesn't change once the state is created, so the lists of containers and the
+    // indexes over them are only built when first used. The lists are returned as they are, and
+    // must not be modified by the callers.
+    private val allWindowContainers by lazy { root.collectDescendants<IWindowContainer>() }
+    private val allDisplays by lazy {
+        allWindowContainers.filterIsInstance<DisplayContent>().toTypedArray()
+    }
+    private val allRootTasks by lazy {
+        allDisplays.flatMap { it.rootTasks.toList() }.toTypedArray()
+    }
+    private val allWindowStates by lazy {
+        allWindowContainers.filterIsInstance<WindowState>().toTypedArray()
+    }
+    private val allVisibleWindows by lazy {
+        allWindowStates
+            .filter {
+                val activities = getActivitiesForWindowState(it)
+                val windowIsVisible = it.isVisible
+                val activityIsVisible = activities.any { activity -> activity.isVisible }
+
+                // for invisible checks it suffices if activity or window is invisible
+                windowIsVisible && (activityIsVisible || activities.isEmpty())
+            }
+            .toTypedArray()
+    }
+    private val rootTasksById by lazy {
+        val tasks = mutableMapOf<Int, Task>()
+        allRootTasks.forEach { tasks.getOrPut(it.rootTaskId) { it } }
+        tasks
+    }
+    private val windowStateIndexesByToken by lazy {
+        val indexes = mutableMapOf<String, MutableList<Int>>()
+        allWindowStates.forEachIndexed { index, window ->
+            indexes.getOrPut(window.token) { mutableListOf() }.add(index)
+        }
+        indexes
+    }
+    private val activitiesByName = QueryCache<String, Activity?>()
+    private val containsActivityResults = QueryCache<IComponentMatcher, Boolean>()
+    private val activityResults = QueryCache<IComponentMatcher, Activity?>()
+    private val containsWindowResults = QueryCache<IComponentMatcher, Boolean>()
+    private val visibleWindowResults = QueryCache<IComponentMatcher, Array<WindowState>>()
+
+    /** Window containers in z-order, shared between calls and not to be modified */
     @JsName("windowContainers")
     val windowContainers: Array<IWindowContainer>
-        get() = root.collectDescendants()
+        get() = allWindowContainers
 
     @JsName("children")
     val children: Array<IWindowContainer>
         get() = root.children.reversedArray()
 
-    /** Displays in z-order with the top most at the front of the list, starting with primary. */
+    /**
+     * Displays in z-order with the top most at the front of the list, starting with primary.
+     * Shared between calls and not to be modified.
+     */
     @JsName("displays")
     val displays: Array<DisplayContent>
-        get() = windowContainers.filterIsInstance<DisplayContent>().toTypedArray()
+        get() = allDisplays
 
     /**
      * Root tasks in z-order with the top most at the front of the list, starting with primary
-     * display.
+     * display. Shared between calls and not to be modified.
      */
     val rootTasks: Array<Task>
-        get() = displays.flatMap { it.rootTasks.toList() }.toTypedArray()
+        get() = allRootTasks
 
     /** TaskFragments in z-order with the top most at the front of the list. */
     val taskFragments: Array<TaskFragment>
         get() = windowContainers.filterIsInstance<TaskFragment>().toTypedArray()
 
-    /** Windows in z-order with the top most at the front of the list. */
+    /**
+     * Windows in z-order with the top most at the front of the list. Shared between calls and not
+     * to be modified.
+     */
     @JsName("windowStates")
     val windowStates: Array<WindowState>
-        get() = windowContainers.filterIsInstance<WindowState>().toTypedArray()
+        get() = allWindowStates
 
     @Deprecated("Please use windowStates instead", replaceWith = ReplaceWith("windowStates"))
     val windows: Array<WindowState>
@@ -100,19 +151,10 @@ class WindowManagerState(
     val belowAppWindows: Array<WindowState>
         get() =
             windowStates.dropWhile { !appWindows.contains(it) }.drop(appWindows.size).toTypedArray()
+    /** Visible windows in z-order, shared between calls and not to be modified */
     @JsName("visibleWindows")
     val visibleWindows: Array<WindowState>
-        get() =
-            windowStates
-                .filter {
-                    val activities = getActivitiesForWindowState(it)
-                    val windowIsVisible = it.isVisible
-                    val activityIsVisible = activities.any { activity -> activity.isVisible }
-
-                    // for invisible checks it suffices if activity or window is invisible
-                    windowIsVisible && (activityIsVisible || activities.isEmpty())
-                }
-                .toTypedArray()
+        get() = allVisibleWindows
     val visibleAppWindows: Array<WindowState>
         get() = visibleWindows.filter { it.isAppWindow }.toTypedArray()
     val topVisibleAppWindow: WindowState?
@@ -213,7 +255,7 @@ class WindowManagerState(
         return count
     }
 
-    fun getRootTask(taskId: Int): Task? = rootTasks.firstOrNull { it.rootTaskId == taskId }
+    fun getRootTask(taskId: Int): Task? = rootTasksById[taskId]
 
     fun getRotation(displayId: Int): Rotation =
         getDisplay(displayId)?.rotation ?: error("Default display not found")
@@ -270,18 +312,24 @@ class WindowManagerState(
      * @return if any activity matches [componentMatcher]
      */
     fun containsActivity(componentMatcher: IComponentMatcher): Boolean =
-        rootTasks.any { it.containsActivity(componentMatcher) }
+        containsActivityResults.getOrPut(componentMatcher) {
+            rootTasks.any { it.containsActivity(componentMatcher) }
+        }
 
     /**
      * @param componentMatcher Components to search
      * @return the first [Activity] matching [componentMatcher], or null otherwise
      */
     fun getActivity(componentMatcher: IComponentMatcher): Activity? =
-        rootTasks.firstNotNullOfOrNull { it.getActivity(componentMatcher) }
+        activityResults.getOrPut(componentMatcher) {
+            rootTasks.firstNotNullOfOrNull { it.getActivity(componentMatcher) }
+        }
 
     private fun getActivityByName(activityName: String): Activity? =
-        rootTasks.firstNotNullOfOrNull { task ->
-            task.getActivity { activity -> activity.title.contains(activityName) }
+        activitiesByName.getOrPut(activityName) {
+            rootTasks.firstNotNullOfOrNull { task ->
+                task.getActivity { activity -> activity.title.contains(activityName) }
+            }
         }
 
     /**
@@ -308,13 +356,15 @@ class WindowManagerState(
 
     /**
      * @param componentMatcher Components to search
-     * @return the visible [WindowState]s matching [componentMatcher]
+     * @return the visible [WindowState]s matching [componentMatcher], shared between calls with
+     *   the same [componentMatcher] and not to be modified
      */
-    fun getMatchingVisibleWindowState(componentMatcher: IComponentMatcher): Array<WindowState> {
-        return windowStates
-            .filter { it.isSurfaceShown && componentMatcher.windowMatchesAnyOf(it) }
-            .toTypedArray()
-    }
+    fun getMatchingVisibleWindowState(componentMatcher: IComponentMatcher): Array<WindowState> =
+        visibleWindowResults.getOrPut(componentMatcher) {
+            windowStates
+                .filter { it.isSurfaceShown && componentMatcher.windowMatchesAnyOf(it) }
+                .toTypedArray()
+        }
 
     /** @return the [WindowState] for the nav bar in the display with id [displayId] */
     fun getNavBarWindow(displayId: Int): WindowState? {
@@ -329,7 +379,7 @@ class WindowManagerState(
     }
 
     private fun getWindowStateForAppToken(appToken: String): WindowState? =
-        windowStates.firstOrNull { it.token == appToken }
+        windowStateIndexesByToken[appToken]?.let { windowStates[it.first()] }
 
     /**
      * Checks if there exists a [WindowState] matching [componentMatcher]
@@ -337,7 +387,9 @@ class WindowManagerState(
      * @param componentMatcher Components to search
      */
     fun containsWindow(componentMatcher: IComponentMatcher): Boolean =
-        componentMatcher.windowMatchesAnyOf(windowStates.asList())
+        containsWindowResults.getOrPut(componentMatcher) {
+            componentMatcher.windowMatchesAnyOf(windowStates.asList())
+        }
 
     /**
      * Check if at least one [WindowState] matching [componentMatcher] is visible
@@ -358,7 +410,11 @@ class WindowManagerState(
     fun isInPipMode(componentMatcher: IComponentMatcher): Boolean =
         componentMatcher.windowMatchesAnyOf(pinnedWindows.asList())
 
-    fun getZOrder(w: WindowState): Int = windowStates.size - windowStates.indexOf(w)
+    fun getZOrder(w: WindowState): Int {
+        // Equal windows have the same token, so only the windows with its token are compared
+        val index = windowStateIndexesByToken[w.token]?.firstOrNull { windowStates[it] == w } ?: -1
+        return windowStates.size - index
+    }
 
     fun defaultMinimalTaskSize(displayId: Int): Int =
         dpToPx(PlatformConsts.DEFAULT_RESIZABLE_TASK_SIZE_DP.toFloat(), getDisplay(displayId)!!.dpi)
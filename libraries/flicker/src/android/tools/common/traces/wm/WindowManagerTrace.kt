@@ -17,31 +17,78 @@
 package android.tools.common.traces.wm
 
 import android.tools.common.ITrace
+import android.tools.common.LazyTraceEntries
 import android.tools.common.Rotation
 import android.tools.common.Timestamp
+import android.tools.common.getIndexesBetween
 import kotlin.js.JsExport
 import kotlin.js.JsName
+import kotlin.jvm.Volatile
 
 /**
  * Contains a collection of parsed WindowManager trace entries and assertions to apply over a single
  * entry.
  *
- * Each entry is parsed into a list of [WindowManagerState] objects.
+ * Each entry is parsed into a list of [WindowManagerState] objects. The entries of a trace created
+ * from [LazyTraceEntries] are only built when they are accessed, see [getEntry], and all at once
+ * when [entries] is first read.
  *
  * This is a generic object that is reused by both Flicker and Winscope and cannot access internal
  * Java/Android functionality
  */
 @JsExport
-data class WindowManagerTrace(override val entries: Array<WindowManagerState>) :
-    ITrace<WindowManagerState> {
+class WindowManagerTrace
+private constructor(
+    lazyEntries: LazyTraceEntries<WindowManagerState>?,
+    builtEntries: Array<WindowManagerState>?
+) : ITrace<WindowManagerState> {
+    constructor(entries: Array<WindowManagerState>) : this(null, entries)
+
+    constructor(entries: LazyTraceEntries<WindowManagerState>) : this(entries, null)
+
+    /** Entries still to be built, released with the raw entries they hold once all are built */
+    @Volatile private var lazyEntries: LazyTraceEntries<WindowManagerState>? = lazyEntries
+
+    private val allEntries: Lazy<Array<WindowManagerState>> =
+        builtEntries?.let { lazyOf(it) }
+            ?: lazy {
+                requireNotNull(this.lazyEntries).buildAll().toTypedArray().also {
+                    this.lazyEntries = null
+                }
+            }
+
+    override val entries: Array<WindowManagerState>
+        get() = allEntries.value
+
+    override val entryCount: Int
+        get() = lazyEntries?.size ?: entries.size
 
     @JsName("isTablet")
     val isTablet: Boolean
         get() = entries.any { it.isTablet }
 
+    override fun getEntry(index: Int): WindowManagerState {
+        val lazyEntries = this.lazyEntries
+        return if (lazyEntries == null || allEntries.isInitialized()) {
+            entries[index]
+        } else {
+            lazyEntries[index]
+        }
+    }
+
+    override fun getEntryTimestamp(index: Int): Timestamp {
+        val lazyEntries = this.lazyEntries
+        return if (lazyEntries == null || allEntries.isInitialized()) {
+            entries[index].timestamp
+        } else {
+            lazyEntries.getTimestamp(index)
+        }
+    }
+
     override fun toString(): String {
-        return "WindowManagerTrace(Start: ${entries.firstOrNull()}, " +
-            "End: ${entries.lastOrNull()})"
+        val first = if (entryCount > 0) getEntry(0) else null
+        val last = if (entryCount > 0) getEntry(entryCount - 1) else null
+        return "WindowManagerTrace(Start: $first, End: $last)"
     }
 
     override fun equals(other: Any?): Boolean {
@@ -59,30 +106,40 @@ data class WindowManagerTrace(override val entries: Array<WindowManagerState>) :
 
     /** Get the initial rotation */
     fun getInitialRotation(): Rotation {
-        if (entries.isEmpty()) {
+        if (entryCount == 0) {
             throw RuntimeException("WindowManager Trace has no entries")
         }
-        val firstWmState = entries[0]
+        val firstWmState = getEntry(0)
         return firstWmState.policy?.rotation
             ?: run { throw RuntimeException("Wm state has no policy") }
     }
 
     /** Get the final rotation */
     fun getFinalRotation(): Rotation {
-        if (entries.isEmpty()) {
+        if (entryCount == 0) {
             throw RuntimeException("WindowManager Trace has no entries")
         }
-        val lastWmState = entries.last()
+        val lastWmState = getEntry(entryCount - 1)
         return lastWmState.policy?.rotation
             ?: run { throw RuntimeException("Wm state has no policy") }
     }
 
     override fun slice(startTimestamp: Timestamp, endTimestamp: Timestamp): WindowManagerTrace {
-        return WindowManagerTrace(
-            entries
-                .dropWhile { it.timestamp < startTimestamp }
-                .dropLastWhile { it.timestamp > endTimestamp }
-                .toTypedArray()
-        )
+        val indexes = getIndexesBetween(startTimestamp, endTimestamp)
+        return sliceEntries(indexes.first, indexes.last + 1)
+    }
+
+    /**
+     * @return a trace with the entries from [fromIndex] (inclusive) to [toIndex] (exclusive), which
+     *   are still lazy if the entries of this trace were not built yet
+     */
+    @JsName("sliceEntries")
+    fun sliceEntries(fromIndex: Int, toIndex: Int): WindowManagerTrace {
+        val lazyEntries = this.lazyEntries
+        return if (lazyEntries == null || allEntries.isInitialized()) {
+            WindowManagerTrace(entries.copyOfRange(fromIndex, toIndex))
+        } else {
+            WindowManagerTrace(lazyEntries.slice(fromIndex, toIndex))
+        }
     }
 }
@@ -91,13 +91,22 @@ class WindowManagerTraceEntryBuilder {
     @JsName("setElapsedTimestamp")
     fun setElapsedTimestamp(value: String): WindowManagerTraceEntryBuilder =
         // Necessary for compatibility with JS number type
-        apply { elapsedTimestamp = value.toLong() }
+        setElapsedTimestamp(value.toLong())
+
+    @JsName("setElapsedTimestampLong")
+    fun setElapsedTimestamp(value: Long): WindowManagerTraceEntryBuilder = apply {
+        elapsedTimestamp = value
+    }
 
     @JsName("setRealToElapsedTimeOffsetNs")
-    fun setRealToElapsedTimeOffsetNs(value: String?): WindowManagerTraceEntryBuilder = apply {
+    fun setRealToElapsedTimeOffsetNs(value: String?): WindowManagerTraceEntryBuilder =
+        setRealToElapsedTimeOffsetNs(value?.toLong() ?: 0L)
+
+    @JsName("setRealToElapsedTimeOffsetNsLong")
+    fun setRealToElapsedTimeOffsetNs(value: Long): WindowManagerTraceEntryBuilder = apply {
         realTimestamp =
-            if (value != null && value.toLong() != 0L) {
-                value.toLong() + elapsedTimestamp
+            if (value != 0L) {
+                value + elapsedTimestamp
             } else {
                 null
             }
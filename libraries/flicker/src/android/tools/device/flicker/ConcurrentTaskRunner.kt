@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.device.flicker
+
+import android.tools.common.FLICKER_TAG
+import android.tools.common.Logger
+import android.tools.common.flicker.TaskRunner
+import java.util.concurrent.Callable
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinTask
+
+/**
+ * Runs the tasks of the flicker service concurrently on a fork/join [pool]
+ *
+ * The results are returned in the order of the tasks, and failures are only reported once all
+ * tasks finished, with the failure of the earliest task thrown, as with a sequential run. Tasks
+ * may run tasks themselves, which the workers keep running while they wait for them.
+ *
+ * The duration of each task is logged and the last [maxTimings] ones are kept in [timings], to find
+ * slow extractors and assertions.
+ *
+ * @param pool Pool running the tasks, by default a pool with one worker per core shared by all the
+ *   runners, so that runners created per test class don't each keep their own threads
+ * @param maxTimings Number of task durations kept
+ */
+class ConcurrentTaskRunner(
+    private val pool: ForkJoinPool = SHARED_POOL,
+    private val maxTimings: Int = DEFAULT_MAX_TIMINGS
+) : TaskRunner() {
+    private val finishedTasks = ArrayDeque<Timing>()
+
+    init {
+        require(maxTimings >= 0) { "Max timings must not be negative, but was $maxTimings" }
+    }
+
+    /** Durations of the last tasks run, in the order in which they finished */
+    val timings: List<Timing>
+        get() = synchronized(finishedTasks) { finishedTasks.toList() }
+
+    override fun <T> runAll(category: String, tasks: List<Task<T>>): List<T> {
+        val forkJoinTasks =
+            tasks.map { task ->
+                ForkJoinTask.adapt(Callable { runCatching { runTimedTask(category, task) } })
+            }
+        if (ForkJoinTask.getPool() === pool) {
+            // Nested tasks, run them on this worker as well while waiting for them
+            ForkJoinTask.invokeAll(forkJoinTasks)
+        } else {
+            forkJoinTasks.forEach { pool.execute(it) }
+        }
+        val results = forkJoinTasks.map { it.join() }
+        return results.map { it.getOrThrow() }
+    }
+
+    /** Removes the durations of the tasks run so far */
+    fun clearTimings() = synchronized(finishedTasks) { finishedTasks.clear() }
+
+    private fun <T> runTimedTask(category: String, task: Task<T>): T {
+        val startTime = System.nanoTime()
+        try {
+            return runTask(category, task)
+        } finally {
+            val timing = Timing(category, task.name, System.nanoTime() - startTime)
+            addTiming(timing)
+            Logger.d(LOG_TAG, timing.toString())
+        }
+    }
+
+    private fun addTiming(timing: Timing) {
+        synchronized(finishedTasks) {
+            if (maxTimings == 0) {
+                return
+            }
+            if (finishedTasks.size == maxTimings) {
+                finishedTasks.removeFirst()
+            }
+            finishedTasks.addLast(timing)
+        }
+    }
+
+    /**
+     * Duration of a task
+     *
+     * @param category Kind of the task
+     * @param name Name of the task
+     * @param durationNanos Wall time of the task, in nanoseconds
+     */
+    data class Timing(val category: String, val name: String, val durationNanos: Long) {
+        override fun toString(): String = "$category#$name took ${durationNanos / 1_000_000}ms"
+    }
+
+    companion object {
+        private const val LOG_TAG = "$FLICKER_TAG-SERVICE"
+        /** Enough durations for the extractors and assertions of a few tests */
+        const val DEFAULT_MAX_TIMINGS = 1000
+
+        private val SHARED_POOL by lazy { ForkJoinPool(Runtime.getRuntime().availableProcessors()) }
+    }
+}
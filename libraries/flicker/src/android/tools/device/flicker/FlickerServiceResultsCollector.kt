@@ -43,7 +43,10 @@ import org.junit.runner.notification.Failure
 class FlickerServiceResultsCollector(
     private val tracesCollector: TracesCollector,
     private val flickerService: FlickerService =
-        FlickerService(FlickerConfig().use(FlickerServiceConfig.DEFAULT)),
+        FlickerService(
+            FlickerConfig().use(FlickerServiceConfig.DEFAULT),
+            ConcurrentTaskRunner()
+        ),
     instrumentation: Instrumentation = InstrumentationRegistry.getInstrumentation(),
     private val collectMetricsPerTest: Boolean = true,
     private val reportOnlyForPassingTests: Boolean = true
@@ -147,7 +150,8 @@ class FlickerServiceResultsCollector(
             try {
                 Logger.i(LOG_TAG, "Processing traces")
                 val scenarios = flickerService.detectScenarios(reader)
-                val results = scenarios.flatMap { it.generateAssertions() }.map { it.execute() }
+                val assertions = scenarios.flatMap { it.generateAssertions() }
+                val results = flickerService.executeAssertions(assertions)
                 reader.artifact.updateStatus(RunStatus.RUN_EXECUTED)
                 Logger.i(LOG_TAG, "Got ${results.size} results")
                 assertionResults.addAll(results)
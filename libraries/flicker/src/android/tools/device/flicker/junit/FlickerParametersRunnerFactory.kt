@@ -20,6 +20,7 @@ import android.tools.common.CrossPlatform
 import android.tools.common.TimestampFactory
 import android.tools.device.AndroidLogger
 import android.tools.device.flicker.legacy.LegacyFlickerTest
+import android.tools.device.traces.ConcurrentCacheFactory
 import android.tools.device.traces.formatRealTimestamp
 import org.junit.runner.Runner
 import org.junit.runners.parameterized.ParametersRunnerFactory
@@ -33,6 +34,7 @@ class FlickerParametersRunnerFactory : ParametersRunnerFactory {
     init {
         CrossPlatform.setLogger(AndroidLogger())
             .setTimestampFactory(TimestampFactory { formatRealTimestamp(it) })
+            .setCacheFactory(ConcurrentCacheFactory())
     }
 
     override fun createRunnerForTestWithParameters(test: TestWithParameters): Runner {
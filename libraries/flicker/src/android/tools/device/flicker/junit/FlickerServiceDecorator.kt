@@ -29,6 +29,7 @@ import android.tools.common.flicker.assertions.ScenarioAssertion
 import android.tools.common.flicker.config.FlickerConfig
 import android.tools.common.flicker.config.ScenarioId
 import android.tools.common.io.Reader
+import android.tools.device.flicker.ConcurrentTaskRunner
 import android.tools.device.flicker.FlickerServiceResultsCollector.Companion.FLICKER_ASSERTIONS_COUNT_KEY
 import android.tools.device.flicker.Utils.captureTrace
 import android.tools.device.flicker.datastore.DataStore
@@ -49,7 +50,9 @@ class FlickerServiceDecorator(
     val paramString: String?,
     inner: IFlickerJUnitDecorator?
 ) : AbstractFlickerRunnerDecorator(testClass, inner) {
-    private val flickerService by lazy { FlickerService(getFlickerConfig()) }
+    private val flickerService by lazy {
+        FlickerService(getFlickerConfig(), ConcurrentTaskRunner())
+    }
 
     private val testClassName =
         ScenarioBuilder().forClass("${testClass.name}${paramString ?: ""}").build()
@@ -27,6 +27,7 @@ import android.tools.device.AndroidLogger
 import android.tools.device.flicker.FlickerServiceResultsCollector
 import android.tools.device.flicker.FlickerServiceTracesCollector
 import android.tools.device.flicker.IFlickerServiceResultsCollector
+import android.tools.device.traces.ConcurrentCacheFactory
 import android.tools.device.traces.formatRealTimestamp
 import android.tools.device.traces.getDefaultFlickerOutputDir
 import androidx.test.platform.app.InstrumentationRegistry
@@ -68,6 +69,7 @@ constructor(
     init {
         CrossPlatform.setLogger(AndroidLogger())
             .setTimestampFactory(TimestampFactory { formatRealTimestamp(it) })
+            .setCacheFactory(ConcurrentCacheFactory())
     }
 
     /** Invoked when a test is about to start */
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.device.traces
+
+import android.tools.common.CacheFactory
+import android.tools.common.ICache
+
+/**
+ * [CacheFactory] keeping track of the parse session of each thread, so traces can be parsed
+ * concurrently
+ *
+ * Threads outside of a parse session share a process wide cache.
+ */
+class ConcurrentCacheFactory : CacheFactory() {
+    private val shared: ICache = ConcurrentInterningCache()
+    private val sessions = ThreadLocal<ICache>()
+
+    override var current: ICache
+        get() = sessions.get() ?: shared
+        set(value) {
+            if (value === shared) {
+                sessions.remove()
+            } else {
+                sessions.set(value)
+            }
+        }
+
+    override fun newCache(): ICache = ConcurrentInterningCache()
+}
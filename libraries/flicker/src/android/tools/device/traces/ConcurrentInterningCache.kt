@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.device.traces
+
+import android.tools.common.CacheStats
+import android.tools.common.ICache
+import android.tools.common.InterningCache
+import java.lang.ref.ReferenceQueue
+import java.lang.ref.WeakReference
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Thread safe [ICache] holding at most [maxSize] elements
+ *
+ * Elements are weakly referenced, so they are evicted once no parsed object uses them anymore.
+ * When full, arbitrary elements are evicted to make room for new ones.
+ *
+ * @param maxSize Maximum number of elements in the cache
+ */
+class ConcurrentInterningCache(private val maxSize: Int = InterningCache.DEFAULT_MAX_SIZE) :
+    ICache {
+    private val elements = ConcurrentHashMap<WeakElement, WeakElement>()
+    private val collected = ReferenceQueue<Any>()
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+    private val evictions = AtomicLong()
+
+    init {
+        require(maxSize > 0) { "Cache size must be positive but was $maxSize" }
+    }
+
+    override val isThreadSafe = true
+
+    override val stats: CacheStats
+        get() = CacheStats(hits.get(), misses.get(), evictions.get(), elements.size)
+
+    override fun <T : Any> get(element: T): T {
+        removeCollectedElements()
+
+        val cached = elements[WeakElement(element)]?.get() ?: putIfAbsent(element)
+        if (cached == null) {
+            misses.incrementAndGet()
+            trimToSize()
+            return element
+        }
+        hits.incrementAndGet()
+        return cached as T
+    }
+
+    /** Caches [element], or returns the equal element cached concurrently by another thread */
+    private fun putIfAbsent(element: Any): Any? {
+        val weakElement = WeakElement(element, collected)
+        return elements.putIfAbsent(weakElement, weakElement)?.get()
+    }
+
+    private fun removeCollectedElements() {
+        while (true) {
+            val element = collected.poll() ?: return
+            if (elements.remove(element, element)) {
+                evictions.incrementAndGet()
+            }
+        }
+    }
+
+    private fun trimToSize() {
+        val iterator = elements.keys.iterator()
+        while (elements.size > maxSize && iterator.hasNext()) {
+            iterator.next()
+            iterator.remove()
+            evictions.incrementAndGet()
+        }
+    }
+
+    override fun clear() {
+        elements.clear()
+    }
+
+    override fun backup(): MutableMap<Any, Any> {
+        val backup = mutableMapOf<Any, Any>()
+        for (element in elements.keys) {
+            element.get()?.let { backup[it] = it }
+        }
+        return backup
+    }
+
+    override fun restore(elements: Map<Any, Any>) {
+        this.elements.clear()
+        for (element in elements.values) {
+            val weakElement = WeakElement(element, collected)
+            this.elements[weakElement] = weakElement
+        }
+    }
+
+    /**
+     * Weak reference to a cached element, equal to the references of equal elements
+     *
+     * Once the element is collected, the reference is only equal to itself.
+     */
+    private class WeakElement(element: Any, queue: ReferenceQueue<Any>? = null) :
+        WeakReference<Any>(element, queue) {
+        private val hashCode = element.hashCode()
+
+        override fun hashCode(): Int = hashCode
+
+        override fun equals(other: Any?): Boolean {
+            if (this === other) return true
+            if (other !is WeakElement) return false
+            val element = get() ?: return false
+            return element == other.get()
+        }
+    }
+}
@@ -35,20 +35,14 @@ package android.tools.device.traces.io
 import android.tools.common.Logger
 import android.tools.common.Scenario
 import android.tools.common.io.Artifact
-import android.tools.common.io.BUFFER_SIZE
 import android.tools.common.io.FLICKER_IO_TAG
 import android.tools.common.io.ResultArtifactDescriptor
 import android.tools.common.io.RunStatus
 import android.tools.device.traces.deleteIfExists
-import java.io.BufferedInputStream
-import java.io.BufferedOutputStream
-import java.io.ByteArrayOutputStream
 import java.io.File
-import java.io.FileInputStream
 import java.io.FileNotFoundException
 import java.io.IOException
-import java.util.zip.ZipEntry
-import java.util.zip.ZipInputStream
+import java.io.InputStream
 
 class Artifact
 internal constructor(private val scenario: Scenario, artifactFile: File, private val counter: Int) :
@@ -73,6 +67,12 @@ internal constructor(private val scenario: Scenario, artifactFile: File, private
 
     override val stableId: String = "$scenario$counter"
 
+    /** Index of the files in the archive, read on first access */
+    private val zipReader: ArtifactZipReader by lazy {
+        requireExists()
+        ArtifactZipReader.read(file)
+    }
+
     override fun updateStatus(newStatus: RunStatus) {
         val currFile = file
         val newFile = getNewFilePath(newStatus)
@@ -87,15 +87,15 @@ internal constructor(private val scenario: Scenario, artifactFile: File, private
     }
 
     override fun hasTrace(descriptor: ResultArtifactDescriptor): Boolean {
-        var found = false
-        forEachFileInZip { found = found || (it.name == descriptor.fileNameInArtifact) }
-        return found
+        val reader = zipReader
+        requireExists()
+        return reader.contains(descriptor.fileNameInArtifact)
     }
 
     override fun traceCount(): Int {
-        var count = 0
-        forEachFileInZip { count++ }
-        return count
+        val reader = zipReader
+        requireExists()
+        return reader.fileNames.size
     }
 
     override fun toString(): String = fileName
@@ -121,37 +121,26 @@ internal constructor(private val scenario: Scenario, artifactFile: File, private
     @Throws(IOException::class)
     override fun readBytes(descriptor: ResultArtifactDescriptor): ByteArray? {
         Logger.d(FLICKER_IO_TAG, "Reading descriptor=$descriptor from $this")
+        val reader = zipReader
+        requireExists()
+        return reader.readBytes(file, descriptor.fileNameInArtifact)
+    }
 
-        var foundFile = false
-        val outByteArray = ByteArrayOutputStream()
-        val tmpBuffer = ByteArray(BUFFER_SIZE)
-        withZipFile {
-            var zipEntry: ZipEntry? = it.nextEntry
-            while (zipEntry != null) {
-                if (zipEntry.name == descriptor.fileNameInArtifact) {
-                    val outputStream = BufferedOutputStream(outByteArray, BUFFER_SIZE)
-                    try {
-                        var size = it.read(tmpBuffer, 0, BUFFER_SIZE)
-                        while (size > 0) {
-                            outputStream.write(tmpBuffer, 0, size)
-                            size = it.read(tmpBuffer, 0, BUFFER_SIZE)
-                        }
-                        it.closeEntry()
-                    } finally {
-                        outputStream.flush()
-                        outputStream.close()
-                    }
-                    foundFile = true
-                    break
-                }
-                zipEntry = it.nextEntry
-            }
-        }
-
-        return if (foundFile) outByteArray.toByteArray() else null
+    /**
+     * Opens a stream over the file matching [descriptor], so it can be parsed without copying it
+     * into a [ByteArray] first
+     *
+     * @return the stream, which must be closed by the caller, or null if the file doesn't exist
+     */
+    @Throws(IOException::class)
+    fun openInputStream(descriptor: ResultArtifactDescriptor): InputStream? {
+        Logger.d(FLICKER_IO_TAG, "Opening descriptor=$descriptor from $this")
+        val reader = zipReader
+        requireExists()
+        return reader.openStream(file, descriptor.fileNameInArtifact)
     }
 
-    private fun withZipFile(predicate: (ZipInputStream) -> Unit) {
+    private fun requireExists() {
         if (!file.exists()) {
             val directory = file.parentFile
             val files =
@@ -171,23 +160,5 @@ internal constructor(private val scenario: Scenario, artifactFile: File, private
                 }
             )
         }
-
-        val zipInputStream = ZipInputStream(BufferedInputStream(FileInputStream(file), BUFFER_SIZE))
-        try {
-            predicate(zipInputStream)
-        } finally {
-            zipInputStream.closeEntry()
-            zipInputStream.close()
-        }
-    }
-
-    private fun forEachFileInZip(predicate: (ZipEntry) -> Unit) {
-        withZipFile {
-            var zipEntry: ZipEntry? = it.nextEntry
-            while (zipEntry != null) {
-                predicate(zipEntry)
-                zipEntry = it.nextEntry
-            }
-        }
     }
 }
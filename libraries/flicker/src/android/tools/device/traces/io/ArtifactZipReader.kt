@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.device.traces.io
+
+import android.tools.common.io.BUFFER_SIZE
+import java.io.BufferedInputStream
+import java.io.EOFException
+import java.io.File
+import java.io.IOException
+import java.io.InputStream
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.MappedByteBuffer
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.util.zip.Inflater
+import java.util.zip.InflaterInputStream
+import java.util.zip.ZipEntry
+
+/**
+ * Random access reader of the files in a flicker artifact
+ *
+ * The central directory of the archive is read once, when the reader is created. Each file is then
+ * read directly from its offset in the archive, without going through the files stored before it.
+ * Stored files are memory mapped, deflated files are inflated while they are read.
+ *
+ * The index stays valid when the archive is moved, so the archive location is passed on each read.
+ */
+internal class ArtifactZipReader private constructor(private val entries: Map<String, Entry>) {
+    /** Names of the files in the archive */
+    val fileNames: Set<String>
+        get() = entries.keys
+
+    /** @return if a file named [name] exists in the archive */
+    fun contains(name: String): Boolean = entries.containsKey(name)
+
+    /**
+     * Opens a stream over the contents of the file named [name] in [archive]
+     *
+     * @return the stream, which must be closed by the caller, or null if there is no such file
+     */
+    @Throws(IOException::class)
+    fun openStream(archive: File, name: String): InputStream? {
+        val entry = entries[name] ?: return null
+        return when (entry.method) {
+            ZipEntry.STORED -> openStoredStream(archive, entry)
+            ZipEntry.DEFLATED -> openDeflatedStream(archive, entry)
+            else -> throw IOException("Unsupported compression method ${entry.method} for $name")
+        }
+    }
+
+    /** @return the contents of the file named [name] in [archive], or null if there is none */
+    @Throws(IOException::class)
+    fun readBytes(archive: File, name: String): ByteArray? {
+        val entry = entries[name] ?: return null
+        require(entry.size <= Int.MAX_VALUE) { "$name is too large to be read at once" }
+        val bytes = ByteArray(entry.size.toInt())
+        openStream(archive, name)?.use { stream ->
+            var offset = 0
+            while (offset < bytes.size) {
+                val count = stream.read(bytes, offset, bytes.size - offset)
+                if (count < 0) {
+                    throw EOFException("$name ended after $offset of ${bytes.size} bytes")
+                }
+                offset += count
+            }
+        }
+        return bytes
+    }
+
+    private fun openStoredStream(archive: File, entry: Entry): InputStream {
+        RandomAccessFile(archive, "r").channel.use { channel ->
+            val dataOffset = getDataOffset(channel, entry)
+            // The mapping remains valid once the channel is closed
+            return ByteBufferInputStream(
+                channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, entry.size)
+            )
+        }
+    }
+
+    private fun openDeflatedStream(archive: File, entry: Entry): InputStream {
+        val file = RandomAccessFile(archive, "r")
+        try {
+            val channel = file.channel
+            channel.position(getDataOffset(channel, entry))
+            val input = BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE)
+            return object : InflaterInputStream(input, Inflater(/* nowrap */ true), BUFFER_SIZE) {
+                override fun close() {
+                    try {
+                        super.close()
+                    } finally {
+                        inf.end()
+                    }
+                }
+            }
+        } catch (e: Throwable) {
+            file.close()
+            throw e
+        }
+    }
+
+    /** Reads the local header of [entry] to find where its data starts */
+    private fun getDataOffset(channel: FileChannel, entry: Entry): Long {
+        val header = readFully(channel, entry.localHeaderOffset, LOCAL_HEADER_SIZE)
+        if (header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+            throw IOException("Invalid local header for ${entry.name}")
+        }
+        val nameLength = header.getShort(LOCAL_NAME_LENGTH_OFFSET).toUnsigned()
+        val extraLength = header.getShort(LOCAL_EXTRA_LENGTH_OFFSET).toUnsigned()
+        return entry.localHeaderOffset + LOCAL_HEADER_SIZE + nameLength + extraLength
+    }
+
+    private class Entry(
+        val name: String,
+        val method: Int,
+        val size: Long,
+        val localHeaderOffset: Long
+    )
+
+    /** Stream over a memory mapped file */
+    private class ByteBufferInputStream(private val buffer: MappedByteBuffer) : InputStream() {
+        override fun read(): Int = if (buffer.hasRemaining()) buffer.get().toInt() and 0xFF else -1
+
+        override fun read(bytes: ByteArray, offset: Int, length: Int): Int {
+            if (length == 0) {
+                return 0
+            }
+            if (!buffer.hasRemaining()) {
+                return -1
+            }
+            val count = minOf(length, buffer.remaining())
+            buffer.get(bytes, offset, count)
+            return count
+        }
+
+        override fun available(): Int = buffer.remaining()
+    }
+
+    companion object {
+        private const val END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50
+        private const val END_OF_CENTRAL_DIRECTORY_SIZE = 22
+        private const val MAX_COMMENT_SIZE = 0xFFFF
+        private const val CENTRAL_HEADER_SIGNATURE = 0x02014b50
+        private const val CENTRAL_HEADER_SIZE = 46
+        private const val LOCAL_HEADER_SIGNATURE = 0x04034b50
+        private const val LOCAL_HEADER_SIZE = 30
+        private const val LOCAL_NAME_LENGTH_OFFSET = 26
+        private const val LOCAL_EXTRA_LENGTH_OFFSET = 28
+        private const val ZIP64_MARKER = 0xFFFFFFFFL
+
+        /** Reads the central directory of [archive] */
+        @Throws(IOException::class)
+        fun read(archive: File): ArtifactZipReader {
+            RandomAccessFile(archive, "r").channel.use { channel ->
+                val endOfCentralDirectory = findEndOfCentralDirectory(channel, archive)
+                val entryCount = endOfCentralDirectory.getShort(10).toUnsigned()
+                val directorySize = endOfCentralDirectory.getInt(12).toUnsigned()
+                val directoryOffset = endOfCentralDirectory.getInt(16).toUnsigned()
+                if (directorySize == ZIP64_MARKER || directoryOffset == ZIP64_MARKER) {
+                    throw IOException("$archive is a zip64 archive, which is not supported")
+                }
+
+                val directory = readFully(channel, directoryOffset, directorySize.toInt())
+                val entries = mutableMapOf<String, Entry>()
+                repeat(entryCount) {
+                    val entry = readCentralHeader(directory, archive)
+                    entries[entry.name] = entry
+                }
+                return ArtifactZipReader(entries)
+            }
+        }
+
+        private fun readCentralHeader(directory: ByteBuffer, archive: File): Entry {
+            val start = directory.position()
+            if (directory.getInt(start) != CENTRAL_HEADER_SIGNATURE) {
+                throw IOException("Invalid central directory in $archive")
+            }
+            val method = directory.getShort(start + 10).toUnsigned()
+            val size = directory.getInt(start + 24).toUnsigned()
+            val nameLength = directory.getShort(start + 28).toUnsigned()
+            val extraLength = directory.getShort(start + 30).toUnsigned()
+            val commentLength = directory.getShort(start + 32).toUnsigned()
+            val localHeaderOffset = directory.getInt(start + 42).toUnsigned()
+            if (size == ZIP64_MARKER || localHeaderOffset == ZIP64_MARKER) {
+                throw IOException("$archive is a zip64 archive, which is not supported")
+            }
+
+            val name = ByteArray(nameLength)
+            directory.position(start + CENTRAL_HEADER_SIZE)
+            directory.get(name)
+            directory.position(directory.position() + extraLength + commentLength)
+            return Entry(String(name, Charsets.UTF_8), method, size, localHeaderOffset)
+        }
+
+        /** Searches the end of central directory record backwards, skipping the archive comment */
+        private fun findEndOfCentralDirectory(channel: FileChannel, archive: File): ByteBuffer {
+            val fileSize = channel.size()
+            val maxSearchSize = (END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE).toLong()
+            val searchSize = minOf(fileSize, maxSearchSize).toInt()
+            if (searchSize < END_OF_CENTRAL_DIRECTORY_SIZE) {
+                throw IOException("$archive is not a zip archive")
+            }
+            val tail = readFully(channel, fileSize - searchSize, searchSize)
+            for (offset in searchSize - END_OF_CENTRAL_DIRECTORY_SIZE downTo 0) {
+                if (tail.getInt(offset) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                    tail.position(offset)
+                    return tail.slice().order(ByteOrder.LITTLE_ENDIAN)
+                }
+            }
+            throw IOException("$archive is not a zip archive")
+        }
+
+        private fun readFully(channel: FileChannel, position: Long, size: Int): ByteBuffer {
+            val buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN)
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw EOFException("Unexpected end of archive")
+                }
+            }
+            buffer.flip()
+            return buffer
+        }
+
+        private fun Short.toUnsigned(): Int = toInt() and 0xFFFF
+
+        private fun Int.toUnsigned(): Long = toLong() and 0xFFFFFFFFL
+    }
+}
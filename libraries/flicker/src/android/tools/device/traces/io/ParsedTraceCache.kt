@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.device.traces.io
+
+import android.tools.common.CacheStats
+import android.tools.common.ITrace
+import android.tools.common.io.TraceType
+import android.tools.common.io.TransitionTimeRange
+import android.tools.common.traces.surfaceflinger.LayersTrace
+import android.tools.common.traces.wm.WindowManagerTrace
+import android.util.LruCache
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.FutureTask
+
+/**
+ * LRU cache of parsed traces, bounded by the memory estimated to be retained by the traces
+ * instead of by their number, so a large layers trace takes as much of the budget as many event
+ * logs
+ *
+ * @param maxSizeKb Memory budget of the cache, in KB
+ */
+class ParsedTraceCache(maxSizeKb: Int) {
+    private val cache =
+        object : LruCache<Key, CachedTrace>(maxSizeKb) {
+            override fun sizeOf(key: Key, value: CachedTrace): Int = value.estimatedSizeKb
+        }
+    private val pendingReads = ConcurrentHashMap<Key, FutureTask<*>>()
+
+    /** Usage counters of the cache, with the size as the number of cached traces */
+    val stats: CacheStats
+        get() =
+            CacheStats(
+                hits = cache.hitCount().toLong(),
+                misses = cache.missCount().toLong(),
+                evictions = cache.evictionCount().toLong(),
+                size = cache.snapshot().size
+            )
+
+    /** Memory estimated to be retained by the cached traces, in KB */
+    val estimatedSizeKb: Int
+        get() = cache.size()
+
+    /** @return the cached trace for [key], or null if it isn't cached */
+    @Suppress("UNCHECKED_CAST")
+    operator fun <T : ITrace<*>> get(key: Key): T? = cache[key]?.trace as T?
+
+    /** Caches [trace] for [key] */
+    fun put(key: Key, trace: ITrace<*>) {
+        cache.put(key, CachedTrace(trace, estimateSizeKb(trace)))
+    }
+
+    /**
+     * @return the cached trace for [key], or otherwise the trace read by [read], which is cached.
+     *   Concurrent calls for the same [key] read the trace once and share it.
+     */
+    fun <T : ITrace<*>> getOrRead(key: Key, read: () -> T?): T? {
+        get<T>(key)?.let {
+            return it
+        }
+        val task = FutureTask { read()?.also { put(key, it) } }
+        @Suppress("UNCHECKED_CAST")
+        val pendingTask = pendingReads.putIfAbsent(key, task) as FutureTask<T?>?
+        if (pendingTask != null) {
+            return pendingTask.getResult()
+        }
+        try {
+            task.run()
+        } finally {
+            pendingReads.remove(key, task)
+        }
+        return task.getResult()
+    }
+
+    /** Removes all traces from the cache */
+    fun clear() = cache.evictAll()
+
+    /**
+     * Identifies a parsed trace
+     *
+     * @param artifact Stable id of the artifact the trace was read from
+     * @param traceType Type of the trace
+     * @param transitionTimeRange Time range the trace was sliced to
+     */
+    data class Key(
+        val artifact: String,
+        val traceType: TraceType,
+        val transitionTimeRange: TransitionTimeRange
+    )
+
+    private class CachedTrace(val trace: ITrace<*>, val estimatedSizeKb: Int)
+
+    private fun <T> FutureTask<T>.getResult(): T =
+        try {
+            get()
+        } catch (e: ExecutionException) {
+            throw e.cause ?: e
+        }
+
+    companion object {
+        private const val BYTES_PER_ENTRY = 256L
+        private const val BYTES_PER_LAYER = 2048L
+        private const val BYTES_PER_WINDOW_CONTAINER = 1024L
+
+        /**
+         * Estimates the memory retained by [trace] from the number of objects in its entries.
+         *
+         * The number of objects is extrapolated from the first entry, so the entries of traces
+         * with lazy entries are not all built. The estimate doesn't account for instances shared
+         * between traces, such as the entries of a trace and of its slices, so it is an upper
+         * bound.
+         */
+        internal fun estimateSizeKb(trace: ITrace<*>): Int {
+            val entryCount = trace.entryCount.toLong()
+            val objectBytes =
+                when {
+                    entryCount == 0L -> 0L
+                    trace is LayersTrace ->
+                        trace.getEntry(0).flattenedLayers.size * BYTES_PER_LAYER * entryCount
+                    trace is WindowManagerTrace ->
+                        trace.getEntry(0).windowContainers.size *
+                            BYTES_PER_WINDOW_CONTAINER *
+                            entryCount
+                    else -> 0L
+                }
+            val bytes = objectBytes + entryCount * BYTES_PER_ENTRY
+            return (bytes / 1024).coerceIn(1, Int.MAX_VALUE.toLong()).toInt()
+        }
+    }
+}
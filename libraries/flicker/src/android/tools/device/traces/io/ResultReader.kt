@@ -16,6 +16,10 @@
 
 package android.tools.device.traces.io
 
+import android.surfaceflinger.Layerstrace
+import android.surfaceflinger.proto.Transactions.TransactionTraceFile
+import android.tools.common.ITrace
+import android.tools.common.LazyTraceEntries
 import android.tools.common.Logger
 import android.tools.common.Tag
 import android.tools.common.Timestamp
@@ -39,11 +43,16 @@ import android.tools.device.traces.parsers.wm.TransitionTraceParser
 import android.tools.device.traces.parsers.wm.WindowManagerDumpParser
 import android.tools.device.traces.parsers.wm.WindowManagerTraceParser
 import androidx.annotation.VisibleForTesting
+import java.io.ByteArrayInputStream
 import java.io.IOException
+import java.io.InputStream
 
 /**
  * Helper class to read results from a flicker artifact
  *
+ * The WM and layers traces are parsed lazily, so assertions on their start and end states only
+ * build those entries, see [LazyTraceEntries].
+ *
  * @param _result to read from
  * @param traceConfig
  */
@@ -93,20 +102,13 @@ open class ResultReader(_result: IResultData, internal val traceConfig: TraceCon
             artifact.readBytes(descriptor)?.let {
                 val trace =
                     WindowManagerTraceParser()
-                        .parse(
+                        .parseLazily(
                             it,
                             from = transitionTimeRange.start,
                             to = transitionTimeRange.end,
-                            addInitialEntry = true,
-                            clearCache = true
+                            addInitialEntry = true
                         )
-                val minimumEntries = minimumTraceEntriesForConfig(traceConfig.wmTrace)
-                require(trace.entries.size >= minimumEntries) {
-                    "WM trace contained ${trace.entries.size} entries, " +
-                        "expected at least $minimumEntries... :: " +
-                        "transition starts at ${transitionTimeRange.start} and " +
-                        "ends at ${transitionTimeRange.end}."
-                }
+                requireMinimumEntries("WM", trace, traceConfig.wmTrace)
                 trace
             }
         }
@@ -121,23 +123,16 @@ open class ResultReader(_result: IResultData, internal val traceConfig: TraceCon
     override fun readLayersTrace(): LayersTrace? {
         return Logger.withTracing("readLayersTrace") {
             val descriptor = ResultArtifactDescriptor(TraceType.SF)
-            artifact.readBytes(descriptor)?.let {
+            readProto(descriptor) { Layerstrace.LayersTraceFileProto.parseFrom(it) }?.let {
                 val trace =
                     LayersTraceParser()
-                        .parse(
+                        .parseLazily(
                             it,
                             transitionTimeRange.start,
                             transitionTimeRange.end,
-                            addInitialEntry = true,
-                            clearCache = true
+                            addInitialEntry = true
                         )
-                val minimumEntries = minimumTraceEntriesForConfig(traceConfig.layersTrace)
-                require(trace.entries.size >= minimumEntries) {
-                    "Layers trace contained ${trace.entries.size} entries, " +
-                        "expected at least $minimumEntries... :: " +
-                        "transition starts at ${transitionTimeRange.start} and " +
-                        "ends at ${transitionTimeRange.end}."
-                }
+                requireMinimumEntries("Layers", trace, traceConfig.layersTrace)
                 trace
             }
         }
@@ -169,7 +164,8 @@ open class ResultReader(_result: IResultData, internal val traceConfig: TraceCon
         }
 
     private fun doReadTransactionsTrace(from: Timestamp, to: Timestamp): TransactionsTrace? {
-        val traceData = artifact.readBytes(ResultArtifactDescriptor(TraceType.TRANSACTION))
+        val descriptor = ResultArtifactDescriptor(TraceType.TRANSACTION)
+        val traceData = readProto(descriptor) { TransactionTraceFile.parseFrom(it) }
         return traceData?.let {
             val trace = TransactionsTraceParser().parse(it, from, to, addInitialEntry = true)
             require(trace.entries.isNotEmpty()) { "Transactions trace cannot be empty" }
@@ -209,10 +205,37 @@ open class ResultReader(_result: IResultData, internal val traceConfig: TraceCon
         }
     }
 
+    /**
+     * Decodes the file matching [descriptor] with [parseFrom], streaming it from the artifact
+     * instead of reading it into a [ByteArray] first when the artifact supports it
+     */
+    private fun <T> readProto(
+        descriptor: ResultArtifactDescriptor,
+        parseFrom: (InputStream) -> T
+    ): T? {
+        val artifact = artifact
+        return if (artifact is android.tools.device.traces.io.Artifact) {
+            artifact.openInputStream(descriptor)?.use(parseFrom)
+        } else {
+            artifact.readBytes(descriptor)?.let { parseFrom(ByteArrayInputStream(it)) }
+        }
+    }
+
     private fun minimumTraceEntriesForConfig(config: TraceConfig): Int {
         return if (config.allowNoChange) 1 else 2
     }
 
+    /** Checks that [trace] has enough entries to be asserted on according to [config] */
+    internal fun requireMinimumEntries(traceName: String, trace: ITrace<*>, config: TraceConfig) {
+        val minimumEntries = minimumTraceEntriesForConfig(config)
+        require(trace.entryCount >= minimumEntries) {
+            "$traceName trace contained ${trace.entryCount} entries, " +
+                "expected at least $minimumEntries... :: " +
+                "transition starts at ${transitionTimeRange.start} and " +
+                "ends at ${transitionTimeRange.end}."
+        }
+    }
+
     /**
      * {@inheritDoc}
      *
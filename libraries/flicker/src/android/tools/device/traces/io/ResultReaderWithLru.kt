@@ -16,21 +16,25 @@
 
 package android.tools.device.traces.io
 
+import android.tools.common.ITrace
 import android.tools.common.Timestamp
 import android.tools.common.io.Reader
-import android.tools.common.io.ResultArtifactDescriptor
 import android.tools.common.io.TraceType
 import android.tools.common.io.TransitionTimeRange
 import android.tools.common.traces.events.EventLog
 import android.tools.common.traces.surfaceflinger.LayersTrace
 import android.tools.common.traces.wm.WindowManagerTrace
 import android.tools.device.traces.TraceConfigs
-import android.util.LruCache
 import java.io.IOException
 
 /**
  * Helper class to read results from a flicker artifact using a LRU
  *
+ * The parsed traces are shared by all readers through [traceCache], and a trace read concurrently
+ * by several readers is only parsed once. The traces of a reader created by [slice] are sliced
+ * from the traces of the reader it was sliced from, instead of being parsed again from the
+ * artifact.
+ *
  * @param result to read from
  * @param traceConfig
  */
@@ -39,48 +43,119 @@ open class ResultReaderWithLru(
     traceConfig: TraceConfigs,
     private val reader: ResultReader = ResultReader(result, traceConfig)
 ) : Reader by reader {
+    /** Reader of the whole transition this reader was sliced from, if any */
+    private var sourceReader: ResultReaderWithLru? = null
+
     /** {@inheritDoc} */
     @Throws(IOException::class)
-    override fun readWmTrace(): WindowManagerTrace? {
-        val descriptor = ResultArtifactDescriptor(TraceType.SF)
-        val key = CacheKey(reader.artifact.stableId, descriptor, reader.transitionTimeRange)
-        val trace = wmTraceCache[key] ?: reader.readWmTrace()
-        return trace?.also { wmTraceCache.put(key, trace) }
-    }
+    override fun readWmTrace(): WindowManagerTrace? =
+        readTrace(TraceType.WM, { it.readWmTrace() }, { reader.readWmTrace() }, ::sliceWmTrace)
 
     /** {@inheritDoc} */
     @Throws(IOException::class)
-    override fun readLayersTrace(): LayersTrace? {
-        val descriptor = ResultArtifactDescriptor(TraceType.SF)
-        val key = CacheKey(reader.artifact.stableId, descriptor, reader.transitionTimeRange)
-        val trace = layersTraceCache[key] ?: reader.readLayersTrace()
-        return trace?.also { layersTraceCache.put(key, trace) }
-    }
+    override fun readLayersTrace(): LayersTrace? =
+        readTrace(
+            TraceType.SF,
+            { it.readLayersTrace() },
+            { reader.readLayersTrace() },
+            ::sliceLayersTrace
+        )
 
     /** {@inheritDoc} */
     @Throws(IOException::class)
-    override fun readEventLogTrace(): EventLog? {
-        val descriptor = ResultArtifactDescriptor(TraceType.EVENT_LOG)
-        val key = CacheKey(reader.artifact.stableId, descriptor, reader.transitionTimeRange)
-        val trace = eventLogCache[key] ?: reader.readEventLogTrace()
-        return trace?.also { eventLogCache.put(key, trace) }
+    override fun readEventLogTrace(): EventLog? =
+        readTrace(
+            TraceType.EVENT_LOG,
+            { it.readEventLogTrace() },
+            { reader.readEventLogTrace() },
+            { trace, range -> trace.slice(range.start, range.end) }
+        )
+
+    private fun sliceWmTrace(
+        trace: WindowManagerTrace,
+        range: TransitionTimeRange
+    ): WindowManagerTrace {
+        val indexes = trace.getIndexesWithInitialEntry(range)
+        return trace.sliceEntries(indexes.first, indexes.last + 1).also {
+            reader.requireMinimumEntries("WM", it, reader.traceConfig.wmTrace)
+        }
+    }
+
+    private fun sliceLayersTrace(trace: LayersTrace, range: TransitionTimeRange): LayersTrace {
+        val indexes = trace.getIndexesWithInitialEntry(range)
+        return trace.sliceEntries(indexes.first, indexes.last + 1).also {
+            reader.requireMinimumEntries("Layers", it, reader.traceConfig.layersTrace)
+        }
+    }
+
+    /**
+     * Reads a trace from [traceCache], or otherwise slices it from the trace of [sourceReader] or
+     * parses it from the artifact, and caches it
+     *
+     * @param traceType Type of the trace to read
+     * @param readSource Reads the trace of [sourceReader]
+     * @param parse Parses the trace from the artifact
+     * @param slice Slices a trace of a wider time range to [TransitionTimeRange]
+     */
+    private fun <T : ITrace<*>> readTrace(
+        traceType: TraceType,
+        readSource: (ResultReaderWithLru) -> T?,
+        parse: () -> T?,
+        slice: (T, TransitionTimeRange) -> T
+    ): T? {
+        val range = reader.transitionTimeRange
+        val key = ParsedTraceCache.Key(reader.artifact.stableId, traceType, range)
+        return traceCache.getOrRead(key) {
+            val source = sourceReader
+            if (source != null && source.reader.transitionTimeRange.contains(range)) {
+                readSource(source)?.let { slice(it, range) }
+            } else {
+                parse()
+            }
+        }
     }
 
     /** {@inheritDoc} */
     override fun slice(startTimestamp: Timestamp, endTimestamp: Timestamp): ResultReaderWithLru {
         val slicedReader = reader.slice(startTimestamp, endTimestamp)
         return ResultReaderWithLru(slicedReader.result, slicedReader.traceConfig, slicedReader)
+            .also { it.sourceReader = sourceReader ?: this }
     }
 
     companion object {
-        data class CacheKey(
-            private val artifact: String,
-            private val descriptor: ResultArtifactDescriptor,
-            private val transitionTimeRange: TransitionTimeRange
-        )
+        private const val MAX_CACHE_MEMORY_FRACTION = 8
+
+        /** Parsed traces of all readers, bounded by a fraction of the maximum heap size */
+        val traceCache =
+            ParsedTraceCache(
+                (Runtime.getRuntime().maxMemory() / MAX_CACHE_MEMORY_FRACTION / 1024)
+                    .coerceAtMost(Int.MAX_VALUE.toLong())
+                    .toInt()
+            )
+
+        private fun TransitionTimeRange.contains(other: TransitionTimeRange): Boolean =
+            start <= other.start && other.end <= end
 
-        private val wmTraceCache = LruCache<CacheKey, WindowManagerTrace>(5)
-        private val layersTraceCache = LruCache<CacheKey, LayersTrace>(5)
-        private val eventLogCache = LruCache<CacheKey, EventLog>(5)
+        /**
+         * Finds the indexes of the entries in [range], including the last entry before the start of
+         * the range when there is no entry exactly at its start, as when the trace is parsed with
+         * an initial entry. Only the timestamps of the entries are read, so lazy entries are not
+         * built.
+         */
+        private fun ITrace<*>.getIndexesWithInitialEntry(range: TransitionTimeRange): IntRange {
+            if (entryCount == 0 || range.end < getEntryTimestamp(0)) {
+                return 0 until 0
+            }
+            var first = (0 until entryCount).firstOrNull { getEntryTimestamp(it) >= range.start }
+            if (first == null) {
+                // Keep the last entry as the start entry of the sliced trace
+                return (entryCount - 1)..(entryCount - 1)
+            }
+            val last = (entryCount - 1 downTo 0).first { getEntryTimestamp(it) <= range.end }
+            if (first > 0 && getEntryTimestamp(first) > range.start) {
+                first--
+            }
+            return first..last
+        }
     }
 }
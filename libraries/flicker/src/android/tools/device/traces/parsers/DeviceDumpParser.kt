@@ -55,28 +55,52 @@ class DeviceDumpParser {
         ): NullableDeviceStateDump {
             return Logger.withTracing("fromNullableDump") {
                 NullableDeviceStateDump(
-                    wmState =
-                        if (wmTraceData.isNotEmpty()) {
-                            WindowManagerDumpParser()
-                                .parse(wmTraceData, clearCache = clearCacheAfterParsing)
-                                .entries
-                                .first()
-                        } else {
-                            null
-                        },
-                    layerState =
-                        if (layersTraceData.isNotEmpty()) {
-                            LayersTraceParser()
-                                .parse(layersTraceData, clearCache = clearCacheAfterParsing)
-                                .entries
-                                .first()
-                        } else {
-                            null
-                        }
+                    wmState = parseWindowManagerDump(wmTraceData, clearCacheAfterParsing),
+                    layerState = parseLayersDump(layersTraceData, clearCacheAfterParsing)
                 )
             }
         }
 
+        /**
+         * @param wmTraceData [WindowManagerTrace] content obtained from a `dumpsys` command
+         * @param clearCacheAfterParsing If the caching used while parsing the proto should be
+         *   cleared or remain in memory
+         * @return the [WindowManagerState] parsed from [wmTraceData], or null if it's empty
+         */
+        @JvmStatic
+        fun parseWindowManagerDump(
+            wmTraceData: ByteArray,
+            clearCacheAfterParsing: Boolean
+        ): WindowManagerState? =
+            if (wmTraceData.isNotEmpty()) {
+                WindowManagerDumpParser()
+                    .parse(wmTraceData, clearCache = clearCacheAfterParsing)
+                    .entries
+                    .first()
+            } else {
+                null
+            }
+
+        /**
+         * @param layersTraceData [LayersTrace] content obtained from a `dumpsys` command
+         * @param clearCacheAfterParsing If the caching used while parsing the proto should be
+         *   cleared or remain in memory
+         * @return the [LayerTraceEntry] parsed from [layersTraceData], or null if it's empty
+         */
+        @JvmStatic
+        fun parseLayersDump(
+            layersTraceData: ByteArray,
+            clearCacheAfterParsing: Boolean
+        ): LayerTraceEntry? =
+            if (layersTraceData.isNotEmpty()) {
+                LayersTraceParser()
+                    .parse(layersTraceData, clearCache = clearCacheAfterParsing)
+                    .entries
+                    .first()
+            } else {
+                null
+            }
+
         /** See [fromNullableDump] */
         @JvmStatic
         fun fromDump(
@@ -85,15 +109,21 @@ class DeviceDumpParser {
             clearCacheAfterParsing: Boolean
         ): DeviceStateDump {
             return Logger.withTracing("fromDump") {
-                val nullableDump =
-                    fromNullableDump(wmTraceData, layersTraceData, clearCacheAfterParsing)
-                DeviceStateDump(
-                    nullableDump.wmState ?: error("WMState dump missing"),
-                    nullableDump.layerState ?: error("Layer State dump missing")
-                )
+                requireDump(fromNullableDump(wmTraceData, layersTraceData, clearCacheAfterParsing))
             }
         }
 
+        /**
+         * @return a [DeviceStateDump] with the states of [nullableDump]
+         * @throws IllegalStateException if one of the states is missing
+         */
+        @JvmStatic
+        fun requireDump(nullableDump: NullableDeviceStateDump): DeviceStateDump =
+            DeviceStateDump(
+                nullableDump.wmState ?: error("WMState dump missing"),
+                nullableDump.layerState ?: error("Layer State dump missing")
+            )
+
         /**
          * Creates a device state dump containing the WindowManager and Layers trace obtained from a
          * regular trace. The parsed traces may contain a multiple [WindowManagerState] or
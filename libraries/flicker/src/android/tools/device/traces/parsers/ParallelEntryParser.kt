@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.device.traces.parsers
+
+import android.tools.common.Cache
+import android.tools.device.traces.ConcurrentInterningCache
+import java.util.concurrent.ForkJoinPool
+import kotlin.math.min
+
+/**
+ * Parses independent trace entries concurrently on the common fork/join pool
+ *
+ * The entries are split into contiguous chunks, one per core, and the chunks are joined in order,
+ * so the parsed entries are returned in the same order as the input. Parsing failures are only
+ * reported once all chunks finished, and the failure of the earliest entry is the one thrown, as
+ * with a sequential parse.
+ *
+ * The entries share the cache of the current parse session when it is thread safe, or a new
+ * [ConcurrentInterningCache] otherwise.
+ */
+object ParallelEntryParser {
+    /** Minimum number of entries per chunk, below which the entries are parsed sequentially */
+    private const val MIN_CHUNK_SIZE = 4
+
+    fun <InputTypeEntry, OutputTypeEntry> parse(
+        entries: List<InputTypeEntry>,
+        parseEntry: (InputTypeEntry) -> OutputTypeEntry
+    ): List<OutputTypeEntry> {
+        val pool = ForkJoinPool.commonPool()
+        // The calling thread parses a chunk as well
+        val chunkCount = min(pool.parallelism + 1, entries.size / MIN_CHUNK_SIZE)
+        if (chunkCount <= 1) {
+            return entries.map(parseEntry)
+        }
+
+        val cache = Cache.current.takeIf { it.isThreadSafe } ?: ConcurrentInterningCache()
+        val chunkSize = (entries.size + chunkCount - 1) / chunkCount
+        val chunks =
+            (entries.indices step chunkSize).map { start ->
+                entries.subList(start, min(start + chunkSize, entries.size))
+            }
+        val results = MutableList<List<OutputTypeEntry>?>(chunks.size) { null }
+        val failures = MutableList<Throwable?>(chunks.size) { null }
+        val parseChunk = { index: Int ->
+            try {
+                results[index] = Cache.withScope(cache) { chunks[index].map(parseEntry) }
+            } catch (e: Throwable) {
+                failures[index] = e
+            }
+        }
+
+        // Switch to the cache before submitting the chunks, so the chunks find it already in use
+        Cache.withScope(cache) {
+            val tasks =
+                (1 until chunks.size).map { index -> pool.submit(Runnable { parseChunk(index) }) }
+            parseChunk(0)
+            tasks.forEach { it.join() }
+        }
+
+        failures.firstOrNull { it != null }?.let { throw it }
+        return results.flatMap { requireNotNull(it) }
+    }
+}
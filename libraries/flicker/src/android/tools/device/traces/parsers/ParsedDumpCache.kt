@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.device.traces.parsers
+
+/**
+ * Parses successive dumps of the same type, such as the dumps taken while waiting for a device
+ * state, and returns the last parsed state again while the content of the dump doesn't change
+ *
+ * Only the last dump is kept, so a state is reused when the device stays idle between dumps, but
+ * not when it goes back to an earlier state.
+ *
+ * @param parseDump Parses the content of a dump
+ */
+class ParsedDumpCache<State>(private val parseDump: (ByteArray) -> State) {
+    private var lastData: ByteArray? = null
+
+    /** Last parsed state, or null if no dump was parsed yet */
+    var lastState: State? = null
+        private set
+
+    /** Number of dumps parsed, excluding the dumps whose last parsed state was reused */
+    var parsedCount = 0
+        private set
+
+    /** @return the state parsed from [data], or the last parsed state if [data] didn't change */
+    fun parse(data: ByteArray): State {
+        val state = lastState
+        if (state != null && lastData.contentEquals(data)) {
+            return state
+        }
+        return parseDump(data).also {
+            parsedCount++
+            lastData = data
+            lastState = it
+        }
+    }
+}
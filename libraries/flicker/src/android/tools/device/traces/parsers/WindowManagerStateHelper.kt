@@ -24,9 +24,11 @@ import android.os.Trace
 import android.tools.common.Logger
 import android.tools.common.Rotation
 import android.tools.common.datatypes.Region
+import android.tools.common.io.TraceType
 import android.tools.common.traces.Condition
 import android.tools.common.traces.ConditionsFactory
 import android.tools.common.traces.DeviceStateDump
+import android.tools.common.traces.NullableDeviceStateDump
 import android.tools.common.traces.WaitCondition
 import android.tools.common.traces.component.ComponentNameMatcher
 import android.tools.common.traces.component.ComponentNameMatcher.Companion.IME
@@ -44,8 +46,9 @@ import android.tools.common.traces.wm.WindowManagerState
 import android.tools.common.traces.wm.WindowManagerTrace
 import android.tools.common.traces.wm.WindowState
 import android.tools.device.traces.LOG_TAG
-import android.tools.device.traces.getCurrentStateDump
+import android.tools.device.traces.getCurrentState
 import android.view.Display
+import androidx.annotation.VisibleForTesting
 import androidx.test.platform.app.InstrumentationRegistry
 
 /** Helper class to wait on [WindowManagerState] or [LayerTraceEntry] conditions */
@@ -55,24 +58,39 @@ constructor(
     /** Instrumentation to run the tests */
     private val instrumentation: Instrumentation = InstrumentationRegistry.getInstrumentation(),
     private val clearCacheAfterParsing: Boolean = true,
-    /** Predicate to supply a new UI information */
-    private val deviceDumpSupplier: () -> DeviceStateDump = {
-        getCurrentStateDump(clearCacheAfterParsing = clearCacheAfterParsing)
-    },
+    /**
+     * Predicate to supply a new UI information with fresh dumps of the requested [TraceType]s. The
+     * other dumps may be from a previous call. By default, only the dumps which changed since the
+     * previous call are parsed
+     */
+    private val deviceDumpSupplier: (Set<TraceType>) -> DeviceStateDump =
+        createDeviceDumpSupplier(clearCacheAfterParsing),
     /** Number of attempts to satisfy a wait condition */
     private val numRetries: Int = DEFAULT_RETRY_LIMIT,
-    /** Interval between wait for state dumps during wait conditions */
+    /**
+     * Interval between wait for state dumps during wait conditions. The first retries wait less,
+     * see [getRetryIntervalMs]
+     */
     private val retryIntervalMs: Long = DEFAULT_RETRY_INTERVAL_MS
 ) {
     private var internalState: DeviceStateDump? = null
 
+    /** Total time spent waiting for conditions, in milliseconds */
+    var totalWaitTimeMs = 0L
+        private set
+
+    /** Number of device state dumps taken while waiting for conditions */
+    var dumpCount = 0
+        private set
+
     /** Queries the supplier for a new device state */
     val currentState: DeviceStateDump
         get() {
             if (internalState == null) {
-                internalState = deviceDumpSupplier.invoke()
+                internalState = deviceDumpSupplier.invoke(ALL_DUMP_TYPES)
             } else {
-                StateSyncBuilder().withValidState().waitFor()
+                // The returned state is used as a whole, so it needs fresh dumps of both types
+                StateSyncBuilder().withDumps(ALL_DUMP_TYPES).withValidState().waitFor()
             }
             return internalState ?: error("Unable to fetch an internal state")
         }
@@ -106,9 +124,19 @@ constructor(
     inner class StateSyncBuilder {
         private val conditionBuilder = createConditionBuilder()
         private var lastMessage = ""
+        private var retryNr = 0
+        private var waitDumpCount = 0
+        /** Union of the dumps needed by the conditions, the other dumps are not taken */
+        private val dumpTypes = mutableSetOf<TraceType>()
 
         private fun createConditionBuilder(): WaitCondition.Builder<DeviceStateDump> =
-            WaitCondition.Builder(deviceDumpSupplier, numRetries)
+            WaitCondition.Builder(
+                    {
+                        waitDumpCount++
+                        deviceDumpSupplier.invoke(dumpTypes)
+                    },
+                    numRetries
+                )
                 .onStart { Trace.beginSection(it) }
                 .onEnd { Trace.endSection() }
                 .onSuccess { updateCurrState(it) }
@@ -121,17 +149,26 @@ constructor(
                         Logger.d(LOG_TAG, msg)
                     }
                 }
-                .onRetry { SystemClock.sleep(retryIntervalMs) }
+                .onRetry { SystemClock.sleep(getRetryIntervalMs(retryNr++, retryIntervalMs)) }
 
         /**
-         * Adds a new [condition] to the list
+         * Adds a new [condition] to the list. It needs both the [WindowManagerState] and the
+         * [LayerTraceEntry], use [withWmCondition] or [withLayersCondition] when it only needs one
+         * of them
          *
          * @param condition to wait for
          */
-        fun add(condition: Condition<DeviceStateDump>): StateSyncBuilder = apply {
+        fun add(condition: Condition<DeviceStateDump>): StateSyncBuilder =
+            withDumps(ALL_DUMP_TYPES).addCondition(condition)
+
+        private fun addCondition(condition: Condition<DeviceStateDump>) = apply {
             conditionBuilder.withCondition(condition)
         }
 
+        internal fun withDumps(dumpTypes: Set<TraceType>) = apply {
+            this.dumpTypes.addAll(dumpTypes)
+        }
+
         /**
          * Adds a new [condition] to the list
          *
@@ -142,16 +179,57 @@ constructor(
         fun add(message: String = "", condition: (DeviceStateDump) -> Boolean): StateSyncBuilder =
             add(Condition(message, condition))
 
+        /**
+         * Adds a new [condition] on the [WindowManagerState] to the list. While waiting only for
+         * such conditions, the [LayerTraceEntry] is not dumped
+         *
+         * @param message describing the condition
+         * @param condition to wait for
+         */
+        @JvmOverloads
+        fun withWmCondition(
+            message: String = "",
+            condition: (WindowManagerState) -> Boolean
+        ): StateSyncBuilder =
+            withDumps(WM_DUMP_TYPES).addCondition(Condition(message) { condition(it.wmState) })
+
+        /**
+         * Adds a new [condition] on the [LayerTraceEntry] to the list. While waiting only for such
+         * conditions, the [WindowManagerState] is not dumped
+         *
+         * @param message describing the condition
+         * @param condition to wait for
+         */
+        @JvmOverloads
+        fun withLayersCondition(
+            message: String = "",
+            condition: (LayerTraceEntry) -> Boolean
+        ): StateSyncBuilder =
+            withDumps(LAYERS_DUMP_TYPES).addCondition(
+                Condition(message) { condition(it.layerState) }
+            )
+
         /**
          * Waits until the list of conditions added to [conditionBuilder] are satisfied
          *
          * @return if the device state passed all conditions or not
          */
         fun waitFor(): Boolean {
+            retryNr = 0
+            waitDumpCount = 0
+            val startTimeMs = SystemClock.uptimeMillis()
             val passed = conditionBuilder.build().waitFor()
             // Ensure WindowManagerService wait until all animations have completed
             instrumentation.waitForIdleSync()
             instrumentation.uiAutomation.syncInputTransactions()
+            val waitTimeMs = SystemClock.uptimeMillis() - startTimeMs
+            totalWaitTimeMs += waitTimeMs
+            dumpCount += waitDumpCount
+            Logger.d(
+                LOG_TAG,
+                "Waited ${waitTimeMs}ms with $waitDumpCount state dumps " +
+                    "(total ${totalWaitTimeMs}ms with $dumpCount state dumps)"
+            )
             return passed
         }
 
@@ -232,13 +310,11 @@ constructor(
          * @param activityState expected activity state
          */
         fun withActivityState(componentMatcher: IComponentMatcher, activityState: String) =
-            add(
-                Condition(
-                    "state of ${componentMatcher.toActivityIdentifier()} to be $activityState"
-                ) {
-                    it.wmState.hasActivityState(componentMatcher, activityState)
-                }
-            )
+            withWmCondition(
+                "state of ${componentMatcher.toActivityIdentifier()} to be $activityState"
+            ) {
+                it.hasActivityState(componentMatcher, activityState)
+            }
 
         /**
          * Waits until the [ComponentNameMatcher.NAV_BAR] or [ComponentNameMatcher.TASK_BAR] are
@@ -318,16 +394,14 @@ constructor(
          * @param expectedRegion of the target surface
          */
         fun withSurfaceVisibleRegion(componentMatcher: IComponentMatcher, expectedRegion: Region) =
-            add(
-                Condition("surfaceRegion") {
-                    val layer =
-                        it.layerState.visibleLayers.firstOrNull { layer ->
-                            componentMatcher.layerMatchesAnyOf(layer)
-                        }
+            withLayersCondition("surfaceRegion") {
+                val layer =
+                    it.visibleLayers.firstOrNull { layer ->
+                        componentMatcher.layerMatchesAnyOf(layer)
+                    }
 
-                    layer?.visibleRegion == expectedRegion
-                }
-            )
+                layer?.visibleRegion == expectedRegion
+            }
 
         /**
          * Waits until the IME window and layer are visible
@@ -386,10 +460,10 @@ constructor(
 
         /** Waits until the is no top visible app window in the [WindowManagerState] */
         fun withoutTopVisibleAppWindows() =
-            add("noAppWindowsOnTop") { it.wmState.topVisibleAppWindow == null }
+            withWmCondition("noAppWindowsOnTop") { it.topVisibleAppWindow == null }
 
         /** Waits until the keyguard is showing */
-        fun withKeyguardShowing() = add("withKeyguardShowing") { it.wmState.isKeyguardShowing }
+        fun withKeyguardShowing() = withWmCondition("withKeyguardShowing") { it.isKeyguardShowing }
 
         /**
          * Wait for the activities to appear in proper stacks and for valid state in AM and WM.
@@ -401,13 +475,11 @@ constructor(
 
         private fun waitForValidStateCondition(vararg waitForCondition: WaitForValidActivityState) =
             apply {
-                add(ConditionsFactory.isWMStateComplete())
+                withDumps(WM_DUMP_TYPES).addCondition(ConditionsFactory.isWMStateComplete())
                 if (waitForCondition.isNotEmpty()) {
-                    add(
-                        Condition("!shouldWaitForActivities") {
-                            !shouldWaitForActivities(it, *waitForCondition)
-                        }
-                    )
+                    withWmCondition("!shouldWaitForActivities") {
+                        !shouldWaitForActivities(it, *waitForCondition)
+                    }
                 }
             }
 
@@ -421,11 +493,71 @@ constructor(
     }
 
     companion object {
-        // TODO(b/112837428): Implement a incremental retry policy to reduce the unnecessary
-        // constant time, currently keep the default as 5*1s because most of the original code
-        // uses it, and some tests might be sensitive to the waiting interval.
         private const val DEFAULT_RETRY_LIMIT = 50
         private const val DEFAULT_RETRY_INTERVAL_MS = 100L
+        /** Fraction of the retry interval waited before the first retry */
+        private const val FIRST_RETRY_INTERVAL_DIVISOR = 8
+        private const val MAX_RETRY_INTERVAL_SHIFT = 30
+        private val WM_DUMP_TYPES = setOf(TraceType.WM_DUMP)
+        private val LAYERS_DUMP_TYPES = setOf(TraceType.SF_DUMP)
+        private val ALL_DUMP_TYPES = WM_DUMP_TYPES + LAYERS_DUMP_TYPES
+
+        /**
+         * Most conditions are satisfied shortly after the action they wait for, so the interval
+         * before the first retry is [FIRST_RETRY_INTERVAL_DIVISOR] times shorter than
+         * [retryIntervalMs] and doubles on each retry, up to [retryIntervalMs]. With the default
+         * values, the total waiting time is only 2 intervals shorter than with constant intervals.
+         *
+         * @param retryNr index of the retry, starting at 0
+         * @param retryIntervalMs longest interval between retries
+         * @return the time to wait before retry number [retryNr], in milliseconds
+         */
+        @VisibleForTesting
+        fun getRetryIntervalMs(retryNr: Int, retryIntervalMs: Long): Long {
+            val firstIntervalMs = maxOf(retryIntervalMs / FIRST_RETRY_INTERVAL_DIVISOR, 1L)
+            val intervalMs = firstIntervalMs shl minOf(retryNr, MAX_RETRY_INTERVAL_SHIFT)
+            return minOf(intervalMs, retryIntervalMs)
+        }
+
+        /**
+         * Creates a supplier of device state dumps which keeps the last parsed
+         * [WindowManagerState] and [LayerTraceEntry], and parses each dump only if its content
+         * changed since the previous call, as the device state often doesn't change between the
+         * retries of a wait condition. The dumps which are not requested are only taken if there is
+         * no previous state to reuse.
+         */
+        private fun createDeviceDumpSupplier(
+            clearCacheAfterParsing: Boolean
+        ): (Set<TraceType>) -> DeviceStateDump {
+            val wmStates = ParsedDumpCache {
+                DeviceDumpParser.parseWindowManagerDump(it, clearCacheAfterParsing)
+            }
+            val layerStates = ParsedDumpCache {
+                DeviceDumpParser.parseLayersDump(it, clearCacheAfterParsing)
+            }
+            return { dumpTypes ->
+                val dumpWm = TraceType.WM_DUMP in dumpTypes || wmStates.lastState == null
+                val dumpLayers = TraceType.SF_DUMP in dumpTypes || layerStates.lastState == null
+                val capturedTypes =
+                    listOfNotNull(
+                        TraceType.WM_DUMP.takeIf { dumpWm },
+                        TraceType.SF_DUMP.takeIf { dumpLayers }
+                    )
+                val (wmTraceData, layersTraceData) = getCurrentState(*capturedTypes.toTypedArray())
+                Logger.withTracing("parseDeviceStateDump") {
+                    DeviceDumpParser.requireDump(
+                        NullableDeviceStateDump(
+                            if (dumpWm) wmStates.parse(wmTraceData) else wmStates.lastState,
+                            if (dumpLayers) {
+                                layerStates.parse(layersTraceData)
+                            } else {
+                                layerStates.lastState
+                            }
+                        )
+                    )
+                }
+            }
+        }
 
         /** @return true if it should wait for some activities to become visible. */
         private fun shouldWaitForActivities(
@@ -20,6 +20,8 @@ import android.surfaceflinger.Common
 import android.surfaceflinger.Display
 import android.surfaceflinger.Layers
 import android.surfaceflinger.Layerstrace
+import android.tools.common.LazyTraceEntries
+import android.tools.common.Logger
 import android.tools.common.Timestamp
 import android.tools.common.Timestamps
 import android.tools.common.datatypes.ActiveBuffer
@@ -38,6 +40,8 @@ import android.tools.common.traces.surfaceflinger.LayersTrace
 import android.tools.common.traces.surfaceflinger.Transform
 import android.tools.common.traces.surfaceflinger.Transform.Companion.isFlagClear
 import android.tools.common.traces.surfaceflinger.Transform.Companion.isFlagSet
+import android.tools.device.traces.parsers.ParallelEntryParser
+import java.util.concurrent.ConcurrentHashMap
 
 /** Parser for [LayersTrace] objects containing traces or state dumps */
 class LayersTraceParser(
@@ -52,6 +56,7 @@ class LayersTraceParser(
     private var realToElapsedTimeOffsetNanos = 0L
 
     override val traceName: String = "Layers Trace"
+    override val areEntriesSorted: Boolean = true
 
     override fun doDecodeByteArray(bytes: ByteArray): Layerstrace.LayersTraceFileProto =
         Layerstrace.LayersTraceFileProto.parseFrom(bytes)
@@ -59,6 +64,9 @@ class LayersTraceParser(
     override fun createTrace(entries: List<LayerTraceEntry>): LayersTrace =
         LayersTrace(entries.toTypedArray())
 
+    override fun createLazyTrace(entries: LazyTraceEntries<LayerTraceEntry>): LayersTrace =
+        LayersTrace(entries)
+
     override fun getEntries(
         input: Layerstrace.LayersTraceFileProto
     ): List<Layerstrace.LayersTraceProto> = input.entryList
@@ -71,22 +79,52 @@ class LayersTraceParser(
         )
     }
 
+    override fun getParsedEntryTimestamp(entry: Layerstrace.LayersTraceProto): Timestamp =
+        Timestamps.from(
+            systemUptimeNanos = entry.elapsedRealtimeNanos,
+            unixNanos =
+                (entry.elapsedRealtimeNanos + realToElapsedTimeOffsetNanos).takeIf {
+                    realToElapsedTimeOffsetNanos != 0L
+                }
+        )
+
     override fun onBeforeParse(input: Layerstrace.LayersTraceFileProto) {
         realToElapsedTimeOffsetNanos = input.realToElapsedTimeOffsetNanos
     }
 
-    override fun doParseEntry(entry: Layerstrace.LayersTraceProto): LayerTraceEntry {
-        val layers = entry.layers.layersList.map { newLayer(it) }.toTypedArray()
+    override fun doParseEntries(
+        entries: List<Layerstrace.LayersTraceProto>
+    ): List<LayerTraceEntry> {
+        // Consecutive entries usually repeat most of their layers unchanged, so each layer is
+        // only parsed the first time its contents appear in the parsed entries. The parsed layer
+        // is used as a template for the layers of each entry, and is never added to the hierarchy
+        // of an entry itself. The templates are only held while the entries are parsed.
+        val templates = ConcurrentHashMap<Layers.LayerProto, Layer>()
+        return ParallelEntryParser.parse(entries) { entry ->
+            Logger.withTracing("doParseEntry") {
+                newEntry(entry) { proto -> templates.computeIfAbsent(proto) { newLayer(it) } }
+            }
+        }
+    }
+
+    override fun doParseEntry(entry: Layerstrace.LayersTraceProto): LayerTraceEntry =
+        newEntry(entry) { newLayer(it) }
+
+    private fun newEntry(
+        entry: Layerstrace.LayersTraceProto,
+        getTemplate: (Layers.LayerProto) -> Layer
+    ): LayerTraceEntry {
+        val layers = entry.layers.layersList.map { Layer.copyOf(getTemplate(it)) }.toTypedArray()
         val displays = entry.displaysList.map { newDisplay(it) }.toTypedArray()
         val builder =
             LayerTraceEntryBuilder()
-                .setElapsedTimestamp(entry.elapsedRealtimeNanos.toString())
+                .setElapsedTimestamp(entry.elapsedRealtimeNanos)
                 .setLayers(layers)
                 .setDisplays(displays)
-                .setVSyncId(entry.vsyncId.toString())
+                .setVSyncId(entry.vsyncId)
                 .setHwcBlob(entry.hwcBlob)
                 .setWhere(entry.where)
-                .setRealToElapsedTimeOffsetNs(realToElapsedTimeOffsetNanos.toString())
+                .setRealToElapsedTimeOffsetNs(realToElapsedTimeOffsetNanos)
                 .setOrphanLayerCallback(orphanLayerCallback)
                 .ignoreLayersStackMatchNoDisplay(ignoreLayersStackMatchNoDisplay)
                 .ignoreVirtualDisplay(ignoreLayersInVirtualDisplay)
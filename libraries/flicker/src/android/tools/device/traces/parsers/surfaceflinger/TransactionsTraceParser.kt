@@ -26,6 +26,7 @@ import android.tools.common.traces.surfaceflinger.Transaction
 import android.tools.common.traces.surfaceflinger.TransactionsTrace
 import android.tools.common.traces.surfaceflinger.TransactionsTraceEntry
 import android.tools.common.traces.wm.TransitionsTrace
+import android.tools.device.traces.parsers.ParallelEntryParser
 
 /** Parser for [TransitionsTrace] objects */
 class TransactionsTraceParser :
@@ -37,6 +38,7 @@ class TransactionsTraceParser :
     >() {
     private var timestampOffset = 0L
     override val traceName: String = "Transactions trace"
+    override val areEntriesSorted: Boolean = true
 
     override fun onBeforeParse(input: TransactionTraceFile) {
         timestampOffset = input.realToElapsedTimeOffsetNanos
@@ -59,6 +61,10 @@ class TransactionsTraceParser :
     override fun doDecodeByteArray(bytes: ByteArray): TransactionTraceFile =
         TransactionTraceFile.parseFrom(bytes)
 
+    override fun doParseEntries(
+        entries: List<Transactions.TransactionTraceEntry>
+    ): List<TransactionsTraceEntry> = ParallelEntryParser.parse(entries) { parseEntry(it) }
+
     override fun doParseEntry(entry: Transactions.TransactionTraceEntry): TransactionsTraceEntry {
         val transactions = parseTransactionsProto(entry.transactionsList)
         val transactionsTraceEntry =
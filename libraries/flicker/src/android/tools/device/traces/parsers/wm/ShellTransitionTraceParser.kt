@@ -22,6 +22,7 @@ import android.tools.common.parsers.AbstractTraceParser
 import android.tools.common.traces.wm.ShellTransitionData
 import android.tools.common.traces.wm.Transition
 import android.tools.common.traces.wm.TransitionsTrace
+import android.tools.device.traces.parsers.ParallelEntryParser
 import com.android.wm.shell.nano.WmShellTransitionTraceProto
 
 /** Parser for [TransitionsTrace] objects */
@@ -87,6 +88,10 @@ class ShellTransitionTraceParser :
         return uncompressedTransitionsTrace.asCompressed()
     }
 
+    override fun doParseEntries(
+        entries: List<com.android.wm.shell.nano.Transition>
+    ): List<Transition> = ParallelEntryParser.parse(entries) { parseEntry(it) }
+
     override fun doParseEntry(entry: com.android.wm.shell.nano.Transition): Transition {
         require(entry.id != 0) { "Entry needs a non null id" }
         requireValidTimestamp(entry)
@@ -16,11 +16,13 @@
 
 package android.tools.device.traces.parsers.wm
 
+import android.tools.common.LazyTraceEntries
 import android.tools.common.Timestamp
 import android.tools.common.Timestamps
 import android.tools.common.parsers.AbstractTraceParser
 import android.tools.common.traces.wm.WindowManagerState
 import android.tools.common.traces.wm.WindowManagerTrace
+import android.tools.device.traces.parsers.ParallelEntryParser
 import com.android.server.wm.nano.WindowManagerTraceFileProto
 import com.android.server.wm.nano.WindowManagerTraceProto
 
@@ -32,6 +34,7 @@ open class WindowManagerTraceParser(private val legacyTrace: Boolean = false) :
     private var realToElapsedTimeOffsetNanos = 0L
 
     override val traceName: String = "WM Trace"
+    override val areEntriesSorted: Boolean = true
 
     override fun doDecodeByteArray(bytes: ByteArray): WindowManagerTraceFileProto =
         WindowManagerTraceFileProto.parseFrom(bytes)
@@ -39,6 +42,10 @@ open class WindowManagerTraceParser(private val legacyTrace: Boolean = false) :
     override fun createTrace(entries: List<WindowManagerState>): WindowManagerTrace =
         WindowManagerTrace(entries.toTypedArray())
 
+    override fun createLazyTrace(
+        entries: LazyTraceEntries<WindowManagerState>
+    ): WindowManagerTrace = WindowManagerTrace(entries)
+
     override fun getEntries(input: WindowManagerTraceFileProto): List<WindowManagerTraceProto> =
         input.entry.toList()
 
@@ -50,10 +57,22 @@ open class WindowManagerTraceParser(private val legacyTrace: Boolean = false) :
         )
     }
 
+    override fun getParsedEntryTimestamp(entry: WindowManagerTraceProto): Timestamp =
+        Timestamps.from(
+            elapsedNanos = entry.elapsedRealtimeNanos,
+            unixNanos =
+                (entry.elapsedRealtimeNanos + realToElapsedTimeOffsetNanos).takeIf {
+                    realToElapsedTimeOffsetNanos != 0L
+                }
+        )
+
     override fun onBeforeParse(input: WindowManagerTraceFileProto) {
         realToElapsedTimeOffsetNanos = input.realToElapsedTimeOffsetNanos
     }
 
+    override fun doParseEntries(entries: List<WindowManagerTraceProto>): List<WindowManagerState> =
+        ParallelEntryParser.parse(entries) { parseEntry(it) }
+
     override fun doParseEntry(entry: WindowManagerTraceProto): WindowManagerState {
         return WindowManagerStateBuilder()
             .atPlace(entry.where)
@@ -24,6 +24,7 @@ import android.tools.common.traces.wm.TransitionChange
 import android.tools.common.traces.wm.TransitionType
 import android.tools.common.traces.wm.TransitionsTrace
 import android.tools.common.traces.wm.WmTransitionData
+import android.tools.device.traces.parsers.ParallelEntryParser
 import com.android.server.wm.shell.nano.TransitionTraceProto
 
 /** Parser for [TransitionsTrace] objects */
@@ -85,6 +86,10 @@ class WmTransitionTraceParser :
         return uncompressedTransitionsTrace.asCompressed()
     }
 
+    override fun doParseEntries(
+        entries: List<com.android.server.wm.shell.nano.Transition>
+    ): List<Transition> = ParallelEntryParser.parse(entries) { parseEntry(it) }
+
     override fun doParseEntry(entry: com.android.server.wm.shell.nano.Transition): Transition {
         require(entry.id != 0) { "Entry needs a non null id" }
         requireValidTimestamp(entry)
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.common.datatypes
+
+import android.tools.common.CrossPlatform
+import android.tools.common.TimestampFactory
+import android.tools.device.AndroidLogger
+import android.tools.device.traces.ConcurrentCacheFactory
+import android.tools.device.traces.formatRealTimestamp
+import android.tools.device.traces.parsers.surfaceflinger.LayersTraceParser
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+
+/**
+ * Benchmarks of [Region] on the visible regions recorded in a layers trace. Each benchmark reports
+ * its time and allocations per run, so they can be compared between two versions of [Region].
+ *
+ * To run: atest FlickerLibBenchmark:android.tools.common.datatypes.RegionBenchmark
+ */
+class RegionBenchmark {
+    @get:Rule val benchmarkRule = BenchmarkRule()
+
+    /** Visible regions of the visible layers of each entry of the trace */
+    private lateinit var visibleRegions: List<List<Region>>
+    /** Screen bounds of the same layers as [visibleRegions], in the same order */
+    private lateinit var screenBounds: List<List<Region>>
+
+    @Before
+    fun setup() {
+        CrossPlatform.setLogger(AndroidLogger())
+            .setTimestampFactory(TimestampFactory { formatRealTimestamp(it) })
+            .setCacheFactory(ConcurrentCacheFactory())
+
+        val context = InstrumentationRegistry.getInstrumentation().context
+        val traceData = context.assets.open("testdata/$TRACE").use { it.readBytes() }
+        val trace = LayersTraceParser().parse(traceData, clearCache = true)
+        // Keep the layers with a visible region, so both lists are aligned layer by layer
+        val visibleLayers =
+            trace.entries.map { entry -> entry.visibleLayers.filter { it.visibleRegion != null } }
+        visibleRegions = visibleLayers.map { layers -> layers.map { it.visibleRegion!! } }
+        screenBounds = visibleLayers.map { layers -> layers.map { Region.from(it.screenBounds) } }
+    }
+
+    /** Merge the visible regions of each entry, as the visible region subjects do */
+    @Test
+    fun unionVisibleRegions() {
+        benchmarkRule.measureRepeated {
+            visibleRegions.forEach { regions ->
+                val merged = Region()
+                regions.forEach { merged.op(it, Region.Op.UNION) }
+            }
+        }
+    }
+
+    /** Check the visible regions against the screen bounds of their layers */
+    @Test
+    fun coverScreenBounds() {
+        benchmarkRule.measureRepeated {
+            visibleRegions.zip(screenBounds).forEach { (regions, bounds) ->
+                regions.zip(bounds).forEach { (region, layerBounds) ->
+                    region.coversAtLeast(layerBounds)
+                    region.coversAtMost(layerBounds)
+                }
+            }
+        }
+    }
+
+    /** Check whether the center of the screen bounds of the layers is visible */
+    @Test
+    fun containsPoint() {
+        benchmarkRule.measureRepeated {
+            visibleRegions.zip(screenBounds).forEach { (regions, bounds) ->
+                regions.zip(bounds).forEach { (region, layerBounds) ->
+                    val center = layerBounds.bounds
+                    region.contains(
+                        (center.left + center.right) / 2,
+                        (center.top + center.bottom) / 2
+                    )
+                }
+            }
+        }
+    }
+
+    /** Iterate over the rectangles of the visible regions */
+    @Test
+    fun iterateRects() {
+        benchmarkRule.measureRepeated {
+            visibleRegions.forEach { regions -> regions.forEach { it.rects } }
+        }
+    }
+
+    companion object {
+        private const val TRACE = "scenarios/AppLaunch/layers_trace.winscope"
+    }
+}
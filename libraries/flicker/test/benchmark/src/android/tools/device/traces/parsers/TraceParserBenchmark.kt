@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package android.tools.device.traces.parsers
+
+import android.surfaceflinger.Layerstrace
+import android.tools.common.CrossPlatform
+import android.tools.common.Logger
+import android.tools.common.TimestampFactory
+import android.tools.common.traces.surfaceflinger.LayerTraceEntryBuilder
+import android.tools.common.traces.wm.WindowManagerTraceEntryBuilder
+import android.tools.device.AndroidLogger
+import android.tools.device.traces.ConcurrentCacheFactory
+import android.tools.device.traces.formatRealTimestamp
+import android.tools.device.traces.parsers.surfaceflinger.LayersTraceParser
+import android.tools.device.traces.parsers.wm.WindowManagerTraceParser
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.platform.app.InstrumentationRegistry
+import com.android.server.wm.nano.WindowManagerTraceFileProto
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+
+/**
+ * Benchmarks of the WM and SF trace parsers on the traces recorded for the AppLaunch scenario. The
+ * traces are decoded once, so the benchmarks only measure building the trace entries. Each
+ * benchmark reports its time and allocations per run, and the allocations per parsed entry are
+ * obtained by dividing them by the number of entries of the trace, which is logged by [setup].
+ *
+ * The build benchmarks only run the entry builders with the numeric values of a trace entry, which
+ * don't allocate any string. Their String variants pass the same values as strings, as the
+ * Winscope front-end does, to compare both setters.
+ *
+ * To run: atest FlickerLibBenchmark:android.tools.device.traces.parsers.TraceParserBenchmark
+ */
+class TraceParserBenchmark {
+    @get:Rule val benchmarkRule = BenchmarkRule()
+
+    private lateinit var layersTrace: Layerstrace.LayersTraceFileProto
+    private lateinit var wmTrace: WindowManagerTraceFileProto
+
+    @Before
+    fun setup() {
+        CrossPlatform.setLogger(AndroidLogger())
+            .setTimestampFactory(TimestampFactory { formatRealTimestamp(it) })
+            .setCacheFactory(ConcurrentCacheFactory())
+
+        val context = InstrumentationRegistry.getInstrumentation().context
+        val layersTraceData = context.assets.open("testdata/$LAYERS_TRACE").use { it.readBytes() }
+        val wmTraceData = context.assets.open("testdata/$WM_TRACE").use { it.readBytes() }
+        layersTrace = Layerstrace.LayersTraceFileProto.parseFrom(layersTraceData)
+        wmTrace = WindowManagerTraceFileProto.parseFrom(wmTraceData)
+        Logger.i(
+            TAG,
+            "Benchmarking ${layersTrace.entryCount} layers entries and ${wmTrace.entry.size} WM " +
+                "entries"
+        )
+    }
+
+    /** Parse all the entries of the layers trace */
+    @Test
+    fun parseLayersTrace() {
+        benchmarkRule.measureRepeated {
+            LayersTraceParser().parse(layersTrace, clearCache = true).entries
+        }
+    }
+
+    /** Parse all the entries of the WM trace */
+    @Test
+    fun parseWindowManagerTrace() {
+        benchmarkRule.measureRepeated {
+            WindowManagerTraceParser().parse(wmTrace, clearCache = true).entries
+        }
+    }
+
+    /** Build a layers trace entry from the timestamps and vsync id of the first recorded entry */
+    @Test
+    fun buildLayerTraceEntry() {
+        val entry = layersTrace.getEntry(0)
+        benchmarkRule.measureRepeated {
+            LayerTraceEntryBuilder()
+                .setElapsedTimestamp(entry.elapsedRealtimeNanos)
+                .setLayers(emptyArray())
+                .setDisplays(emptyArray())
+                .setVSyncId(entry.vsyncId)
+                .setRealToElapsedTimeOffsetNs(layersTrace.realToElapsedTimeOffsetNanos)
+                .build()
+        }
+    }
+
+    /** Build a layers trace entry from the same values as [buildLayerTraceEntry], as strings */
+    @Test
+    fun buildLayerTraceEntryFromStrings() {
+        val entry = layersTrace.getEntry(0)
+        val elapsedTimestamp = entry.elapsedRealtimeNanos.toString()
+        val vSyncId = entry.vsyncId.toString()
+        val realToElapsedTimeOffsetNs = layersTrace.realToElapsedTimeOffsetNanos.toString()
+        benchmarkRule.measureRepeated {
+            LayerTraceEntryBuilder()
+                .setElapsedTimestamp(elapsedTimestamp)
+                .setLayers(emptyArray())
+                .setDisplays(emptyArray())
+                .setVSyncId(vSyncId)
+                .setRealToElapsedTimeOffsetNs(realToElapsedTimeOffsetNs)
+                .build()
+        }
+    }
+
+    /** Build a WM trace entry from the timestamp of the first recorded entry */
+    @Test
+    fun buildWindowManagerTraceEntry() {
+        val entry = wmTrace.entry.first()
+        val state = WindowManagerTraceParser().parse(wmTrace, clearCache = true).entries.first()
+        benchmarkRule.measureRepeated {
+            WindowManagerTraceEntryBuilder()
+                .setElapsedTimestamp(entry.elapsedRealtimeNanos)
+                .setRoot(state.root)
+                .setKeyguardControllerState(state.keyguardControllerState)
+                .setRealToElapsedTimeOffsetNs(wmTrace.realToElapsedTimeOffsetNanos)
+                .build()
+        }
+    }
+
+    /** Build a WM trace entry from the same values as [buildWindowManagerTraceEntry], as strings */
+    @Test
+    fun buildWindowManagerTraceEntryFromStrings() {
+        val entry = wmTrace.entry.first()
+        val state = WindowManagerTraceParser().parse(wmTrace, clearCache = true).entries.first()
+        val elapsedTimestamp = entry.elapsedRealtimeNanos.toString()
+        val realToElapsedTimeOffsetNs = wmTrace.realToElapsedTimeOffsetNanos.toString()
+        benchmarkRule.measureRepeated {
+            WindowManagerTraceEntryBuilder()
+                .setElapsedTimestamp(elapsedTimestamp)
+                .setRoot(state.root)
+                .setKeyguardControllerState(state.keyguardControllerState)
+                .setRealToElapsedTimeOffsetNs(realToElapsedTimeOffsetNs)
+                .build()
+        }
+    }
+
+    companion object {
+        private const val LAYERS_TRACE = "scenarios/AppLaunch/layers_trace.winscope"
+        private const val WM_TRACE = "scenarios/AppLaunch/wm_trace.winscope"
+        private const val TAG = "TraceParserBenchmark"
+    }
+}
@@ -23,6 +23,7 @@ import org.junit.Test
 class CacheTest {
     @Before
     fun setup() {
+        CrossPlatform.setCacheFactory(CacheFactory())
         Cache.clear()
     }
 
@@ -68,6 +69,35 @@ class CacheTest {
         Assert.assertFalse(copy.cache.containsKey(Dummy(2)))
     }
 
+    @Test
+    fun testScope() {
+        val element1 = Cache.get(Dummy(0))
+        val element2 = Cache.withScope { Cache.get(Dummy(0)) }
+        val element3 = Cache.get(Dummy(0))
+        Assert.assertNotSame(element1, element2)
+        Assert.assertSame(element1, element3)
+        Assert.assertEquals(1, Cache.size)
+    }
+
+    @Test
+    fun testStats() {
+        Cache.get(Dummy(0))
+        Cache.get(Dummy(0))
+        Cache.get(Dummy(1))
+        Assert.assertEquals(CacheStats(hits = 1, misses = 2, evictions = 0, size = 2), Cache.stats)
+    }
+
+    @Test
+    fun testMaxSize() {
+        val cache = InterningCache(maxSize = 2)
+        val element1 = cache.get(Dummy(0))
+        cache.get(Dummy(1))
+        cache.get(Dummy(2))
+        Assert.assertNotSame(element1, cache.get(Dummy(0)))
+        Assert.assertEquals(2, cache.stats.size)
+        Assert.assertEquals(2, cache.stats.evictions)
+    }
+
     data class Dummy(val value: Int)
 
     companion object {
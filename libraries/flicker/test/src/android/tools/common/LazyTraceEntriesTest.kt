@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.common
+
+import android.tools.rules.CleanFlickerEnvironmentRule
+import com.google.common.truth.Truth
+import org.junit.ClassRule
+import org.junit.Test
+
+/** Tests for [LazyTraceEntries] */
+class LazyTraceEntriesTest {
+    private val builtIndexes = mutableListOf<Int>()
+
+    private fun newEntries(size: Int, cacheSize: Int = 2) =
+        LazyTraceEntries(
+            Array(size) { Timestamps.from(elapsedNanos = it + 1L) },
+            { range -> range.map { "Entry $it" }.also { builtIndexes.addAll(range) } },
+            cacheSize
+        )
+
+    @Test
+    fun buildsOnlyAccessedEntries() {
+        val entries = newEntries(100)
+        Truth.assertThat(entries.size).isEqualTo(100)
+        Truth.assertThat(entries.getTimestamp(50).elapsedNanos).isEqualTo(51L)
+        Truth.assertThat(entries[0]).isEqualTo("Entry 0")
+        Truth.assertThat(entries[99]).isEqualTo("Entry 99")
+        Truth.assertThat(builtIndexes).containsExactly(0, 99).inOrder()
+    }
+
+    @Test
+    fun reusesCachedEntries() {
+        val entries = newEntries(100)
+        entries[0]
+        entries[1]
+        entries[0]
+        entries[1]
+        Truth.assertThat(builtIndexes).containsExactly(0, 1).inOrder()
+        // Index 2 uses the same slot as index 0
+        entries[2]
+        entries[0]
+        Truth.assertThat(builtIndexes).containsExactly(0, 1, 2, 0).inOrder()
+    }
+
+    @Test
+    fun buildsAllEntriesAtOnce() {
+        val entries = newEntries(3)
+        Truth.assertThat(entries.buildAll()).containsExactly("Entry 0", "Entry 1", "Entry 2")
+        Truth.assertThat(newEntries(0).buildAll()).isEmpty()
+    }
+
+    @Test
+    fun buildAllReusesCachedEntries() {
+        val entries = newEntries(3)
+        val first = entries[0]
+        val all = entries.buildAll()
+        Truth.assertThat(all[0]).isSameInstanceAs(first)
+        Truth.assertThat(builtIndexes).containsExactly(0, 0, 1, 2).inOrder()
+    }
+
+    @Test
+    fun slicesWithoutBuildingEntries() {
+        val entries = newEntries(10).slice(4, 7)
+        Truth.assertThat(builtIndexes).isEmpty()
+        Truth.assertThat(entries.size).isEqualTo(3)
+        Truth.assertThat(entries.getTimestamp(0).elapsedNanos).isEqualTo(5L)
+        Truth.assertThat(entries[2]).isEqualTo("Entry 6")
+        Truth.assertThat(entries.buildAll()).containsExactly("Entry 4", "Entry 5", "Entry 6")
+    }
+
+    companion object {
+        @ClassRule @JvmField val ENV_CLEANUP = CleanFlickerEnvironmentRule()
+    }
+}
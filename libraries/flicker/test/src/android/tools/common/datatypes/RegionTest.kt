@@ -202,6 +202,57 @@ class RegionTest {
         assertTrue(region.isEmpty)
     }
 
+    @Test
+    fun testContainsComplexRegion() {
+        region.set(0, 0, 10, 10)
+        region.union(Rect.from(20, 5, 30, 20))
+        assertTrue(region.isComplex())
+
+        assertTrue(region.contains(5, 2))
+        assertFalse(region.contains(25, 2))
+        assertTrue(region.contains(25, 7))
+        assertFalse(region.contains(15, 7))
+        assertTrue(region.contains(25, 15))
+        assertFalse(region.contains(5, 15))
+    }
+
+    @Test
+    fun testRects() {
+        assertEquals(0, region.rects.size)
+
+        region.set(0, 0, 10, 10)
+        region.union(Rect.from(20, 5, 30, 20))
+        val rects = region.rects.joinToString { it.toString() }
+        val expected =
+            arrayOf(
+                    Rect.from(0, 0, 10, 5),
+                    Rect.from(0, 5, 10, 10),
+                    Rect.from(20, 5, 30, 10),
+                    Rect.from(20, 10, 30, 20)
+                )
+                .joinToString { it.toString() }
+        assertEquals(expected, rects)
+    }
+
+    @Test
+    fun testCovers() {
+        val bounds = Region.from(0, 0, 100, 100)
+        val inner = Region.from(10, 10, 50, 50)
+        assertTrue(bounds.coversAtLeast(inner))
+        assertFalse(inner.coversAtLeast(bounds))
+        assertTrue(inner.coversAtMost(bounds))
+        assertFalse(bounds.coversAtMost(inner))
+        assertFalse(Region.EMPTY.coversAtMost(bounds))
+        assertFalse(bounds.coversAtLeast(Region.EMPTY))
+
+        val complex = Region.from(10, 10, 50, 50)
+        complex.union(Rect.from(60, 60, 90, 90))
+        assertTrue(bounds.coversAtLeast(complex))
+        assertFalse(complex.coversAtLeast(bounds))
+        assertTrue(complex.coversAtMost(bounds))
+        assertFalse(complex.coversAtMost(inner))
+    }
+
     @Test
     fun testOp1() {
         val rect1 = Rect.from(0, 0, 0, 0)
@@ -279,6 +279,8 @@ class FlickerServiceResultsCollectorTest {
                     mockScenarioAssertion
                 }
             Mockito.`when`(mockScenarioInstance.generateAssertions()).thenReturn(mockedAssertions)
+            Mockito.`when`(mockFlickerService.executeAssertions(mockedAssertions))
+                .thenReturn(mockedAssertions.map { it.execute() })
 
             Mockito.`when`(
                     mockFlickerService.detectScenarios(KotlinMockito.any(Reader::class.java))
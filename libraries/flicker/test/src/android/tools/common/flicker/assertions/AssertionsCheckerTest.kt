@@ -22,6 +22,7 @@ import android.tools.common.Timestamp
 import android.tools.common.Timestamps
 import android.tools.common.flicker.subject.FlickerSubject
 import android.tools.rules.CleanFlickerEnvironmentRule
+import com.google.common.truth.Truth
 import org.junit.ClassRule
 import org.junit.FixMethodOrder
 import org.junit.Test
@@ -134,11 +135,52 @@ class AssertionsCheckerTest {
         assertFail("data is 42") { checker.test(getTestEntries(0, 0, 0, 0, 0)) }
     }
 
+    @Test
+    fun doesNotDescribeEntriesWhenPassing() {
+        val checker = AssertionsChecker<SimpleEntrySubject>()
+        checker.add("isData42") { it.isData42() }
+        checker.add("isData0") { it.isData0() }
+        val entries = getTestEntries(42, 42, 0, 0)
+        checker.test(entries)
+        Truth.assertThat(entries.sumOf { it.describedCount }).isEqualTo(0)
+    }
+
+    @Test
+    fun doesNotDescribeValuesOfFailuresAdvancingBlocks() {
+        var describedCount = 0
+        class Value(val data: Int) {
+            override fun equals(other: Any?): Boolean = other is Value && other.data == data
+
+            override fun hashCode(): Int = data
+
+            override fun toString(): String {
+                describedCount++
+                return data.toString()
+            }
+        }
+        val checker = AssertionsChecker<SimpleEntrySubject>()
+        checker.add("isData42") { it.hasValue(Value(42)) { data -> Value(data) } }
+        checker.add("isData0") { it.hasValue(Value(0)) { data -> Value(data) } }
+        checker.test(getTestEntries(42, 42, 0, 0))
+        Truth.assertThat(describedCount).isEqualTo(0)
+    }
+
     private class SimpleEntrySubject(private val entry: SimpleEntry) : FlickerSubject() {
         override val timestamp = Timestamps.empty()
 
+        var describedCount = 0
+
+        override fun toString(): String {
+            describedCount++
+            return super.toString()
+        }
+
         fun isData42() = apply { check { "data is 42" }.that(entry.mData).isEqual(42) }
 
+        fun hasValue(expected: Any, toValue: (Int) -> Any) = apply {
+            check { "data has the expected value" }.that(toValue(entry.mData)).isEqual(expected)
+        }
+
         fun isData0() = apply { check { "data is 0" }.that(entry.mData).isEqual(0) }
 
         fun isData1() = apply { check { "data is 1" }.that(entry.mData).isEqual(1) }
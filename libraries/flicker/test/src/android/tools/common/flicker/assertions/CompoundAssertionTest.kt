@@ -74,6 +74,22 @@ class CompoundAssertionTest {
         assertion1().invoke("")
     }
 
+    @Test
+    fun evaluateReturnsFirstNonOptionalFailure() {
+        val assertion = assertion1()
+        assertion.add({ error("OPTIONAL") }, OTHER, optional = true)
+        assertion.add({ error("EXPECTED") }, OTHER, optional = false)
+        assertion.add({ error("UNEXPECTED") }, OTHER, optional = false)
+        Assert.assertEquals("EXPECTED", assertion.evaluate("")?.message)
+    }
+
+    @Test
+    fun evaluatePassesWithOptionalFailure() {
+        val assertion = assertion1()
+        assertion.add({ error("EXPECTED") }, OTHER, optional = true)
+        Assert.assertNull(assertion.evaluate(""))
+    }
+
     companion object {
         private const val NAME = "Name"
         private const val OTHER = "Other"
@@ -64,6 +64,27 @@ class ITraceTest {
             .contains("No entry at or before timestamp")
     }
 
+    @Test
+    fun getEntryOnLongTraceTest() {
+        val entries = (1L..1000L).map { SimpleTraceEntry(Timestamps.from(it * 2, it * 2, it * 2)) }
+        val trace = SimpleTrace(entries.toTypedArray())
+
+        entries.forEach { entry ->
+            val time = entry.timestamp.elapsedNanos
+            Truth.assertThat(trace.getEntryExactlyAt(Timestamps.from(time, time, time)))
+                .isEqualTo(entry)
+            Truth.assertThat(trace.getEntryAt(Timestamps.from(time + 1, time + 1, time + 1)))
+                .isEqualTo(entry)
+            Truth.assertThat(
+                    assertThrows<Throwable> {
+                        trace.getEntryExactlyAt(Timestamps.from(time + 1, time + 1, time + 1))
+                    }
+                )
+                .hasMessageThat()
+                .contains("does not exist")
+        }
+    }
+
     class SimpleTraceEntry(override val timestamp: Timestamp) : ITraceEntry
 
     class SimpleTrace(override val entries: Array<ITraceEntry>) : ITrace<ITraceEntry> {
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.common.traces.component
+
+import android.tools.common.traces.wm.ConfigurationContainer
+import android.tools.common.traces.wm.IWindowContainer
+import android.tools.common.traces.wm.WindowContainer
+import com.google.common.truth.Truth
+import org.junit.Test
+
+/** To run this test: `atest FlickerLibTest:OrComponentMatcherTest` */
+class OrComponentMatcherTest {
+    @Test
+    fun matchesAnyComponent() {
+        val matcher = ComponentNameMatcher("", "abcd").or(ComponentNameMatcher("", "bc"))
+        Truth.assertThat(matcher.windowMatchesAnyOf(window("xabcdx"))).isTrue()
+        Truth.assertThat(matcher.windowMatchesAnyOf(window("abce"))).isTrue()
+        Truth.assertThat(matcher.windowMatchesAnyOf(window("acbd"))).isFalse()
+        Truth.assertThat(matcher.windowMatchesAnyOf(listOf(window("acbd"), window("bcd"))))
+            .isTrue()
+    }
+
+    @Test
+    fun matchesNestedComponents() {
+        val matcher =
+            ComponentNameMatcher("", "aab")
+                .or(ComponentNameMatcher("", "ba"))
+                .or(ComponentNameMatcher("com.pkg", "com.pkg.Activity"))
+        Truth.assertThat(matcher.windowMatchesAnyOf(window("aaab"))).isTrue()
+        Truth.assertThat(matcher.windowMatchesAnyOf(window("abba"))).isTrue()
+        Truth.assertThat(matcher.windowMatchesAnyOf(window("com.pkg/com.pkg.Activity"))).isTrue()
+        Truth.assertThat(matcher.windowMatchesAnyOf(window("com.pkg/.Activity"))).isFalse()
+        Truth.assertThat(matcher.windowMatchesAnyOf(window("aa"))).isFalse()
+    }
+
+    @Test
+    fun matchesReplacedComponent() {
+        val nameMatcher = ComponentNameMatcher("", "first")
+        val matcher = nameMatcher.or(ComponentNameMatcher("", "other"))
+        Truth.assertThat(matcher.windowMatchesAnyOf(window("first"))).isTrue()
+        nameMatcher.component = ComponentName("", "second")
+        Truth.assertThat(matcher.windowMatchesAnyOf(window("first"))).isFalse()
+        Truth.assertThat(matcher.windowMatchesAnyOf(window("second"))).isTrue()
+    }
+
+    @Test
+    fun matchesReplacedNestedComponent() {
+        val nameMatcher = ComponentNameMatcher("", "first")
+        val matcher =
+            ComponentNameMatcher("", "other").or(nameMatcher.or(ComponentNameMatcher("", "third")))
+        Truth.assertThat(matcher.windowMatchesAnyOf(window("first"))).isTrue()
+        nameMatcher.component = ComponentName("", "second")
+        Truth.assertThat(matcher.windowMatchesAnyOf(window("first"))).isFalse()
+        Truth.assertThat(matcher.windowMatchesAnyOf(window("second"))).isTrue()
+    }
+
+    @Test
+    fun equalsMatcherOfSameComponents() {
+        val matcher = ComponentNameMatcher("", "first").or(ExactComponentIdMatcher(1, 2))
+        val sameMatcher = ComponentNameMatcher("", "first").or(ExactComponentIdMatcher(1, 2))
+        Truth.assertThat(matcher).isEqualTo(sameMatcher)
+        Truth.assertThat(matcher.hashCode()).isEqualTo(sameMatcher.hashCode())
+        Truth.assertThat(matcher)
+            .isNotEqualTo(ComponentNameMatcher("", "first").or(ExactComponentIdMatcher(1, 3)))
+        Truth.assertThat(matcher)
+            .isNotEqualTo(ComponentNameMatcher("", "first").or(FullComponentIdMatcher(1, 2)))
+    }
+
+    private fun window(title: String): IWindowContainer =
+        WindowContainer(
+            title = title,
+            token = "",
+            orientation = 0,
+            layerId = 0,
+            _isVisible = true,
+            _children = emptyArray(),
+            configurationContainer = ConfigurationContainer.EMPTY,
+            computedZ = 0
+        )
+}
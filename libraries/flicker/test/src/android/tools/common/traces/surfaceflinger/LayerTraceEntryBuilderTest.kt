@@ -56,6 +56,24 @@ class LayerTraceEntryBuilderTest {
         Truth.assertThat(entry.timestamp.unixNanos).isEqualTo(600)
     }
 
+    @Test
+    fun createsEntryFromNumericValues() {
+        val entry =
+            LayerTraceEntryBuilder()
+                .setElapsedTimestamp(100L)
+                .setLayers(emptyArray())
+                .setDisplays(emptyArray())
+                .setVSyncId(123L)
+                .setRealToElapsedTimeOffsetNs(500L)
+                .build()
+        Truth.assertThat(entry.elapsedTimestamp).isEqualTo(100)
+        Truth.assertThat(entry.clockTimestamp).isEqualTo(600)
+        Truth.assertThat(entry.vSyncId).isEqualTo(123)
+
+        Truth.assertThat(entry.timestamp.systemUptimeNanos).isEqualTo(100)
+        Truth.assertThat(entry.timestamp.unixNanos).isEqualTo(600)
+    }
+
     @Test
     fun supportsMissingRealToElapsedTimeOffsetNs() {
         val builder =
@@ -51,6 +51,18 @@ class LayersTraceEntryTest {
         assertThatErrorContainsDebugInfo(error)
     }
 
+    @Test
+    fun canGetLayerById() {
+        val reader = getLayerTraceReaderFromAsset("layers_trace_emptyregion.pb", legacyTrace = true)
+        val trace = reader.readLayersTrace() ?: error("Unable to read layers trace")
+        val entry = trace.entries.last()
+        entry.flattenedLayers.forEach { layer ->
+            Truth.assertThat(entry.getLayerById(layer.id))
+                .isSameInstanceAs(entry.flattenedLayers.first { it.id == layer.id })
+        }
+        Truth.assertThat(entry.getLayerById(-1)).isNull()
+    }
+
     @Test
     fun canParseAllLayers() {
         val reader = getLayerTraceReaderFromAsset("layers_trace_emptyregion.pb", legacyTrace = true)
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.common.traces.surfaceflinger
+
+import android.tools.common.datatypes.RectF
+import android.tools.rules.CleanFlickerEnvironmentRule
+import com.google.common.truth.Truth
+import kotlin.random.Random
+import org.junit.ClassRule
+import org.junit.Test
+
+/** Contains [OverlapSweep] tests. To run this test: `atest FlickerLibTest:OverlapSweepTest` */
+class OverlapSweepTest {
+    @Test
+    fun findsIntersectionsAndSharedEdges() {
+        val rects =
+            listOf(
+                RectF.from(0f, 0f, 100f, 100f),
+                RectF.from(50f, 50f, 150f, 150f),
+                RectF.from(100f, 0f, 200f, 50f),
+                RectF.from(300f, 300f, 400f, 400f),
+                RectF.EMPTY
+            )
+        val intersections = OverlapSweep.findPrecedingIntersections(rects)
+
+        Truth.assertThat(intersections[0].asList()).isEmpty()
+        Truth.assertThat(intersections[1].asList()).containsExactly(0)
+        Truth.assertThat(intersections[2].asList()).containsExactly(0, 1).inOrder()
+        Truth.assertThat(intersections[3].asList()).isEmpty()
+        Truth.assertThat(intersections[4].asList()).isEmpty()
+    }
+
+    @Test
+    fun matchesPairwiseComparison() {
+        val random = Random(0)
+        val rects =
+            List(200) {
+                val left = random.nextInt(1000).toFloat()
+                val top = random.nextInt(2000).toFloat()
+                RectF.from(
+                    left,
+                    top,
+                    left + random.nextInt(500).toFloat(),
+                    top + random.nextInt(1000).toFloat()
+                )
+            }
+        val intersections = OverlapSweep.findPrecedingIntersections(rects)
+
+        rects.forEachIndexed { index, rect ->
+            val expected =
+                (0 until index).filter {
+                    val other = rects[it]
+                    !rect.isEmpty &&
+                        !other.isEmpty &&
+                        other.left <= rect.right &&
+                        rect.left <= other.right &&
+                        other.top <= rect.bottom &&
+                        rect.top <= other.bottom
+                }
+            Truth.assertThat(intersections[index].asList())
+                .containsExactlyElementsIn(expected)
+                .inOrder()
+        }
+    }
+
+    companion object {
+        @ClassRule @JvmField val ENV_CLEANUP = CleanFlickerEnvironmentRule()
+    }
+}
@@ -17,6 +17,8 @@
 package android.tools.common.traces.wm
 
 import android.tools.common.Timestamps
+import android.tools.common.traces.component.ComponentNameMatcher
+import android.tools.getWmTraceReaderFromAsset
 import android.tools.rules.CleanFlickerEnvironmentRule
 import com.google.common.truth.Truth
 import org.junit.ClassRule
@@ -96,6 +98,31 @@ class WindowManagerStateTest {
         Truth.assertThat(entry.timestamp.unixNanos).isEqualTo(Timestamps.empty().unixNanos)
     }
 
+    @Test
+    fun canLookUpWindowsAndTasks() {
+        val reader = getWmTraceReaderFromAsset("wm_trace_openchrome.pb", legacyTrace = true)
+        val trace = reader.readWmTrace() ?: error("Unable to read WindowManager trace")
+        val entry = trace.entries.last()
+        entry.windowStates.forEachIndexed { index, window ->
+            Truth.assertThat(entry.getZOrder(window)).isEqualTo(entry.windowStates.size - index)
+        }
+        entry.rootTasks.forEach { task ->
+            Truth.assertThat(entry.getRootTask(task.rootTaskId))
+                .isSameInstanceAs(entry.rootTasks.first { it.rootTaskId == task.rootTaskId })
+        }
+        val windows = entry.windowStates.asList()
+        Truth.assertThat(entry.containsWindow(ComponentNameMatcher.LAUNCHER))
+            .isEqualTo(ComponentNameMatcher.LAUNCHER.windowMatchesAnyOf(windows))
+        Truth.assertThat(entry.getMatchingVisibleWindowState(ComponentNameMatcher.LAUNCHER))
+            .asList()
+            .containsExactlyElementsIn(
+                entry.windowStates.filter {
+                    it.isSurfaceShown && ComponentNameMatcher.LAUNCHER.windowMatchesAnyOf(it)
+                }
+            )
+            .inOrder()
+    }
+
     companion object {
         @ClassRule @JvmField val ENV_CLEANUP = CleanFlickerEnvironmentRule()
     }
@@ -69,6 +69,28 @@ class WindowManagerTraceEntryBuilderTest {
         Truth.assertThat(entry.timestamp.unixNanos).isEqualTo(600)
     }
 
+    @Test
+    fun createsEntryFromNumericValues() {
+        val entry =
+            WindowManagerTraceEntryBuilder()
+                .setElapsedTimestamp(100L)
+                .setRoot(emptyRootContainer)
+                .setKeyguardControllerState(
+                    KeyguardControllerState.from(
+                        isAodShowing = false,
+                        isKeyguardShowing = false,
+                        keyguardOccludedStates = mapOf()
+                    )
+                )
+                .setRealToElapsedTimeOffsetNs(500L)
+                .build()
+        Truth.assertThat(entry.elapsedTimestamp).isEqualTo(100)
+        Truth.assertThat(entry.clockTimestamp).isEqualTo(600)
+
+        Truth.assertThat(entry.timestamp.elapsedNanos).isEqualTo(100)
+        Truth.assertThat(entry.timestamp.unixNanos).isEqualTo(600)
+    }
+
     @Test
     fun supportsMissingRealToElapsedTimeOffsetNs() {
         val entry =
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.device.flicker
+
+import android.tools.assertThrows
+import android.tools.common.flicker.TaskRunner
+import android.tools.rules.CleanFlickerEnvironmentRule
+import com.google.common.truth.Truth
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinTask
+import org.junit.After
+import org.junit.ClassRule
+import org.junit.Test
+
+/** Tests for [ConcurrentTaskRunner] */
+class ConcurrentTaskRunnerTest {
+    private val pool = ForkJoinPool(4)
+    private val runner = ConcurrentTaskRunner(pool)
+
+    @After
+    fun after() {
+        pool.shutdown()
+    }
+
+    @Test
+    fun keepsTaskOrder() {
+        val tasks = (0 until 100).map { TaskRunner.Task("task$it") { it * 2 } }
+        val results = runner.runAll("test", tasks)
+        Truth.assertThat(results).isEqualTo((0 until 100).map { it * 2 })
+    }
+
+    @Test
+    fun runsNestedTasks() {
+        val tasks =
+            (0 until 10).map { outer ->
+                TaskRunner.Task("outer$outer") {
+                    val innerTasks = (0 until 10).map { TaskRunner.Task("inner$it") { outer * it } }
+                    runner.runAll("inner", innerTasks).sum()
+                }
+            }
+        val results = runner.runAll("outer", tasks)
+        Truth.assertThat(results).isEqualTo((0 until 10).map { it * 45 })
+    }
+
+    @Test
+    fun throwsEarliestFailure() {
+        val tasks =
+            (0 until 100).map {
+                TaskRunner.Task("task$it") {
+                    require(it < 10 || it % 10 != 0) { "Invalid task $it" }
+                    it
+                }
+            }
+        val error = assertThrows<IllegalArgumentException> { runner.runAll("test", tasks) }
+        Truth.assertThat(error).hasMessageThat().isEqualTo("Invalid task 10")
+    }
+
+    @Test
+    fun recordsTimings() {
+        val tasks = listOf(TaskRunner.Task("first") { 1 }, TaskRunner.Task("second") { 2 })
+        runner.runAll("test", tasks)
+        Truth.assertThat(runner.timings.map { it.name }).containsExactly("first", "second")
+        runner.clearTimings()
+        Truth.assertThat(runner.timings).isEmpty()
+    }
+
+    @Test
+    fun keepsLastTimings() {
+        val boundedRunner = ConcurrentTaskRunner(pool, maxTimings = 2)
+        val tasks = (0 until 5).map { TaskRunner.Task("task$it") { it } }
+        tasks.forEach { boundedRunner.runAll("test", listOf(it)) }
+        Truth.assertThat(boundedRunner.timings.map { it.name })
+            .containsExactly("task3", "task4")
+            .inOrder()
+    }
+
+    @Test
+    fun sharesDefaultPool() {
+        val first = ConcurrentTaskRunner()
+        val second = ConcurrentTaskRunner()
+        val workers =
+            listOf(first, second).flatMap { runner ->
+                runner.runAll("test", listOf(TaskRunner.Task("pool") { ForkJoinTask.getPool() }))
+            }
+        Truth.assertThat(workers[0]).isNotNull()
+        Truth.assertThat(workers[1]).isSameInstanceAs(workers[0])
+    }
+
+    companion object {
+        @ClassRule @JvmField val ENV_CLEANUP = CleanFlickerEnvironmentRule()
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.device.traces
+
+import com.google.common.truth.Truth
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import org.junit.Test
+
+/** Tests for [ConcurrentInterningCache] and [ConcurrentCacheFactory] */
+class ConcurrentInterningCacheTest {
+    @Test
+    fun internsEqualElements() {
+        val cache = ConcurrentInterningCache()
+        val element1 = cache.get(Dummy(0))
+        val element2 = cache.get(Dummy(0))
+        val element3 = cache.get(Dummy(1))
+        Truth.assertThat(element2).isSameInstanceAs(element1)
+        Truth.assertThat(element3).isNotSameInstanceAs(element1)
+        Truth.assertThat(cache.stats.hits).isEqualTo(1)
+        Truth.assertThat(cache.stats.misses).isEqualTo(2)
+    }
+
+    @Test
+    fun internsConcurrently() {
+        val cache = ConcurrentInterningCache()
+        val executor = Executors.newFixedThreadPool(THREADS)
+        try {
+            val tasks = List(THREADS) { Callable { List(ELEMENTS) { cache.get(Dummy(it)) } } }
+            val results = executor.invokeAll(tasks).map { it.get() }
+            for (result in results) {
+                result.zip(results.first()).forEach { (element, expected) ->
+                    Truth.assertThat(element).isSameInstanceAs(expected)
+                }
+            }
+        } finally {
+            executor.shutdown()
+        }
+    }
+
+    @Test
+    fun keepsWithinMaxSize() {
+        val cache = ConcurrentInterningCache(maxSize = 2)
+        val elements = List(10) { cache.get(Dummy(it)) }
+        Truth.assertThat(elements).hasSize(10)
+        Truth.assertThat(cache.stats.size).isAtMost(2)
+        Truth.assertThat(cache.stats.evictions).isEqualTo(8)
+    }
+
+    @Test
+    fun backupAndRestore() {
+        val cache = ConcurrentInterningCache()
+        val element = cache.get(Dummy(0))
+        val backup = cache.backup()
+        cache.clear()
+        Truth.assertThat(cache.stats.size).isEqualTo(0)
+        cache.restore(backup)
+        Truth.assertThat(cache.get(Dummy(0))).isSameInstanceAs(element)
+    }
+
+    @Test
+    fun tracksSessionPerThread() {
+        val factory = ConcurrentCacheFactory()
+        val session = factory.newCache()
+        factory.current = session
+        val executor = Executors.newSingleThreadExecutor()
+        try {
+            val otherThreadCache = executor.submit(Callable { factory.current }).get()
+            Truth.assertThat(factory.current).isSameInstanceAs(session)
+            Truth.assertThat(otherThreadCache).isNotSameInstanceAs(session)
+        } finally {
+            executor.shutdown()
+        }
+    }
+
+    data class Dummy(val value: Int)
+
+    companion object {
+        private const val THREADS = 4
+        private const val ELEMENTS = 1000
+    }
+}
@@ -16,10 +16,14 @@
 
 package android.tools.device.traces.io
 
+import android.tools.common.Tag
+import android.tools.common.io.ResultArtifactDescriptor
 import android.tools.common.io.RunStatus
+import android.tools.common.io.TraceType
 import android.tools.createDefaultArtifactBuilder
 import com.google.common.truth.Truth
 import kotlin.io.path.createTempDirectory
+import kotlin.random.Random
 import org.junit.Test
 
 class ArtifactTest {
@@ -40,4 +44,34 @@ class ArtifactTest {
         val artifact2 = createDefaultArtifactBuilder(RunStatus.RUN_FAILED, outputDir).build()
         Truth.assertWithMessage("Artifacts are equal").that(artifact1).isNotEqualTo(artifact2)
     }
+
+    @Test
+    fun readsEachFileOfTheArchive() {
+        val outputDir = createTempDirectory().toFile()
+        val contents =
+            listOf(TraceType.WM, TraceType.SF, TraceType.TRANSACTION).associate {
+                ResultArtifactDescriptor(it) to Random(it.ordinal).nextBytes(100_000)
+            }
+        val files =
+            contents.mapValues { (descriptor, bytes) ->
+                val file = outputDir.resolve("${descriptor.fileNameInArtifact}.tmp")
+                file.writeBytes(bytes)
+                file
+            }
+        val artifact =
+            createDefaultArtifactBuilder(RunStatus.RUN_EXECUTED, outputDir, files).build()
+
+        Truth.assertThat(artifact.traceCount()).isEqualTo(contents.size)
+        contents.forEach { (descriptor, bytes) ->
+            Truth.assertThat(artifact.hasTrace(descriptor)).isTrue()
+            Truth.assertThat(artifact.readBytes(descriptor)).isEqualTo(bytes)
+            Truth.assertThat(artifact.openInputStream(descriptor)?.use { it.readBytes() })
+                .isEqualTo(bytes)
+        }
+
+        val missing = ResultArtifactDescriptor(TraceType.WM_DUMP, Tag.START)
+        Truth.assertThat(artifact.hasTrace(missing)).isFalse()
+        Truth.assertThat(artifact.readBytes(missing)).isNull()
+        Truth.assertThat(artifact.openInputStream(missing)).isNull()
+    }
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.device.traces.io
+
+import android.tools.TestTraces
+import android.tools.common.Timestamps
+import android.tools.common.io.RunStatus
+import android.tools.common.io.TraceType
+import android.tools.device.traces.deleteIfExists
+import android.tools.newTestResultWriter
+import android.tools.outputFileName
+import android.tools.rules.CleanFlickerEnvironmentRule
+import com.google.common.truth.Truth
+import org.junit.Before
+import org.junit.ClassRule
+import org.junit.Test
+
+/** Tests for [ResultReaderWithLru] */
+class ResultReaderWithLruTest {
+    @Before
+    fun setup() {
+        outputFileName(RunStatus.RUN_EXECUTED).deleteIfExists()
+        ResultReaderWithLru.traceCache.clear()
+    }
+
+    @Test
+    fun cachesTracesByType() {
+        val result =
+            newTestResultWriter()
+                .addTraceResult(TraceType.WM, TestTraces.WMTrace.FILE)
+                .addTraceResult(TraceType.SF, TestTraces.LayerTrace.FILE)
+                .write()
+        val reader = ResultReaderWithLru(result, TestTraces.TEST_TRACE_CONFIG)
+        val wmTrace = reader.readWmTrace() ?: error("WM trace not built")
+        val layersTrace = reader.readLayersTrace() ?: error("Layers trace not built")
+        val hits = ResultReaderWithLru.traceCache.stats.hits
+
+        Truth.assertThat(reader.readWmTrace()).isSameInstanceAs(wmTrace)
+        Truth.assertThat(reader.readLayersTrace()).isSameInstanceAs(layersTrace)
+        Truth.assertThat(ResultReaderWithLru.traceCache.stats.hits).isEqualTo(hits + 2)
+        Truth.assertThat(ResultReaderWithLru.traceCache.stats.size).isEqualTo(2)
+    }
+
+    @Test
+    fun slicesCachedTrace() {
+        val result =
+            newTestResultWriter().addTraceResult(TraceType.SF, TestTraces.LayerTrace.FILE).write()
+        val start = layersTimestamp(TestTraces.LayerTrace.START_TIME.systemUptimeNanos + 1)
+        val end = layersTimestamp(TestTraces.LayerTrace.SLICE_TIME.systemUptimeNanos)
+        val reader = ResultReaderWithLru(result, TestTraces.TEST_TRACE_CONFIG)
+        reader.readLayersTrace() ?: error("Layers trace not built")
+        val misses = ResultReaderWithLru.traceCache.stats.misses
+
+        val slicedTrace = reader.slice(start, end).readLayersTrace()
+        val expectedTrace =
+            ResultReader(result, TestTraces.TEST_TRACE_CONFIG).slice(start, end).readLayersTrace()
+
+        Truth.assertThat(slicedTrace?.entries?.map { it.timestamp })
+            .containsExactlyElementsIn(expectedTrace?.entries?.map { it.timestamp })
+            .inOrder()
+        // The sliced trace misses, but the trace it is sliced from is cached
+        Truth.assertThat(ResultReaderWithLru.traceCache.stats.misses).isEqualTo(misses + 1)
+    }
+
+    private fun layersTimestamp(systemUptimeNanos: Long) =
+        Timestamps.from(
+            elapsedNanos = systemUptimeNanos,
+            systemUptimeNanos = systemUptimeNanos,
+            unixNanos = systemUptimeNanos
+        )
+
+    companion object {
+        @ClassRule @JvmField val ENV_CLEANUP = CleanFlickerEnvironmentRule()
+    }
+}
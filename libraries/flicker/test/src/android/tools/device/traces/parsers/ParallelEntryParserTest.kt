@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.device.traces.parsers
+
+import android.tools.assertThrows
+import android.tools.rules.CleanFlickerEnvironmentRule
+import com.google.common.truth.Truth
+import org.junit.ClassRule
+import org.junit.Test
+
+/** Tests for [ParallelEntryParser] */
+class ParallelEntryParserTest {
+    @Test
+    fun keepsEntryOrder() {
+        val entries = (0 until 1000).toList()
+        val parsed = ParallelEntryParser.parse(entries) { it * 2 }
+        Truth.assertThat(parsed).isEqualTo(entries.map { it * 2 })
+    }
+
+    @Test
+    fun parsesFewEntries() {
+        val entries = listOf(1, 2)
+        val parsed = ParallelEntryParser.parse(entries) { it.toString() }
+        Truth.assertThat(parsed).containsExactly("1", "2").inOrder()
+    }
+
+    @Test
+    fun throwsEarliestFailure() {
+        val entries = (0 until 1000).toList()
+        val error =
+            assertThrows<IllegalArgumentException> {
+                ParallelEntryParser.parse(entries) {
+                    require(it < 100 || it % 100 != 0) { "Invalid entry $it" }
+                    it
+                }
+            }
+        Truth.assertThat(error).hasMessageThat().isEqualTo("Invalid entry 100")
+    }
+
+    companion object {
+        @ClassRule @JvmField val ENV_CLEANUP = CleanFlickerEnvironmentRule()
+    }
+}
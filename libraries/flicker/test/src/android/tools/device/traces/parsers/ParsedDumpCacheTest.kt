@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2023 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.tools.device.traces.parsers
+
+import android.tools.readAsset
+import android.tools.rules.CleanFlickerEnvironmentRule
+import com.google.common.truth.Truth
+import org.junit.ClassRule
+import org.junit.Test
+
+/** Tests for [ParsedDumpCache] */
+class ParsedDumpCacheTest {
+    private val wmStates = ParsedDumpCache { data ->
+        WindowManagerDumpParser().parse(data, clearCache = false).entries.first()
+    }
+
+    @Test
+    fun reusesStateOfUnchangedDump() {
+        val first = wmStates.parse(readAsset("wm_trace_dump.pb"))
+        val second = wmStates.parse(readAsset("wm_trace_dump.pb"))
+        Truth.assertThat(second).isSameInstanceAs(first)
+        Truth.assertThat(wmStates.parsedCount).isEqualTo(1)
+    }
+
+    @Test
+    fun parsesChangedDump() {
+        val parsed = mutableListOf<String>()
+        val names = ParsedDumpCache { data -> String(data).also { parsed.add(it) } }
+        names.parse("first".toByteArray())
+        names.parse("second".toByteArray())
+        names.parse("second".toByteArray())
+        names.parse("first".toByteArray())
+        Truth.assertThat(parsed).containsExactly("first", "second", "first").inOrder()
+        Truth.assertThat(names.parsedCount).isEqualTo(3)
+    }
+
+    companion object {
+        @ClassRule @JvmField val ENV_CLEANUP = CleanFlickerEnvironmentRule()
+    }
+}
@@ -27,6 +27,7 @@ import android.tools.common.datatypes.Rect
 import android.tools.common.datatypes.RectF
 import android.tools.common.datatypes.Region
 import android.tools.common.flicker.subject.wm.WindowManagerStateSubject
+import android.tools.common.io.TraceType
 import android.tools.common.traces.DeviceStateDump
 import android.tools.common.traces.component.ComponentNameMatcher
 import android.tools.common.traces.component.IComponentName
@@ -39,6 +40,7 @@ import android.tools.common.traces.wm.WindowManagerTrace
 import android.tools.getWmDumpReaderFromAsset
 import android.tools.getWmTraceReaderFromAsset
 import android.tools.rules.CleanFlickerEnvironmentRule
+import android.view.Display
 import androidx.test.filters.FlakyTest
 import androidx.test.platform.app.InstrumentationRegistry
 import com.google.common.truth.Truth
@@ -58,7 +60,7 @@ class WindowManagerStateHelperTest {
     class TestWindowManagerStateHelper(
         _wmState: WindowManagerState,
         /** Predicate to supply a new UI information */
-        deviceDumpSupplier: () -> DeviceStateDump,
+        deviceDumpSupplier: (Set<TraceType>) -> DeviceStateDump,
         numRetries: Int = 5,
         retryIntervalMs: Long = 500L
     ) :
@@ -159,10 +161,12 @@ class WindowManagerStateHelperTest {
      * Alongside the SF trac,e this function creates an imaginary SF trace with visible Status and
      * NavBar, as well as all visible non-system windows (those with name containing /)
      */
-    private fun WindowManagerTrace.asSupplier(startingTimestamp: Long = 0): () -> DeviceStateDump {
+    private fun WindowManagerTrace.asSupplier(
+        startingTimestamp: Long = 0
+    ): (Set<TraceType>) -> DeviceStateDump {
         val iterator =
             this.entries.dropWhile { it.timestamp.elapsedNanos < startingTimestamp }.iterator()
-        return {
+        return { _ ->
             if (iterator.hasNext()) {
                 val wmState = iterator.next()
                 val layerList: MutableList<IComponentName> =
@@ -380,6 +384,74 @@ class WindowManagerStateHelperTest {
         WindowManagerStateSubject(helper.wmState, reader).hasRotation(Rotation.ROTATION_0)
     }
 
+    @Test
+    fun canCountDumpsWhileWaiting() {
+        val reader = getWmTraceReaderFromAsset("wm_trace_rotation.pb", legacyTrace = true)
+        val trace = reader.readWmTrace() ?: error("Unable to read WM trace")
+        val supplier = trace.asSupplier()
+        var suppliedCount = 0
+        val helper =
+            TestWindowManagerStateHelper(
+                trace.entries.first(),
+                { dumpTypes ->
+                    suppliedCount++
+                    supplier.invoke(dumpTypes)
+                },
+                numRetries = trace.entries.size,
+                retryIntervalMs = 1
+            )
+        helper.StateSyncBuilder().withRotation(Rotation.ROTATION_270).waitFor()
+        helper.StateSyncBuilder().withRotation(Rotation.ROTATION_0).waitFor()
+        Truth.assertWithMessage("Dump count").that(helper.dumpCount).isEqualTo(suppliedCount)
+        Truth.assertWithMessage("Dump count").that(helper.dumpCount).isGreaterThan(2)
+    }
+
+    @Test
+    fun canSkipLayersDumpsForWmConditions() {
+        val reader = getWmTraceReaderFromAsset("wm_trace_rotation.pb", legacyTrace = true)
+        val trace = reader.readWmTrace() ?: error("Unable to read WM trace")
+        val supplier = trace.asSupplier()
+        val requestedDumpTypes = mutableListOf<Set<TraceType>>()
+        val helper =
+            TestWindowManagerStateHelper(
+                trace.entries.first(),
+                { dumpTypes ->
+                    requestedDumpTypes.add(dumpTypes.toSet())
+                    supplier.invoke(dumpTypes)
+                },
+                numRetries = trace.entries.size,
+                retryIntervalMs = 1
+            )
+        helper
+            .StateSyncBuilder()
+            .withWmCondition("rotation 270") {
+                it.getRotation(Display.DEFAULT_DISPLAY) == Rotation.ROTATION_270
+            }
+            .waitFor()
+        val wmOnlyPolls = requestedDumpTypes.count { it == setOf(TraceType.WM_DUMP) }
+        Truth.assertWithMessage("WM only polls").that(wmOnlyPolls).isEqualTo(helper.dumpCount)
+        Truth.assertWithMessage("WM only polls").that(wmOnlyPolls).isGreaterThan(0)
+        requestedDumpTypes.clear()
+        helper.StateSyncBuilder().withRotation(Rotation.ROTATION_0).waitFor()
+        Truth.assertWithMessage("Requested dumps")
+            .that(requestedDumpTypes.distinct())
+            .containsExactly(setOf(TraceType.WM_DUMP, TraceType.SF_DUMP))
+    }
+
+    @Test
+    fun canBackOffRetryIntervals() {
+        Truth.assertWithMessage("Retry intervals")
+            .that((0..5).map { WindowManagerStateHelper.getRetryIntervalMs(it, 100L) })
+            .containsExactly(12L, 24L, 48L, 96L, 100L, 100L)
+            .inOrder()
+        Truth.assertWithMessage("Interval after many retries")
+            .that(WindowManagerStateHelper.getRetryIntervalMs(Int.MAX_VALUE, 100L))
+            .isEqualTo(100L)
+        Truth.assertWithMessage("Interval shorter than the divisor")
+            .that(WindowManagerStateHelper.getRetryIntervalMs(0, 5L))
+            .isEqualTo(1L)
+    }
+
     @Test
     fun canDetectResumedActivitiesInStacks() {
         val reader = getWmDumpReaderFromAsset("wm_trace_resumed_activities_in_stack.pb")
@@ -17,6 +17,7 @@
 package android.tools.device.traces.parsers.surfaceflinger
 
 import android.tools.common.Cache
+import android.tools.common.Timestamps
 import android.tools.readAsset
 import android.tools.rules.CleanFlickerEnvironmentRule
 import com.google.common.truth.Truth
@@ -51,6 +52,66 @@ class LayerTraceParserTest {
             .isNotEmpty()
     }
 
+    @Test
+    fun canParseLazily() {
+        val bytes = readAsset("layers_trace_occluded.pb")
+        val trace = LayersTraceParser(legacyTrace = true).parse(bytes)
+        val lazyTrace =
+            LayersTraceParser(legacyTrace = true)
+                .parseLazily(bytes, Timestamps.min(), Timestamps.max())
+        Truth.assertWithMessage("Entry count")
+            .that(lazyTrace.entryCount)
+            .isEqualTo(trace.entryCount)
+        trace.entries.forEachIndexed { index, entry ->
+            Truth.assertWithMessage("Timestamp of entry $index")
+                .that(lazyTrace.getEntryTimestamp(index))
+                .isEqualTo(entry.timestamp)
+        }
+        val lastEntry = lazyTrace.getEntry(lazyTrace.entryCount - 1)
+        Truth.assertWithMessage("Last entry").that(lastEntry).isEqualTo(trace.entries.last())
+        Truth.assertWithMessage("Last entry layers")
+            .that(lastEntry.flattenedLayers.map { it.name })
+            .containsExactlyElementsIn(trace.entries.last().flattenedLayers.map { it.name })
+        Truth.assertWithMessage("Entries").that(lazyTrace).isEqualTo(trace)
+        Truth.assertWithMessage("Last entry once all entries are built")
+            .that(lazyTrace.getEntry(lazyTrace.entryCount - 1))
+            .isSameInstanceAs(lastEntry)
+        Truth.assertWithMessage("Last built entry")
+            .that(lazyTrace.entries.last())
+            .isSameInstanceAs(lastEntry)
+    }
+
+    @Test
+    fun sharesUnchangedLayers() {
+        val trace =
+            LayersTraceParser(legacyTrace = true).parse(readAsset("layers_trace_occluded.pb"))
+        val prevLayers = trace.entries[0].flattenedLayers.associateBy { it.id }
+        val layers = trace.entries[1].flattenedLayers
+        Truth.assertWithMessage("Layers shared between entries")
+            .that(layers.filter { layer -> prevLayers.values.any { it === layer } })
+            .isEmpty()
+        val unchangedLayers =
+            layers.filter { layer ->
+                val prevLayer = prevLayers[layer.id] ?: return@filter false
+                prevLayer.name == layer.name &&
+                    prevLayer.z == layer.z &&
+                    prevLayer.currFrame == layer.currFrame &&
+                    prevLayer.flags == layer.flags &&
+                    prevLayer.visibleRegion == layer.visibleRegion &&
+                    prevLayer.screenBounds == layer.screenBounds &&
+                    prevLayer.bounds == layer.bounds &&
+                    prevLayer.transform == layer.transform &&
+                    prevLayer.color == layer.color &&
+                    prevLayer.activeBuffer == layer.activeBuffer
+            }
+        // The stable id is only computed when a layer is parsed, and is shared with its copies
+        val sharedLayers = unchangedLayers.filter { prevLayers[it.id]?.stableId === it.stableId }
+        Truth.assertWithMessage("Unchanged layers").that(unchangedLayers).isNotEmpty()
+        Truth.assertWithMessage("Unchanged layers sharing their properties")
+            .that(sharedLayers.size * 2)
+            .isGreaterThan(unchangedLayers.size)
+    }
+
     companion object {
         @ClassRule @JvmField val ENV_CLEANUP = CleanFlickerEnvironmentRule()
     }
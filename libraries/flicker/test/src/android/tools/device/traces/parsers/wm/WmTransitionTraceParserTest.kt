@@ -18,12 +18,15 @@ package android.tools.device.traces.parsers.wm
 
 import android.app.Instrumentation
 import android.tools.common.Cache
+import android.tools.common.Timestamps
 import android.tools.device.apphelpers.BrowserAppHelper
 import android.tools.device.traces.monitors.wm.WmTransitionTraceMonitor
 import android.tools.readAsset
 import android.tools.rules.CleanFlickerEnvironmentRule
 import androidx.test.platform.app.InstrumentationRegistry
 import com.android.launcher3.tapl.LauncherInstrumentation
+import com.android.server.wm.shell.nano.Transition
+import com.android.server.wm.shell.nano.TransitionTraceProto
 import com.google.common.truth.Truth
 import org.junit.Before
 import org.junit.ClassRule
@@ -58,6 +61,37 @@ class WmTransitionTraceParserTest {
         val trace = WmTransitionTraceParser().parse(data, clearCache = false)
         Truth.assertThat(trace.entries).asList().isNotEmpty()
     }
+
+    @Test
+    fun canSliceUnsortedEntries() {
+        // Transitions are not sorted by their create time
+        val input =
+            TransitionTraceProto().apply {
+                transitions =
+                    arrayOf(
+                        newTransition(id = 1, createTimeNs = 20),
+                        newTransition(id = 2, createTimeNs = 10),
+                        newTransition(id = 3, createTimeNs = 30)
+                    )
+            }
+        val trace =
+            WmTransitionTraceParser()
+                .parse(
+                    input,
+                    from = Timestamps.from(elapsedNanos = 15),
+                    to = Timestamps.from(elapsedNanos = 35),
+                    addInitialEntry = false,
+                    clearCache = false
+                )
+        Truth.assertThat(trace.entries.map { it.id }).containsAtLeast(1, 3)
+    }
+
+    private fun newTransition(id: Int, createTimeNs: Long) =
+        Transition().also {
+            it.id = id
+            it.createTimeNs = createTimeNs
+        }
+
     companion object {
         @ClassRule @JvmField val ENV_CLEANUP = CleanFlickerEnvironmentRule()
     }
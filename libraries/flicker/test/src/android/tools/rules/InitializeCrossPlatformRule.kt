@@ -19,6 +19,7 @@ package android.tools.rules
 import android.tools.common.CrossPlatform
 import android.tools.common.TimestampFactory
 import android.tools.device.AndroidLogger
+import android.tools.device.traces.ConcurrentCacheFactory
 import android.tools.device.traces.formatRealTimestamp
 import org.junit.rules.TestRule
 import org.junit.runner.Description
@@ -30,6 +31,7 @@ class InitializeCrossPlatformRule : TestRule {
             override fun evaluate() {
                 CrossPlatform.setLogger(AndroidLogger())
                     .setTimestampFactory(TimestampFactory { formatRealTimestamp(it) })
+                    .setCacheFactory(ConcurrentCacheFactory())
 
                 base?.evaluate()
             }